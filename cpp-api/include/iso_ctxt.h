@@ -487,7 +487,11 @@ namespace mds {
 
   class iso_ctxt : public __delegator<api::iso_context_handle> {
     using base = __delegator<api::iso_context_handle>;
-    iso_ctxt(const handle_type &h) : base{h} {}
+    /*
+     * Keeps the versions we can see from being pruned.
+     */
+    api::context_pin _pin;
+    iso_ctxt(const handle_type &h) : base{h}, _pin{h} {}
     friend class pub_result;
     friend class task;
   public:
@@ -0,0 +1,168 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * handle_store.cpp
+ *
+ * Micro-benchmark for api::unique_handle_store.  Each thread mimics
+ * the JNI access pattern: a handle is stored once (as when a proxy is
+ * created), and then each "field access" does a get() of the index
+ * plus an add_ref()/free() pair (as made by a temporary indexed<>
+ * object).  Every so often the proxy is dropped and a new one is
+ * stored.  The benchmark reports throughput for 1, 2, 4, ... up to
+ * the requested number of threads.
+ */
+
+#include "mds_core_api.h"
+#include <getopt.h>
+#include <atomic>
+#include <chrono>
+#include <iostream>
+#include <string>
+#include <thread>
+#include <vector>
+
+using namespace std;
+using namespace std::chrono;
+using namespace mds;
+
+using store_type = api::unique_handle_store<api::interned_string_handle>;
+
+void show_usage(const string &prog) {
+  cerr << "usage: " << prog << " [options]" << endl
+       << endl
+       << "Options:" << endl
+       << "-t, --threads\t\t Maximum number of threads (default 32)" << endl
+       << "-n, --ops\t\t Field accesses per thread (default 1000000)" << endl
+       << "-k, --handles\t\t Number of distinct handles (default 1024)" << endl
+       << "-r, --reuse\t\t Accesses per stored proxy (default 16)" << endl
+       << "-h, --help\t\t Display this message" << endl;
+}
+
+double run(unsigned n_threads, size_t n_ops, size_t reuse,
+           const vector<api::interned_string_handle> &handles)
+{
+  atomic<unsigned> ready{0};
+  atomic<bool> go{false};
+  vector<thread> threads;
+  for (unsigned t = 0; t < n_threads; t++) {
+    threads.emplace_back([&, t] {
+        api::ensure_process_registered();
+        size_t k = t;
+        ready++;
+        while (!go) {
+          this_thread::yield();
+        }
+        size_t done = 0;
+        while (done < n_ops) {
+          const auto &h = handles[k++ % handles.size()];
+          auto i = store_type::store(h);
+          for (size_t j = 0; j < reuse && done < n_ops; j++, done++) {
+            store_type::add_ref(i);
+            if (store_type::get(i) != h) {
+              cerr << "Wrong handle at index " << i.index << endl;
+              abort();
+            }
+            store_type::free(i);
+          }
+          store_type::free(i);
+        }
+      });
+  }
+  while (ready < n_threads) {
+    this_thread::yield();
+  }
+  auto start = steady_clock::now();
+  go = true;
+  for (auto &t : threads) {
+    t.join();
+  }
+  duration<double> elapsed = steady_clock::now()-start;
+  return (n_threads*n_ops)/elapsed.count();
+}
+
+int main(int argc, char *argv[]) {
+  struct option long_options[] = {
+    {"threads",      required_argument,  0, 't'},
+    {"ops",          required_argument,  0, 'n'},
+    {"handles",      required_argument,  0, 'k'},
+    {"reuse",        required_argument,  0, 'r'},
+    {"help",         no_argument,        0, 'h'},
+    {0,              0,            0,  0 }
+  };
+
+  string prog = argv[0];
+  unsigned max_threads = 32;
+  size_t n_ops = 1000000;
+  size_t n_handles = 1024;
+  size_t reuse = 16;
+
+  while (true) {
+    int c = getopt_long(argc, argv, "t:n:k:r:h", long_options, nullptr);
+    if (c == -1) {
+      break;
+    }
+    switch (c) {
+    case 't':
+      max_threads = stoul(optarg);
+      break;
+    case 'n':
+      n_ops = stoul(optarg);
+      break;
+    case 'k':
+      n_handles = stoul(optarg);
+      break;
+    case 'r':
+      reuse = stoul(optarg);
+      break;
+    case 'h':
+      show_usage(prog);
+      return 0;
+    case '?':
+      show_usage(prog);
+      return -1;
+    }
+  }
+
+  api::ensure_process_registered();
+  vector<api::interned_string_handle> handles;
+  for (size_t i = 0; i < n_handles; i++) {
+    string s = "handle-" + to_string(i);
+    handles.push_back(api::intern(s.c_str(), s.length()));
+  }
+
+  double base = 0;
+  cout << "threads\tops/sec\tspeedup" << endl;
+  for (unsigned n = 1; n <= max_threads; n *= 2) {
+    double rate = run(n, n_ops, reuse, handles);
+    if (n == 1) {
+      base = rate;
+    }
+    cout << n << "\t" << static_cast<size_t>(rate) << "\t" << rate/base << endl;
+  }
+  cout << "Indices allocated: " << store_type::high_water_mark() << endl;
+  return 0;
+}
@@ -0,0 +1,271 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * publish_history.cpp
+ *
+ * Checks core::publish_history against a walk of the chain it
+ * indexes.  A chain of fake published states with timestamps 10, 20,
+ * ... is built, with catch_up() called every so often, so lookups
+ * have to walk an unindexed tail before they search.  first_after()
+ * and last_before() are checked for every time up to past the end,
+ * then again once everything is indexed and after the history is
+ * pruned.  Finally, threads extend the chain and look things up
+ * concurrently, checking each answer against the chain they started
+ * from.
+ */
+
+#include "mds_core_api.h"
+#include "core/core_publish_history.h"
+#include <getopt.h>
+#include <atomic>
+#include <cstdlib>
+#include <iostream>
+#include <string>
+#include <thread>
+#include <vector>
+
+using namespace std;
+using namespace mds;
+using core::timestamp_t;
+using core::gc_ptr;
+
+struct fake_state : core::gc_allocated {
+  const timestamp_t ts;
+  gc_ptr<const fake_state> prior_published_state;
+
+  fake_state(core::gc_token &gc, timestamp_t t, const gc_ptr<const fake_state> &prior)
+    : gc_allocated{gc}, ts{t}, prior_published_state{prior}
+  {}
+
+  static const auto &descriptor() {
+    static core::gc_descriptor d =
+      GC_DESC(fake_state)
+      .WITH_FIELD(&fake_state::ts)
+      .WITH_FIELD(&fake_state::prior_published_state);
+    return d;
+  }
+
+  timestamp_t timestamp() const {
+    return ts;
+  }
+
+  void forget_prior() {
+    prior_published_state = nullptr;
+  }
+};
+
+using history = core::publish_history<fake_state>;
+using state_ptr = gc_ptr<const fake_state>;
+
+constexpr timestamp_t step = 10;
+
+void show_usage(const string &prog) {
+  cerr << "usage: " << prog << " [options]" << endl
+       << endl
+       << "Options:" << endl
+       << "-n, --states\t\t Number of states in the chain (default 10000)" << endl
+       << "-c, --catch-up\t\t Catch up every this many states (default 37)" << endl
+       << "-t, --threads\t\t Lookup threads in the concurrent phase (default 4)" << endl
+       << "-h, --help\t\t Display this message" << endl;
+}
+
+size_t n_failures = 0;
+
+void check(bool ok, const string &what, timestamp_t ts, const state_ptr &got, timestamp_t expected) {
+  if (!ok) {
+    n_failures++;
+    if (n_failures <= 10) {
+      cerr << what << "(" << ts << ") returned "
+           << (got == nullptr ? string("nothing") : to_string(got->timestamp()))
+           << ", expected " << (expected == 0 ? string("nothing") : to_string(expected))
+           << endl;
+    }
+  }
+}
+
+/*
+ * With states at step, 2*step, ..., n*step, these are the timestamps
+ * the lookups should find, or 0 for none.
+ */
+timestamp_t expected_last_before(timestamp_t ts, size_t n) {
+  if (ts <= step) {
+    return 0;
+  }
+  timestamp_t t = ((ts-1)/step)*step;
+  return t > n*step ? n*step : t;
+}
+
+timestamp_t expected_first_after(timestamp_t ts, size_t n) {
+  timestamp_t t = (ts/step+1)*step;
+  return t > n*step ? 0 : t;
+}
+
+void check_lookups(const string &phase, const history &h, const state_ptr &newest,
+                   size_t n, timestamp_t from)
+{
+  for (timestamp_t ts = from; ts <= (n+2)*step; ts++) {
+    timestamp_t lb = expected_last_before(ts, n);
+    state_ptr s = h.last_before(newest, ts);
+    check(lb == 0 ? s == nullptr : s != nullptr && s->timestamp() == lb,
+          phase + ": last_before", ts, s, lb);
+    timestamp_t fa = expected_first_after(ts, n);
+    s = h.first_after(newest, ts);
+    check(fa == 0 ? s == nullptr : s != nullptr && s->timestamp() == fa,
+          phase + ": first_after", ts, s, fa);
+  }
+}
+
+void check_size(const string &phase, const history &h, size_t expected) {
+  if (h.size() != expected) {
+    n_failures++;
+    cerr << phase << ": size is " << h.size() << ", expected " << expected << endl;
+  }
+}
+
+int main(int argc, char *argv[]) {
+  struct option long_options[] = {
+    {"states",       required_argument,  0, 'n'},
+    {"catch-up",     required_argument,  0, 'c'},
+    {"threads",      required_argument,  0, 't'},
+    {"help",         no_argument,        0, 'h'},
+    {0,              0,            0,  0 }
+  };
+
+  string prog = argv[0];
+  size_t n = 10000;
+  size_t every = 37;
+  unsigned n_threads = 4;
+
+  while (true) {
+    int c = getopt_long(argc, argv, "n:c:t:h", long_options, nullptr);
+    if (c == -1) {
+      break;
+    }
+    switch (c) {
+    case 'n':
+      n = stoul(optarg);
+      break;
+    case 'c':
+      every = stoul(optarg);
+      break;
+    case 't':
+      n_threads = stoul(optarg);
+      break;
+    case 'h':
+      show_usage(prog);
+      return 0;
+    case '?':
+      show_usage(prog);
+      return -1;
+    }
+  }
+
+  api::ensure_process_registered();
+  gc_ptr<history> h = core::make_gc<history>();
+
+  /*
+   * Leave a tail that isn't indexed.
+   */
+  state_ptr newest = nullptr;
+  for (size_t i = 1; i <= n; i++) {
+    newest = core::make_gc<fake_state>(i*step, newest);
+    if (i % every == 0 && i+every <= n) {
+      h->catch_up(newest);
+    }
+  }
+  check_lookups("Partial", *h, newest, n, 0);
+
+  h->catch_up(newest);
+  check_size("Caught up", *h, n);
+  check_lookups("Caught up", *h, newest, n, 0);
+  h->catch_up(newest);
+  check_size("Caught up twice", *h, n);
+
+  /*
+   * Pruning keeps the newest state older than the cutoff, which is
+   * the (n/2)th.
+   */
+  const timestamp_t cutoff = (n/2)*step + step/2;
+  h->catch_up(newest, cutoff);
+  check_size("Pruned", *h, n - (n/2 - 1));
+  check_lookups("Pruned", *h, newest, n, cutoff);
+  h->catch_up(newest, cutoff);
+  check_size("Pruned twice", *h, n - (n/2 - 1));
+
+  /*
+   * One thread extends the chain while the others catch up and look
+   * up times at and after the cutoff in whatever chain they see.
+   */
+  atomic<state_ptr> latest{newest};
+  atomic<bool> done{false};
+  atomic<size_t> bad{0};
+  vector<thread> threads;
+  for (unsigned t = 0; t < n_threads; t++) {
+    threads.emplace_back([&, t] {
+        api::ensure_process_registered();
+        size_t k = t;
+        while (!done) {
+          state_ptr mine = latest;
+          const size_t len = mine->timestamp()/step;
+          h->catch_up(mine, cutoff);
+          const timestamp_t ts = cutoff + (k++ * 7) % ((len+2)*step - cutoff);
+          state_ptr s = h->last_before(mine, ts);
+          timestamp_t lb = expected_last_before(ts, len);
+          if (s == nullptr || s->timestamp() != lb) {
+            bad++;
+          }
+          s = h->first_after(mine, ts);
+          timestamp_t fa = expected_first_after(ts, len);
+          if (fa == 0 ? s != nullptr : s == nullptr || s->timestamp() != fa) {
+            bad++;
+          }
+        }
+      });
+  }
+  for (size_t i = n+1; i <= 2*n; i++) {
+    newest = core::make_gc<fake_state>(i*step, newest);
+    latest = newest;
+  }
+  done = true;
+  for (auto &t : threads) {
+    t.join();
+  }
+  if (bad > 0) {
+    n_failures += bad;
+    cerr << "Concurrent: " << bad << " wrong answers" << endl;
+  }
+  h->catch_up(newest, cutoff);
+  check_size("Extended", *h, 2*n - (n/2 - 1));
+  check_lookups("Extended", *h, newest, 2*n, cutoff);
+
+  if (n_failures > 0) {
+    cout << n_failures << " failures" << endl;
+    return 1;
+  }
+  cout << "OK" << endl;
+  return 0;
+}
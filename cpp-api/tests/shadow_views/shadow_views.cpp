@@ -0,0 +1,188 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * shadow_views.cpp
+ *
+ * Benchmark for shadow view resolution.  Builds a chain of nested
+ * contexts and creates an array in each, so the innermost context
+ * sees arrays in as many distinct views as the chain is deep.  Each
+ * reader thread opens its own read-only snapshot of the innermost
+ * context and reads every array, round robin.  Each read has to map
+ * the array's view to its shadow in the snapshot.  The first pass
+ * creates the shadows, and later passes only look them up.  The
+ * chain doubles in depth at each step, and the benchmark reports the
+ * mean latency of first-pass and later reads as the number of views
+ * grows.  It also checks that every read sees the value written when
+ * the array was created.
+ */
+
+#include "mds_core_api.h"
+#include <getopt.h>
+#include <atomic>
+#include <chrono>
+#include <iostream>
+#include <iomanip>
+#include <string>
+#include <thread>
+#include <vector>
+
+using namespace std;
+using namespace std::chrono;
+using namespace mds;
+
+using array_handle = api::managed_array_handle<kind::LONG>;
+
+void show_usage(const string &prog) {
+  cerr << "usage: " << prog << " [options]" << endl
+       << endl
+       << "Options:" << endl
+       << "-r, --readers\t\t Number of reader threads (default 2)" << endl
+       << "-m, --max-views\t\t Largest number of views (default 1024)" << endl
+       << "-n, --reads\t\t Reads per reader per step (default 1000000)" << endl
+       << "-h, --help\t\t Display this message" << endl;
+}
+
+void init_thread() {
+  api::task_handle::init_thread_base_task([] {
+      return api::iso_context_handle::global().top_level_task().pointer();
+    });
+}
+
+struct latencies {
+  double first_ns;
+  double later_ns;
+};
+
+latencies read_all(unsigned n_threads, size_t n_reads,
+                   api::iso_context_handle &innermost,
+                   vector<array_handle> &arrays)
+{
+  const size_t n_views = arrays.size();
+  vector<double> first(n_threads);
+  vector<double> later(n_threads);
+  vector<thread> threads;
+  for (unsigned t = 0; t < n_threads; t++) {
+    threads.emplace_back([&, t] {
+        init_thread();
+        api::iso_context_handle ss = innermost.new_read_only_snapshot_child();
+        ss.push_prevailing();
+        auto start = steady_clock::now();
+        for (size_t i = 0; i < n_views; i++) {
+          if (arrays[i].frozen_read(0) != static_cast<long>(i)) {
+            cerr << "Wrong value in array " << i << endl;
+            abort();
+          }
+        }
+        first[t] = duration<double, nano>(steady_clock::now()-start).count()/n_views;
+        start = steady_clock::now();
+        for (size_t done = 0; done < n_reads; done++) {
+          size_t i = done % n_views;
+          if (arrays[i].frozen_read(0) != static_cast<long>(i)) {
+            cerr << "Wrong value in array " << i << endl;
+            abort();
+          }
+        }
+        later[t] = duration<double, nano>(steady_clock::now()-start).count()/n_reads;
+        api::task_handle::pop();
+      });
+  }
+  for (auto &t : threads) {
+    t.join();
+  }
+  latencies l{0, 0};
+  for (unsigned t = 0; t < n_threads; t++) {
+    l.first_ns += first[t]/n_threads;
+    l.later_ns += later[t]/n_threads;
+  }
+  return l;
+}
+
+int main(int argc, char *argv[]) {
+  struct option long_options[] = {
+    {"readers",      required_argument,  0, 'r'},
+    {"max-views",    required_argument,  0, 'm'},
+    {"reads",        required_argument,  0, 'n'},
+    {"help",         no_argument,        0, 'h'},
+    {0,              0,            0,  0 }
+  };
+
+  string prog = argv[0];
+  unsigned n_readers = 2;
+  size_t max_views = 1024;
+  size_t n_reads = 1000000;
+
+  while (true) {
+    int c = getopt_long(argc, argv, "r:m:n:h", long_options, nullptr);
+    if (c == -1) {
+      break;
+    }
+    switch (c) {
+    case 'r':
+      n_readers = stoul(optarg);
+      break;
+    case 'm':
+      max_views = stoul(optarg);
+      break;
+    case 'n':
+      n_reads = stoul(optarg);
+      break;
+    case 'h':
+      show_usage(prog);
+      return 0;
+    case '?':
+      show_usage(prog);
+      return -1;
+    }
+  }
+
+  init_thread();
+  vector<array_handle> arrays;
+  api::iso_context_handle innermost = api::iso_context_handle::global();
+
+  cout << setw(10) << "views"
+       << setw(16) << "first (ns)"
+       << setw(16) << "later (ns)" << endl;
+  for (size_t n_views = 1; n_views <= max_views; n_views *= 2) {
+    /*
+     * Each array is created in a new child of the previous
+     * innermost context, so it's in that child's view.
+     */
+    while (arrays.size() < n_views) {
+      innermost = innermost.new_nonsnapshot_child();
+      innermost.push_prevailing();
+      array_handle a = api::managed_array_handle_by_kind<kind::LONG>().create_array(1);
+      a.write(0, arrays.size());
+      arrays.push_back(a);
+      api::task_handle::pop();
+    }
+    latencies l = read_all(n_readers, n_reads, innermost, arrays);
+    cout << setw(10) << n_views
+         << setw(16) << fixed << setprecision(1) << l.first_ns
+         << setw(16) << fixed << setprecision(1) << l.later_ns << endl;
+  }
+  return 0;
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * timestamps.cpp
+ *
+ * Scaling benchmark for timestamp allocation.  For 1, 2, 4, ... up to
+ * the requested number of threads, each thread repeatedly creates a
+ * small snapshot child of the global context, writes its own element
+ * of a shared array in a task, and publishes.  Every iteration takes
+ * a snapshot time, a task tick, and a publish time, so with a single
+ * shared counter for each the per-thread rate falls off as threads
+ * are added.  The benchmark reports total and per-thread throughput
+ * and the speedup relative to one thread.
+ */
+
+#include "mds_core_api.h"
+#include <getopt.h>
+#include <atomic>
+#include <chrono>
+#include <iostream>
+#include <iomanip>
+#include <string>
+#include <thread>
+#include <vector>
+
+using namespace std;
+using namespace std::chrono;
+using namespace mds;
+
+using array_handle = api::managed_array_handle<kind::LONG>;
+
+void show_usage(const string &prog) {
+  cerr << "usage: " << prog << " [options]" << endl
+       << endl
+       << "Options:" << endl
+       << "-t, --threads\t\t Maximum number of threads (default hardware concurrency)" << endl
+       << "-n, --iterations\t Contexts published per thread (default 10000)" << endl
+       << "-h, --help\t\t Display this message" << endl;
+}
+
+void init_thread() {
+  api::task_handle::init_thread_base_task([] {
+      return api::iso_context_handle::global().top_level_task().pointer();
+    });
+}
+
+double run(unsigned n_threads, size_t n_iterations, array_handle &a) {
+  atomic<unsigned> ready{0};
+  atomic<bool> go{false};
+  atomic<size_t> retries{0};
+  vector<thread> threads;
+  for (unsigned t = 0; t < n_threads; t++) {
+    threads.emplace_back([&, t] {
+        init_thread();
+        ready++;
+        while (!go) {
+          this_thread::yield();
+        }
+        for (size_t i = 0; i < n_iterations; i++) {
+          while (true) {
+            api::iso_context_handle ctxt = api::iso_context_handle::global().new_snapshot_child();
+            ctxt.push_prevailing();
+            a.add(t, 1);
+            api::task_handle::pop();
+            if (ctxt.publish().succeeded()) {
+              break;
+            }
+            retries++;
+          }
+        }
+      });
+  }
+  while (ready < n_threads) {
+    this_thread::yield();
+  }
+  auto start = steady_clock::now();
+  go = true;
+  for (auto &t : threads) {
+    t.join();
+  }
+  duration<double> elapsed = steady_clock::now()-start;
+  if (retries > 0) {
+    cerr << retries << " publications retried with " << n_threads << " threads" << endl;
+  }
+  return (n_threads*n_iterations)/elapsed.count();
+}
+
+int main(int argc, char *argv[]) {
+  struct option long_options[] = {
+    {"threads",      required_argument,  0, 't'},
+    {"iterations",   required_argument,  0, 'n'},
+    {"help",         no_argument,        0, 'h'},
+    {0,              0,            0,  0 }
+  };
+
+  string prog = argv[0];
+  unsigned max_threads = thread::hardware_concurrency();
+  size_t n_iterations = 10000;
+
+  while (true) {
+    int c = getopt_long(argc, argv, "t:n:h", long_options, nullptr);
+    if (c == -1) {
+      break;
+    }
+    switch (c) {
+    case 't':
+      max_threads = stoul(optarg);
+      break;
+    case 'n':
+      n_iterations = stoul(optarg);
+      break;
+    case 'h':
+      show_usage(prog);
+      return 0;
+    case '?':
+      show_usage(prog);
+      return -1;
+    }
+  }
+  if (max_threads == 0) {
+    max_threads = 1;
+  }
+
+  init_thread();
+  array_handle a = api::managed_array_handle_by_kind<kind::LONG>().create_array(max_threads);
+  for (size_t i = 0; i < max_threads; i++) {
+    a.write(i, 0);
+  }
+
+  cout << setw(10) << "threads" << setw(16) << "publishes/sec"
+       << setw(16) << "per thread" << setw(10) << "speedup" << endl;
+  double base = 0;
+  for (unsigned n = 1; ; n = min(2*n, max_threads)) {
+    double rate = run(n, n_iterations, a);
+    if (n == 1) {
+      base = rate;
+    }
+    cout << setw(10) << n << setw(16) << fixed << setprecision(0) << rate
+         << setw(16) << rate/n
+         << setw(10) << setprecision(2) << rate/base << endl;
+    if (n == max_threads) {
+      break;
+    }
+  }
+  return 0;
+}
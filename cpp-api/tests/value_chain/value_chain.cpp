@@ -0,0 +1,232 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * value_chain.cpp
+ *
+ * Benchmark for lookups deep in value chains.  Writer threads keep
+ * publishing increments to a small array, so each element's chain in
+ * the global context keeps growing.  At each step, reader threads
+ * repeatedly open a read-only snapshot as of a timestamp taken before
+ * any of the writers started and read the array in it.  Each first
+ * read of an element in such a snapshot has to find the value the
+ * global chain held at that time, so without an index the cost grows
+ * with the number of versions published since.  The benchmark reports
+ * read throughput as the chains grow, and checks that the snapshot
+ * always sees the original values.  With --prune, version pruning
+ * runs as well; a pinned snapshot keeps the old values alive, and the
+ * number of versions pruned is reported.
+ */
+
+#include "mds_core_api.h"
+#include <getopt.h>
+#include <atomic>
+#include <chrono>
+#include <iostream>
+#include <iomanip>
+#include <string>
+#include <thread>
+#include <vector>
+
+using namespace std;
+using namespace std::chrono;
+using namespace mds;
+
+using array_handle = api::managed_array_handle<kind::LONG>;
+
+void show_usage(const string &prog) {
+  cerr << "usage: " << prog << " [options]" << endl
+       << endl
+       << "Options:" << endl
+       << "-w, --writers\t\t Number of writer threads (default 2)" << endl
+       << "-r, --readers\t\t Number of reader threads (default 2)" << endl
+       << "-k, --elements\t\t Elements in the array (default 16)" << endl
+       << "-v, --versions\t\t Versions published per step (default 10000)" << endl
+       << "-s, --steps\t\t Number of steps (default 8)" << endl
+       << "-n, --reads\t\t Snapshot reads per reader per step (default 10000)" << endl
+       << "-p, --prune\t\t Prune versions every this many ms (default off)" << endl
+       << "-h, --help\t\t Display this message" << endl;
+}
+
+void init_thread() {
+  api::task_handle::init_thread_base_task([] {
+      return api::iso_context_handle::global().top_level_task().pointer();
+    });
+}
+
+void publish_increments(array_handle &a, size_t k) {
+  api::iso_context_handle ctxt = api::iso_context_handle::global().new_nonsnapshot_child();
+  ctxt.push_prevailing();
+  for (size_t i = 0; i < k; i++) {
+    a.add(i, 1);
+  }
+  api::task_handle::pop();
+  ctxt.publish();
+}
+
+double read_old(unsigned n_threads, size_t n_reads, core::timestamp_t ts,
+                array_handle &a, size_t k)
+{
+  atomic<unsigned> ready{0};
+  atomic<bool> go{false};
+  vector<thread> threads;
+  for (unsigned t = 0; t < n_threads; t++) {
+    threads.emplace_back([&, t] {
+        init_thread();
+        ready++;
+        while (!go) {
+          this_thread::yield();
+        }
+        size_t done = 0;
+        while (done < n_reads) {
+          api::iso_context_handle ss = api::iso_context_handle::global().ro_snapshot_at(ts);
+          ss.push_prevailing();
+          for (size_t i = 0; i < k && done < n_reads; i++, done++) {
+            if (a.frozen_read(i) != 0) {
+              cerr << "Snapshot saw a later value at " << i << endl;
+              abort();
+            }
+          }
+          api::task_handle::pop();
+        }
+      });
+  }
+  while (ready < n_threads) {
+    this_thread::yield();
+  }
+  auto start = steady_clock::now();
+  go = true;
+  for (auto &t : threads) {
+    t.join();
+  }
+  duration<double> elapsed = steady_clock::now()-start;
+  return (n_threads*n_reads)/elapsed.count();
+}
+
+int main(int argc, char *argv[]) {
+  struct option long_options[] = {
+    {"writers",      required_argument,  0, 'w'},
+    {"readers",      required_argument,  0, 'r'},
+    {"elements",     required_argument,  0, 'k'},
+    {"versions",     required_argument,  0, 'v'},
+    {"steps",        required_argument,  0, 's'},
+    {"reads",        required_argument,  0, 'n'},
+    {"prune",        required_argument,  0, 'p'},
+    {"help",         no_argument,        0, 'h'},
+    {0,              0,            0,  0 }
+  };
+
+  string prog = argv[0];
+  unsigned n_writers = 2;
+  unsigned n_readers = 2;
+  size_t k = 16;
+  size_t versions = 10000;
+  size_t steps = 8;
+  size_t n_reads = 10000;
+  size_t prune_ms = 0;
+
+  while (true) {
+    int c = getopt_long(argc, argv, "w:r:k:v:s:n:p:h", long_options, nullptr);
+    if (c == -1) {
+      break;
+    }
+    switch (c) {
+    case 'w':
+      n_writers = stoul(optarg);
+      break;
+    case 'r':
+      n_readers = stoul(optarg);
+      break;
+    case 'k':
+      k = stoul(optarg);
+      break;
+    case 'v':
+      versions = stoul(optarg);
+      break;
+    case 's':
+      steps = stoul(optarg);
+      break;
+    case 'n':
+      n_reads = stoul(optarg);
+      break;
+    case 'p':
+      prune_ms = stoul(optarg);
+      break;
+    case 'h':
+      show_usage(prog);
+      return 0;
+    case '?':
+      show_usage(prog);
+      return -1;
+    }
+  }
+
+  init_thread();
+  array_handle a = api::managed_array_handle_by_kind<kind::LONG>().create_array(k);
+  for (size_t i = 0; i < k; i++) {
+    a.write(i, 0);
+  }
+  /*
+   * The pin keeps the values as of old_ts from being pruned.
+   */
+  api::iso_context_handle old = api::iso_context_handle::global().new_read_only_snapshot_child();
+  api::context_pin pin{old};
+  core::timestamp_t old_ts = core::current_version->load();
+  if (prune_ms > 0) {
+    api::version_pruning::start(milliseconds(prune_ms));
+  }
+
+  atomic<size_t> published{0};
+  atomic<bool> stop{false};
+  vector<thread> writers;
+  for (unsigned t = 0; t < n_writers; t++) {
+    writers.emplace_back([&] {
+        init_thread();
+        while (!stop) {
+          publish_increments(a, k);
+          published++;
+        }
+      });
+  }
+
+  cout << setw(12) << "versions" << setw(16) << "reads/sec"
+       << setw(12) << "pruned" << endl;
+  for (size_t s = 1; s <= steps; s++) {
+    while (published < s*versions) {
+      this_thread::yield();
+    }
+    size_t now = published;
+    double rate = read_old(n_readers, n_reads, old_ts, a, k);
+    cout << setw(12) << now << setw(16) << fixed << setprecision(0) << rate
+         << setw(12) << api::mem_stats::n_values_pruned() << endl;
+  }
+  stop = true;
+  for (auto &t : writers) {
+    t.join();
+  }
+  api::version_pruning::stop();
+  return 0;
+}
@@ -0,0 +1,167 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * vc_map.cpp
+ *
+ * Benchmark for the per-MSV map from views to value chains.  Each
+ * thread runs a stream of short-lived children of the global
+ * context.  In each one it reads a hot element of a shared array,
+ * adds one to its own element, and publishes.  So the hot element's
+ * MSV gets a value chain for every context, and all of the threads
+ * add theirs to the same map.  The benchmark reports the mean time
+ * per context and checks the counts at the end.
+ */
+
+#include "mds_core_api.h"
+#include <getopt.h>
+#include <chrono>
+#include <iostream>
+#include <iomanip>
+#include <string>
+#include <thread>
+#include <vector>
+
+using namespace std;
+using namespace std::chrono;
+using namespace mds;
+
+using array_handle = api::managed_array_handle<kind::LONG>;
+
+void show_usage(const string &prog) {
+  cerr << "usage: " << prog << " [options]" << endl
+       << endl
+       << "Options:" << endl
+       << "-t, --threads\t\t Number of threads (default 4)" << endl
+       << "-n, --contexts\t\t Contexts per thread (default 100000)" << endl
+       << "-r, --reads\t\t Reads of the hot element per context (default 1)" << endl
+       << "-h, --help\t\t Display this message" << endl;
+}
+
+void init_thread() {
+  api::task_handle::init_thread_base_task([] {
+      return api::iso_context_handle::global().top_level_task().pointer();
+    });
+}
+
+int main(int argc, char *argv[]) {
+  struct option long_options[] = {
+    {"threads",      required_argument,  0, 't'},
+    {"contexts",     required_argument,  0, 'n'},
+    {"reads",        required_argument,  0, 'r'},
+    {"help",         no_argument,        0, 'h'},
+    {0,              0,            0,  0 }
+  };
+
+  string prog = argv[0];
+  unsigned n_threads = 4;
+  size_t n_contexts = 100000;
+  size_t n_reads = 1;
+
+  while (true) {
+    int c = getopt_long(argc, argv, "t:n:r:h", long_options, nullptr);
+    if (c == -1) {
+      break;
+    }
+    switch (c) {
+    case 't':
+      n_threads = stoul(optarg);
+      break;
+    case 'n':
+      n_contexts = stoul(optarg);
+      break;
+    case 'r':
+      n_reads = stoul(optarg);
+      break;
+    case 'h':
+      show_usage(prog);
+      return 0;
+    case '?':
+      show_usage(prog);
+      return -1;
+    }
+  }
+
+  init_thread();
+  api::iso_context_handle global = api::iso_context_handle::global();
+  /*
+   * Element 0 is the hot one.  Thread t counts its contexts in
+   * element t+1.
+   */
+  array_handle a = api::managed_array_handle_by_kind<kind::LONG>().create_array(n_threads+1);
+  a.write(0, 42);
+
+  vector<double> per_context(n_threads);
+  vector<size_t> n_failed(n_threads);
+  vector<thread> threads;
+  for (unsigned t = 0; t < n_threads; t++) {
+    threads.emplace_back([&, t] {
+        init_thread();
+        auto start = steady_clock::now();
+        for (size_t i = 0; i < n_contexts; i++) {
+          api::iso_context_handle ctxt = global.new_nonsnapshot_child();
+          ctxt.push_prevailing();
+          for (size_t r = 0; r < n_reads; r++) {
+            if (a.frozen_read(0) != 42) {
+              cerr << "Wrong value in the hot element" << endl;
+              abort();
+            }
+          }
+          a.write(t+1, a.frozen_read(t+1)+1);
+          api::task_handle::pop();
+          if (!ctxt.publish().succeeded()) {
+            n_failed[t]++;
+          }
+        }
+        per_context[t] = duration<double, micro>(steady_clock::now()-start).count()/n_contexts;
+      });
+  }
+  for (auto &t : threads) {
+    t.join();
+  }
+
+  double mean = 0;
+  size_t failed = 0;
+  for (unsigned t = 0; t < n_threads; t++) {
+    mean += per_context[t]/n_threads;
+    failed += n_failed[t];
+    long expected = static_cast<long>(n_contexts - n_failed[t]);
+    if (a.frozen_read(t+1) != expected) {
+      cerr << "Thread " << t << " counted " << a.frozen_read(t+1)
+           << ", expected " << expected << endl;
+      return 1;
+    }
+  }
+  cout << setw(10) << "threads"
+       << setw(12) << "contexts"
+       << setw(20) << "per context (us)"
+       << setw(10) << "failed" << endl;
+  cout << setw(10) << n_threads
+       << setw(12) << n_threads*n_contexts
+       << setw(20) << fixed << setprecision(2) << mean
+       << setw(10) << failed << endl;
+  return 0;
+}
@@ -37,12 +37,15 @@
 #include "core/core_fwd.h"
 #include "core/core_type.h"
 #include "core/core_msv.h"
+#include "core/core_array_chunk.h"
 #include "core/core_globals.h"
 #include "core/core_strings.h"
 #include "ruts/uniform_key.h"
 #include "ruts/cas_loop.h"
 #include "mpgc/gc.h"
 #include <atomic>
+#include <algorithm>
+#include <memory>
 
 namespace mds {
   namespace core {
@@ -121,6 +124,13 @@ namespace mds {
         }
 
         managed_value<managed_array<K>> create_array(const size_type s) const;
+        /*
+         * Creates an array using the dense representation (see
+         * managed_array<K>), with chunk_size elements per chunk.
+         * Throws incompatible_type_ex if K isn't a primitive kind.
+         */
+        managed_value<managed_array<K>> create_dense_array(const size_type s,
+                                                           const size_type chunk_size) const;
     };
 
 
@@ -168,6 +178,24 @@ namespace mds {
         }
     };
 
+    /*
+     * A managed_array<K> has one of two representations, chosen when
+     * it's created.  Normally, each element has its own MSV, created
+     * the first time it's needed, so each element is versioned and
+     * conflicts are detected element by element.
+     *
+     * A dense array (which must have a primitive element kind)
+     * instead splits the elements into chunks of chunk_size (the last
+     * may be shorter) and keeps each chunk's values together in an
+     * array_chunk held by a typed_msv<kind::ARRAY_CHUNK>.  This costs
+     * little more than the raw values, and scans don't chase a pointer
+     * per element, but each chunk is versioned as a unit: a write
+     * copies the chunk, and two tasks touching different elements of
+     * the same chunk will conflict.  Arrays that need per-element
+     * conflict detection should use the normal representation.
+     * has_value() on a dense array says whether anything in the
+     * element's chunk has been written.
+     */
     template <kind K>
     class managed_array : public managed_array_base
     {
@@ -175,15 +203,24 @@ namespace mds {
       //      a matter of mirroring the types found in gc_array
       using atomic_msv  = std::atomic<gc_ptr<typed_msv<K>>>;
       using rep_type    = gc_array<atomic_msv>;
+      using chunk_msv = typed_msv<kind::ARRAY_CHUNK>;
+      using atomic_chunk_msv = std::atomic<gc_ptr<chunk_msv>>;
+      using chunk_rep_type = gc_array<atomic_chunk_msv>;
+      using dense = dense_elements<K>;
 
       public:
         using size_type = typename rep_type::size_type;
 
         const gc_ptr<const array_type<K>> a_type;
         const size_type                   size;
+        /*
+         * Zero unless the array is dense.
+         */
+        const size_type                   chunk_size;
       
       private:
         gc_ptr<rep_type>                  array_gc;
+        gc_ptr<chunk_rep_type>            chunks_gc;
 
       public:
         managed_array(
@@ -195,7 +232,24 @@ namespace mds {
         managed_array_base{gc, K},
         a_type{at},
         size{s},
-        array_gc{a}
+        chunk_size{0},
+        array_gc{a},
+        chunks_gc{nullptr}
+        {}
+
+        managed_array(
+          gc_token &gc,
+          const gc_ptr<const array_type<K>> &at,
+          const size_type s,
+          const size_type cs,
+          gc_ptr<chunk_rep_type> &c
+        ) :
+        managed_array_base{gc, K},
+        a_type{at},
+        size{s},
+        chunk_size{cs},
+        array_gc{nullptr},
+        chunks_gc{c}
         {}
 
         // su - descriptor allows gc to find fields it cares about
@@ -205,16 +259,53 @@ namespace mds {
 	    .template WITH_SUPER(managed_array_base)
             .template WITH_FIELD(&managed_array::a_type)
 	    .template WITH_FIELD(&managed_array::size)
-	    .template WITH_FIELD(&managed_array::array_gc);
+	    .template WITH_FIELD(&managed_array::chunk_size)
+	    .template WITH_FIELD(&managed_array::array_gc)
+	    .template WITH_FIELD(&managed_array::chunks_gc);
           return d;
         }
 
+      bool is_dense() const {
+        return chunk_size != 0;
+      }
+
       template <typename Fn>
       gc_ptr<typed_msv<K>> lookup(index_type i, Fn&& create_if_null) const;
 
       kind_mv<K> free_read(index_type i, const gc_ptr<view> &v) const;
       kind_mv<K> frozen_read(index_type i, const gc_ptr<view> &v) const;
       bool has_value(index_type i, const gc_ptr<view> &v) const;
+      /*
+       * Bulk reads and writes.  These behave as n calls to
+       * frozen_read() or write(), but they only resolve the shadowed
+       * view once, so the elements are all read from (or written to)
+       * the same view.  The element values are passed to (or taken
+       * from) a function object called with each index in turn.
+       */
+      template <typename Fn>
+      void frozen_read_range(index_type from, size_type n,
+                             const gc_ptr<view> &v, Fn&& sink) const;
+      template <typename Fn>
+      void write_range(index_type from, size_type n,
+                       const gc_ptr<view> &v, Fn&& source) const;
+
+    private:
+      template <typename Fn>
+      gc_ptr<chunk_msv> lookup_chunk(size_type c, Fn&& create_if_null) const;
+
+      size_type chunk_length(size_type c) const {
+        return std::min(chunk_size, size - c*chunk_size);
+      }
+
+      kind_mv<K> dense_modify(index_type i,
+                              const gc_ptr<view> &sv,
+                              modify_op op,
+                              const kind_mv<K> &arg,
+                              ret_mode returning) const;
+      template <typename Fn>
+      void dense_write_range(index_type from, size_type n,
+                             const gc_ptr<view> &sv, Fn&& source) const;
+    public:
       kind_mv<K> modify(index_type i,
                         const gc_ptr<view> &v,
                         modify_op op,
@@ -283,6 +374,23 @@ namespace mds {
       return managed_value<managed_array<K>>{a, v};
     }
 
+    template <kind K> inline
+    managed_value<managed_array<K>>
+    array_type<K>::create_dense_array(const size_type s, const size_type chunk_size) const
+    {
+      using atomic_chunk_msv = std::atomic<gc_ptr<typed_msv<kind::ARRAY_CHUNK>>>;
+
+      if (!dense_elements<K>::supported || chunk_size == 0) {
+        throw incompatible_type_ex{};
+      }
+      gc_ptr<gc_array<atomic_chunk_msv>> chunks_gc
+        = make_gc_array<atomic_chunk_msv>((s+chunk_size-1)/chunk_size);
+
+      gc_ptr<managed_array<K>> a = make_gc<managed_array<K>>(GC_THIS, s, chunk_size, chunks_gc);
+      gc_ptr<view> v = iso_context::shadowed(top_level_view);
+      return managed_value<managed_array<K>>{a, v};
+    }
+
     template <kind K> template <typename Fn> inline
     gc_ptr<typed_msv<K>> 
     managed_array<K>::lookup(index_type i, Fn &&create_if_null) const {
@@ -305,11 +413,36 @@ namespace mds {
       }
     }
 
+    template <kind K> template <typename Fn> inline
+    gc_ptr<typed_msv<kind::ARRAY_CHUNK>>
+    managed_array<K>::lookup_chunk(size_type c, Fn &&create_if_null) const {
+      atomic_chunk_msv &a = chunks_gc->at(c);
+      gc_ptr<chunk_msv> cm = a.load();
+      if (cm != nullptr) {
+        return cm;
+      } else if (std::forward<Fn>(create_if_null)()) {
+        gc_ptr<chunk_msv> new_msv = make_gc<chunk_msv>();
+        auto rr = ruts::try_change_value(a, nullptr, new_msv);
+        return rr.resulting_value();
+      } else {
+        return nullptr;
+      }
+    }
+
     // su - TODO - error handling / exceptions for the following
     template <kind K> inline
     kind_mv<K> 
     managed_array<K>::free_read(index_type i, const gc_ptr<view> &v) const {
 
+      if (is_dense()) {
+        gc_ptr<chunk_msv> cm = lookup_chunk(i/chunk_size, []{ return false; });
+        if (cm == nullptr) {
+          return kind_mv<K>{};
+        }
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        return dense::get(cm->free_read(sv), i%chunk_size);
+      }
+
       gc_ptr<typed_msv<K>> val = lookup(i, []{ return false; });
       if (val == nullptr) {
         return kind_mv<K>{};
@@ -324,6 +457,11 @@ namespace mds {
     managed_array<K>::frozen_read(index_type i, const gc_ptr<view> &v) const {
  
       gc_ptr<view> sv = iso_context::shadowed(v);
+      if (is_dense()) {
+        gc_ptr<chunk_msv> cm = lookup_chunk(i/chunk_size,
+                                            [&]{ return sv->need_msv_on_initial_read(); });
+        return cm == nullptr ? kind_mv<K>{} : dense::get(cm->frozen_read(sv), i%chunk_size);
+      }
       gc_ptr<typed_msv<K>> val = lookup(i, [&]{ return sv->need_msv_on_initial_read(); });
       if (val == nullptr) {
         return kind_mv<K>{};
@@ -336,6 +474,10 @@ namespace mds {
     bool
     managed_array<K>::has_value(index_type i, const gc_ptr<view> &v) const {
  
+      if (is_dense()) {
+        gc_ptr<chunk_msv> cm = lookup_chunk(i/chunk_size, []{ return false; });
+        return cm != nullptr && cm->has_value(iso_context::shadowed(v));
+      }
       gc_ptr<typed_msv<K>> val = lookup(i, []{ return false; });
       if (val == nullptr) {
         return false;
@@ -345,6 +487,74 @@ namespace mds {
       return val->has_value(sv);
     }
 
+    template <kind K> template <typename Fn> inline
+    void
+    managed_array<K>::frozen_read_range(index_type from, size_type n,
+                                        const gc_ptr<view> &v, Fn &&sink) const {
+
+      gc_ptr<view> sv = iso_context::shadowed(v);
+      const bool create = sv->need_msv_on_initial_read();
+      if (is_dense()) {
+        /*
+         * One read per chunk.
+         */
+        index_type i = from;
+        while (i < from+n) {
+          const size_type c = i/chunk_size;
+          const index_type end = std::min<index_type>(from+n, (c+1)*chunk_size);
+          gc_ptr<chunk_msv> cm = lookup_chunk(c, [=]{ return create; });
+          gc_ptr<array_chunk> chunk = cm == nullptr ? nullptr : cm->frozen_read(sv);
+          for (; i < end; i++) {
+            sink(i, dense::get(chunk, i - c*chunk_size));
+          }
+        }
+        return;
+      }
+      for (index_type i = from; i < from+n; i++) {
+        gc_ptr<typed_msv<K>> val = lookup(i, [=]{ return create; });
+        sink(i, val == nullptr ? kind_mv<K>{} : val->frozen_read(sv));
+      }
+    }
+
+    template <kind K> template <typename Fn> inline
+    void
+    managed_array<K>::write_range(index_type from, size_type n,
+                                  const gc_ptr<view> &v, Fn &&source) const {
+
+      gc_ptr<view> sv = iso_context::shadowed(v);
+      if (is_dense()) {
+        dense_write_range(from, n, sv, std::forward<Fn>(source));
+        return;
+      }
+      for (index_type i = from; i < from+n; i++) {
+        gc_ptr<typed_msv<K>> val = lookup(i, []{ return true; });
+        val->write(sv, source(i));
+      }
+    }
+
+    template <kind K> template <typename Fn> inline
+    void
+    managed_array<K>::dense_write_range(index_type from, size_type n,
+                                        const gc_ptr<view> &sv, Fn &&source) const {
+      /*
+       * One patch (and so one new version) per chunk.
+       */
+      std::unique_ptr<kind_mv<K>[]> vals{new kind_mv<K>[chunk_size]};
+      index_type i = from;
+      while (i < from+n) {
+        const size_type c = i/chunk_size;
+        const index_type start = c*chunk_size;
+        const index_type end = std::min<index_type>(from+n, start+chunk_size);
+        for (index_type j = i; j < end; j++) {
+          vals[j-i] = source(j);
+        }
+        gc_ptr<array_chunk> patch = dense::patch(modify_op::set, chunk_length(c),
+                                                 i-start, end-i, vals.get());
+        lookup_chunk(c, []{ return true; })->modify(sv, modify_op::patch, patch);
+        i = end;
+      }
+    }
+
     template <kind K> inline
     kind_mv<K>
     managed_array<K>::modify(index_type i,
@@ -354,11 +564,35 @@ namespace mds {
                              ret_mode returning,
                              const gc_ptr<mod_condition<K>> &guard) const
     {
-      gc_ptr<typed_msv<K>> val = lookup(i, []{ return true; });
       gc_ptr<view> sv = iso_context::shadowed(v);
+      if (is_dense()) {
+        if (guard != nullptr) {
+          throw unimplemented{};
+        }
+        return dense_modify(i, sv, op, arg, returning);
+      }
+      gc_ptr<typed_msv<K>> val = lookup(i, []{ return true; });
       return val->modify(sv, op, arg, returning, guard);
     }
 
+    template <kind K> inline
+    kind_mv<K>
+    managed_array<K>::dense_modify(index_type i,
+                                   const gc_ptr<view> &sv,
+                                   modify_op op,
+                                   const kind_mv<K> &arg,
+                                   ret_mode returning) const
+    {
+      const size_type c = i/chunk_size;
+      const size_type offset = i%chunk_size;
+      gc_ptr<chunk_msv> cm = lookup_chunk(c, []{ return true; });
+      if (op == modify_op::current_val || op == modify_op::frozen_current) {
+        return dense::get(cm->modify(sv, op, nullptr), offset);
+      }
+      gc_ptr<array_chunk> patch = dense::patch(op, chunk_length(c), offset, 1, &arg);
+      return dense::get(cm->modify(sv, modify_op::patch, patch, returning), offset);
+    }
+
     template <kind K>
     gc_ptr<array_type<K>>
     managed_type<K>::in_array() const {
@@ -0,0 +1,271 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_array_chunk.h
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#ifndef CORE_ARRAY_CHUNK_H_
+#define CORE_ARRAY_CHUNK_H_
+
+#include "core/core_fwd.h"
+#include "core/core_typed_msv.h"
+#include <cstring>
+#include <memory>
+
+namespace mds {
+  namespace core {
+
+    /*
+     * An array_chunk holds the values of a run of consecutive
+     * elements of a dense primitive array (see managed_array<K>) as
+     * raw bytes.  Chunks are immutable.  Each chunk of a dense array
+     * lives in its own typed_msv<kind::ARRAY_CHUNK>, so it is
+     * versioned, and conflicts are detected, as a unit.
+     *
+     * Changing elements is done by a modify_op::patch modification
+     * whose argument is a "patch": an array_chunk that only covers
+     * the elements being changed (count of them, starting at first)
+     * and carries the operation to apply to each of them.  The
+     * op_traits specialization below applies the patch to the current
+     * chunk, producing a new full chunk (copy on write).  A patch
+     * always reads the current chunk (a plain set doesn't need the
+     * old value, so it wouldn't be there to patch), and since this
+     * happens inside the modification, two tasks writing different
+     * elements of the same chunk in the same view don't lose each
+     * other's updates.
+     */
+    class array_chunk : public gc_allocated {
+    public:
+      using size_type = std::size_t;
+
+      const kind elt_kind;
+      const modify_op op;
+      /*
+       * The number of elements in the chunk this applies to, and the
+       * range of them this holds values for.
+       */
+      const size_type length;
+      const size_type first;
+      const size_type count;
+    private:
+      gc_array_ptr<std::uint8_t> _bytes;
+
+    public:
+      template <typename T>
+      array_chunk(gc_token &gc, kind k, modify_op o,
+                  size_type len, size_type f, size_type n, const T *vals)
+        : gc_allocated{gc}, elt_kind{k}, op{o}, length{len}, first{f}, count{n},
+          _bytes{make_gc_array<std::uint8_t>(n*sizeof(T))}
+      {
+        static_assert(std::is_arithmetic<T>::value, "Dense arrays only hold primitives");
+        assert(f+n <= len);
+        if (n > 0) {
+          std::memcpy(&_bytes[0], vals, n*sizeof(T));
+        }
+      }
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(array_chunk)
+          .WITH_FIELD(&array_chunk::elt_kind)
+          .WITH_FIELD(&array_chunk::op)
+          .WITH_FIELD(&array_chunk::length)
+          .WITH_FIELD(&array_chunk::first)
+          .WITH_FIELD(&array_chunk::count)
+          .WITH_FIELD(&array_chunk::_bytes);
+        return d;
+      }
+
+      bool covers(size_type i) const {
+        return i >= first && i < first+count;
+      }
+
+      /*
+       * Elements the chunk doesn't hold values for read as zero.
+       */
+      template <typename T>
+      T get(size_type i) const {
+        if (!covers(i)) {
+          return T{};
+        }
+        T val;
+        std::memcpy(&val, &_bytes[(i-first)*sizeof(T)], sizeof(T));
+        return val;
+      }
+
+      template <typename T>
+      void copy_out(T *out) const {
+        if (count > 0) {
+          std::memcpy(out+first, &_bytes[0], count*sizeof(T));
+        }
+      }
+
+      /*
+       * Returns the chunk that results from applying this patch to
+       * old (which may be null), or old unchanged and an exception
+       * state, if the patch would divide by zero.
+       */
+      std::pair<gc_ptr<array_chunk>, mod_ex_state>
+      applied_to(const gc_ptr<array_chunk> &old) const;
+
+    private:
+      template <typename T>
+      std::pair<gc_ptr<array_chunk>, mod_ex_state>
+      typed_applied_to(const gc_ptr<array_chunk> &old) const {
+        std::unique_ptr<T[]> vals{new T[length]()};
+        if (old != nullptr) {
+          old->copy_out(vals.get());
+        }
+        for (size_type i = first; i < first+count; i++) {
+          const T arg = get<T>(i);
+          T &v = vals[i];
+          switch (op) {
+          case modify_op::set:
+            v = arg;
+            break;
+          case modify_op::add:
+            v = static_cast<T>(v+arg);
+            break;
+          case modify_op::sub:
+            v = static_cast<T>(v-arg);
+            break;
+          case modify_op::mul:
+            v = static_cast<T>(v*arg);
+            break;
+          case modify_op::div:
+            if (arg == 0) {
+              return std::make_pair(old, mod_ex_state::divide_by_zero);
+            }
+            v = static_cast<T>(v/arg);
+            break;
+          default:
+            throw incompatible_modify_op{op};
+          }
+        }
+        return std::make_pair(make_gc<array_chunk>(elt_kind, modify_op::set,
+                                                   length, 0, length, vals.get()),
+                              mod_ex_state::no_exception);
+      }
+    }; // array_chunk
+
+    inline
+    std::pair<gc_ptr<array_chunk>, mod_ex_state>
+    array_chunk::applied_to(const gc_ptr<array_chunk> &old) const {
+      switch (elt_kind) {
+      case kind::BOOL:
+        return typed_applied_to<kind_val<kind::BOOL>>(old);
+      case kind::BYTE:
+        return typed_applied_to<kind_val<kind::BYTE>>(old);
+      case kind::UBYTE:
+        return typed_applied_to<kind_val<kind::UBYTE>>(old);
+      case kind::SHORT:
+        return typed_applied_to<kind_val<kind::SHORT>>(old);
+      case kind::USHORT:
+        return typed_applied_to<kind_val<kind::USHORT>>(old);
+      case kind::INT:
+        return typed_applied_to<kind_val<kind::INT>>(old);
+      case kind::UINT:
+        return typed_applied_to<kind_val<kind::UINT>>(old);
+      case kind::LONG:
+        return typed_applied_to<kind_val<kind::LONG>>(old);
+      case kind::ULONG:
+        return typed_applied_to<kind_val<kind::ULONG>>(old);
+      case kind::FLOAT:
+        return typed_applied_to<kind_val<kind::FLOAT>>(old);
+      case kind::DOUBLE:
+        return typed_applied_to<kind_val<kind::DOUBLE>>(old);
+      default:
+        throw incompatible_type_ex{};
+      }
+    }
+
+    /*
+     * For chunks, modify_op::patch applies its argument to the
+     * current chunk.
+     */
+    template <>
+    struct op_traits<gc_ptr<array_chunk>> : _default_op_traits<gc_ptr<array_chunk>>
+    {
+    private:
+      using base = _default_op_traits<gc_ptr<array_chunk>>;
+    public:
+      static bool modifies(modify_op op, const gc_ptr<array_chunk> &arg) {
+        if (op == modify_op::patch) {
+          return true;
+        }
+        return base::modifies(op, arg);
+      }
+
+      static std::pair<gc_ptr<array_chunk>,mod_ex_state>
+      compute(modify_op op, const gc_ptr<array_chunk> &old, const gc_ptr<array_chunk> &arg) {
+        if (op == modify_op::patch) {
+          return arg->applied_to(old);
+        }
+        return base::compute(op, old, arg);
+      }
+    }; // op_traits<array_chunk>
+
+    /*
+     * Element access for the dense representation of managed_array<K>.
+     * Only primitive kinds can be dense, but managed_array<K> has to
+     * compile for all of them.
+     */
+    template <kind K, typename = void>
+    struct dense_elements {
+      static constexpr bool supported = false;
+
+      static kind_mv<K> get(const gc_ptr<array_chunk> &, std::size_t) {
+        throw incompatible_type_ex{};
+      }
+      static gc_ptr<array_chunk> patch(modify_op, std::size_t, std::size_t,
+                                       std::size_t, const kind_mv<K> *)
+      {
+        throw incompatible_type_ex{};
+      }
+    };
+
+    template <kind K>
+    struct dense_elements<K, std::enable_if_t<std::is_arithmetic<kind_mv<K>>::value>> {
+      static constexpr bool supported = true;
+
+      static kind_mv<K> get(const gc_ptr<array_chunk> &chunk, std::size_t i) {
+        return chunk == nullptr ? kind_mv<K>{} : chunk->get<kind_mv<K>>(i);
+      }
+      static gc_ptr<array_chunk> patch(modify_op op, std::size_t length,
+                                       std::size_t first, std::size_t count,
+                                       const kind_mv<K> *vals)
+      {
+        return make_gc<array_chunk>(K, op, length, first, count, vals);
+      }
+    };
+
+  }
+}
+
+#endif /* CORE_ARRAY_CHUNK_H_ */
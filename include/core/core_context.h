@@ -40,8 +40,13 @@
 #include "core/core_globals.h"
 #include "core/core_conflict.h"
 #include "core/core_task.h"
-#include <unordered_map>
+#include "core/core_hash_trie.h"
+#include "core/core_publish_history.h"
+#include "core/core_watermark.h"
+#include "ruts/uniform_key.h"
+#include <array>
 #include <cassert>
+#include <cstdint>
 
 namespace mds {
   namespace core {
@@ -97,16 +102,37 @@ namespace mds {
       bool need_msv_on_initial_read() const;
     }; // view
 
+    /*
+     * Views are compared by identity but hashed by uniform id, so
+     * that the hash doesn't depend on where the view is mapped.
+     */
+    struct view_key_traits {
+      using key_type = gc_ptr<view>;
+      static std::uint64_t hash(const gc_ptr<view> &v) {
+        return mix_hash(ruts::hash1<ruts::uniform_key>()(v->uuid()));
+      }
+      static bool equal(const gc_ptr<view> &a, const gc_ptr<view> &b) {
+        return a == b;
+      }
+    };
+
+    /*
+     * A small direct-mapped per-thread cache in front of each
+     * context's shadow index (see iso_context::find_shadow()).  The
+     * slots hold plain gc_ptrs, so filling them doesn't register
+     * anything with the GC.  The context and view in a slot may
+     * since have been collected and their addresses reused, so a hit
+     * also has to match the ids they had.
+     */
     class shadow_cache {
-      using shadow_map = std::unordered_map<external_gc_ptr<view>,
-                                            external_gc_ptr<view>>;
-      using context_map = std::unordered_map<external_gc_ptr<iso_context>,
-                                             shadow_map>;
-      gc_ptr<iso_context> _last_context = nullptr;
-      gc_ptr<view> _last_view = nullptr;
-      gc_ptr<view> _last_shadow = nullptr;
-      shadow_map *_last_shadow_map = nullptr;
-      context_map _context_map;
+      static constexpr std::size_t n_slots = 256;
+      struct slot {
+        gc_ptr<iso_context> context = nullptr;
+        gc_ptr<view> base = nullptr;
+        gc_ptr<view> shadow = nullptr;
+        std::uint64_t id = 0;
+      };
+      std::array<slot, n_slots> _slots;
     public:
       gc_ptr<view> lookup(const gc_ptr<iso_context> c,
                           const gc_ptr<view> v);
@@ -166,6 +192,24 @@ namespace mds {
 
       std::vector<gc_ptr<task>> redo_tasks_by_start_time() const;
 
+      /*
+       * For each task in redo_tasks_by_start_time(), the positions
+       * (in that list) of the tasks that can't be redone until it
+       * has been.  Edges follow the dependencies between tasks,
+       * except that tasks that depend on one another in a cycle are
+       * ordered by start time, so the result is always acyclic.
+       */
+      std::vector<std::vector<std::size_t>> redo_task_follows() const;
+
+      /*
+       * One key for each conflict, identifying the value chain in
+       * the target context that the conflict was on.  The keys are
+       * only meaningful when compared with one another, e.g., to
+       * notice that different attempts keep colliding on the same
+       * value.
+       */
+      std::vector<std::size_t> conflict_keys() const;
+
       bool prepare_for_redo() const;
 
       void redo(const gc_ptr<task> &) const;
@@ -292,6 +336,13 @@ namespace mds {
           pps->mark_published();
           prior_published_state = pps;
         }
+
+        /*
+         * Called when the context's history is pruned at this state.
+         */
+        void forget_prior() {
+          prior_published_state = nullptr;
+        }
       }; // state_t
 
       friend class pending_rollup;
@@ -435,24 +486,18 @@ namespace mds {
 
     private:
 
-      struct shadow_node : public gc_allocated {
-        const gc_ptr<view> base;
-        const gc_ptr<view> shadow;
-        gc_ptr<shadow_node> next;
-        shadow_node(gc_token &gc, const gc_ptr<view> &b,
-                    const gc_ptr<view> &s,
-                    const gc_ptr<shadow_node> &n)
-          : gc_allocated{gc}, base{b}, shadow{s}, next{n}
-        {}
-        static const auto &descriptor() {
-          static gc_descriptor d =
-            GC_DESC(shadow_node)
-            .WITH_FIELD(&shadow_node::base)
-            .WITH_FIELD(&shadow_node::shadow)
-            .WITH_FIELD(&shadow_node::next);
-          return d;
-        }
-      }; // shadow_node
+      /*
+       * Maps views in other contexts to their shadows in this one.
+       * Created the first time it's needed.
+       */
+      using shadow_index = hash_trie<view_key_traits, view>;
+
+      /*
+       * Created the first time a lookup has to walk further back than
+       * short_history states.
+       */
+      using history_t = publish_history<published_state>;
+      static constexpr std::size_t short_history = 8;
 
       const gc_ptr<iso_context>  _parent;
       const gc_ptr<task> _creation_task;
@@ -460,11 +505,13 @@ namespace mds {
       std::atomic<gc_ptr<const state_t> > _state;
       const view_type _view_type;
       const mod_type _mod_type;
-      std::atomic<gc_ptr<shadow_node>> _shadows;
+      std::atomic<gc_ptr<shadow_index>> _shadows;
+      mutable std::atomic<gc_ptr<history_t>> _history{nullptr};
       gc_atomic_stack<gc_ptr<blocking_mod>> _block_inbound;
       gc_atomic_stack<gc_ptr<in_process_inbound_publish>> _in_process;
       std::atomic<bool> _has_publishable_children;
       gc_atomic_stack<gc_ptr<task>> _unconditional_redo_tasks;
+      std::atomic<bool> _dropped_namespace{false};
         
 
       class private_ctor {};
@@ -495,10 +542,12 @@ namespace mds {
 	  .WITH_FIELD(&iso_context::_view_type)
 	  .WITH_FIELD(&iso_context::_mod_type)
           .WITH_FIELD(&iso_context::_shadows)
+          .WITH_FIELD(&iso_context::_history)
           .WITH_FIELD(&iso_context::_block_inbound)
           .WITH_FIELD(&iso_context::_in_process)
           .WITH_FIELD(&iso_context::_has_publishable_children)
           .WITH_FIELD(&iso_context::_unconditional_redo_tasks)
+          .WITH_FIELD(&iso_context::_dropped_namespace)
           ;
         return d;
       }
@@ -587,8 +636,22 @@ namespace mds {
 	return val;
       }
 
+      /*
+       * Concurrent snapshots don't each need a tick of their own.  If
+       * somebody else bumps the clock between our load and our CAS,
+       * the value they produced is just as fresh as the one we would
+       * have, so we take it rather than retrying.  Publications still
+       * need unique times and use ++(*current_version) directly.
+       */
       static timestamp_t new_snapshot_time(timestamp_t ts) {
-        return ts == most_recent ? ++(*current_version) : ts;
+        if (ts != most_recent) {
+          return ts;
+        }
+        timestamp_t now = current_version->load();
+        if (current_version->compare_exchange_strong(now, now+1)) {
+          return now+1;
+        }
+        return now;
       }
 
       mod_type get_mod_type() const {
@@ -636,31 +699,64 @@ namespace mds {
         return s == nullptr ? 0 : s->timestamp();
       }
 
+      /*
+       * The history, brought up to date with newest.  Only snapshots
+       * are pruned: every read in one is at or after its oldest read
+       * time, which is no earlier than the watermark while it's
+       * pinned.  Live contexts may still be asked about old times by
+       * rollups that haven't been processed yet.
+       */
+      gc_ptr<history_t>
+      published_history(const gc_ptr<const published_state> &newest) const {
+        gc_ptr<history_t> h = _history;
+        if (h == nullptr) {
+          h = ruts::try_change_value(_history, nullptr, make_gc<history_t>()).resulting_value();
+        }
+        h->catch_up(newest, is_snapshot() ? version_watermark::current() : 0);
+        return h;
+      }
+
       gc_ptr<const published_state> first_publish_after(timestamp_t ts) const {
-        gc_ptr<const published_state> best = most_recent_published_state();
-        if (best->timestamp() <= ts) {
+        gc_ptr<const published_state> newest = most_recent_published_state();
+        if (newest->timestamp() <= ts) {
           return nullptr;
         }
-        for (gc_ptr<const published_state> s = best->prior_published_state;
-             s != nullptr && s->timestamp() > ts;
-             s = s->prior_published_state)
-          {
-            best = s;
-          }
-        return best;
+        if (_history.load() == nullptr) {
+          gc_ptr<const published_state> best = newest;
+          std::size_t n = 0;
+          for (gc_ptr<const published_state> s = best->prior_published_state;
+               s != nullptr && s->timestamp() > ts;
+               s = s->prior_published_state)
+            {
+              if (++n > short_history) {
+                return published_history(newest)->first_after(newest, ts);
+              }
+              best = s;
+            }
+          return best;
+        }
+        return published_history(newest)->first_after(newest, ts);
       }
 
       gc_ptr<const published_state> last_publish_before(timestamp_t ts) const
       {
-        for (gc_ptr<const published_state> s = most_recent_published_state();
-             s != nullptr;
-             s = s->prior_published_state)
-          {
-            if (s->timestamp() < ts) {
-              return s;
+        gc_ptr<const published_state> newest = most_recent_published_state();
+        if (_history.load() == nullptr) {
+          std::size_t n = 0;
+          for (gc_ptr<const published_state> s = newest;
+               s != nullptr;
+               s = s->prior_published_state)
+            {
+              if (s->timestamp() < ts) {
+                return s;
+              }
+              if (++n > short_history) {
+                return published_history(newest)->last_before(newest, ts);
+              }
             }
-          }
-        return nullptr;
+          return nullptr;
+        }
+        return published_history(newest)->last_before(newest, ts);
       }
 
       timestamp_t publish_time_before(timestamp_t ts) const {
@@ -747,6 +843,17 @@ namespace mds {
         return !current_state()->conflicts().empty();
       }
 
+      /*
+       * Called when a name bound to a namespace is rebound in this
+       * context.  Other contexts can only see the change once it's
+       * published, so we bump the namespace version again then (see
+       * publish()).
+       */
+      void note_dropped_namespace() {
+        _dropped_namespace = true;
+        namespace_version->fetch_add(1);
+      }
+
       void roll_snapshot_forward(timestamp_t as_of) {
         assert(is_snapshot());
         ruts::try_cas(_state,
@@ -792,35 +899,26 @@ namespace mds {
     shadow_cache::lookup(const gc_ptr<iso_context> c,
                          const gc_ptr<view> v)
     {
-      if (c != _last_context) {
-        _last_shadow_map = &_context_map[c];
-        _last_context = c;
-        _last_view = nullptr;
-      }
-      if (v != _last_view) {
-        external_gc_ptr<view> esv = (*_last_shadow_map)[v];
-        if (esv == nullptr) {
-          /*
-           * We have to be careful here, becase our call to
-           * find_shadow() may wind up calling shadow(), which will
-           * call us and may play with our cache values.  So we can't
-           * assume past this call that any of them are still valid
-           * and that none of the maps have changed.  If _last_context
-           * is still right, then _last_shadow_map will also be right,
-           * but it might have changed.  So we have to put the new
-           * value in explicitly.
-           */
-          esv = c->find_shadow(v);
-          if (c != _last_context) {
-            _last_shadow_map = &_context_map[c];
-            _last_context = c;
-          }
-          (*_last_shadow_map)[v] = esv;
-        }
-        _last_shadow = esv;
-        _last_view = v;
+      const std::uint64_t id
+        = mix_hash(view_key_traits::hash(v)
+                   ^ ruts::hash1<ruts::uniform_key>()(c->uuid()));
+      slot &s = _slots[id % n_slots];
+      gc_ptr<view> sv;
+      if (s.context == c && s.base == v && s.id == id) {
+        sv = s.shadow;
+      } else {
+        /*
+         * find_shadow() may wind up calling shadow(), which will
+         * call us and may reuse this slot, so we fill it in
+         * afterward.
+         */
+        sv = c->find_shadow(v);
+        s.context = c;
+        s.base = v;
+        s.shadow = sv;
+        s.id = id;
       }
-      return _last_shadow;
+      return sv;
     }
 
   }
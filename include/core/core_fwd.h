@@ -66,6 +66,7 @@ namespace mds {
       BINDING,
       ARRAY,
       NAMESPACE,
+      ARRAY_CHUNK,
       n_kinds
     };
     constexpr std::size_t n_kinds = static_cast<std::size_t>(kind::n_kinds);
@@ -77,8 +78,11 @@ namespace mds {
     constexpr timestamp_t most_recent = std::numeric_limits<timestamp_t>::max();
     class unimplemented {};
     class control;
+    class watermark_table;
 
     using current_version_t = std::atomic<std::uint64_t>;
+    using task_number_t = std::atomic<std::size_t>;
+    using namespace_version_t = std::atomic<std::uint64_t>;
     class exportable : public gc_allocated {
       using gc_allocated::gc_allocated;
     };
@@ -131,15 +135,18 @@ namespace mds {
 
     class managed_record;
     class managed_container;
-    class managed_map;
+    template <kind KK, kind VK = kind::BINDING> class managed_map;
+    template <kind K> class record_index;
+    enum class index_kind : unsigned char;
     class managed_collection;
     class managed_list;
-    class managed_set;
+    template <kind KK> class managed_set;
 
     class array_type_base;
     template <kind K> class array_type;
     class managed_array_base;
     template <kind K> class managed_array;
+    class array_chunk;
 
     // su - this avoids having a cyclical include between core_array and core_context
     using array_index_type = std::ptrdiff_t;
@@ -162,6 +169,10 @@ namespace mds {
     class unbound_name_ex {};
     class read_only_context_ex {};
     class unpublishable_context_ex {};
+    class index_out_of_bounds_ex {};
+    class unsupported_list_op_ex {};
+    class unsupported_index_op_ex {};
+    class populated_record_type_ex {};
 
     template <kind K> struct kind_traits;
     template <kind K> using kind_val = typename kind_traits<K>::val_type;
@@ -316,6 +327,8 @@ namespace std {
       return os << "BINDING";
     case kind::ARRAY:
       return os << "ARRAY";
+    case kind::ARRAY_CHUNK:
+      return os << "ARRAY_CHUNK";
     default:
       return os << "kind[" << static_cast<int>(k) << "]";
     }
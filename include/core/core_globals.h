@@ -74,7 +74,14 @@ namespace mds
     extern external_gc_ptr<string_table_t> string_table;
     extern external_gc_ptr<record_type_table_t> record_type_table;
     extern external_gc_ptr<name_space> global_namespace;
-    extern std::size_t *next_task_number;
+    extern task_number_t *next_task_number;
+    extern external_gc_ptr<watermark_table> watermarks;
+    /*
+     * Bumped whenever a name that was bound to a namespace may have
+     * stopped being one in some context (see name_space::bind()), so
+     * a resolved path is still good as long as it hasn't moved.
+     */
+    extern namespace_version_t *namespace_version;
 
     template<kind KIND>
       inline external_gc_ptr<const managed_type<KIND>> global_managed_type();
@@ -0,0 +1,240 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_hash_trie.h
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#ifndef CORE_HASH_TRIE_H_
+#define CORE_HASH_TRIE_H_
+
+#include "core/core_fwd.h"
+#include "ruts/cas_loop.h"
+#include "mpgc/gc.h"
+#include <atomic>
+#include <cstdint>
+
+namespace mds {
+  namespace core {
+
+    /*
+     * The trie uses the low bits of a hash first, and std::hash on
+     * integers is usually the identity, so hashes should be run
+     * through this.
+     */
+    inline std::uint64_t mix_hash(std::uint64_t h) {
+      h ^= h >> 33;
+      h *= 0xff51afd7ed558ccdULL;
+      h ^= h >> 33;
+      h *= 0xc4ceb9fe1a85ec53ULL;
+      h ^= h >> 33;
+      return h;
+    }
+
+    /*
+     * hash_trie<Traits, P> is a hash array mapped trie from keys to
+     * payloads of type P, which are created (by default with
+     * make_gc<P>()) the first time a key is looked up with create set.  Traits provides
+     * key_type, hash(), and equal().
+     *
+     * The trie is shared by all views and only grows.  An entry is
+     * installed in the first free slot along its hash path and never
+     * moves; a different key hashing to a taken slot goes down to
+     * that slot's child node.  Both are installed with a single CAS,
+     * so lookups never block and take O(log32 n) steps.  Once the
+     * hash bits run out, colliding entries are chained.
+     */
+    template <typename Traits, typename P>
+    class hash_trie : public gc_allocated
+    {
+    public:
+      using key_type = typename Traits::key_type;
+    private:
+      static constexpr std::size_t bits_per_level = 5;
+      static constexpr std::size_t width = std::size_t(1) << bits_per_level;
+      static constexpr std::size_t max_depth = (64+bits_per_level-1)/bits_per_level;
+
+      struct entry : gc_allocated {
+        const key_type key;
+        const std::uint64_t hash;
+        const gc_ptr<P> payload;
+        /*
+         * Only used at max_depth.
+         */
+        std::atomic<gc_ptr<entry>> next{nullptr};
+
+        entry(gc_token &gc, const key_type &k, std::uint64_t h,
+              const gc_ptr<P> &p)
+          : gc_allocated{gc}, key{k}, hash{h}, payload{p}
+        {}
+        static const auto &descriptor() {
+          static gc_descriptor d =
+            GC_DESC(entry)
+            .template WITH_FIELD(&entry::key)
+            .template WITH_FIELD(&entry::hash)
+            .template WITH_FIELD(&entry::payload)
+            .template WITH_FIELD(&entry::next);
+          return d;
+        }
+      };
+
+      struct node : gc_allocated {
+        using entries_t = gc_array<std::atomic<gc_ptr<entry>>>;
+        using children_t = gc_array<std::atomic<gc_ptr<node>>>;
+        const gc_ptr<entries_t> entries;
+        const gc_ptr<children_t> children;
+
+        explicit node(gc_token &gc)
+          : gc_allocated{gc},
+            entries{make_gc_array<std::atomic<gc_ptr<entry>>>(width)},
+            children{make_gc_array<std::atomic<gc_ptr<node>>>(width)}
+        {}
+        static const auto &descriptor() {
+          static gc_descriptor d =
+            GC_DESC(node)
+            .template WITH_FIELD(&node::entries)
+            .template WITH_FIELD(&node::children);
+          return d;
+        }
+      };
+
+      const gc_ptr<node> _root;
+
+      static std::size_t slot(std::uint64_t h, std::size_t depth) {
+        return (h >> (depth*bits_per_level)) & (width-1);
+      }
+
+      template <typename T>
+      static gc_ptr<T> install(std::atomic<gc_ptr<T>> &a, const gc_ptr<T> &val) {
+        auto rr = ruts::try_change_value(a, nullptr, val);
+        /*
+         * If that didn't work, someone else got there first.
+         */
+        return rr.resulting_value();
+      }
+
+      template <typename Make>
+      gc_ptr<P> find_in_chain(gc_ptr<entry> e,
+                              const key_type &k, std::uint64_t h,
+                              bool create, Make &make) const
+      {
+        while (!Traits::equal(e->key, k)) {
+          gc_ptr<entry> nx = e->next;
+          if (nx == nullptr) {
+            if (!create) {
+              return nullptr;
+            }
+            nx = install(e->next, make_gc<entry>(k, h, make()));
+          }
+          e = nx;
+        }
+        return e->payload;
+      }
+
+      template <typename Fn>
+      static void walk(const gc_ptr<node> &n, Fn &fn) {
+        for (std::size_t i = 0; i < width; i++) {
+          for (gc_ptr<entry> e = n->entries->at(i); e != nullptr; e = e->next) {
+            fn(e->key, e->payload);
+          }
+          gc_ptr<node> c = n->children->at(i);
+          if (c != nullptr) {
+            walk(c, fn);
+          }
+        }
+      }
+
+    public:
+      explicit hash_trie(gc_token &gc)
+        : gc_allocated{gc}, _root{make_gc<node>()}
+      {}
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(hash_trie)
+          .template WITH_FIELD(&hash_trie::_root);
+        return d;
+      }
+
+      /*
+       * Returns the key's payload, or nullptr if the key has never
+       * been looked up with create set and create is false.
+       */
+      gc_ptr<P> find(const key_type &k, bool create) const {
+        return find(k, create, []{ return make_gc<P>(); });
+      }
+
+      /*
+       * As above, but a new payload is made by calling make().  If
+       * two threads add the same key at once, both may call make(),
+       * but only one result is kept.
+       */
+      template <typename Make>
+      gc_ptr<P> find(const key_type &k, bool create, Make&& make) const {
+        const std::uint64_t h = Traits::hash(k);
+        gc_ptr<node> n = _root;
+        for (std::size_t depth = 0; ; depth++) {
+          const std::size_t i = slot(h, depth);
+          gc_ptr<entry> e = n->entries->at(i);
+          if (e == nullptr) {
+            if (!create) {
+              return nullptr;
+            }
+            e = install(n->entries->at(i), make_gc<entry>(k, h, make()));
+          }
+          if (e->hash == h && Traits::equal(e->key, k)) {
+            return e->payload;
+          }
+          if (depth+1 == max_depth) {
+            return find_in_chain(e, k, h, create, make);
+          }
+          gc_ptr<node> c = n->children->at(i);
+          if (c == nullptr) {
+            if (!create) {
+              return nullptr;
+            }
+            c = install(n->children->at(i), make_gc<node>());
+          }
+          n = c;
+        }
+      }
+
+      /*
+       * Calls fn(key, payload) for each key in the trie.  Keys added
+       * while the walk is going on may or may not be seen.
+       */
+      template <typename Fn>
+      void for_each(Fn&& fn) const {
+        walk(_root, fn);
+      }
+    };
+
+  }
+}
+
+#endif /* CORE_HASH_TRIE_H_ */
@@ -0,0 +1,517 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_index.h
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#ifndef CORE_INDEX_H_
+#define CORE_INDEX_H_
+
+#include "core/core_fwd.h"
+#include "core/core_map.h"
+#include "core/core_record.h"
+#include "ruts/cas_loop.h"
+#include "mpgc/gc.h"
+#include <atomic>
+#include <cstdint>
+#include <type_traits>
+
+namespace mds {
+  namespace core {
+
+    /*
+     * HASH indexes find the records with a given value.  ORDERED
+     * indexes can also find the records with values in a range, but
+     * only numeric fields can have them.
+     */
+    enum class index_kind : unsigned char {
+      HASH, ORDERED
+    };
+
+    template <kind K>
+    struct index_traits {
+      static constexpr bool hashable
+        = !managed_value_is_view_dependent<kind_val<K>>::value && K != kind::BINDING;
+      static constexpr bool orderable
+        = std::is_arithmetic<kind_mv<K>>::value && K != kind::BOOL;
+    };
+
+    /*
+     * Records are keyed by identity, but hashed by their uniform id
+     * so the hashes are the same in every process.
+     */
+    struct record_key_traits {
+      using key_type = gc_ptr<const managed_record>;
+      static std::uint64_t hash(const key_type &r) {
+        return mix_hash(ruts::hash1<ruts::uniform_key>()(r->uuid()));
+      }
+      static bool equal(const key_type &a, const key_type &b) {
+        return a == b;
+      }
+    };
+
+    /*
+     * The distinct values an ORDERED index has seen, in order.  This
+     * is an insert-only skip list: values are never removed (whether
+     * any record has the value is up to the buckets, which are
+     * versioned), so a node is linked in at each level with a single
+     * CAS, and readers never block.  A node's height comes from the
+     * hash of its value, so the list is shaped the same however the
+     * values arrive.
+     */
+    template <kind K>
+    class ordered_values : public gc_allocated
+    {
+      static constexpr std::size_t max_height = 20;
+
+      struct node : gc_allocated {
+        using links_t = gc_array<std::atomic<gc_ptr<node>>>;
+        const kind_mv<K> val;
+        const gc_ptr<links_t> next;
+
+        node(gc_token &gc, const kind_mv<K> &v, std::size_t height)
+          : gc_allocated{gc}, val{v},
+            next{make_gc_array<std::atomic<gc_ptr<node>>>(height)}
+        {}
+        static const auto &descriptor() {
+          static gc_descriptor d =
+            GC_DESC(node)
+            .template WITH_FIELD(&node::val)
+            .template WITH_FIELD(&node::next);
+          return d;
+        }
+      };
+
+      const gc_ptr<node> _head;
+
+      static std::size_t height_for(const kind_mv<K> &v) {
+        const std::uint64_t h = map_key_traits<K>::hash(v);
+        std::size_t height = 1;
+        for (std::uint64_t bits = h; (bits & 1) != 0 && height < max_height; bits >>= 1) {
+          height++;
+        }
+        return height;
+      }
+
+      /*
+       * Returns the last node at the level (starting from p) whose
+       * value is less than v.
+       */
+      static gc_ptr<node> last_below(gc_ptr<node> p, std::size_t level, const kind_mv<K> &v) {
+        for (gc_ptr<node> n = p->next->at(level); n != nullptr && n->val < v; n = p->next->at(level)) {
+          p = n;
+        }
+        return p;
+      }
+
+    public:
+      explicit ordered_values(gc_token &gc)
+        : gc_allocated{gc}, _head{make_gc<node>(kind_mv<K>{}, max_height)}
+      {}
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(ordered_values)
+          .template WITH_FIELD(&ordered_values::_head);
+        return d;
+      }
+
+      void insert(const kind_mv<K> &v) {
+        gc_ptr<node> preds[max_height];
+        gc_ptr<node> p = _head;
+        for (std::size_t level = max_height; level-- > 0; ) {
+          p = last_below(p, level, v);
+          preds[level] = p;
+        }
+        gc_ptr<node> succ = p->next->at(0);
+        if (succ != nullptr && succ->val == v) {
+          return;
+        }
+        gc_ptr<node> n = make_gc<node>(v, height_for(v));
+        for (std::size_t level = 0; level < n->next->size(); level++) {
+          for (;;) {
+            gc_ptr<node> pred = last_below(preds[level], level, v);
+            gc_ptr<node> s = pred->next->at(level);
+            if (level == 0 && s != nullptr && s->val == v) {
+              /*
+               * Someone else added it first.
+               */
+              return;
+            }
+            n->next->at(level) = s;
+            if (ruts::try_change_value(pred->next->at(level), s, n).resulting_value() == n) {
+              break;
+            }
+            preds[level] = pred;
+          }
+        }
+      }
+
+      /*
+       * Calls fn(val) for each value in [lo, hi), in order.
+       */
+      template <typename Fn>
+      void for_range(const kind_mv<K> &lo, const kind_mv<K> &hi, Fn&& fn) const {
+        gc_ptr<node> p = _head;
+        for (std::size_t level = max_height; level-- > 0; ) {
+          p = last_below(p, level, lo);
+        }
+        for (gc_ptr<node> n = p->next->at(0); n != nullptr && n->val < hi; n = n->next->at(0)) {
+          fn(n->val);
+        }
+      }
+    };
+
+    /*
+     * The records in an index bucket, each with a versioned bool that
+     * says whether it has the bucket's value in a given view.  As with
+     * managed_map, walking the bucket only records reads of the
+     * entries that are there, so the bucket also keeps a versioned
+     * join count, which for_each() reads first and which join() bumps
+     * (with a blind write) when the record has never been in the
+     * bucket in the joiner's view.
+     */
+    class index_bucket : public gc_allocated
+    {
+      using trie_t = hash_trie<record_key_traits, typed_msv<kind::BOOL>>;
+      using count_msv_t = typed_msv<kind::LONG>;
+
+      const gc_ptr<trie_t> _records;
+      mutable std::atomic<std::int64_t> _n_joins{0};
+      const gc_ptr<count_msv_t> _joins;
+
+    public:
+      explicit index_bucket(gc_token &gc)
+        : gc_allocated{gc},
+          _records{make_gc<trie_t>()},
+          _joins{make_gc<count_msv_t>()}
+      {}
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(index_bucket)
+          .WITH_FIELD(&index_bucket::_records)
+          .WITH_FIELD(&index_bucket::_n_joins)
+          .WITH_FIELD(&index_bucket::_joins);
+        return d;
+      }
+
+      /*
+       * Returns true if this is the first join in the view, so the
+       * value may be new to it.
+       */
+      bool join(const gc_ptr<const managed_record> &r, const gc_ptr<view> &sv) const {
+        gc_ptr<typed_msv<kind::BOOL>> m = _records->find(r, true);
+        bool first = false;
+        if (!m->has_value(sv)) {
+          first = !_joins->has_value(sv);
+          _joins->write(sv, _n_joins.fetch_add(1)+1);
+        }
+        m->write(sv, true);
+        return first;
+      }
+
+      void leave(const gc_ptr<const managed_record> &r, const gc_ptr<view> &sv) const {
+        gc_ptr<typed_msv<kind::BOOL>> m = _records->find(r, false);
+        if (m != nullptr) {
+          m->write(sv, false);
+        }
+      }
+
+      /*
+       * Calls fn(rec) for each record in the bucket in the view.
+       */
+      template <typename Fn>
+      void for_each(const gc_ptr<view> &sv, Fn &fn) const {
+        _joins->snapshot_read(sv);
+        _records->for_each([&](const gc_ptr<const managed_record> &r,
+                               const gc_ptr<typed_msv<kind::BOOL>> &m) {
+            if (m->snapshot_read(sv)) {
+              fn(kind_mv<kind::RECORD>{std::const_pointer_cast<managed_record>(r), sv});
+            }
+          });
+      }
+    };
+
+    /*
+     * record_index<K> maps the values of a field of kind K to the
+     * records that have them.  It hangs off the record_field and is
+     * updated by every modification through it, in the same view, so
+     * an index entry is published (or discarded, or conflicts) along
+     * with the field write that caused it.
+     *
+     * Each value has an index_bucket, found through a hash_trie.
+     * Moving a record from one value to another touches only its own
+     * bools (and, the first time it joins a bucket, the bucket's join
+     * count), so tasks updating different records only conflict with
+     * lookups of the values involved.  Note that an indexed write has
+     * to read the field's old value (to know which bucket to take the
+     * record out of).
+     *
+     * Records are entered under the field's default value when
+     * they're created, so an index has to exist before the first
+     * record of its type (see ensure_index()).  A lookup creates the
+     * value's bucket (if the view needs to remember what it read), so
+     * it conflicts with tasks that join it later.  A range lookup
+     * can't create buckets for values nobody has used yet, so it
+     * reads an index-wide count that a join bumps when it's the
+     * first into its bucket in the view.  That makes range lookups
+     * conflict with any write of a value that's new to the writer.
+     */
+    template <kind K>
+    class record_index : public gc_allocated
+    {
+      using bucket_t = index_bucket;
+      using buckets_t = hash_trie<map_key_traits<K>, bucket_t>;
+      using count_msv_t = typed_msv<kind::LONG>;
+      using hashable = std::integral_constant<bool, index_traits<K>::hashable>;
+      using orderable = std::integral_constant<bool, index_traits<K>::orderable>;
+
+      const gc_ptr<buckets_t> _buckets;
+      /*
+       * Only for ORDERED indexes.
+       */
+      const gc_ptr<ordered_values<K>> _order;
+      /*
+       * Bumped by the first join into a bucket in a view.
+       */
+      mutable std::atomic<std::int64_t> _n_new_values{0};
+      const gc_ptr<count_msv_t> _new_values;
+
+      void leave(const gc_ptr<const managed_record> &r, const kind_mv<K> &val,
+                 const gc_ptr<view> &sv) const
+      {
+        gc_ptr<bucket_t> b = _buckets->find(val, false);
+        if (b != nullptr) {
+          b->leave(r, sv);
+        }
+      }
+
+      void note_order(std::false_type, const kind_mv<K> &) const {}
+
+      void note_order(std::true_type, const kind_mv<K> &val) const {
+        if (_order != nullptr) {
+          _order->insert(val);
+        }
+      }
+
+      void join(const gc_ptr<const managed_record> &r, const kind_mv<K> &val,
+                const gc_ptr<view> &sv) const
+      {
+        note_order(orderable{}, val);
+        if (_buckets->find(val, true)->join(r, sv)) {
+          _new_values->write(sv, _n_new_values.fetch_add(1)+1);
+        }
+      }
+
+      kind_mv<K> modify(std::false_type,
+                        const gc_ptr<const managed_record> &,
+                        const gc_ptr<typed_msv<K>> &m,
+                        const gc_ptr<view> &sv,
+                        modify_op op, const kind_mv<K> &arg,
+                        ret_mode returning,
+                        const gc_ptr<mod_condition<K>> &guard) const
+      {
+        return m->modify(sv, op, arg, returning, guard);
+      }
+
+      kind_mv<K> modify(std::true_type,
+                        const gc_ptr<const managed_record> &r,
+                        const gc_ptr<typed_msv<K>> &m,
+                        const gc_ptr<view> &sv,
+                        modify_op op, const kind_mv<K> &arg,
+                        ret_mode returning,
+                        const gc_ptr<mod_condition<K>> &guard) const
+      {
+        /*
+         * The record was entered under the default value when it was
+         * created, so an unwritten field has to leave that bucket.
+         */
+        const kind_mv<K> old_val = m->modify(sv, op, arg, ret_mode::prior_val, guard);
+        const kind_mv<K> new_val = m->frozen_read(sv);
+        if (!(old_val == new_val)) {
+          leave(r, old_val, sv);
+          join(r, new_val, sv);
+        }
+        return returning == ret_mode::prior_val ? old_val : new_val;
+      }
+
+    public:
+      const index_kind how;
+
+      record_index(gc_token &gc, index_kind ik)
+        : gc_allocated{gc},
+          _buckets{make_gc<buckets_t>()},
+          _order{ik == index_kind::ORDERED ? make_gc<ordered_values<K>>() : nullptr},
+          _new_values{make_gc<count_msv_t>()},
+          how{ik}
+      {}
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(record_index)
+          .template WITH_FIELD(&record_index::_buckets)
+          .template WITH_FIELD(&record_index::_order)
+          .template WITH_FIELD(&record_index::_n_new_values)
+          .template WITH_FIELD(&record_index::_new_values)
+          .template WITH_FIELD(&record_index::how);
+        return d;
+      }
+
+      /*
+       * Called by record_field<K>::modify() in place of modifying the
+       * MSV directly.
+       */
+      kind_mv<K> modify(const gc_ptr<const managed_record> &r,
+                        const gc_ptr<typed_msv<K>> &m,
+                        const gc_ptr<view> &sv,
+                        modify_op op, const kind_mv<K> &arg,
+                        ret_mode returning,
+                        const gc_ptr<mod_condition<K>> &guard) const
+      {
+        return modify(hashable{}, r, m, sv, op, arg, returning, guard);
+      }
+
+      /*
+       * Called when a record is created.
+       */
+      void note_created(const gc_ptr<const managed_record> &r, const gc_ptr<view> &sv) const {
+        join(r, kind_mv<K>{}, sv);
+      }
+
+      /*
+       * Calls fn(rec) for each record whose field has the value in
+       * the view.
+       */
+      template <typename Fn>
+      void lookup(const kind_mv<K> &val, const gc_ptr<view> &v, Fn&& fn) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        gc_ptr<bucket_t> b = _buckets->find(val, sv->need_msv_on_initial_read());
+        if (b != nullptr) {
+          b->for_each(sv, fn);
+        }
+      }
+
+      /*
+       * Calls fn(rec) for each record whose field has a value in
+       * [lo, hi) in the view, in value order.  Throws
+       * unsupported_index_op_ex unless the index is ORDERED.
+       */
+      template <typename Fn>
+      void lookup_range(const kind_mv<K> &lo, const kind_mv<K> &hi,
+                        const gc_ptr<view> &v, Fn&& fn) const
+      {
+        if (_order == nullptr) {
+          throw unsupported_index_op_ex{};
+        }
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        _new_values->snapshot_read(sv);
+        _order->for_range(lo, hi, [&](const kind_mv<K> &val) {
+            gc_ptr<bucket_t> b = _buckets->find(val, false);
+            if (b != nullptr) {
+              b->for_each(sv, fn);
+            }
+          });
+      }
+    };
+
+    template <kind K>
+    inline
+    gc_ptr<record_index<K>>
+    make_record_index(std::true_type, index_kind ik)
+    {
+      return make_gc<record_index<K>>(ik);
+    }
+
+    template <kind K>
+    inline
+    gc_ptr<record_index<K>>
+    make_record_index(std::false_type, index_kind)
+    {
+      throw unsupported_index_op_ex{};
+    }
+
+    /*
+     * Returns the field's index, creating it if there isn't one.
+     * Throws unsupported_index_op_ex if the field's kind can't be
+     * indexed that way or if it already has an index of the other
+     * kind, and populated_record_type_ex if it has to create one but
+     * records of the type already exist, since there's no way to
+     * find them to fill it.
+     */
+    template <kind K>
+    inline
+    gc_ptr<record_index<K>>
+    record_field<K>::ensure_index(index_kind ik) const
+    {
+      if (ik == index_kind::ORDERED && !index_traits<K>::orderable) {
+        throw unsupported_index_op_ex{};
+      }
+      gc_ptr<record_index<K>> idx = _index;
+      if (idx == nullptr) {
+        if (r_type->has_records()) {
+          throw populated_record_type_ex{};
+        }
+        using hashable = std::integral_constant<bool, index_traits<K>::hashable>;
+        auto rr = ruts::try_change_value(_index, nullptr,
+                                         make_record_index<K>(hashable{}, ik));
+        idx = rr.resulting_value();
+        /*
+         * Records note themselves before they load _index to enter
+         * themselves in it, so if no record shows up now, every one
+         * created later will see the index.  If one did, it may have
+         * missed it, so we take the index back out.
+         */
+        if (rr && r_type->has_records()) {
+          ruts::try_change_value(_index, idx, nullptr);
+          throw populated_record_type_ex{};
+        }
+      }
+      if (idx->how != ik) {
+        throw unsupported_index_op_ex{};
+      }
+      return idx;
+    }
+
+    template <kind K>
+    inline
+    void
+    record_field<K>::note_created(const gc_ptr<const managed_record> &r,
+                                  const gc_ptr<view> &sv) const
+    {
+      gc_ptr<record_index<K>> idx = _index;
+      if (idx != nullptr) {
+        idx->note_created(r, sv);
+      }
+    }
+
+  }
+}
+
+#endif /* CORE_INDEX_H_ */
@@ -68,6 +68,7 @@ namespace mds {
     template <> struct kind_traits<kind::ARRAY> : kind_traits_base<kind::ARRAY, managed_array_base> {
       using type_t = array_type_base;
     };
+    template <> struct kind_traits<kind::ARRAY_CHUNK> : kind_traits_val_only<kind::ARRAY_CHUNK, array_chunk> {};
     template <> struct kind_traits<kind::NAMESPACE> : kind_traits_base<kind::NAMESPACE, name_space> {
       //      using type_t = array_type_base;
     };
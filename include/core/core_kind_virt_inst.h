@@ -59,6 +59,7 @@ namespace mds {
       t.template bind<T<kind::BINDING>>();
       t.template bind<T<kind::ARRAY>>();
       t.template bind<T<kind::NAMESPACE>>();
+      t.template bind<T<kind::ARRAY_CHUNK>>();
     }
 
   }
@@ -0,0 +1,453 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_list.h
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#ifndef CORE_LIST_H_
+#define CORE_LIST_H_
+
+#include "core/core_fwd.h"
+#include "core/core_naming.h"
+#include "core/core_typed_msv.h"
+#include "core/core_context.h"
+#include "ruts/cas_loop.h"
+#include "mpgc/gc.h"
+#include <algorithm>
+#include <atomic>
+#include <cstdint>
+#include <limits>
+
+namespace mds {
+  namespace core {
+
+    /*
+     * How a list is expected to be used.  This picks the
+     * representation: lists that can be added to at the front get a
+     * second slot vector growing downward, and ARRAY_LISTs start with
+     * bigger segments.
+     */
+    enum class list_usage : unsigned char {
+      ARRAY_LIST, STACK, QUEUE, DEQUE, LINKED_LIST
+    };
+
+    /*
+     * A segmented vector of slots, each lazily given a
+     * typed_msv<kind::BINDING>.  Segment s holds first_size << s
+     * slots, so a slot never moves once its segment is there, and
+     * getting to one is a couple of shifts.
+     */
+    class list_slots : public gc_allocated {
+      using msv_t = typed_msv<kind::BINDING>;
+      using slots_t = gc_array<std::atomic<gc_ptr<msv_t>>>;
+      using segments_t = gc_array<std::atomic<gc_ptr<slots_t>>>;
+      static constexpr std::size_t n_segments = 48;
+
+      const std::size_t _first_size;
+      const gc_ptr<segments_t> _segments;
+
+      template <typename T>
+      static gc_ptr<T> install(std::atomic<gc_ptr<T>> &a, const gc_ptr<T> &val) {
+        auto rr = ruts::try_change_value(a, nullptr, val);
+        /*
+         * If that didn't work, someone else got there first.
+         */
+        return rr.resulting_value();
+      }
+
+    public:
+      list_slots(gc_token &gc, std::size_t first_size)
+        : gc_allocated{gc},
+          _first_size{first_size},
+          _segments{make_gc_array<std::atomic<gc_ptr<slots_t>>>(n_segments)}
+      {}
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(list_slots)
+          .WITH_FIELD(&list_slots::_first_size)
+          .WITH_FIELD(&list_slots::_segments);
+        return d;
+      }
+
+      /*
+       * Returns nullptr if the slot has no MSV and create is false.
+       */
+      gc_ptr<msv_t> at(std::uint64_t i, bool create) const {
+        const std::uint64_t q = i/_first_size + 1;
+        const std::size_t s = 63 - __builtin_clzll(q);
+        const std::uint64_t offset = i - _first_size*((std::uint64_t(1) << s) - 1);
+        std::atomic<gc_ptr<slots_t>> &sa = _segments->at(s);
+        gc_ptr<slots_t> seg = sa;
+        if (seg == nullptr) {
+          if (!create) {
+            return nullptr;
+          }
+          seg = install(sa, make_gc_array<std::atomic<gc_ptr<msv_t>>>(_first_size << s));
+        }
+        std::atomic<gc_ptr<msv_t>> &ma = seg->at(offset);
+        gc_ptr<msv_t> m = ma;
+        if (m == nullptr && create) {
+          m = install(ma, make_gc<msv_t>());
+        }
+        return m;
+      }
+    };
+
+    /*
+     * managed_list is a sequence of slots, each holding a binding
+     * that's unbound if the slot is empty.  Positions run from
+     * -(slots reserved at the front) to (slots reserved at the back),
+     * and the list, in a view, is the bound slots in position order.
+     *
+     * Adding an element reserves a fresh slot from a shared counter
+     * (which isn't versioned) and writes the value there, so
+     * concurrent appends touch disjoint slots and are simply merged
+     * when their contexts publish.  The appender reads its slot
+     * before writing it, which only matters if a removal from the
+     * same end has already stepped over the (still empty) slot: the
+     * remover writes it empty, and the appender will conflict and
+     * append again.  Slots are never reused, since older snapshots
+     * may still see them.
+     *
+     * Removing from the front moves a versioned head position past
+     * the removed slot, so later removals don't have to step over it
+     * again, and removing from the back records a versioned range of
+     * known empty slots at the back.  Removals read both, so they
+     * conflict with each other, as they should.  Adding at the front
+     * has to lower the head, so front adds conflict with each other
+     * and with removals.
+     *
+     * Access by index has to walk from the front.
+     */
+    class managed_list : public managed_composite, public with_uniform_id
+    {
+      using msv_t = typed_msv<kind::BINDING>;
+      using pos_msv_t = typed_msv<kind::LONG>;
+    public:
+      using position_type = std::int64_t;
+      using size_type = std::uint64_t;
+      const list_usage usage;
+    private:
+      /*
+       * Positions are stored relative to lowest_pos, so an unwritten
+       * position MSV (which reads as zero) means "no limit".
+       */
+      static constexpr position_type lowest_pos = std::numeric_limits<position_type>::min()/2;
+
+      mutable std::atomic<size_type> _n_back{0};
+      mutable std::atomic<size_type> _n_front{0};
+      const gc_ptr<list_slots> _back;
+      const gc_ptr<list_slots> _front;
+      /*
+       * No slot below the head is bound.
+       */
+      const gc_ptr<pos_msv_t> _head;
+      /*
+       * Nor is any slot in [_dead_lo, _dead_hi).
+       */
+      const gc_ptr<pos_msv_t> _dead_lo;
+      const gc_ptr<pos_msv_t> _dead_hi;
+
+      static std::size_t first_segment_size(list_usage u) {
+        return u == list_usage::ARRAY_LIST ? 256 : 64;
+      }
+
+      static bool adds_at_front(list_usage u) {
+        return u == list_usage::DEQUE || u == list_usage::LINKED_LIST;
+      }
+
+      gc_ptr<msv_t> slot(position_type p, bool create) const {
+        return p >= 0 ? _back->at(p, create) : _front->at(-p-1, create);
+      }
+
+      static position_type read_pos(const gc_ptr<pos_msv_t> &m, const gc_ptr<view> &sv) {
+        return m->frozen_read(sv) + lowest_pos;
+      }
+
+      static void write_pos(const gc_ptr<pos_msv_t> &m, const gc_ptr<view> &sv, position_type p) {
+        m->write(sv, p - lowest_pos);
+      }
+
+      position_type front_end() const {
+        return -static_cast<position_type>(_n_front.load());
+      }
+
+      position_type back_end() const {
+        return static_cast<position_type>(_n_back.load());
+      }
+
+      /*
+       * Reads the slot for a removal.  If it's empty and nothing has
+       * ever been written to it in this view, it may have been
+       * reserved by an add that hasn't been published, so we write it
+       * empty to make that add conflict.
+       */
+      binding take_or_skip(const gc_ptr<msv_t> &m, const gc_ptr<view> &sv) const {
+        binding b = m->frozen_read(sv);
+        if (b.is_bound() || !m->has_value(sv)) {
+          m->write(sv, binding{});
+        }
+        return b;
+      }
+
+      position_type add_slot(position_type p, const gc_ptr<view> &sv, const binding &b) const {
+        gc_ptr<msv_t> m = slot(p, true);
+        m->frozen_read(sv);
+        m->write(sv, b);
+        return p;
+      }
+
+      /*
+       * Calls fn(pos, binding) for each bound slot, in order, until
+       * it returns false.
+       */
+      template <typename Fn>
+      void scan(const gc_ptr<view> &sv, Fn&& fn) const {
+        const bool create = sv->need_msv_on_initial_read();
+        const position_type hi = back_end();
+        const position_type dl = read_pos(_dead_lo, sv);
+        const position_type dh = read_pos(_dead_hi, sv);
+        position_type p = std::max(read_pos(_head, sv), front_end());
+        while (p < hi) {
+          if (p >= dl && p < dh) {
+            p = dh;
+            continue;
+          }
+          gc_ptr<msv_t> m = slot(p, create);
+          if (m != nullptr) {
+            binding b = m->snapshot_read(sv);
+            if (b.is_bound() && !fn(p, b)) {
+              return;
+            }
+          }
+          p++;
+        }
+      }
+
+    public:
+      managed_list(gc_token &gc, list_usage u)
+        : managed_composite{gc},
+          usage{u},
+          _back{make_gc<list_slots>(first_segment_size(u))},
+          _front{adds_at_front(u) ? make_gc<list_slots>(first_segment_size(u)) : nullptr},
+          _head{make_gc<pos_msv_t>()},
+          _dead_lo{make_gc<pos_msv_t>()},
+          _dead_hi{make_gc<pos_msv_t>()}
+      {}
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(managed_list)
+          .WITH_SUPER(managed_composite)
+          .WITH_SUPER(with_uniform_id)
+          .WITH_FIELD(&managed_list::usage)
+          .WITH_FIELD(&managed_list::_n_back)
+          .WITH_FIELD(&managed_list::_n_front)
+          .WITH_FIELD(&managed_list::_back)
+          .WITH_FIELD(&managed_list::_front)
+          .WITH_FIELD(&managed_list::_head)
+          .WITH_FIELD(&managed_list::_dead_lo)
+          .WITH_FIELD(&managed_list::_dead_hi);
+        return d;
+      }
+
+      bool can_add_first() const {
+        return _front != nullptr;
+      }
+
+      void add_last(const gc_ptr<view> &v, const binding &b) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        add_slot(_n_back.fetch_add(1), sv, b);
+      }
+
+      /*
+       * Behaves as n calls to add_last(), but reserves the slots all
+       * at once and only resolves the shadowed view once.
+       * source(i) returns the binding to add.
+       */
+      template <typename Fn>
+      void add_all_last(size_type n, const gc_ptr<view> &v, Fn&& source) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        const position_type first = _n_back.fetch_add(n);
+        for (size_type i = 0; i < n; i++) {
+          add_slot(first+i, sv, source(i));
+        }
+      }
+
+      /*
+       * Throws unsupported_list_op_ex unless the list's usage allows
+       * adding at the front.
+       */
+      void add_first(const gc_ptr<view> &v, const binding &b) const {
+        if (!can_add_first()) {
+          throw unsupported_list_op_ex{};
+        }
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        position_type p = add_slot(-static_cast<position_type>(_n_front.fetch_add(1))-1, sv, b);
+        if (p < read_pos(_head, sv)) {
+          write_pos(_head, sv, p);
+        }
+      }
+
+      /*
+       * Returns the removed binding, unbound if the list was empty.
+       */
+      binding remove_first(const gc_ptr<view> &v) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        const position_type hi = back_end();
+        const position_type dl = read_pos(_dead_lo, sv);
+        const position_type dh = read_pos(_dead_hi, sv);
+        position_type p = std::max(read_pos(_head, sv), front_end());
+        while (p < hi) {
+          if (p >= dl && p < dh) {
+            p = dh;
+            continue;
+          }
+          binding b = take_or_skip(slot(p, true), sv);
+          p++;
+          if (b.is_bound()) {
+            write_pos(_head, sv, p);
+            return b;
+          }
+        }
+        write_pos(_head, sv, hi);
+        return binding{};
+      }
+
+      binding remove_last(const gc_ptr<view> &v) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        const position_type lo = std::max(read_pos(_head, sv), front_end());
+        const position_type hi = back_end();
+        const position_type dl = read_pos(_dead_lo, sv);
+        const position_type dh = read_pos(_dead_hi, sv);
+        position_type p = hi;
+        while (p > lo) {
+          if (p > dl && p <= dh) {
+            p = dl;
+            continue;
+          }
+          p--;
+          binding b = take_or_skip(slot(p, true), sv);
+          if (b.is_bound()) {
+            write_pos(_dead_lo, sv, p);
+            write_pos(_dead_hi, sv, hi);
+            return b;
+          }
+        }
+        write_pos(_dead_lo, sv, lo);
+        write_pos(_dead_hi, sv, hi);
+        return binding{};
+      }
+
+      binding first(const gc_ptr<view> &v) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        binding res;
+        scan(sv, [&](position_type, const binding &b) { res = b; return false; });
+        return res;
+      }
+
+      /*
+       * Returns the position of the i'th element, or back_end() if
+       * there are no more than i.
+       */
+      position_type position_of(size_type i, const gc_ptr<view> &sv) const {
+        position_type res = back_end();
+        scan(sv, [&](position_type p, const binding &) {
+            if (i == 0) {
+              res = p;
+              return false;
+            }
+            i--;
+            return true;
+          });
+        return res;
+      }
+
+      /*
+       * Throws index_out_of_bounds_ex if there are no more than i
+       * elements.
+       */
+      binding get(size_type i, const gc_ptr<view> &v) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        position_type p = position_of(i, sv);
+        if (p >= back_end()) {
+          throw index_out_of_bounds_ex{};
+        }
+        return slot(p, true)->frozen_read(sv);
+      }
+
+      /*
+       * Returns the old binding.
+       */
+      binding set(size_type i, const gc_ptr<view> &v, const binding &b) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        position_type p = position_of(i, sv);
+        if (p >= back_end()) {
+          throw index_out_of_bounds_ex{};
+        }
+        return slot(p, true)->write(sv, b, ret_mode::prior_val);
+      }
+
+      binding remove_at(size_type i, const gc_ptr<view> &v) const {
+        return set(i, v, binding{});
+      }
+
+      /*
+       * Calls fn(binding) for each element, in order.
+       */
+      template <typename Fn>
+      void for_each(const gc_ptr<view> &v, Fn&& fn) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        scan(sv, [&](position_type, const binding &b) { fn(b); return true; });
+      }
+
+      /*
+       * This walks the list.
+       */
+      size_type size(const gc_ptr<view> &v) const {
+        size_type n = 0;
+        for_each(v, [&](const binding &) { n++; });
+        return n;
+      }
+    };
+
+    inline
+    managed_value<managed_list>
+    create_managed_list(list_usage u)
+    {
+      gc_ptr<managed_list> l = make_gc<managed_list>(u);
+      gc_ptr<view> v = iso_context::shadowed(top_level_view);
+      return managed_value<managed_list>{l, v};
+    }
+
+  }
+}
+
+#endif /* CORE_LIST_H_ */
@@ -0,0 +1,237 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_map.h
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#ifndef CORE_MAP_H_
+#define CORE_MAP_H_
+
+#include "core/core_fwd.h"
+#include "core/core_naming.h"
+#include "core/core_typed_msv.h"
+#include "core/core_context.h"
+#include "core/core_strings.h"
+#include "core/core_hash_trie.h"
+#include "ruts/cas_loop.h"
+#include "mpgc/gc.h"
+#include <atomic>
+#include <cstdint>
+#include <functional>
+
+namespace mds {
+  namespace core {
+
+    /*
+     * Key hashes have to be the same in every process that maps the
+     * heap, so strings hash by their uniform id rather than by
+     * address.
+     */
+    template <kind KK>
+    struct map_key_traits {
+      using key_type = kind_mv<KK>;
+      static_assert(!managed_value_is_view_dependent<kind_val<KK>>::value,
+                    "map keys must be primitives or strings");
+      static std::size_t raw_hash(const kind_mv<KK> &k) {
+        return std::hash<kind_mv<KK>>()(k);
+      }
+      static bool equal(const kind_mv<KK> &a, const kind_mv<KK> &b) {
+        return a == b;
+      }
+      static std::uint64_t hash(const kind_mv<KK> &k) {
+        return mix_hash(raw_hash(k));
+      }
+    };
+
+    template <>
+    inline std::size_t map_key_traits<kind::STRING>::raw_hash(const kind_mv<kind::STRING> &k) {
+      return ruts::hash1<gc_ptr<interned_string>>()(k);
+    }
+
+    /*
+     * managed_map<KK> is a hash_trie keyed by values of kind KK whose
+     * payloads are typed_msv<kind::BINDING>s.  Whether the key is in
+     * the map (and what it maps to) is just the binding in that MSV,
+     * so two tasks only conflict if they touch the same key.  (More
+     * generally, the payloads are typed_msv<VK>s, and a key is in the
+     * map when its value isn't the default one.  managed_set uses
+     * kind::BOOL.)
+     *
+     * Removing a key unbinds it in the view; the entry stays behind
+     * for the benefit of other views.
+     *
+     * Walking the map reads every entry's MSV, but that says nothing
+     * about keys whose entries didn't exist yet.  So the map also has
+     * a versioned insert count, which for_each() (and so size())
+     * reads before the walk, and which a write bumps when the key has
+     * never had a value in the writer's view.  The count is written
+     * blindly with the next value of an unversioned counter, so
+     * inserts don't conflict with each other, only with walks.
+     */
+    template <kind KK, kind VK>
+    class managed_map : public managed_composite, public with_uniform_id
+    {
+    public:
+      using val_type = kind_mv<VK>;
+    private:
+      using msv_t = typed_msv<VK>;
+      using trie_t = hash_trie<map_key_traits<KK>, msv_t>;
+      using count_msv_t = typed_msv<kind::LONG>;
+
+      const gc_ptr<trie_t> _trie;
+      mutable std::atomic<std::int64_t> _n_inserts{0};
+      const gc_ptr<count_msv_t> _inserts;
+
+      gc_ptr<msv_t> find(const kind_mv<KK> &k, bool create) const {
+        return _trie->find(k, create);
+      }
+
+      static bool present(const val_type &val) {
+        return !(val == val_type{});
+      }
+
+      /*
+       * Called before writing val to m.  has_value() doesn't record
+       * a read, so it doesn't make the writer conflict.
+       */
+      void note_insert(const gc_ptr<msv_t> &m, const gc_ptr<view> &sv,
+                       const val_type &val) const
+      {
+        if (present(val) && !m->has_value(sv)) {
+          _inserts->write(sv, _n_inserts.fetch_add(1)+1);
+        }
+      }
+
+    public:
+      explicit managed_map(gc_token &gc)
+        : managed_composite{gc},
+          _trie{make_gc<trie_t>()},
+          _inserts{make_gc<count_msv_t>()}
+      {}
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(managed_map)
+          .template WITH_SUPER(managed_composite)
+          .template WITH_SUPER(with_uniform_id)
+          .template WITH_FIELD(&managed_map::_trie)
+          .template WITH_FIELD(&managed_map::_n_inserts)
+          .template WITH_FIELD(&managed_map::_inserts);
+        return d;
+      }
+
+      /*
+       * A default value (for bindings, an unbound one) means the key
+       * isn't in the map.  As with names, reads only create the key's
+       * entry if the view needs an MSV to remember what it saw.
+       */
+      val_type read(const kind_mv<KK> &k, const gc_ptr<view> &v) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        gc_ptr<msv_t> m = find(k, sv->need_msv_on_initial_read());
+        return m == nullptr ? val_type{} : m->snapshot_read(sv);
+      }
+
+      val_type write(const kind_mv<KK> &k, const gc_ptr<view> &v,
+                     const val_type &val,
+                     ret_mode returning = ret_mode::resulting_val) const
+      {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        gc_ptr<msv_t> m = find(k, true);
+        note_insert(m, sv, val);
+        return m->write(sv, val, returning);
+      }
+
+      /*
+       * Returns the prior value.
+       */
+      val_type remove(const kind_mv<KK> &k, const gc_ptr<view> &v) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        gc_ptr<msv_t> m = find(k, sv->need_msv_on_initial_read());
+        if (m == nullptr) {
+          return val_type{};
+        }
+        return m->write(sv, val_type{}, ret_mode::prior_val);
+      }
+
+      /*
+       * Behaves as n calls to write(), but only resolves the shadowed
+       * view once.  source(i) returns a std::pair of key and value.
+       */
+      template <typename Fn>
+      void write_all(std::size_t n, const gc_ptr<view> &v, Fn&& source) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        for (std::size_t i = 0; i < n; i++) {
+          auto kb = source(i);
+          gc_ptr<msv_t> m = find(kb.first, true);
+          note_insert(m, sv, kb.second);
+          m->write(sv, kb.second);
+        }
+      }
+
+      /*
+       * Calls fn(key, val) for each key in the map in the view.  Keys
+       * first added by other views while the walk is going on may or
+       * may not be seen, but reading the insert count first means
+       * that publishing them will conflict with us.
+       */
+      template <typename Fn>
+      void for_each(const gc_ptr<view> &v, Fn&& fn) const {
+        gc_ptr<view> sv = iso_context::shadowed(v);
+        _inserts->snapshot_read(sv);
+        _trie->for_each([&](const kind_mv<KK> &k, const gc_ptr<msv_t> &m) {
+            val_type val = m->snapshot_read(sv);
+            if (present(val)) {
+              fn(k, val);
+            }
+          });
+      }
+
+      /*
+       * This walks the whole trie.
+       */
+      std::size_t size(const gc_ptr<view> &v) const {
+        std::size_t n = 0;
+        for_each(v, [&](const kind_mv<KK> &, const val_type &) { n++; });
+        return n;
+      }
+    };
+
+    template <kind KK> inline
+    managed_value<managed_map<KK>>
+    create_managed_map()
+    {
+      gc_ptr<managed_map<KK>> m = make_gc<managed_map<KK>>();
+      gc_ptr<view> v = iso_context::shadowed(top_level_view);
+      return managed_value<managed_map<KK>>{m, v};
+    }
+
+  }
+}
+
+#endif /* CORE_MAP_H_ */
@@ -37,13 +37,19 @@
 #include "ruts/packed_word.h"
 #include "core/core_task.h"
 #include "core/core_context.h"
+#include "core/core_rollup.h"
 
 namespace mds {
   namespace core {
+    /*
+     * patch is only used for dense array chunks (see array_chunk).
+     * Unlike set, it always reads the prior value.
+     */
     enum class modify_op {
       set, clear, add, sub, mul, div,
         current_val, 
-        frozen_current, roll_forward
+        frozen_current, roll_forward,
+        patch
         }; // modify_op
 
     enum class ret_mode {
@@ -465,10 +471,25 @@ namespace mds {
         return d;
       }
 
-      void process_rollups() {
+      /*
+       * Returns false if there was nothing to do.
+       */
+      bool process_pending_rollups() {
         gc_ptr<pending_rollup> prs = _rollups;
-        if (prs != nullptr) {
-          pending_rollup::process(prs, _rollups);
+        if (prs == nullptr) {
+          return false;
+        }
+        pending_rollup::process(prs, _rollups);
+        return true;
+      }
+
+      void process_rollups() {
+        if (process_pending_rollups()) {
+          /*
+           * If we had to do it ourselves, the rollup workers (if
+           * any) may be falling behind.
+           */
+          rollup_service::help_if_backlogged();
         }
       }
 
@@ -481,6 +502,7 @@ namespace mds {
             ru->set_next(head);
             return ru;
           });
+        rollup_service::note_pending(GC_THIS);
       }
 
       template <kind K>
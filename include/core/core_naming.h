@@ -234,10 +234,22 @@ namespace mds {
             return lookup_t{nullptr, binding{}};
           }
           gc_ptr<view> sb = iso_context::shadowed(v);
-          binding b = bn->_vals->frozen_read(sb);
+          binding b = bn->_vals->snapshot_read(sb);
           return lookup_t{bn, b};
         }
 
+        /*
+         * Reads only need to create the bound_name if the view would
+         * need an MSV to remember what it saw.
+         */
+        lookup_t lookup_for_read(const gc_ptr<interned_string> &name,
+                                 const gc_ptr<view> &sv)
+        {
+          return sv->need_msv_on_initial_read()
+            ? lookup_or_create(name, sv)
+            : lookup(name, sv);
+        }
+
         lookup_t lookup_or_create(const gc_ptr<interned_string> &name,
                                   const gc_ptr<view> &v)
         {
@@ -274,7 +286,7 @@ namespace mds {
         {
           binding b;
           gc_ptr<view> sb = iso_context::shadowed(v);
-          std::tie(std::ignore, b) = lookup_or_create(name, sb);
+          std::tie(std::ignore, b) = lookup_for_read(name, sb);
           /*
            * If there's no bound_name, the binding will be unbound
            */
@@ -300,6 +312,9 @@ namespace mds {
           }
           binding new_b = binding::bound_to<K>(val);
           bn->_vals->write(sb, new_b);
+          if (old_b.is_namespace()) {
+            sb->context->note_dropped_namespace();
+          }
           return true;
         }
         bool is_bound(const gc_ptr<interned_string> &name,
@@ -307,7 +322,7 @@ namespace mds {
         {
           binding b;
           gc_ptr<view> sb = iso_context::shadowed(v);
-          std::tie(std::ignore, b) = lookup_or_create(name, sb);
+          std::tie(std::ignore, b) = lookup_for_read(name, sb);
           /*
            * If there's no bound_name, the binding will be unbound
            */
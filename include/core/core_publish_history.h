@@ -0,0 +1,296 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_publish_history.h
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#ifndef CORE_PUBLISH_HISTORY_H_
+#define CORE_PUBLISH_HISTORY_H_
+
+#include "core/core_fwd.h"
+#include "mpgc/gc.h"
+#include <atomic>
+#include <cstdint>
+#include <memory>
+#include <vector>
+
+namespace mds {
+  namespace core {
+
+    /*
+     * An index over a context's published states, oldest first, so
+     * that finding the state in effect at some time is a binary
+     * search rather than a walk back along prior_published_state.
+     * Timestamps only increase along the chain, so the index is
+     * sorted by construction.
+     *
+     * States are added by catch_up(), which walks back from the most
+     * recent state to the newest one already indexed and appends
+     * what it passed.  Only one thread appends at a time.  One that
+     * finds another already at it doesn't wait, and the lookups walk
+     * whatever part of the chain isn't indexed yet before they
+     * search.
+     *
+     * Entries are kept in segments as in list_slots: segment s holds
+     * first_size << s states, so nothing moves as the history grows.
+     * catch_up() can also prune the history, dropping the entries
+     * (and the chain links) before the newest state older than a
+     * given time and letting go of segments that are entirely below
+     * it.  The caller has to know that nothing will ask about times
+     * before that any more, since lookups of those times can no
+     * longer find the states that were dropped.
+     */
+    template <typename State>
+    class publish_history : public gc_allocated {
+      using state_ptr = gc_ptr<const State>;
+      using slots_t = gc_array<std::atomic<state_ptr>>;
+      using segments_t = gc_array<std::atomic<gc_ptr<slots_t>>>;
+      static constexpr std::size_t n_segments = 48;
+      static constexpr std::size_t first_size = 64;
+
+      const gc_ptr<segments_t> _segments;
+      /*
+       * Entries in [_first, _n) are there.  Those before _first have
+       * been pruned.
+       */
+      std::atomic<std::size_t> _first{0};
+      std::atomic<std::size_t> _n{0};
+      std::atomic<bool> _appending{false};
+
+      static std::size_t segment_of(std::size_t i, std::size_t &offset) {
+        const std::uint64_t q = i/first_size + 1;
+        const std::size_t s = 63 - __builtin_clzll(q);
+        offset = i - first_size*((std::uint64_t(1) << s) - 1);
+        return s;
+      }
+
+      /*
+       * nullptr if the entry has been pruned.
+       */
+      state_ptr at(std::size_t i) const {
+        std::size_t offset;
+        gc_ptr<slots_t> seg = _segments->at(segment_of(i, offset));
+        return seg == nullptr ? nullptr : seg->at(offset).load();
+      }
+
+      static timestamp_t ts_of(const state_ptr &s) {
+        return s == nullptr ? 0 : s->timestamp();
+      }
+
+      /*
+       * The newest indexed state (or nullptr), with n set to the
+       * number of entries.
+       */
+      state_ptr newest_indexed(std::size_t &n) const {
+        n = _n.load(std::memory_order_acquire);
+        return n == 0 ? nullptr : at(n-1);
+      }
+
+      void append(const state_ptr &st) {
+        const std::size_t i = _n.load(std::memory_order_relaxed);
+        std::size_t offset;
+        const std::size_t s = segment_of(i, offset);
+        std::atomic<gc_ptr<slots_t>> &sa = _segments->at(s);
+        gc_ptr<slots_t> seg = sa;
+        if (seg == nullptr) {
+          seg = make_gc_array<std::atomic<state_ptr>>(first_size << s);
+          sa = seg;
+        }
+        seg->at(offset) = st;
+        _n.store(i+1, std::memory_order_release);
+      }
+
+      /*
+       * Whether prune(before) would drop anything, given n entries.
+       */
+      bool prunable(std::size_t n, timestamp_t before) const {
+        if (before == 0) {
+          return false;
+        }
+        const std::size_t first = _first.load(std::memory_order_acquire);
+        return n >= first+3 && ts_of(at(first+1)) < before;
+      }
+
+      void prune(timestamp_t before) {
+        const std::size_t n = _n.load(std::memory_order_relaxed);
+        const std::size_t first = _first.load(std::memory_order_relaxed);
+        if (n < first+2) {
+          return;
+        }
+        /*
+         * The floor is the newest entry older than before, but we
+         * never prune up to the newest entry, whose link may still
+         * be read by someone starting from the current state.
+         */
+        std::size_t lo = first;
+        std::size_t hi = n-1;
+        while (lo < hi) {
+          const std::size_t mid = lo + (hi-lo)/2;
+          if (ts_of(at(mid)) < before) {
+            lo = mid+1;
+          } else {
+            hi = mid;
+          }
+        }
+        if (lo <= first+1) {
+          return;
+        }
+        const std::size_t floor = lo-1;
+        std::const_pointer_cast<State>(at(floor))->forget_prior();
+        _first.store(floor, std::memory_order_release);
+        std::size_t offset;
+        const std::size_t fs = segment_of(floor, offset);
+        for (std::size_t s = segment_of(first, offset); s < fs; s++) {
+          _segments->at(s) = nullptr;
+        }
+      }
+
+    public:
+      explicit publish_history(gc_token &gc)
+        : gc_allocated{gc},
+          _segments{make_gc_array<std::atomic<gc_ptr<slots_t>>>(n_segments)}
+      {}
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(publish_history)
+          .WITH_FIELD(&publish_history::_segments)
+          .WITH_FIELD(&publish_history::_first)
+          .WITH_FIELD(&publish_history::_n)
+          .WITH_FIELD(&publish_history::_appending);
+        return d;
+      }
+
+      std::size_t size() const {
+        return _n.load(std::memory_order_acquire) - _first.load(std::memory_order_acquire);
+      }
+
+      /*
+       * Indexes the states from newest back to the ones already here
+       * and, if prune_before is nonzero, prunes as described above.
+       * Does nothing if another thread is already doing it.
+       *
+       * This is called on every lookup, and usually there's nothing
+       * to do, so we check that before writing _appending.
+       */
+      void catch_up(const state_ptr &newest, timestamp_t prune_before = 0) {
+        std::size_t n;
+        if (newest_indexed(n) == newest && !prunable(n, prune_before)) {
+          return;
+        }
+        if (_appending.exchange(true, std::memory_order_acquire)) {
+          return;
+        }
+        const timestamp_t frontier = ts_of(newest_indexed(n));
+        std::vector<state_ptr> pending;
+        for (state_ptr s = newest;
+             s != nullptr && (n == 0 || s->timestamp() > frontier);
+             s = s->prior_published_state)
+          {
+            pending.push_back(s);
+          }
+        for (auto i = pending.rbegin(); i != pending.rend(); ++i) {
+          append(*i);
+        }
+        if (prune_before != 0) {
+          prune(prune_before);
+        }
+        _appending.store(false, std::memory_order_release);
+      }
+
+      /*
+       * The oldest state on newest's chain with a timestamp after ts,
+       * or nullptr if there isn't one.
+       */
+      state_ptr first_after(const state_ptr &newest, timestamp_t ts) const {
+        std::size_t n;
+        const timestamp_t frontier = ts_of(newest_indexed(n));
+        state_ptr best = nullptr;
+        state_ptr s = newest;
+        for (; s != nullptr && (n == 0 || s->timestamp() > frontier);
+             s = s->prior_published_state)
+          {
+            if (s->timestamp() <= ts) {
+              return best;
+            }
+            best = s;
+          }
+        if (s == nullptr) {
+          return best;
+        }
+        std::size_t lo = _first.load(std::memory_order_acquire);
+        std::size_t hi = n;
+        while (lo < hi) {
+          const std::size_t mid = lo + (hi-lo)/2;
+          if (ts_of(at(mid)) > ts) {
+            hi = mid;
+          } else {
+            lo = mid+1;
+          }
+        }
+        return hi < n ? at(hi) : best;
+      }
+
+      /*
+       * The newest state on newest's chain with a timestamp before
+       * ts, or nullptr if there isn't one.
+       */
+      state_ptr last_before(const state_ptr &newest, timestamp_t ts) const {
+        std::size_t n;
+        const timestamp_t frontier = ts_of(newest_indexed(n));
+        state_ptr s = newest;
+        for (; s != nullptr && (n == 0 || s->timestamp() > frontier);
+             s = s->prior_published_state)
+          {
+            if (s->timestamp() < ts) {
+              return s;
+            }
+          }
+        if (s == nullptr) {
+          return nullptr;
+        }
+        const std::size_t first = _first.load(std::memory_order_acquire);
+        std::size_t lo = first;
+        std::size_t hi = n;
+        while (lo < hi) {
+          const std::size_t mid = lo + (hi-lo)/2;
+          if (ts_of(at(mid)) < ts) {
+            lo = mid+1;
+          } else {
+            hi = mid;
+          }
+        }
+        return lo == first ? nullptr : at(lo-1);
+      }
+    };
+
+  }
+}
+
+#endif /* CORE_PUBLISH_HISTORY_H_ */
@@ -42,6 +42,7 @@
 #include "ruts/uniform_key.h"
 #include "ruts/cas_loop.h"
 #include "mpgc/gc_vector.h"
+#include <atomic>
 #include <iostream>
 
 namespace mds {
@@ -125,6 +126,11 @@ namespace mds {
     struct record_field : record_field_base
     {
       const gc_ptr<const kind_type<K>> f_type;
+      /*
+       * Null unless the field has been indexed.  Modifications
+       * through the field keep the index up to date.
+       */
+      mutable std::atomic<gc_ptr<record_index<K>>> _index{nullptr};
 
       record_field(gc_token &gc,
                    const gc_ptr<interned_string> &name,
@@ -140,10 +146,25 @@ namespace mds {
         static gc_descriptor d =
 	  GC_DESC(record_field)
 	  .template WITH_SUPER(record_field_base)
-	  .template WITH_FIELD(&record_field::f_type);
+	  .template WITH_FIELD(&record_field::f_type)
+	  .template WITH_FIELD(&record_field::_index);
         return d;
       }
 
+      /*
+       * Defined in core_index.h.
+       */
+      gc_ptr<record_index<K>> ensure_index(index_kind ik) const;
+      /*
+       * Enters a new record in the index, if there is one, under the
+       * default value.  Defined in core_index.h.
+       */
+      void note_created(const gc_ptr<const managed_record> &r,
+                        const gc_ptr<view> &sv) const;
+      gc_ptr<record_index<K>> index() const {
+        return _index;
+      }
+
       void check_compatible(const gc_ptr<const managed_record> &r) const;
 
       kind_mv<K> free_read(const gc_ptr<const managed_record> &r,
@@ -220,9 +241,23 @@ namespace mds {
       mutable bool _created = false;
       mutable bool _valid = true;
       mutable gc_ptr<const record_type> _forward = nullptr;
+      /*
+       * Set (on this type and its supertypes) before the first record
+       * of the type is created.  Indexes can't find records written
+       * before they existed, so fields can only be indexed until then.
+       */
+      mutable std::atomic<bool> _has_records{false};
 
       class private_ctor {};
 
+      template <kind K>
+      static void note_created_in(const gc_ptr<record_field_base> &f,
+                                  const gc_ptr<const managed_record> &r,
+                                  const gc_ptr<view> &sv)
+      {
+        std::static_pointer_cast<kind_field<K>>(f)->note_created(r, sv);
+      }
+
       gc_ptr<const record_type> try_to_create() const;
     public:
       record_type(gc_token &gc,
@@ -253,7 +288,8 @@ namespace mds {
 	  .WITH_FIELD(&record_type::_fields)
 	  .WITH_FIELD(&record_type::_created)
 	  .WITH_FIELD(&record_type::_valid)
-	  .WITH_FIELD(&record_type::_forward);
+	  .WITH_FIELD(&record_type::_forward)
+	  .WITH_FIELD(&record_type::_has_records);
         return d;
       }
       /*
@@ -310,6 +346,25 @@ namespace mds {
         return _created;
       }
 
+      bool has_records() const {
+        return _forward != nullptr ? _forward->has_records() : _has_records.load();
+      }
+
+      /*
+       * Enters a new record in the indexes on its fields.
+       */
+      void note_created(const gc_ptr<const managed_record> &r,
+                        const gc_ptr<view> &sv) const;
+
+      void note_records() const {
+        for (gc_ptr<const record_type> t = GC_THIS;
+             t != nullptr && !t->_has_records.load();
+             t = t->_super)
+          {
+            t->_has_records = true;
+          }
+      }
+
       gc_ptr<interned_string> name() const {
         return _name;
       }
@@ -409,6 +464,12 @@ namespace mds {
       }
 
       managed_value<managed_record> create_record() const;
+      /*
+       * Creates n records, calling fn on each.  The forward and the
+       * shadowed view are only looked up once for the lot.
+       */
+      template <typename Fn>
+      void create_records(std::size_t n, Fn &&fn) const;
 
     };
 
@@ -461,6 +522,58 @@ namespace mds {
     {}
 
 
+    /*
+     * Only the kinds index_traits calls hashable can be indexed.
+     */
+    inline
+    void
+    record_type::note_created(const gc_ptr<const managed_record> &r,
+                              const gc_ptr<view> &sv) const
+    {
+      for (const auto &f : fields()) {
+        switch (f->type_kind) {
+        case kind::BOOL:
+          note_created_in<kind::BOOL>(f, r, sv);
+          break;
+        case kind::BYTE:
+          note_created_in<kind::BYTE>(f, r, sv);
+          break;
+        case kind::UBYTE:
+          note_created_in<kind::UBYTE>(f, r, sv);
+          break;
+        case kind::SHORT:
+          note_created_in<kind::SHORT>(f, r, sv);
+          break;
+        case kind::USHORT:
+          note_created_in<kind::USHORT>(f, r, sv);
+          break;
+        case kind::INT:
+          note_created_in<kind::INT>(f, r, sv);
+          break;
+        case kind::UINT:
+          note_created_in<kind::UINT>(f, r, sv);
+          break;
+        case kind::LONG:
+          note_created_in<kind::LONG>(f, r, sv);
+          break;
+        case kind::ULONG:
+          note_created_in<kind::ULONG>(f, r, sv);
+          break;
+        case kind::FLOAT:
+          note_created_in<kind::FLOAT>(f, r, sv);
+          break;
+        case kind::DOUBLE:
+          note_created_in<kind::DOUBLE>(f, r, sv);
+          break;
+        case kind::STRING:
+          note_created_in<kind::STRING>(f, r, sv);
+          break;
+        default:
+          break;
+        }
+      }
+    }
+
     inline
     managed_value<managed_record>
     record_type::create_record() const
@@ -469,11 +582,32 @@ namespace mds {
       if (_forward != nullptr) {
         return _forward->create_record();
       }
+      note_records();
       gc_ptr<managed_record> r = make_gc<managed_record>(GC_THIS);
       gc_ptr<view> v = iso_context::shadowed(top_level_view);
+      note_created(r, v);
       return managed_value<managed_record>{r, v};
     }
 
+    template <typename Fn>
+    inline
+    void
+    record_type::create_records(std::size_t n, Fn &&fn) const
+    {
+      ensure_created();
+      if (_forward != nullptr) {
+        _forward->create_records(n, std::forward<Fn>(fn));
+        return;
+      }
+      note_records();
+      gc_ptr<view> v = iso_context::shadowed(top_level_view);
+      for (std::size_t i = 0; i < n; i++) {
+        gc_ptr<managed_record> r = make_gc<managed_record>(GC_THIS);
+        note_created(r, v);
+        fn(managed_value<managed_record>{r, v});
+      }
+    }
+
     template <kind K, typename Fn>
     gc_ptr<typed_msv<K>>
     managed_record::field(std::size_t i, const gc_ptr<const record_field<K>> &field,
@@ -591,6 +725,10 @@ namespace mds {
       check_compatible(r);
       gc_ptr<typed_msv<K>> val = r->field<K>(num, GC_THIS, []{ return true; });
       gc_ptr<view> sv = iso_context::shadowed(v);
+      gc_ptr<record_index<K>> idx = _index;
+      if (idx != nullptr) {
+        return idx->modify(r, val, sv, op, arg, returning, guard);
+      }
       return val->modify(sv, op, arg, returning, guard);
 
     }
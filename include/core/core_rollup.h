@@ -0,0 +1,101 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_rollup.h
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#ifndef CORE_ROLLUP_H_
+#define CORE_ROLLUP_H_
+
+#include "core/core_fwd.h"
+#include <chrono>
+#include <cstddef>
+
+namespace mds {
+  namespace core {
+
+    /*
+     * When a context publishes, each value chain it modified leaves a
+     * pending_rollup on its MSV, and the rollups are processed by the
+     * next access to that MSV.  So without help, an unrelated reader
+     * pays for cleaning up after the publish.
+     *
+     * The rollup service runs a pool of background workers in this
+     * process.  Once it's started, msv::add_rollup() queues the MSV
+     * (unless it's already waiting), and a worker takes everything
+     * queued and drains it, oldest first, soon after.  Workers in
+     * different processes (and readers) can work on the same MSV,
+     * since pending_rollup::process() is already safe to run
+     * concurrently.  A reader that finds rollups still pending
+     * processes them itself (it has to, to see the published values)
+     * and, if the backlog is over the threshold, also helps drain the
+     * queue.
+     *
+     * The queue is local to the process, so MSVs queued by a process
+     * that exits are left for their next reader, as before.
+     */
+    namespace rollup_service {
+      constexpr std::size_t default_help_threshold = 1024;
+
+      /*
+       * Starts (or resizes) the worker pool.  Readers help once more
+       * than help_threshold MSVs are waiting.
+       */
+      void start(std::size_t n_workers,
+                 std::size_t help_threshold = default_help_threshold);
+      void stop();
+      bool running();
+
+      /*
+       * Called from msv::add_rollup().  Does nothing unless the
+       * service is running.
+       */
+      void note_pending(const gc_ptr<msv> &m);
+
+      /*
+       * Called by readers that had to process rollups themselves.
+       */
+      void help_if_backlogged();
+
+      /*
+       * The number of MSVs waiting in this process's queue.
+       */
+      std::size_t backlog();
+      /*
+       * The number of queued MSVs processed by workers and helpers,
+       * and the time they spent doing it.
+       */
+      std::size_t n_processed();
+      std::chrono::nanoseconds time_spent();
+    }
+
+  }
+}
+
+#endif /* CORE_ROLLUP_H_ */
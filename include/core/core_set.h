@@ -0,0 +1,117 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_set.h
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#ifndef CORE_SET_H_
+#define CORE_SET_H_
+
+#include "core/core_fwd.h"
+#include "core/core_map.h"
+
+namespace mds {
+  namespace core {
+
+    /*
+     * managed_set<KK> is a managed_map from its elements to a
+     * (versioned) bool that says whether they are in the set, so
+     * membership is an O(1) expected lookup in the view, and two
+     * tasks only conflict if they touch the same element.  Since the
+     * MSVs hold bools rather than bindings, adding and removing don't
+     * allocate once an element has an entry.
+     *
+     * add() and remove() say whether they changed anything, so they
+     * read the element's MSV, and two tasks adding the same element
+     * will conflict.  add_all() writes blindly and never conflicts.
+     */
+    template <kind KK>
+    class managed_set : public managed_map<KK, kind::BOOL>
+    {
+      using base = managed_map<KK, kind::BOOL>;
+    public:
+      explicit managed_set(gc_token &gc) : base{gc} {}
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(managed_set)
+          .template WITH_SUPER(base);
+        return d;
+      }
+
+      bool contains(const kind_mv<KK> &k, const gc_ptr<view> &v) const {
+        return base::read(k, v);
+      }
+
+      /*
+       * Returns true if the element wasn't already there.
+       */
+      bool add(const kind_mv<KK> &k, const gc_ptr<view> &v) const {
+        return !base::write(k, v, true, ret_mode::prior_val);
+      }
+
+      /*
+       * Returns true if the element was there.
+       */
+      bool remove(const kind_mv<KK> &k, const gc_ptr<view> &v) const {
+        return base::remove(k, v);
+      }
+
+      /*
+       * Adds source(i) for i in [0,n).
+       */
+      template <typename Fn>
+      void add_all(std::size_t n, const gc_ptr<view> &v, Fn&& source) const {
+        base::write_all(n, v, [&](std::size_t i) {
+            return std::make_pair(source(i), true);
+          });
+      }
+
+      /*
+       * Calls fn(elt) for each element in the view.
+       */
+      template <typename Fn>
+      void for_each(const gc_ptr<view> &v, Fn&& fn) const {
+        base::for_each(v, [&](const kind_mv<KK> &k, bool) { fn(k); });
+      }
+    };
+
+    template <kind KK> inline
+    managed_value<managed_set<KK>>
+    create_managed_set()
+    {
+      gc_ptr<managed_set<KK>> s = make_gc<managed_set<KK>>();
+      gc_ptr<view> v = iso_context::shadowed(top_level_view);
+      return managed_value<managed_set<KK>>{s, v};
+    }
+
+  }
+}
+
+#endif /* CORE_SET_H_ */
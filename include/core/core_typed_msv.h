@@ -37,6 +37,9 @@
 #include "ruts/runtime_array.h"
 #include "core/core_msv.h"
 #include "core/core_coop.h"
+#include "core/core_watermark.h"
+#include "core/core_vc_table.h"
+#include <algorithm>
 #include <type_traits>
 
 namespace mds {
@@ -221,7 +224,25 @@ namespace mds {
       struct value : core::value {
         struct publish_t {};
         const val_type val;
-        gc_ptr<value> prior;
+        /*
+         * prior and skip are only ever changed by prune_before(),
+         * which cuts them to drop versions nobody can see any more.
+         */
+        std::atomic<gc_ptr<value>> prior;
+        /*
+         * Jump pointers (Myers' deterministic skip list).  skip
+         * points further down the chain than prior, such that
+         * walking from any node to one at any given depth takes a
+         * logarithmic number of steps.  skip_min_ts is no later than
+         * any timestamp among the nodes passed over (this one
+         * included), so a search for the first value before a
+         * timestamp can take the jump whenever skip_min_ts is not
+         * before it.  depth is the number of nodes from here to the
+         * end of the chain, before any pruning.
+         */
+        std::atomic<gc_ptr<value>> skip;
+        timestamp_t skip_min_ts;
+        std::size_t depth;
 
         static bool need_single_modifier(const gc_ptr<task> &t,
                                          const gc_ptr<value> &v)
@@ -239,17 +260,44 @@ namespace mds {
               const gc_ptr<task> &t = nullptr)
           : core::value{gc, time, false, need_single_modifier(t,p), t},
             val{v}, prior{p}
-        {}
+        {
+          link_skip();
+        }
         value(gc_token &gc, timestamp_t time, publish_t, const gc_ptr<value> &p)
           : core::value{gc, time, true, false, nullptr}, val{}, prior{p}
-        {}
+        {
+          link_skip();
+        }
+
+        void link_skip() {
+          skip = nullptr;
+          skip_min_ts = timestamp();
+          depth = 1;
+          gc_ptr<value> p = prior;
+          if (p == nullptr) {
+            return;
+          }
+          depth = p->depth+1;
+          gc_ptr<value> j = p->skip;
+          gc_ptr<value> jj = j == nullptr ? nullptr : j->skip.load();
+          if (jj != nullptr && p->depth - j->depth == j->depth - jj->depth) {
+            skip = jj;
+            skip_min_ts = std::min({timestamp(), p->skip_min_ts, j->skip_min_ts});
+          } else {
+            skip = p;
+            skip_min_ts = std::min(timestamp(), p->timestamp());
+          }
+        }
 
         const static auto &descriptor() {
           static gc_descriptor d =
 	    GC_DESC(value)
             .template WITH_SUPER(core::value)
 	    .template WITH_FIELD(&value::val)
-	    .template WITH_FIELD(&value::prior);
+	    .template WITH_FIELD(&value::prior)
+	    .template WITH_FIELD(&value::skip)
+	    .template WITH_FIELD(&value::skip_min_ts)
+	    .template WITH_FIELD(&value::depth);
           return d;
         }
         static gc_ptr<value> for_publish(timestamp_t time, const gc_ptr<value> &n) {
@@ -307,6 +355,11 @@ namespace mds {
           virtual void add_conflicts_below(value_chain *self,
                                            const gc_ptr<blocking_mod> &bm,
                                            const gc_ptr<value_chain> &except) = 0;
+          /*
+           * Drops values that no read at or after ts can see.  By
+           * default (read-only snapshots), there's nothing to drop.
+           */
+          virtual void prune_before(value_chain *self, timestamp_t ts) {}
         };
 
         gc_ptr<value> value_at(timestamp_t ts) const {
@@ -330,6 +383,9 @@ namespace mds {
           call_virtual(this, &virtuals::add_conflicts_below, bm, except);
         }
 
+        void prune_before(timestamp_t ts) {
+          call_virtual(this, &virtuals::prune_before, ts);
+        }
 
       }; // value_chain
 
@@ -349,14 +405,28 @@ namespace mds {
     private:
       using vc_array_ptr_t = versioned_gc_ptr<gc_array<value_chain>, 1>;
       static constexpr typename vc_array_ptr_t::template flag_id<0> replaced_by_map{};
-      using vc_map_ptr_t
-      = gc_ptr<small_gc_cuckoo_map<ruts::uniform_key, gc_ptr<value_chain>>>;
+      using vc_map_ptr_t = gc_ptr<vc_table<value_chain>>;
 
       std::atomic<gc_ptr<value_chain>> _top_level_vc{nullptr};
       typename vc_array_ptr_t::atomic_pointer _vc_array;
       std::atomic<vc_map_ptr_t> _vc_map;
 
       gc_ptr<value_chain> insert_vc(const gc_ptr<view> &);
+      /*
+       * The map, moved on to its replacement if it's been replaced.
+       */
+      vc_map_ptr_t current_vc_map() {
+        vc_map_ptr_t m = _vc_map;
+        if (m != nullptr && m->frozen()) {
+          m = ruts::try_change_value(_vc_map, m, m->latest()).resulting_value();
+        }
+        return m;
+      }
+      /*
+       * Prunes vc and the chains it reads through, if the watermark
+       * has moved since they were last pruned.
+       */
+      void prune_versions(const gc_ptr<value_chain> &vc);
     public:
       typed_msv(gc_token &gc)
 	: msv{gc} {
@@ -391,19 +461,20 @@ namespace mds {
       }
 
       /*
-       * lookup(v) is guaranteed to return a value chain.
+       * find(v) returns the value chain for v if there already is
+       * one and nullptr otherwise.
        */
-      gc_ptr<value_chain> lookup(const gc_ptr<view> &v) {
+      gc_ptr<value_chain> find(const gc_ptr<view> &v) {
         if (v == top_level_view) {
-          return lookup_top_level(v);
+          return _top_level_vc;
         }
         /*
          * We check the map first, because if we have one, we know we
          * won't have to worry about the array.
          */
-        vc_map_ptr_t m = _vc_map;
+        vc_map_ptr_t m = current_vc_map();
         if (m != nullptr) {
-          gc_ptr<value_chain> vc = (*m)[v->uuid()];
+          gc_ptr<value_chain> vc = (*m)[v];
           if (vc != nullptr) {
             assert(vc->get_view() == v);
             return vc;
@@ -417,6 +488,20 @@ namespace mds {
             }
           }
         }
+        return nullptr;
+      }
+
+      /*
+       * lookup(v) is guaranteed to return a value chain.
+       */
+      gc_ptr<value_chain> lookup(const gc_ptr<view> &v) {
+        if (v == top_level_view) {
+          return lookup_top_level(v);
+        }
+        gc_ptr<value_chain> vc = find(v);
+        if (vc != nullptr) {
+          return vc;
+        }
         /*
          * if we get here, we didn't find one, so we need to try to
          * insert it.  We might discover that we have one as we go.
@@ -429,6 +514,13 @@ namespace mds {
       val_type free_read(const gc_ptr<view> &v,
                          timestamp_t as_of = most_recent);
       val_type frozen_read(const gc_ptr<view> &v);
+      /*
+       * The same as frozen_read(), except that in a read-only
+       * snapshot it doesn't create a value chain for the view if
+       * there isn't one already.  The value there is fixed by the
+       * snapshot's time, so we can just read it from the parent.
+       */
+      val_type snapshot_read(const gc_ptr<view> &v);
       void roll_forward(const gc_ptr<view> &v) {
         modify(v, modify_op::roll_forward, val_type{});
       }
@@ -490,6 +582,7 @@ namespace mds {
          * order, to ensure that we give the right answer.
          */
         gc_ptr<value_chain> vc = lookup(v);
+        prune_versions(vc);
         gc_ptr<value> vn = vc->value_at(as_of);
         return vn != nullptr;
       }
@@ -510,6 +603,7 @@ namespace mds {
          * See comment in has_value()
          */
         gc_ptr<value_chain> vc = lookup(v);
+        prune_versions(vc);
         gc_ptr<value> vn = vc->value_at(as_of);
         return vn == nullptr ? val_type{} : vn->val;
       }
@@ -520,6 +614,31 @@ namespace mds {
       {
         process_rollups();
         gc_ptr<value_chain> vc = lookup(v);
+        prune_versions(vc);
+        return vc->frozen_read_in(GC_THIS);
+      }
+
+    template <kind K>
+    typename typed_msv<K>::val_type
+    typed_msv<K>::snapshot_read(const gc_ptr<view> &v)
+      {
+        const gc_ptr<iso_context> &c = v->context;
+        if (v->parent == nullptr || !c->is_snapshot() || !c->is_read_only()) {
+          return frozen_read(v);
+        }
+        process_rollups();
+        gc_ptr<value_chain> vc = find(v);
+        if (vc == nullptr) {
+          /*
+           * This is what ross_vc would have used as its value.
+           */
+          timestamp_t ts = c->publish_time_before(most_recent);
+          vc = lookup(v->parent);
+          prune_versions(vc);
+          gc_ptr<value> vn = vc->value_at(ts-1);
+          return vn == nullptr ? val_type{} : vn->val;
+        }
+        prune_versions(vc);
         return vc->frozen_read_in(GC_THIS);
       }
 
@@ -537,9 +656,23 @@ namespace mds {
          * grab the timestamp.
          */
         gc_ptr<value_chain> vc = lookup(v);
+        prune_versions(vc);
         return vc->modify_in(GC_THIS, op, arg, returning, guard);
       }
 
+    template <kind K>
+    void
+    typed_msv<K>::prune_versions(const gc_ptr<value_chain> &vc)
+      {
+        timestamp_t w = version_watermark::current();
+        if (w == 0) {
+          return;
+        }
+        for (gc_ptr<core::value_chain> c = vc; c != nullptr; c = c->get_parent()) {
+          std::static_pointer_cast<value_chain>(c)->prune_before(w);
+        }
+      }
+
     template <kind K>
     gc_ptr<typename typed_msv<K>::value_chain>
     typed_msv<K>::insert_vc(const gc_ptr<view> &v) {
@@ -600,22 +733,21 @@ namespace mds {
       /*
        * It's not in the array.  Do we need to create a map?
        */
-      vc_map_ptr_t current_map = _vc_map;
+      vc_map_ptr_t current_map = current_vc_map();
       if (current_map == nullptr) {
         /*
-         * There's no map, so we'll assume we have to create one.  As
-         * a rough estimate, we'll assume that there's no overlap
-         * between the existing array and the VCs for the new view,
-         * and then double it.
+         * There's no map, so we'll assume we have to create one,
+         * sized for the existing array and the VCs for the new view,
+         * assuming they don't overlap.  The map leaves itself room
+         * to grow.
          */
-        std::size_t cap = 2*(old_vcs.size()+level-1);
-        auto new_map = make_gc<typename vc_map_ptr_t::element_type>(cap);
+        gc_array_ptr<value_chain> vcs = old_array;
+        auto new_map = make_gc<typename vc_map_ptr_t::element_type>(vcs.size()+level);
         /*
          * Everything from the old array goes in
          */
-        gc_array_ptr<value_chain> vcs = old_array;
         for (auto vc : vcs) {
-          (*new_map)[vc->get_view()->uuid()] = vc;
+          new_map->put_new(vc->get_view(), vc);
         }
         auto rr = ruts::try_change_value(_vc_map, nullptr, new_map);
         current_map = rr.resulting_value();
@@ -639,7 +771,7 @@ namespace mds {
       /*
        * first we check if the map contains the one we're looking for.
        */
-      gc_ptr<value_chain> vc = (*current_map)[v->uuid()];
+      gc_ptr<value_chain> vc = (*current_map)[v];
       if (vc != nullptr) {
         return vc;
       }
@@ -653,21 +785,21 @@ namespace mds {
          */
         gc_ptr<value_chain> pvc = tlvc;
         for (auto a : v->ancestors) {
-          vc = (*current_map)[a->uuid()];
+          vc = (*current_map)[a];
           if (vc == nullptr) {
             vc = value_chain::for_view(a, pvc, GC_THIS);
-            auto rr = current_map->put_new(a->uuid(), vc);
+            auto rr = current_map->put_new(a, vc);
             pvc = rr.resulting_value;
           } else {
             pvc = vc;
           }
         }
-        vc = (*current_map)[v->uuid()];
+        vc = (*current_map)[v];
         if (vc != nullptr) {
           return vc;
         }
         vc = value_chain::for_view(v, pvc, GC_THIS);
-        auto rr = current_map->put_new(v->uuid(), vc);
+        auto rr = current_map->put_new(v, vc);
         assert(rr.resulting_value != nullptr);
         return rr.resulting_value;
       } else {
@@ -684,7 +816,7 @@ namespace mds {
           if (need_new) {
             nvc = value_chain::for_view(vcv, last_vc, GC_THIS);
           }
-          auto rr = current_map->put_new(vcv->uuid(), nvc);
+          auto rr = current_map->put_new(vcv, nvc);
           if (!rr) {
             need_new = true;
           }
@@ -0,0 +1,300 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_vc_table.h
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#ifndef CORE_VC_TABLE_H_
+#define CORE_VC_TABLE_H_
+
+#include "core/core_fwd.h"
+#include "core/core_context.h"
+#include "core/core_hash_trie.h"
+#include "core/core_watermark.h"
+#include "ruts/cas_loop.h"
+#include "mpgc/gc.h"
+#include <algorithm>
+#include <atomic>
+#include <cstdint>
+
+namespace mds {
+  namespace core {
+
+    /*
+     * vc_table<VC> maps views to an MSV's value chains once they no
+     * longer fit in the MSV's array of one line of descent.
+     *
+     * The first n_inline slots are searched in order, so the usual
+     * case of a handful of views needs no hashing.  After them
+     * comes an open-addressed table, probed linearly from the view's
+     * hash for at most max_probe slots.  A slot only ever goes from
+     * empty to holding a chain, and every thread probes the same
+     * slots for a view in the same order, so two threads adding the
+     * same view both end up at the first empty slot and the loser of
+     * the CAS finds the winner's chain there.
+     *
+     * When a view's probe sequence has no empty slot left, the table
+     * is replaced.  The table is frozen first and then copied into a
+     * new one, sized for what's still in use, and the new one is
+     * hung off _next.  Threads that find the table frozen carry on
+     * in the new one.  They bring along whatever they found or added
+     * in the old one, so it doesn't matter whether the copy saw it.
+     * A chain found in the table only counts once the table is seen
+     * not to be frozen after the find, so nobody keeps a chain that
+     * the new table has replaced.
+     *
+     * The copy leaves out chains whose views nobody reads any more:
+     * those with an oldest read time (see
+     * version_watermark::oldest_read_time()) below the watermark.
+     * These are the chains of snapshots that are no longer pinned,
+     * and of their descendants.  Chains in live contexts stay in the
+     * table for good.  A publish doesn't close a context, so we can't
+     * tell when a live context is finished with.
+     */
+    template <typename VC>
+    class vc_table : public gc_allocated {
+    public:
+      struct put_result {
+        bool installed;
+        gc_ptr<VC> resulting_value;
+        explicit operator bool() const {
+          return installed;
+        }
+      };
+    private:
+      using slots_t = gc_array<std::atomic<gc_ptr<VC>>>;
+      static constexpr std::size_t n_inline = 4;
+      static constexpr std::size_t max_probe = 8;
+      static constexpr std::size_t min_hashed = 16;
+
+      /*
+       * The number of hashed slots (a power of two), or zero.
+       */
+      const std::size_t _n_hashed;
+      const gc_ptr<slots_t> _slots;
+      std::atomic<bool> _frozen{false};
+      std::atomic<gc_ptr<vc_table>> _next{nullptr};
+
+      static std::size_t hashed_slots_for(std::size_t n) {
+        if (n <= n_inline) {
+          return 0;
+        }
+        std::size_t h = min_hashed;
+        while (h < 2*(n-n_inline)) {
+          h *= 2;
+        }
+        return h;
+      }
+
+      static std::uint64_t hash(const gc_ptr<view> &v) {
+        return mix_hash(ruts::hash1<ruts::uniform_key>()(v->uuid()));
+      }
+
+      static bool retired(const gc_ptr<VC> &vc, timestamp_t watermark) {
+        return watermark != 0
+          && version_watermark::oldest_read_time(vc->get_view()->context) < watermark;
+      }
+
+      /*
+       * Calls fn on each slot in v's probe sequence until it returns
+       * true.
+       */
+      template <typename Fn>
+      void probe(std::uint64_t h, Fn &&fn) const {
+        for (std::size_t i = 0; i < n_inline; i++) {
+          if (fn(_slots->at(i))) {
+            return;
+          }
+        }
+        const std::size_t n = std::min(max_probe, _n_hashed);
+        for (std::size_t i = 0; i < n; i++) {
+          if (fn(_slots->at(n_inline + ((h+i) & (_n_hashed-1))))) {
+            return;
+          }
+        }
+      }
+
+      gc_ptr<VC> find_here(const gc_ptr<view> &v, std::uint64_t h) const {
+        gc_ptr<VC> found = nullptr;
+        probe(h, [&](const std::atomic<gc_ptr<VC>> &s) {
+            gc_ptr<VC> vc = s;
+            if (vc == nullptr) {
+              return true;
+            }
+            if (vc->get_view() == v) {
+              found = vc;
+              return true;
+            }
+            return false;
+          });
+        return found;
+      }
+
+      /*
+       * Returns the chain for v, adding vc if there isn't one.
+       * Returns nullptr if v's probe sequence is full or if the
+       * table is frozen before vc could be added.
+       */
+      gc_ptr<VC> install_here(const gc_ptr<view> &v, const gc_ptr<VC> &vc,
+                              std::uint64_t h)
+      {
+        gc_ptr<VC> found = nullptr;
+        probe(h, [&](std::atomic<gc_ptr<VC>> &s) {
+            gc_ptr<VC> cur = s;
+            if (cur == nullptr) {
+              if (_frozen.load()) {
+                return true;
+              }
+              cur = ruts::try_change_value(s, nullptr, vc).resulting_value();
+            }
+            if (cur->get_view() == v) {
+              found = cur;
+              return true;
+            }
+            return false;
+          });
+        return found;
+      }
+
+      gc_ptr<vc_table> migrate() {
+        _frozen = true;
+        const std::size_t n_slots = n_inline + _n_hashed;
+        const timestamp_t w = version_watermark::current();
+        std::size_t n_live = 0;
+        for (std::size_t i = 0; i < n_slots; i++) {
+          gc_ptr<VC> vc = _slots->at(i);
+          if (vc != nullptr && !retired(vc, w)) {
+            n_live++;
+          }
+        }
+        /*
+         * Leave room to grow, so that a steady stream of new views
+         * doesn't migrate every few adds.  Nobody else can see the
+         * new table yet, so an add can only fail if a probe sequence
+         * fills up, and then we just try a bigger one.
+         */
+        for (std::size_t size = 2*n_live+1; ; size *= 2) {
+          gc_ptr<vc_table> t = make_gc<vc_table>(size);
+          bool fits = true;
+          for (std::size_t i = 0; fits && i < n_slots; i++) {
+            gc_ptr<VC> vc = _slots->at(i);
+            if (vc != nullptr && !retired(vc, w)) {
+              const gc_ptr<view> v = vc->get_view();
+              fits = t->install_here(v, vc, hash(v)) != nullptr;
+            }
+          }
+          if (fits) {
+            return ruts::try_change_value(_next, nullptr, t).resulting_value();
+          }
+        }
+      }
+
+      gc_ptr<vc_table> successor() {
+        gc_ptr<vc_table> n = _next;
+        return n != nullptr ? n : migrate();
+      }
+
+    public:
+      /*
+       * Sized to take n chains without having to grow.
+       */
+      explicit vc_table(gc_token &gc, std::size_t n = n_inline)
+        : gc_allocated{gc},
+          _n_hashed{hashed_slots_for(n)},
+          _slots{make_gc_array<std::atomic<gc_ptr<VC>>>(n_inline + _n_hashed)}
+      {}
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(vc_table)
+          .WITH_FIELD(&vc_table::_n_hashed)
+          .WITH_FIELD(&vc_table::_slots)
+          .WITH_FIELD(&vc_table::_frozen)
+          .WITH_FIELD(&vc_table::_next);
+        return d;
+      }
+
+      bool frozen() const {
+        return _frozen.load();
+      }
+
+      /*
+       * The table that has replaced this one, if any.
+       */
+      gc_ptr<vc_table> latest() {
+        gc_ptr<vc_table> t = GC_THIS;
+        for (gc_ptr<vc_table> n = t->_next; n != nullptr; n = n->_next) {
+          t = n;
+        }
+        return t;
+      }
+
+      /*
+       * Returns nullptr if there's no chain for v.
+       */
+      gc_ptr<VC> operator [](const gc_ptr<view> &v) {
+        const std::uint64_t h = hash(v);
+        gc_ptr<vc_table> t = GC_THIS;
+        while (true) {
+          gc_ptr<VC> vc = t->find_here(v, h);
+          if (!t->_frozen.load()) {
+            return vc;
+          }
+          t = t->successor();
+          if (vc != nullptr) {
+            return t->put_new(v, vc).resulting_value;
+          }
+        }
+      }
+
+      /*
+       * Adds vc as v's chain unless there already is one.  Either way,
+       * the result holds the chain that's there now.
+       */
+      put_result put_new(const gc_ptr<view> &v, const gc_ptr<VC> &vc) {
+        const std::uint64_t h = hash(v);
+        gc_ptr<vc_table> t = GC_THIS;
+        gc_ptr<VC> carried = vc;
+        while (true) {
+          gc_ptr<VC> found = t->install_here(v, carried, h);
+          if (found != nullptr) {
+            if (!t->_frozen.load()) {
+              return put_result{found == vc, found};
+            }
+            carried = found;
+          }
+          t = t->successor();
+        }
+      }
+    };
+
+  }
+}
+
+#endif /* CORE_VC_TABLE_H_ */
@@ -0,0 +1,178 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_watermark.h
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#ifndef CORE_WATERMARK_H_
+#define CORE_WATERMARK_H_
+
+#include "core/core_fwd.h"
+#include <chrono>
+
+namespace mds {
+  namespace core {
+
+    /*
+     * The watermark is the oldest timestamp at which any pinned
+     * context, in any attached process, might still read a value
+     * chain.  Versions that are only visible before it can be cut off
+     * (see typed_msv<K>::prune_versions()), so that the GC can
+     * reclaim them.
+     *
+     * We can't use reachability to tell which contexts are live,
+     * since value nodes refer to their write tasks and those refer to
+     * their contexts.  Instead, a context is considered live while
+     * it's pinned.  The API handle stores and mds::iso_ctxt pin the
+     * contexts they hold, and a pin also covers the context's
+     * ancestors.  Only snapshots (and their descendants) ever read
+     * below the most recent version, so pins on other contexts aren't
+     * recorded at all, and pinning them doesn't lock.  Pins that are
+     * recorded are striped by context.
+     *
+     * Each process keeps its pins locally and lowers its slot in the
+     * shared watermark_table whenever it adds one, so other processes
+     * see the new pin without waiting.  Slots are raised again (to
+     * reflect unpinned contexts and snapshots that have rolled
+     * forward) by refresh().  The watermark is the minimum over all
+     * slots and the current version as of the previous refresh().
+     * Lagging by one refresh covers contexts that are pinned just
+     * after they are created.
+     *
+     * Nothing is pruned until some process calls refresh(), normally
+     * from the compactor thread started by start_compactor().  A
+     * process that dies without unregistering leaves its slot set,
+     * which only holds the watermark back.
+     */
+    class watermark_table : public gc_allocated {
+      /*
+       * 0 means the slot is free, most_recent that the process has no
+       * pins.
+       */
+      gc_array_ptr<std::atomic<timestamp_t>> _slots;
+      std::atomic<std::size_t> _n_unslotted{0};
+      std::atomic<std::size_t> _values_pruned{0};
+      std::atomic<std::size_t> _bytes_pruned{0};
+    public:
+      static constexpr std::size_t default_n_slots = 1024;
+
+      explicit watermark_table(gc_token &gc, std::size_t n = default_n_slots)
+        : gc_allocated{gc}, _slots{make_gc_array<std::atomic<timestamp_t>>(n)}
+      {}
+
+      static const auto &descriptor() {
+        static gc_descriptor d =
+          GC_DESC(watermark_table)
+          .WITH_FIELD(&watermark_table::_slots)
+          .WITH_FIELD(&watermark_table::_n_unslotted)
+          .WITH_FIELD(&watermark_table::_values_pruned)
+          .WITH_FIELD(&watermark_table::_bytes_pruned);
+        return d;
+      }
+
+      /*
+       * Returns the index of the slot, or -1 if they're all taken.  A
+       * process without a slot keeps the watermark at zero while it's
+       * attached.
+       */
+      std::ptrdiff_t claim_slot();
+      void release_slot(std::ptrdiff_t i);
+
+      void lower_slot(std::ptrdiff_t i, timestamp_t ts);
+      void set_slot(std::ptrdiff_t i, timestamp_t ts);
+
+      /*
+       * The minimum over all claimed slots.  0 if some attached
+       * process doesn't have a slot.
+       */
+      timestamp_t oldest_pinned() const;
+
+      void note_pruned(std::size_t n_values, std::size_t n_bytes) {
+        _values_pruned.fetch_add(n_values, std::memory_order_relaxed);
+        _bytes_pruned.fetch_add(n_bytes, std::memory_order_relaxed);
+      }
+
+      std::size_t values_pruned() const {
+        return _values_pruned.load(std::memory_order_relaxed);
+      }
+
+      std::size_t bytes_pruned() const {
+        return _bytes_pruned.load(std::memory_order_relaxed);
+      }
+    };
+
+    namespace version_watermark {
+      /*
+       * Called from register_process() and unregister_process().
+       */
+      void attach();
+      void detach();
+
+      /*
+       * Pins nest, so each pin(c) must be matched by an unpin(c).
+       */
+      void pin(const gc_ptr<iso_context> &ctxt);
+      void unpin(const gc_ptr<iso_context> &ctxt);
+
+      /*
+       * The oldest time (as passed to value_before()) at which a read
+       * in ctxt might look at a value chain in ctxt or any of its
+       * ancestors.  most_recent if there is no such limit.
+       */
+      timestamp_t oldest_read_time(const gc_ptr<iso_context> &ctxt);
+
+      /*
+       * Recomputes this process's slot and the watermark, and returns
+       * the new watermark.
+       */
+      timestamp_t refresh();
+
+      /*
+       * The watermark as of the last refresh() in this process.
+       * Zero (prune nothing) before the first one.
+       */
+      timestamp_t current();
+
+      /*
+       * Starts (or changes the period of) a background thread that
+       * calls refresh() periodically.  Chains themselves are pruned
+       * lazily, the next time their MSV is accessed.
+       */
+      void start_compactor(std::chrono::milliseconds period);
+      void stop_compactor();
+
+      void note_pruned(std::size_t n_values, std::size_t n_bytes);
+      std::size_t values_pruned();
+      std::size_t bytes_pruned();
+    }
+
+  }
+}
+
+#endif /* CORE_WATERMARK_H_ */
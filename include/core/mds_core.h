@@ -43,10 +43,16 @@
 #include "core/core_context.h"
 #include "core/core_type.h"
 #include "core/core_array.h"
+#include "core/core_map.h"
+#include "core/core_list.h"
+#include "core/core_set.h"
 #include "core/core_record.h"
+#include "core/core_index.h"
 #include "core/core_msv.h"
 #include "core/core_task.h"
 #include "core/core_typed_msv.h"
 #include "core/core_conflict.h"
+#include "core/core_watermark.h"
+#include "core/core_rollup.h"
 
 #endif /* MDS_H_ */
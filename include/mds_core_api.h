@@ -44,6 +44,7 @@
 #include <algorithm>
 #include <type_traits>
 #include <mutex>
+#include <atomic>
 #include <locale>
 #include <stack>
 #include <type_traits>
@@ -142,6 +143,33 @@ namespace mds {
        mpgc::initialize();
        return mpgc::control_block().mem_stats.n_objects();
      }
+     /*
+      * Value chain versions cut off by pruning (see
+      * core::version_watermark) in all processes, and an estimate of
+      * the bytes the GC can reclaim as a result.
+      */
+     inline std::size_t n_values_pruned() {
+       ensure_process_registered();
+       return core::version_watermark::values_pruned();
+     }
+     inline std::size_t bytes_pruned() {
+       ensure_process_registered();
+       return core::version_watermark::bytes_pruned();
+     }
+     /*
+      * MSVs waiting for this process's rollup workers (see
+      * core::rollup_service), the number they (and helping readers)
+      * have processed, and the time spent doing it.
+      */
+     inline std::size_t rollup_backlog() {
+       return core::rollup_service::backlog();
+     }
+     inline std::size_t n_rollups_processed() {
+       return core::rollup_service::n_processed();
+     }
+     inline std::chrono::nanoseconds rollup_time() {
+       return core::rollup_service::time_spent();
+     }
      
    }
 
@@ -165,6 +193,11 @@ namespace mds {
    using core::unbound_name_ex;
    using core::read_only_context_ex;
    using core::unpublishable_context_ex;
+   using core::index_out_of_bounds_ex;
+   using core::unsupported_list_op_ex;
+   using core::unsupported_index_op_ex;
+   using core::populated_record_type_ex;
+   using core::index_kind;
 
    using core::view_type;
    using core::mod_type;
@@ -214,6 +247,23 @@ namespace mds {
    using const_managed_array_handle = managed_array_handle_cp<K, true>;
    using array_index_type = mds::core::array_index_type;
 
+   template <kind KK, bool ConstP> class managed_map_handle_cp;
+   template <kind KK>
+   using managed_map_handle = managed_map_handle_cp<KK, false>;
+   template <kind KK>
+   using const_managed_map_handle = managed_map_handle_cp<KK, true>;
+
+   template <kind KK, bool ConstP> class managed_set_handle_cp;
+   template <kind KK>
+   using managed_set_handle = managed_set_handle_cp<KK, false>;
+   template <kind KK>
+   using const_managed_set_handle = managed_set_handle_cp<KK, true>;
+
+   template <bool ConstP> class managed_list_handle_cp;
+   using managed_list_handle = managed_list_handle_cp<false>;
+   using const_managed_list_handle = managed_list_handle_cp<true>;
+   using core::list_usage;
+
    template <kind K, bool ConstP, typename LeafT = core::kind_type<K>,
        typename = std::enable_if_t<std::is_base_of<core::kind_type<K>, LeafT>::value> >
    class managed_type_handle_cp;
@@ -1013,6 +1063,11 @@ namespace mds {
        return is_null() ? iso_context_handle{} : pointer()->parent();
      }
 
+     /*
+      * If version pruning is running, ts must be no earlier than the
+      * snapshot time of some context pinned for as long as the
+      * result is used.
+      */
      iso_context_handle ro_snapshot_at(core::timestamp_t ts) const {
        return is_null()
            ? iso_context_handle{}
@@ -1150,6 +1205,14 @@ namespace mds {
        return handles;
      }
 
+     std::vector<std::vector<std::size_t>> redo_task_follows() const {
+       return pointer()->redo_task_follows();
+     }
+
+     std::vector<std::size_t> conflict_keys() const {
+       return pointer()->conflict_keys();
+     }
+
      bool prepare_for_redo() const {
        return pointer()->prepare_for_redo();
      }
@@ -1162,6 +1225,79 @@ namespace mds {
    {
      return pointer()->publish();
    }
+
+   /*
+    * While a context_pin exists, values the context (or any of its
+    * descendants) might read won't be pruned.  See
+    * core::version_watermark.  The handle stores pin the contexts
+    * they hold, so this is only needed for contexts held directly.
+    */
+   class context_pin {
+     core::external_gc_ptr<core::iso_context> _ctxt;
+   public:
+     context_pin() = default;
+     explicit context_pin(const iso_context_handle &h)
+       : _ctxt{h.pointer()}
+     {
+       core::version_watermark::pin(_ctxt);
+     }
+     context_pin(const context_pin &rhs)
+       : _ctxt{rhs._ctxt}
+     {
+       core::version_watermark::pin(_ctxt);
+     }
+     context_pin(context_pin &&rhs)
+       : _ctxt{std::move(rhs._ctxt)}
+     {
+       rhs._ctxt = nullptr;
+     }
+     context_pin &operator =(context_pin rhs) {
+       std::swap(_ctxt, rhs._ctxt);
+       return *this;
+     }
+     ~context_pin() {
+       core::version_watermark::unpin(_ctxt);
+     }
+   };
+
+   namespace version_pruning {
+     /*
+      * Starts a thread that recomputes the watermark every period.
+      * Until then (or an explicit refresh()), nothing is pruned.
+      */
+     inline void start(std::chrono::milliseconds period) {
+       ensure_process_registered();
+       core::version_watermark::start_compactor(period);
+     }
+     inline void stop() {
+       core::version_watermark::stop_compactor();
+     }
+     inline core::timestamp_t refresh() {
+       ensure_process_registered();
+       return core::version_watermark::refresh();
+     }
+     inline core::timestamp_t watermark() {
+       return core::version_watermark::current();
+     }
+   }
+
+   namespace rollup_workers {
+     /*
+      * Starts (or resizes) a pool of threads that process the
+      * rollups left on MSVs by publishes, so that readers don't have
+      * to.  Readers help once more than help_threshold MSVs are
+      * waiting.
+      */
+     inline void start(std::size_t n_workers,
+                       std::size_t help_threshold = core::rollup_service::default_help_threshold)
+     {
+       ensure_process_registered();
+       core::rollup_service::start(n_workers, help_threshold);
+     }
+     inline void stop() {
+       core::rollup_service::stop();
+     }
+   }
    
 
    template <bool ConstP>
@@ -1345,6 +1481,56 @@ namespace mds {
        return pointer()->name;
      }
 
+     /*
+      * Indexes the field if it isn't already.  Throws
+      * unsupported_index_op_ex if the field can't have an index of
+      * that kind or already has one of the other kind, and
+      * populated_record_type_ex if there isn't one yet and records of
+      * the type have already been created.
+      */
+     void ensure_index(index_kind ik) const {
+       pointer()->ensure_index(ik);
+     }
+
+     bool is_indexed() const {
+       return pointer()->index() != nullptr;
+     }
+
+     /*
+      * Calls fn(rec) for each record whose field is val in the
+      * current context.  Returns false (without calling fn) if the
+      * field isn't indexed.
+      */
+     template <typename Fn>
+     bool lookup(const api_type<K> &val, Fn&& fn) const {
+       core::gc_ptr<core::record_index<K>> idx = pointer()->index();
+       if (idx == nullptr) {
+         return false;
+       }
+       idx->lookup(to_core_val<K>(val), core::top_level_view,
+                   [&](const core::kind_mv<kind::RECORD> &r) {
+                     fn(api_type<kind::RECORD>(r));
+                   });
+       return true;
+     }
+
+     /*
+      * As lookup(), but for values in [lo, hi), in order.  Throws
+      * unsupported_index_op_ex unless the index is ORDERED.
+      */
+     template <typename Fn, typename T = api_type<K>, typename = std::enable_if_t<std::is_arithmetic<T>::value> >
+     bool lookup_range(const api_type<K> &lo, const api_type<K> &hi, Fn&& fn) const {
+       core::gc_ptr<core::record_index<K>> idx = pointer()->index();
+       if (idx == nullptr) {
+         return false;
+       }
+       idx->lookup_range(lo, hi, core::top_level_view,
+                         [&](const core::kind_mv<kind::RECORD> &r) {
+                           fn(api_type<kind::RECORD>(r));
+                         });
+       return true;
+     }
+
      const_record_type_handle rec_type() const;
      const_type_handle_for<K> field_type() const;
    };
@@ -1497,10 +1683,43 @@ namespace mds {
        return is_null() ? false : pointer()->has_value(i, view());
      }
 
+     /*
+      * Copies n elements starting at from into out[0..n), reading them
+      * all in the same (shadowed) view, as frozen_read() would.
+      */
+     template <typename Out>
+     void frozen_read_range(const array_index_type from,
+                            const array_size_type<K> n,
+                            Out *out) const
+     {
+       pointer()->frozen_read_range(from, n, view(),
+                                    [=](array_index_type i, const core::kind_mv<K> &v) {
+                                      out[i-from] = api_type<K>(v);
+                                    });
+     }
+
+     /*
+      * Writes in[0..n) to the n elements starting at from.
+      */
+     template <typename In>
+     void write_range(const array_index_type from,
+                      const array_size_type<K> n,
+                      const In *in) const
+     {
+       pointer()->write_range(from, n, view(),
+                              [=](array_index_type i) {
+                                return to_core_val<K>(api_type<K>(in[i-from]));
+                              });
+     }
+
      array_size_type<K> size() const {
        return pointer()->size;
      }
 
+     bool is_dense() const {
+       return pointer()->is_dense();
+     }
+
      managed_array_base_handle_cp<ConstP> as_base() {
        return managed_array_base_handle_cp<ConstP>(pointer(), view());
      }
@@ -1510,6 +1729,364 @@ namespace mds {
    template <>
    struct mv_wrapper<kind::ARRAY> : public use_handle<managed_array_base_handle> {};
 
+   /*
+    * A handle on a core::managed_map<KK>.  The map's values can be
+    * of any kind; the value kind is given to each call, and reading
+    * a value of a different kind throws incompatible_type_ex.
+    */
+   template <kind KK, bool ConstP>
+   struct managed_map_handle_cp
+   : public view_relative_handle<htarget_<ConstP,core::managed_map<KK>>>
+   {
+     using base = view_relative_handle<htarget_<ConstP,core::managed_map<KK>>>;
+     using typename base::value_type;
+     using non_const_type = managed_map_handle_cp<KK, false>;
+
+     template <bool CP> using when_less_const = typename constness<CP>::when_less_const;
+
+     using base::base;
+     using base::is_null;
+     using base::pointer;
+     using base::view;
+
+     managed_map_handle_cp() = default;
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_map_handle_cp(const managed_map_handle_cp<KK,CP> &rhs)
+     : base{rhs}
+     {}
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_map_handle_cp(managed_map_handle_cp<KK,CP> &&rhs)
+     : base{std::move(rhs)}
+     {}
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_map_handle_cp &
+     operator =(const managed_map_handle_cp<KK,CP> &rhs) {
+       base::operator =(rhs);
+       return *this;
+     }
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_map_handle_cp &
+     operator =(managed_map_handle_cp<KK,CP> &&rhs) {
+       base::operator =(std::move(rhs));
+       return *this;
+     }
+
+     uniform_key uuid() const {
+       return pointer()->uuid();
+     }
+
+     bool contains(const api_type<KK> &key) const {
+       return pointer()->read(to_core_val<KK>(key), view()).is_bound();
+     }
+
+     /*
+      * Returns false (and leaves out alone) if the key isn't there.
+      */
+     template <kind VK>
+     bool get(const api_type<KK> &key, api_type<VK> &out) const {
+       core::binding b = pointer()->read(to_core_val<KK>(key), view());
+       if (!b.is_bound()) {
+         return false;
+       }
+       out = api_type<VK>(b.template value<VK>());
+       return true;
+     }
+
+     /*
+      * Returns true if the key was already there, in which case its
+      * old value is put in *prior if that isn't null.
+      */
+     template <kind VK>
+     bool put(const api_type<KK> &key, const api_type<VK> &val,
+              api_type<VK> *prior = nullptr) const
+     {
+       core::binding b = core::binding::bound_to<VK>(to_core_val<VK>(val));
+       core::binding old = pointer()->write(to_core_val<KK>(key), view(), b,
+                                            ret_mode::prior_val);
+       return note_prior<VK>(old, prior);
+     }
+
+     template <kind VK>
+     bool remove(const api_type<KK> &key, api_type<VK> *prior = nullptr) const {
+       core::binding old = pointer()->remove(to_core_val<KK>(key), view());
+       return note_prior<VK>(old, prior);
+     }
+
+     /*
+      * Puts keys[0..n) -> vals[0..n), all in the same (shadowed)
+      * view.
+      */
+     template <kind VK, typename KIn, typename VIn>
+     void put_all(std::size_t n, const KIn *keys, const VIn *vals) const {
+       pointer()->write_all(n, view(), [=](std::size_t i) {
+           return std::make_pair(to_core_val<KK>(api_type<KK>(keys[i])),
+                                 core::binding::bound_to<VK>(to_core_val<VK>(api_type<VK>(vals[i]))));
+         });
+     }
+
+     /*
+      * Calls fn(key, val) for each key in the map.
+      */
+     template <kind VK, typename Fn>
+     void for_each(Fn&& fn) const {
+       pointer()->for_each(view(), [&](const core::kind_mv<KK> &k, const core::binding &b) {
+           fn(api_type<KK>(k), api_type<VK>(b.template value<VK>()));
+         });
+     }
+
+     std::size_t size() const {
+       return pointer()->size(view());
+     }
+
+   private:
+     template <kind VK>
+     static bool note_prior(const core::binding &old, api_type<VK> *prior) {
+       if (!old.is_bound()) {
+         return false;
+       }
+       if (prior != nullptr) {
+         *prior = api_type<VK>(old.template value<VK>());
+       }
+       return true;
+     }
+   };
+
+   /*
+    * A handle on a core::managed_set<KK>.
+    */
+   template <kind KK, bool ConstP>
+   struct managed_set_handle_cp
+   : public view_relative_handle<htarget_<ConstP,core::managed_set<KK>>>
+   {
+     using base = view_relative_handle<htarget_<ConstP,core::managed_set<KK>>>;
+     using typename base::value_type;
+     using non_const_type = managed_set_handle_cp<KK, false>;
+
+     template <bool CP> using when_less_const = typename constness<CP>::when_less_const;
+
+     using base::base;
+     using base::is_null;
+     using base::pointer;
+     using base::view;
+
+     managed_set_handle_cp() = default;
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_set_handle_cp(const managed_set_handle_cp<KK,CP> &rhs)
+     : base{rhs}
+     {}
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_set_handle_cp(managed_set_handle_cp<KK,CP> &&rhs)
+     : base{std::move(rhs)}
+     {}
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_set_handle_cp &
+     operator =(const managed_set_handle_cp<KK,CP> &rhs) {
+       base::operator =(rhs);
+       return *this;
+     }
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_set_handle_cp &
+     operator =(managed_set_handle_cp<KK,CP> &&rhs) {
+       base::operator =(std::move(rhs));
+       return *this;
+     }
+
+     uniform_key uuid() const {
+       return pointer()->uuid();
+     }
+
+     bool contains(const api_type<KK> &elt) const {
+       return pointer()->contains(to_core_val<KK>(elt), view());
+     }
+
+     /*
+      * Returns true if elt wasn't already in the set.
+      */
+     bool add(const api_type<KK> &elt) const {
+       return pointer()->add(to_core_val<KK>(elt), view());
+     }
+
+     /*
+      * Returns true if elt was in the set.
+      */
+     bool remove(const api_type<KK> &elt) const {
+       return pointer()->remove(to_core_val<KK>(elt), view());
+     }
+
+     /*
+      * Adds elts[0..n), all in the same (shadowed) view.
+      */
+     template <typename In>
+     void add_all(std::size_t n, const In *elts) const {
+       pointer()->add_all(n, view(), [=](std::size_t i) {
+           return to_core_val<KK>(api_type<KK>(elts[i]));
+         });
+     }
+
+     /*
+      * Calls fn(elt) for each element in the set.
+      */
+     template <typename Fn>
+     void for_each(Fn&& fn) const {
+       pointer()->for_each(view(), [&](const core::kind_mv<KK> &k) {
+           fn(api_type<KK>(k));
+         });
+     }
+
+     std::size_t size() const {
+       return pointer()->size(view());
+     }
+   };
+
+   /*
+    * A handle on a core::managed_list.  As with maps, the element
+    * kind is given to each call.  The calls that remove or replace
+    * an element return false (and leave *out alone) if there wasn't
+    * one.
+    */
+   template <bool ConstP>
+   struct managed_list_handle_cp
+   : public view_relative_handle<htarget_<ConstP,core::managed_list>>
+   {
+     using base = view_relative_handle<htarget_<ConstP,core::managed_list>>;
+     using typename base::value_type;
+     using non_const_type = managed_list_handle_cp<false>;
+     using size_type = core::managed_list::size_type;
+
+     template <bool CP> using when_less_const = typename constness<CP>::when_less_const;
+
+     using base::base;
+     using base::is_null;
+     using base::pointer;
+     using base::view;
+
+     managed_list_handle_cp() = default;
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_list_handle_cp(const managed_list_handle_cp<CP> &rhs)
+     : base{rhs}
+     {}
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_list_handle_cp(managed_list_handle_cp<CP> &&rhs)
+     : base{std::move(rhs)}
+     {}
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_list_handle_cp &
+     operator =(const managed_list_handle_cp<CP> &rhs) {
+       base::operator =(rhs);
+       return *this;
+     }
+
+     template <bool CP, typename = when_less_const<CP> >
+     managed_list_handle_cp &
+     operator =(managed_list_handle_cp<CP> &&rhs) {
+       base::operator =(std::move(rhs));
+       return *this;
+     }
+
+     uniform_key uuid() const {
+       return pointer()->uuid();
+     }
+
+     list_usage usage() const {
+       return pointer()->usage;
+     }
+
+     template <kind VK>
+     void add_last(const api_type<VK> &val) const {
+       pointer()->add_last(view(), core::binding::bound_to<VK>(to_core_val<VK>(val)));
+     }
+
+     /*
+      * Throws unsupported_list_op_ex unless the list is a DEQUE or
+      * LINKED_LIST.
+      */
+     template <kind VK>
+     void add_first(const api_type<VK> &val) const {
+       pointer()->add_first(view(), core::binding::bound_to<VK>(to_core_val<VK>(val)));
+     }
+
+     /*
+      * Appends in[0..n), all in the same (shadowed) view.
+      */
+     template <kind VK, typename In>
+     void add_all_last(size_type n, const In *in) const {
+       pointer()->add_all_last(n, view(), [=](size_type i) {
+           return core::binding::bound_to<VK>(to_core_val<VK>(api_type<VK>(in[i])));
+         });
+     }
+
+     template <kind VK>
+     bool remove_first(api_type<VK> &out) const {
+       return note_val<VK>(pointer()->remove_first(view()), out);
+     }
+
+     template <kind VK>
+     bool remove_last(api_type<VK> &out) const {
+       return note_val<VK>(pointer()->remove_last(view()), out);
+     }
+
+     template <kind VK>
+     bool first(api_type<VK> &out) const {
+       return note_val<VK>(pointer()->first(view()), out);
+     }
+
+     /*
+      * Throws index_out_of_bounds_ex if there are no more than i
+      * elements.
+      */
+     template <kind VK>
+     api_type<VK> get(size_type i) const {
+       return api_type<VK>(pointer()->get(i, view()).template value<VK>());
+     }
+
+     template <kind VK>
+     api_type<VK> set(size_type i, const api_type<VK> &val) const {
+       core::binding old = pointer()->set(i, view(),
+                                          core::binding::bound_to<VK>(to_core_val<VK>(val)));
+       return api_type<VK>(old.template value<VK>());
+     }
+
+     template <kind VK>
+     api_type<VK> remove_at(size_type i) const {
+       return api_type<VK>(pointer()->remove_at(i, view()).template value<VK>());
+     }
+
+     /*
+      * Calls fn(val) for each element, in order.
+      */
+     template <kind VK, typename Fn>
+     void for_each(Fn&& fn) const {
+       pointer()->for_each(view(), [&](const core::binding &b) {
+           fn(api_type<VK>(b.template value<VK>()));
+         });
+     }
+
+     size_type size() const {
+       return pointer()->size(view());
+     }
+
+   private:
+     template <kind VK>
+     static bool note_val(const core::binding &b, api_type<VK> &out) {
+       if (!b.is_bound()) {
+         return false;
+       }
+       out = api_type<VK>(b.template value<VK>());
+       return true;
+     }
+   };
+
    template <kind K, bool ConstP, typename LeafT, typename Enable>
    struct managed_type_handle_cp: public view_independent_handle<htarget_<ConstP, LeafT>>
    {
@@ -1676,6 +2253,14 @@ namespace mds {
        return pointer()->create_array(s);
      }
 
+     /*
+      * Only for primitive element kinds.  See core::managed_array<K>.
+      */
+     managed_array_handle<K>
+     create_dense_array(array_size_type<K> s, array_size_type<K> chunk_size) const {
+       return pointer()->create_dense_array(s, chunk_size);
+     }
+
      template <bool CP>
      bool is_same_as(const array_type_handle_cp<K, CP> &rhs) const {
        if (pointer() == rhs.pointer()) {
@@ -1742,6 +2327,29 @@ namespace mds {
    	return type;
      }
 
+   template<kind KK>
+     inline managed_map_handle<KK>
+     create_managed_map ()
+     {
+       ensure_process_registered ();
+       return core::create_managed_map<KK> ();
+     }
+
+   template<kind KK>
+     inline managed_set_handle<KK>
+     create_managed_set ()
+     {
+       ensure_process_registered ();
+       return core::create_managed_set<KK> ();
+     }
+
+   inline managed_list_handle
+   create_managed_list (list_usage u)
+   {
+     ensure_process_registered ();
+     return core::create_managed_list (u);
+   }
+
    template <bool ConstP>
    struct record_type_handle_cp : managed_type_handle_cp<kind::RECORD, ConstP, core::record_type>
    {
@@ -1785,6 +2393,15 @@ namespace mds {
      managed_record_handle create_record() const {
        return pointer()->create_record();
      }
+     /*
+      * Creates n records, calling fn on the handle of each.
+      */
+     template <typename Fn>
+     void create_records(std::size_t n, Fn &&fn) const {
+       pointer()->create_records(n, [&](const core::managed_value<core::managed_record> &r) {
+           fn(managed_record_handle{r});
+         });
+     }
      bool is_created() const {
        return is_null() ? false : pointer()->is_created();
      }
@@ -2053,6 +2670,15 @@ namespace mds {
      static namespace_handle global() {
        return namespace_handle{core::global_namespace, prevailing_view()};
      }
+     /*
+      * Changes whenever a name that was bound to a namespace might no
+      * longer be in some context.  A path resolved while it had a
+      * given value still resolves to the same namespace as long as it
+      * keeps that value.
+      */
+     static const core::namespace_version_t &version_stamp() {
+       return *core::namespace_version;
+     }
      /*
       * Throws illegal_path_ex if one of the segments on the path is not a namespace.
       * If one of the segments is unbound, returns a null namespace_handle.
@@ -2113,6 +2739,113 @@ namespace mds {
      return pointer()->field_in(rtype.pointer(), name.pointer(), create_if_absent);
    }
 
+   namespace handle_store_impl {
+     /*
+      * The handle stores below are consulted on every JNI call that
+      * turns a Java-held index into a handle, so they are written to
+      * avoid a process-wide lock.  Slots live in a segmented array
+      * whose segments double in size and are never moved or freed, so
+      * a slot's address is stable once it has been handed out and
+      * get() can read it without locking.  (This is safe because the
+      * caller is required to hold a reference on the index, so the
+      * slot can't be cleared or reused out from under it.)  Indices
+      * are allocated from an atomic counter, and freed indices go
+      * onto striped free lists, each with its own lock.
+      */
+     constexpr std::size_t n_stripes = 64;
+
+     template <typename Slot>
+     class segmented_slots {
+       static constexpr std::size_t first_segment_bits = 10;
+       static constexpr std::size_t n_segments = 48;
+       std::atomic<Slot *> _segments[n_segments];
+       std::atomic<std::size_t> _next{1};
+
+       static std::size_t segment_of(std::size_t j) {
+         return (63 - __builtin_clzll(j)) - first_segment_bits;
+       }
+       static std::size_t segment_size(std::size_t seg) {
+         return std::size_t{1} << (seg + first_segment_bits);
+       }
+
+       Slot *ensure_segment(std::size_t seg) {
+         Slot *s = _segments[seg].load(std::memory_order_acquire);
+         if (s == nullptr) {
+           Slot *fresh = new Slot[segment_size(seg)];
+           if (_segments[seg].compare_exchange_strong(s, fresh,
+                                                      std::memory_order_acq_rel)) {
+             s = fresh;
+           } else {
+             delete [] fresh;
+           }
+         }
+         return s;
+       }
+     public:
+       segmented_slots() {
+         for (auto &seg : _segments) {
+           seg.store(nullptr, std::memory_order_relaxed);
+         }
+       }
+       ~segmented_slots() {
+         for (auto &seg : _segments) {
+           delete [] seg.load(std::memory_order_relaxed);
+         }
+       }
+       segmented_slots(const segmented_slots &) = delete;
+       segmented_slots &operator =(const segmented_slots &) = delete;
+
+       /*
+        * Returns a never-before-used index.  The slot's segment is
+        * guaranteed to exist.
+        */
+       std::size_t allocate() {
+         std::size_t i = _next.fetch_add(1, std::memory_order_relaxed);
+         std::size_t j = i-1 + segment_size(0);
+         ensure_segment(segment_of(j));
+         return i;
+       }
+
+       /*
+        * i must be non-zero and must have been returned by allocate().
+        */
+       Slot &at(std::size_t i) {
+         std::size_t j = i-1 + segment_size(0);
+         std::size_t seg = segment_of(j);
+         Slot *s = _segments[seg].load(std::memory_order_acquire);
+         return s[j - segment_size(seg)];
+       }
+
+       std::size_t high_water_mark() const {
+         return _next.load(std::memory_order_relaxed)-1;
+       }
+     };
+
+     struct alignas(64) free_list_stripe {
+       std::mutex mutex;
+       std::vector<std::size_t> free_list;
+     };
+
+     /*
+      * Each thread is assigned a stripe round-robin the first time it
+      * asks.
+      */
+     inline std::size_t thread_stripe() {
+       static std::atomic<std::size_t> next_stripe{0};
+       static thread_local std::size_t stripe
+         = next_stripe.fetch_add(1, std::memory_order_relaxed) % n_stripes;
+       return stripe;
+     }
+
+     template <typename T>
+     inline std::size_t stripe_for(const T &handle) {
+       std::size_t h = std::hash<T>{}(handle);
+       h ^= h >> 29;
+       h *= 0x9E3779B97F4A7C15ULL;
+       return (h >> 32) % n_stripes;
+     }
+   }
+
    /*
     * This is a convenience class to allow stashing handles someplace
     * so that you can refer to them by an index, suitable for storing
@@ -2125,42 +2858,65 @@ namespace mds {
     *
     * index 0 is reserved to indicate a value of T{} (null handle,
     * null pointer, or zero value).  Otherwise, index i refers to the
-    * (i-1)th element of the vector.
+    * ith slot in the store.  get() doesn't lock.  Freed indices are
+    * kept on the freeing thread's stripe.  A store() that finds its
+    * own stripe empty takes one from another stripe if any are known
+    * to be free, since frees often all happen on one thread (e.g.,
+    * the Java side's handle releaser) while stores happen on many.
     */
    template <typename T>
    class handle_store {
    public:
      using index_type = std::size_t;
    private:
-     std::stack<std::size_t> _free_list;
-     std::vector<T> _handles;
-     mutable std::mutex _mutex;
+     handle_store_impl::segmented_slots<T> _handles;
+     handle_store_impl::free_list_stripe _stripes[handle_store_impl::n_stripes];
+     std::atomic<std::size_t> _n_free{0};
+
      static handle_store &_store() {
        static handle_store hs;
        return hs;
      }
+
+     index_type _pop_free(std::size_t s) {
+       auto &stripe = _stripes[s];
+       std::lock_guard<std::mutex> lock{stripe.mutex};
+       if (stripe.free_list.empty()) {
+         return 0;
+       }
+       index_type i = stripe.free_list.back();
+       stripe.free_list.pop_back();
+       _n_free.fetch_sub(1, std::memory_order_relaxed);
+       return i;
+     }
+
      index_type _store(const T &handle) {
        if (handle == T{}) {
          return 0;
        }
-       std::lock_guard<std::mutex> lock{_mutex};
-       if (_free_list.empty()) {
-         _handles.push_back(handle);
-         index_type i = _handles.size();
-         return i;
-       } else {
-         index_type i = _free_list.top();
-         _free_list.pop();
-         _handles[i-1] = handle;
-         return i;
+       std::size_t mine = handle_store_impl::thread_stripe();
+       index_type i = _pop_free(mine);
+       for (std::size_t k = 1;
+            i == 0 && k < handle_store_impl::n_stripes
+              && _n_free.load(std::memory_order_relaxed) != 0;
+            k++)
+       {
+         i = _pop_free((mine + k) % handle_store_impl::n_stripes);
+       }
+       if (i == 0) {
+         i = _handles.allocate();
        }
+       _handles.at(i) = handle;
+       return i;
      }
 
      void _free(index_type i) {
        if (i != 0) {
-         std::lock_guard<std::mutex> lock{_mutex};
-         _free_list.push(i);
-         _handles[i-1] = T{};
+         _handles.at(i) = T{};
+         auto &stripe = _stripes[handle_store_impl::thread_stripe()];
+         std::lock_guard<std::mutex> lock{stripe.mutex};
+         stripe.free_list.push_back(i);
+         _n_free.fetch_add(1, std::memory_order_relaxed);
        }
      }
 
@@ -2168,8 +2924,7 @@ namespace mds {
        if (i == 0) {
          return T{};
        }
-       std::lock_guard<std::mutex> lock{_mutex};
-       return _handles[i-1];
+       return _handles.at(i);
      }
    public:
      static index_type store(const T &handle) {
@@ -2184,6 +2939,30 @@ namespace mds {
 
    };
 
+   /*
+    * Called by unique_handle_store<T> when a handle enters the store
+    * and when its last reference is freed.
+    */
+   template <typename T>
+   struct handle_store_hooks {
+     static void on_enter(const T &) {}
+     static void on_leave(const T &) {}
+   };
+
+   template <>
+   struct handle_store_hooks<iso_context_handle> {
+     /*
+      * These only lock (a stripe) for snapshots and their
+      * descendants.  See version_watermark.
+      */
+     static void on_enter(const iso_context_handle &h) {
+       core::version_watermark::pin(h.pointer());
+     }
+     static void on_leave(const iso_context_handle &h) {
+       core::version_watermark::unpin(h.pointer());
+     }
+   };
+
    /*
     * This is a convenience class to allow stashing handles someplace
     * so that you can refer to them by an index, suitable for storing
@@ -2210,13 +2989,22 @@ namespace mds {
     * from store() includes an indication of whether the handle was
     * added to the store by this operation.
     *
-    * No effort is made to determine that the handle is not already in
-    * the store.  What is returned is a copy of the handle, so
-    * modifications are not preserved.
+    * What is returned is a copy of the handle, so modifications are
+    * not preserved.
     *
     * index 0 is reserved to indicate a value of T{} (null handle,
     * null pointer, or zero value).  Otherwise, index i refers to the
-    * (i-1)th element of the vector.
+    * ith slot in the store.
+    *
+    * get() and add_ref() don't lock, and free() only locks when the
+    * count hits zero.  The map from handles to indices is split into
+    * stripes (by handle hash), each with its own lock and free list,
+    * so store() only contends with stores of handles in the same
+    * stripe.  Counts are only incremented from zero by store() with
+    * the stripe locked, and a store() that finds an entry whose count
+    * has already dropped to zero (i.e., one that a racing free() is
+    * about to remove) allocates a new index rather than reviving it,
+    * so exactly one free() is responsible for removing each entry.
     */
    template <typename T>
    class unique_handle_store {
@@ -2232,70 +3020,88 @@ namespace mds {
      };
    private:
      struct counted_handle {
-       std::size_t count;
+       std::atomic<std::size_t> count{0};
        T handle;
-       counted_handle(const T &h) : count{0}, handle{h} {}
      };
-     std::stack<std::size_t> _free_list;
-     std::vector<counted_handle> _handles;
-     std::unordered_map<T,index_type> _known;
-     mutable std::mutex _mutex;
+     struct alignas(64) stripe_type : handle_store_impl::free_list_stripe {
+       std::unordered_map<T,index_type> known;
+     };
+     handle_store_impl::segmented_slots<counted_handle> _handles;
+     stripe_type _stripes[handle_store_impl::n_stripes];
+
      static unique_handle_store &_store() {
        static unique_handle_store hs;
        return hs;
      }
+
+     stripe_type &_stripe_for(const T &handle) {
+       return _stripes[handle_store_impl::stripe_for(handle)];
+     }
+
      return_type _store(const T &handle, bool inc_if_existsp) {
        if (handle == T{}) {
          return return_type{false, 0};
        }
-       std::lock_guard<std::mutex> lock{_mutex};
-       index_type &i = _known[handle];
-       bool is_new = i==0;
-       if (is_new) {
-         // This one was not in the map.
-         if (_free_list.empty()) {
-           _handles.push_back(handle);
-           i = _handles.size();
-         } else {
-           i = _free_list.top();
-           _free_list.pop();
-           _handles[i-1] = handle;
+       stripe_type &stripe = _stripe_for(handle);
+       std::lock_guard<std::mutex> lock{stripe.mutex};
+       index_type &i = stripe.known[handle];
+       if (i != 0) {
+         counted_handle &h = _handles.at(i);
+         std::size_t c = h.count.load(std::memory_order_acquire);
+         while (c != 0) {
+           if (!inc_if_existsp
+               || h.count.compare_exchange_weak(c, c+1, std::memory_order_acq_rel))
+           {
+             return return_type{false, i};
+           }
          }
+         // The count went to zero, so a racing free() owns the old
+         // slot.  We fall through and take a new one.
        }
-       if (is_new || inc_if_existsp) {
-         _handles[i-1].count++;
+       if (stripe.free_list.empty()) {
+         i = _handles.allocate();
+       } else {
+         i = stripe.free_list.back();
+         stripe.free_list.pop_back();
        }
-       return return_type{is_new, i};
+       counted_handle &h = _handles.at(i);
+       h.handle = handle;
+       h.count.store(1, std::memory_order_release);
+       handle_store_hooks<T>::on_enter(handle);
+       return return_type{true, i};
      }
 
      bool _free(index_type i) {
-       if (i != 0) {
-         std::lock_guard<std::mutex> lock{_mutex};
-         counted_handle &h = _handles[i-1];
-         if (--h.count == 0) {
-           _free_list.push(i);
-           _known.erase(h.handle);
-           h.handle = T{};
-           return true;
-         } else {
-           return false;
-         }
+       if (i == 0) {
+         return false;
+       }
+       counted_handle &h = _handles.at(i);
+       // We still hold a reference, so the handle can't change yet.
+       stripe_type &stripe = _stripe_for(h.handle);
+       if (h.count.fetch_sub(1, std::memory_order_acq_rel) != 1) {
+         return false;
+       }
+       std::lock_guard<std::mutex> lock{stripe.mutex};
+       auto p = stripe.known.find(h.handle);
+       if (p != stripe.known.end() && p->second == i) {
+         stripe.known.erase(p);
        }
-       return false;
+       handle_store_hooks<T>::on_leave(h.handle);
+       h.handle = T{};
+       stripe.free_list.push_back(i);
+       return true;
      }
 
      T _get(index_type i) {
        if (i == 0) {
          return T{};
        }
-       std::lock_guard<std::mutex> lock{_mutex};
-       return _handles[i-1].handle;
+       return _handles.at(i).handle;
      }
 
      void _add_ref(index_type i) {
        if (i != 0) {
-	 std::lock_guard<std::mutex> lock{_mutex};
-	 _handles[i-1].count++;
+         _handles.at(i).count.fetch_add(1, std::memory_order_relaxed);
        }
      }
    public:
@@ -2308,9 +3114,25 @@ namespace mds {
      static T get(index_type i) {
        return _store()._get(i);
      }
+     /*
+      * Returns a reference to the handle in the store rather than a
+      * copy.  The caller must hold a reference on i for as long as it
+      * uses the result.
+      */
+     static const T &peek(index_type i) {
+       static const T null_handle{};
+       return i == 0 ? null_handle : _store()._handles.at(i).handle;
+     }
      static void add_ref(index_type i) {
        _store()._add_ref(i);
      }
+     /*
+      * The number of indices ever handed out (including those
+      * currently on free lists).
+      */
+     static std::size_t high_water_mark() {
+       return _store()._handles.high_water_mark();
+     }
 
    };
  }
@@ -2368,6 +3190,27 @@ namespace ruts {
  struct hash2<mds::api::managed_array_handle_cp<K,CP>>
    : intrinsic_hash2<mds::api::managed_array_handle_cp<K,CP>> {};
 
+ template <mds::api::kind K, bool CP>
+ struct hash1<mds::api::managed_map_handle_cp<K,CP>>
+   : intrinsic_hash1<mds::api::managed_map_handle_cp<K,CP>> {};
+ template <mds::api::kind K, bool CP>
+ struct hash2<mds::api::managed_map_handle_cp<K,CP>>
+   : intrinsic_hash2<mds::api::managed_map_handle_cp<K,CP>> {};
+
+ template <mds::api::kind K, bool CP>
+ struct hash1<mds::api::managed_set_handle_cp<K,CP>>
+   : intrinsic_hash1<mds::api::managed_set_handle_cp<K,CP>> {};
+ template <mds::api::kind K, bool CP>
+ struct hash2<mds::api::managed_set_handle_cp<K,CP>>
+   : intrinsic_hash2<mds::api::managed_set_handle_cp<K,CP>> {};
+
+ template <bool CP>
+ struct hash1<mds::api::managed_list_handle_cp<CP>>
+   : intrinsic_hash1<mds::api::managed_list_handle_cp<CP>> {};
+ template <bool CP>
+ struct hash2<mds::api::managed_list_handle_cp<CP>>
+   : intrinsic_hash2<mds::api::managed_list_handle_cp<CP>> {};
+
  template <mds::api::kind K, bool CP>
  struct hash1<mds::api::record_field_handle_cp<K,CP>>
    : intrinsic_hash1<mds::api::record_field_handle_cp<K,CP>> {};
@@ -2437,6 +3280,15 @@ namespace std {
   template <mds::api::kind K, bool CP>
   struct hash<mds::api::managed_array_handle_cp<K,CP>> : ruts::delegate_hash<mds::api::managed_array_handle_cp<K,CP>> {};
 
+  template <mds::api::kind K, bool CP>
+  struct hash<mds::api::managed_map_handle_cp<K,CP>> : ruts::delegate_hash<mds::api::managed_map_handle_cp<K,CP>> {};
+
+  template <mds::api::kind K, bool CP>
+  struct hash<mds::api::managed_set_handle_cp<K,CP>> : ruts::delegate_hash<mds::api::managed_set_handle_cp<K,CP>> {};
+
+  template <bool CP>
+  struct hash<mds::api::managed_list_handle_cp<CP>> : ruts::delegate_hash<mds::api::managed_list_handle_cp<CP>> {};
+
   template <mds::api::kind K, bool CP, typename L>
   struct hash<mds::api::managed_type_handle_cp<K,CP,L>> : ruts::delegate_hash<mds::api::managed_type_handle_cp<K,CP,L>> {};
 
@@ -51,6 +51,15 @@ extern "C"
     exception_handler(jEnv, release<kind::ARRAY>, handleIndex);
   }
 
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_ArrayFieldProxy_releaseAll (JNIEnv *jEnv, jclass,
+                                                     jlongArray handleIndices)
+  {
+    exception_handler (jEnv, release_all<record_field_handle<kind::ARRAY>>, jEnv, handleIndices);
+  }
+
   JNIEXPORT
   jlong
   JNICALL
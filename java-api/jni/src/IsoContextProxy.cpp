@@ -56,6 +56,15 @@ JNICALL Java_com_hpl_mds_impl_IsoContextProxy_release
   });
 }
 
+JNIEXPORT
+void
+JNICALL Java_com_hpl_mds_impl_IsoContextProxy_releaseAll
+  (JNIEnv *jEnv, jclass,
+   jlongArray handleIndices)
+{
+  exception_handler(jEnv, release_all<iso_context_handle>, jEnv, handleIndices);
+}
+
 
 
 /*
@@ -0,0 +1,323 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+#include <jni.h>
+#include <vector>
+#include "mds-debug.h"
+#include "mds_core_api.h"                           // MDS Core API
+#include "mds_jni.h"
+#include "container_proxy.h"
+
+using namespace mds;
+using namespace mds::api;
+using namespace mds::jni;
+using namespace mds::jni::container_proxy;
+
+extern "C"
+{
+
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_releaseAll (JNIEnv *jEnv, jclass,
+						     jlongArray handleIndices)
+  {
+    exception_handler (jEnv, release_all<managed_list_handle>, jEnv, handleIndices);
+  }
+
+  /*
+   * usage has to be an ordinal of ManagedListProxy.Usage, which
+   * matches list_usage.
+   */
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_create (JNIEnv *jEnv, jclass,
+						 jint usage)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	indexed<managed_list_handle> l
+	  { create_managed_list (static_cast<list_usage> (usage))};
+	return l.return_index ();
+      });
+  }
+
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_addLast (JNIEnv *jEnv, jclass,
+						  jlong hIndex,
+						  jint valKind,
+						  jlong val)
+  {
+    ensure_thread_initialized (jEnv);
+    exception_handler (jEnv, [=]
+      {
+	with_elt_kind (valKind, [=](auto vt)
+	  {
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_list_handle> l
+	      { hIndex };
+	    l->template add_last<VK> (elt_bits<VK>::from_java (val));
+	  });
+      });
+  }
+
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_addFirst (JNIEnv *jEnv, jclass,
+						   jlong hIndex,
+						   jint valKind,
+						   jlong val)
+  {
+    ensure_thread_initialized (jEnv);
+    exception_handler (jEnv, [=]
+      {
+	with_elt_kind (valKind, [=](auto vt)
+	  {
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_list_handle> l
+	      { hIndex };
+	    l->template add_first<VK> (elt_bits<VK>::from_java (val));
+	  });
+      });
+  }
+
+  /*
+   * Appends the first n values in a single crossing.
+   */
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_addAllLast (JNIEnv *jEnv, jclass,
+						     jlong hIndex,
+						     jint valKind,
+						     jlongArray jVals,
+						     jint n)
+  {
+    ensure_thread_initialized (jEnv);
+    exception_handler (jEnv, [=]
+      {
+	std::vector<jlong> valBits = from_java_array (jEnv, jVals, n);
+	with_elt_kind (valKind, [&](auto vt)
+	  {
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_list_handle> l
+	      { hIndex };
+	    std::vector<api_type<VK>> vals;
+	    vals.reserve (n);
+	    for (jint i = 0; i < n; i++)
+	      {
+		vals.push_back (elt_bits<VK>::from_java (valBits[i]));
+	      }
+	    l->template add_all_last<VK> (n, vals.data ());
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_removeFirst (JNIEnv *jEnv, jclass,
+						      jlong hIndex,
+						      jint valKind,
+						      jbooleanArray found)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_elt_kind (valKind, [=](auto vt)
+	  {
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_list_handle> l
+	      { hIndex };
+	    api_type<VK> val {};
+	    bool f = l->template remove_first<VK> (val);
+	    note_found (jEnv, found, f);
+	    return f ? elt_bits<VK>::to_java (val) : jlong {0};
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_removeLast (JNIEnv *jEnv, jclass,
+						     jlong hIndex,
+						     jint valKind,
+						     jbooleanArray found)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_elt_kind (valKind, [=](auto vt)
+	  {
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_list_handle> l
+	      { hIndex };
+	    api_type<VK> val {};
+	    bool f = l->template remove_last<VK> (val);
+	    note_found (jEnv, found, f);
+	    return f ? elt_bits<VK>::to_java (val) : jlong {0};
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_peekFirst (JNIEnv *jEnv, jclass,
+						    jlong hIndex,
+						    jint valKind,
+						    jbooleanArray found)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_elt_kind (valKind, [=](auto vt)
+	  {
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_list_handle> l
+	      { hIndex };
+	    api_type<VK> val {};
+	    bool f = l->template first<VK> (val);
+	    note_found (jEnv, found, f);
+	    return f ? elt_bits<VK>::to_java (val) : jlong {0};
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_get (JNIEnv *jEnv, jclass,
+					      jlong hIndex,
+					      jint valKind,
+					      jlong index)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_elt_kind (valKind, [=](auto vt)
+	  {
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_list_handle> l
+	      { hIndex };
+	    return elt_bits<VK>::to_java (l->template get<VK> (index));
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_set (JNIEnv *jEnv, jclass,
+					      jlong hIndex,
+					      jint valKind,
+					      jlong index,
+					      jlong val)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_elt_kind (valKind, [=](auto vt)
+	  {
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_list_handle> l
+	      { hIndex };
+	    return elt_bits<VK>::to_java (l->template set<VK> (index, elt_bits<VK>::from_java (val)));
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_removeAt (JNIEnv *jEnv, jclass,
+						   jlong hIndex,
+						   jint valKind,
+						   jlong index)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_elt_kind (valKind, [=](auto vt)
+	  {
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_list_handle> l
+	      { hIndex };
+	    return elt_bits<VK>::to_java (l->template remove_at<VK> (index));
+	  });
+      });
+  }
+
+  /*
+   * Returns the elements of the list, in order.
+   */
+  JNIEXPORT
+  jlongArray
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_elements (JNIEnv *jEnv, jclass,
+						   jlong hIndex,
+						   jint valKind)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	std::vector<jlong> bits;
+	with_elt_kind (valKind, [&](auto vt)
+	  {
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_list_handle> l
+	      { hIndex };
+	    l->template for_each<VK> ([&](const api_type<VK> &v)
+	      {
+		bits.push_back (elt_bits<VK>::to_java (v));
+	      });
+	  });
+	return to_java_array (jEnv, bits);
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedListProxy_size (JNIEnv *jEnv, jclass,
+					       jlong hIndex)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	pinned<managed_list_handle> l
+	  { hIndex };
+	return static_cast<jlong> (l->size ());
+      });
+  }
+
+}
@@ -0,0 +1,273 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+#include <jni.h>
+#include <vector>
+#include "mds-debug.h"
+#include "mds_core_api.h"                           // MDS Core API
+#include "mds_jni.h"
+#include "container_proxy.h"
+
+using namespace mds;
+using namespace mds::api;
+using namespace mds::jni;
+using namespace mds::jni::container_proxy;
+
+extern "C"
+{
+
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedMapProxy_releaseAll (JNIEnv *jEnv, jclass,
+						    jint keyKind,
+						    jlongArray handleIndices)
+  {
+    exception_handler (jEnv, [=]
+      {
+	with_key_kind (keyKind, [=](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    release_all<managed_map_handle<KK>> (jEnv, handleIndices);
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedMapProxy_create (JNIEnv *jEnv, jclass,
+						jint keyKind)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_key_kind (keyKind, [](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    indexed<managed_map_handle<KK>> m
+	      { create_managed_map<KK> ()};
+	    return m.return_index ();
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jboolean
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedMapProxy_containsKey (JNIEnv *jEnv, jclass,
+						     jint keyKind,
+						     jlong hIndex,
+						     jlong key)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_key_kind (keyKind, [=](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    pinned<managed_map_handle<KK>> m
+	      { hIndex };
+	    return static_cast<jboolean> (m->contains (elt_bits<KK>::from_java (key)));
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedMapProxy_get (JNIEnv *jEnv, jclass,
+					     jint keyKind,
+					     jlong hIndex,
+					     jlong key,
+					     jint valKind,
+					     jbooleanArray found)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_kinds (keyKind, valKind, [=](auto kt, auto vt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_map_handle<KK>> m
+	      { hIndex };
+	    api_type<VK> val {};
+	    bool f = m->template get<VK> (elt_bits<KK>::from_java (key), val);
+	    note_found (jEnv, found, f);
+	    return f ? elt_bits<VK>::to_java (val) : jlong {0};
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedMapProxy_put (JNIEnv *jEnv, jclass,
+					     jint keyKind,
+					     jlong hIndex,
+					     jlong key,
+					     jint valKind,
+					     jlong val,
+					     jbooleanArray found)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_kinds (keyKind, valKind, [=](auto kt, auto vt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_map_handle<KK>> m
+	      { hIndex };
+	    api_type<VK> prior {};
+	    bool f = m->template put<VK> (elt_bits<KK>::from_java (key),
+					  elt_bits<VK>::from_java (val),
+					  &prior);
+	    note_found (jEnv, found, f);
+	    return f ? elt_bits<VK>::to_java (prior) : jlong {0};
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedMapProxy_remove (JNIEnv *jEnv, jclass,
+						jint keyKind,
+						jlong hIndex,
+						jlong key,
+						jint valKind,
+						jbooleanArray found)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_kinds (keyKind, valKind, [=](auto kt, auto vt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_map_handle<KK>> m
+	      { hIndex };
+	    api_type<VK> prior {};
+	    bool f = m->template remove<VK> (elt_bits<KK>::from_java (key), &prior);
+	    note_found (jEnv, found, f);
+	    return f ? elt_bits<VK>::to_java (prior) : jlong {0};
+	  });
+      });
+  }
+
+  /*
+   * Puts the first n keys and values in a single crossing.
+   */
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedMapProxy_putAll (JNIEnv *jEnv, jclass,
+						jint keyKind,
+						jlong hIndex,
+						jlongArray jKeys,
+						jint valKind,
+						jlongArray jVals,
+						jint n)
+  {
+    ensure_thread_initialized (jEnv);
+    exception_handler (jEnv, [=]
+      {
+	std::vector<jlong> keyBits = from_java_array (jEnv, jKeys, n);
+	std::vector<jlong> valBits = from_java_array (jEnv, jVals, n);
+	with_kinds (keyKind, valKind, [&](auto kt, auto vt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_map_handle<KK>> m
+	      { hIndex };
+	    std::vector<api_type<KK>> keys;
+	    std::vector<api_type<VK>> vals;
+	    keys.reserve (n);
+	    vals.reserve (n);
+	    for (jint i = 0; i < n; i++)
+	      {
+		keys.push_back (elt_bits<KK>::from_java (keyBits[i]));
+		vals.push_back (elt_bits<VK>::from_java (valBits[i]));
+	      }
+	    m->template put_all<VK> (n, keys.data (), vals.data ());
+	  });
+      });
+  }
+
+  /*
+   * Returns the keys and values in the map, interleaved.
+   */
+  JNIEXPORT
+  jlongArray
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedMapProxy_entries (JNIEnv *jEnv, jclass,
+						 jint keyKind,
+						 jlong hIndex,
+						 jint valKind)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	std::vector<jlong> bits;
+	with_kinds (keyKind, valKind, [&](auto kt, auto vt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    constexpr kind VK = decltype(vt)::value;
+	    pinned<managed_map_handle<KK>> m
+	      { hIndex };
+	    m->template for_each<VK> ([&](const api_type<KK> &k, const api_type<VK> &v)
+	      {
+		bits.push_back (elt_bits<KK>::to_java (k));
+		bits.push_back (elt_bits<VK>::to_java (v));
+	      });
+	  });
+	return to_java_array (jEnv, bits);
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedMapProxy_size (JNIEnv *jEnv, jclass,
+					      jint keyKind,
+					      jlong hIndex)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_key_kind (keyKind, [=](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    pinned<managed_map_handle<KK>> m
+	      { hIndex };
+	    return static_cast<jlong> (m->size ());
+	  });
+      });
+  }
+
+}
@@ -32,6 +32,7 @@
 #include <jni.h>
 #include "mds_core_api.h"                                 // MDS Core API
 #include "mds_jni.h"
+#include "container_proxy.h"
 
 #include <iostream>
 
@@ -57,6 +58,15 @@ extern "C"
       });
   }
 
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedRecordProxy_releaseAll (JNIEnv *jEnv, jclass,
+                                                        jlongArray handleIndices)
+  {
+    exception_handler (jEnv, release_all<managed_record_handle>, jEnv, handleIndices);
+  }
+
   JNIEXPORT
   jlong
   JNICALL
@@ -105,6 +115,33 @@ extern "C"
       });
   }
 
+  /*
+   * Creates n records in one call and returns their handle indices.
+   */
+  JNIEXPORT
+  jlongArray
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedRecordProxy_createRecords (JNIEnv *jEnv, jclass,
+							  jlong recTypeHIndex,
+							  jint n)
+  {
+    ensure_thread_initialized(jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	pinned<record_type_handle> rt
+	  { recTypeHIndex};
+	std::vector<jlong> recs;
+	recs.reserve(n);
+	rt->create_records(n, [&](const managed_record_handle &r)
+	  {
+	    indexed<managed_record_handle> ri
+	      { r};
+	    recs.push_back(ri.return_index());
+	  });
+	return container_proxy::to_java_array(jEnv, recs);
+      });
+  }
+
   JNIEXPORT
   jlong
   JNICALL
@@ -0,0 +1,218 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+#include <jni.h>
+#include <vector>
+#include "mds-debug.h"
+#include "mds_core_api.h"                           // MDS Core API
+#include "mds_jni.h"
+#include "container_proxy.h"
+
+using namespace mds;
+using namespace mds::api;
+using namespace mds::jni;
+using namespace mds::jni::container_proxy;
+
+extern "C"
+{
+
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedSetProxy_releaseAll (JNIEnv *jEnv, jclass,
+						    jint eltKind,
+						    jlongArray handleIndices)
+  {
+    exception_handler (jEnv, [=]
+      {
+	with_key_kind (eltKind, [=](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    release_all<managed_set_handle<KK>> (jEnv, handleIndices);
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedSetProxy_create (JNIEnv *jEnv, jclass,
+						jint eltKind)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_key_kind (eltKind, [](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    indexed<managed_set_handle<KK>> s
+	      { create_managed_set<KK> ()};
+	    return s.return_index ();
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jboolean
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedSetProxy_contains (JNIEnv *jEnv, jclass,
+						  jint eltKind,
+						  jlong hIndex,
+						  jlong elt)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_key_kind (eltKind, [=](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    pinned<managed_set_handle<KK>> s
+	      { hIndex };
+	    return static_cast<jboolean> (s->contains (elt_bits<KK>::from_java (elt)));
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jboolean
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedSetProxy_add (JNIEnv *jEnv, jclass,
+					     jint eltKind,
+					     jlong hIndex,
+					     jlong elt)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_key_kind (eltKind, [=](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    pinned<managed_set_handle<KK>> s
+	      { hIndex };
+	    return static_cast<jboolean> (s->add (elt_bits<KK>::from_java (elt)));
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jboolean
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedSetProxy_remove (JNIEnv *jEnv, jclass,
+						jint eltKind,
+						jlong hIndex,
+						jlong elt)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_key_kind (eltKind, [=](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    pinned<managed_set_handle<KK>> s
+	      { hIndex };
+	    return static_cast<jboolean> (s->remove (elt_bits<KK>::from_java (elt)));
+	  });
+      });
+  }
+
+  /*
+   * Adds the first n elements in a single crossing.
+   */
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedSetProxy_addAll (JNIEnv *jEnv, jclass,
+						jint eltKind,
+						jlong hIndex,
+						jlongArray jElts,
+						jint n)
+  {
+    ensure_thread_initialized (jEnv);
+    exception_handler (jEnv, [=]
+      {
+	std::vector<jlong> eltBits = from_java_array (jEnv, jElts, n);
+	with_key_kind (eltKind, [&](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    pinned<managed_set_handle<KK>> s
+	      { hIndex };
+	    std::vector<api_type<KK>> elts;
+	    elts.reserve (n);
+	    for (jint i = 0; i < n; i++)
+	      {
+		elts.push_back (elt_bits<KK>::from_java (eltBits[i]));
+	      }
+	    s->add_all (n, elts.data ());
+	  });
+      });
+  }
+
+  JNIEXPORT
+  jlongArray
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedSetProxy_elements (JNIEnv *jEnv, jclass,
+						  jint eltKind,
+						  jlong hIndex)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	std::vector<jlong> bits;
+	with_key_kind (eltKind, [&](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    pinned<managed_set_handle<KK>> s
+	      { hIndex };
+	    s->for_each ([&](const api_type<KK> &e)
+	      {
+		bits.push_back (elt_bits<KK>::to_java (e));
+	      });
+	  });
+	return to_java_array (jEnv, bits);
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedSetProxy_size (JNIEnv *jEnv, jclass,
+					      jint eltKind,
+					      jlong hIndex)
+  {
+    ensure_thread_initialized (jEnv);
+    return exception_handler_wr (jEnv, [=]
+      {
+	return with_key_kind (eltKind, [=](auto kt)
+	  {
+	    constexpr kind KK = decltype(kt)::value;
+	    pinned<managed_set_handle<KK>> s
+	      { hIndex };
+	    return static_cast<jlong> (s->size ());
+	  });
+      });
+  }
+
+}
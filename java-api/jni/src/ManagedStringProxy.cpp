@@ -30,6 +30,7 @@
 
 #include "mds-debug.h"
 #include <string>
+#include <vector>
 #include <jni.h>
 #include "mds_core_api.h"                                // MDS Core API
 #include "mds_jni.h"
@@ -54,6 +55,15 @@ extern "C"
       });
   }
 
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedStringProxy_releaseAll (JNIEnv *jEnv, jclass,
+                                                        jlongArray handleIndices)
+  {
+    exception_handler (jEnv, release_all<interned_string_handle>, jEnv, handleIndices);
+  }
+
   /* Class:     com_hpl_mds_impl_ManagedStringProxy
    * Method:    sameString
    * Signature: (JJ)Z
@@ -167,6 +177,41 @@ extern "C"
   });
   }
 
+  /*
+   * Interns an array of (non-null) strings, returning their handles.
+   * The characters are copied out of each Java string, since interning
+   * may block and we can't do that inside a critical region.
+   */
+  JNIEXPORT
+  jlongArray
+  JNICALL
+  Java_com_hpl_mds_impl_ManagedStringProxy_internAll (JNIEnv *jEnv, jclass,
+						      jobjectArray strings)
+  {
+    return exception_handler_wr (
+	jEnv, [&]
+	  {
+	    jsize n = jEnv->GetArrayLength(strings);
+	    std::vector<jlong> handles(n);
+	    std::vector<jchar> buf;
+	    for (jsize i = 0; i < n; i++)
+	      {
+		jstring s = static_cast<jstring>(jEnv->GetObjectArrayElement(strings, i));
+		jsize len = jEnv->GetStringLength(s);
+		buf.resize(len);
+		jEnv->GetStringRegion(s, 0, len, buf.data());
+		jEnv->DeleteLocalRef(s);
+		const char16_t *wcs = reinterpret_cast<const char16_t *>(buf.data());
+		indexed<interned_string_handle> msp
+		  { intern(wcs, len)};
+		handles[i] = msp.return_index();
+	      }
+	    jlongArray array = jEnv->NewLongArray(n);
+	    jEnv->SetLongArrayRegion(array, 0, n, handles.data());
+	    return array;
+	  });
+  }
+
   /*
    * Class:     com_hpl_mds_impl_ManagedStringProxy
    * Method:    toString
@@ -188,13 +233,16 @@ extern "C"
 	indexed<interned_string_handle> is
 	  { h};
 	/*
-	 * Unfortunately, there's no simple way to construct
-	 * a java string from pair of iterators, so we actually
-	 * wind up copying twice.  Sigh.
+	 * The characters are contiguous in the managed heap, so we
+	 * can build the Java string straight from them.
 	 */
-	basic_string<jchar> s
-	  { is->cbegin(), is->cend()};
-	return jEnv->NewString(s.c_str(), s.length());
+	std::size_t len = is->length();
+	if (len == 0)
+	  {
+	    return jEnv->NewString(nullptr, 0);
+	  }
+	const jchar *chars = reinterpret_cast<const jchar *>(&(*is->pointer())[0]);
+	return jEnv->NewString(chars, len);
       });
   }
 
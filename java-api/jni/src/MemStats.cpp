@@ -91,5 +91,107 @@ extern "C"
       });
   }
 
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_MemStats__1nValuesPruned (JNIEnv *jEnv, jclass)
+  {
+    return exception_handler_wr (jEnv, [=]
+      {
+	return mem_stats::n_values_pruned();
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_MemStats__1bytesPruned (JNIEnv *jEnv, jclass)
+  {
+    return exception_handler_wr (jEnv, [=]
+      {
+	return mem_stats::bytes_pruned();
+      });
+  }
+
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_MemStats__1startVersionPruning (JNIEnv *jEnv, jclass,
+						   jlong periodMillis)
+  {
+    exception_handler (jEnv, [=]
+      {
+	version_pruning::start(std::chrono::milliseconds(periodMillis));
+      });
+  }
+
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_MemStats__1stopVersionPruning (JNIEnv *jEnv, jclass)
+  {
+    exception_handler (jEnv, [=]
+      {
+	version_pruning::stop();
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_MemStats__1rollupBacklog (JNIEnv *jEnv, jclass)
+  {
+    return exception_handler_wr (jEnv, [=]
+      {
+	return mem_stats::rollup_backlog();
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_MemStats__1nRollupsProcessed (JNIEnv *jEnv, jclass)
+  {
+    return exception_handler_wr (jEnv, [=]
+      {
+	return mem_stats::n_rollups_processed();
+      });
+  }
+
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_MemStats__1rollupNanos (JNIEnv *jEnv, jclass)
+  {
+    return exception_handler_wr (jEnv, [=]
+      {
+	return static_cast<jlong>(mem_stats::rollup_time().count());
+      });
+  }
+
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_MemStats__1startRollupWorkers (JNIEnv *jEnv, jclass,
+						  jint nWorkers,
+						  jlong helpThreshold)
+  {
+    exception_handler (jEnv, [=]
+      {
+	rollup_workers::start(nWorkers, helpThreshold);
+      });
+  }
+
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_MemStats__1stopRollupWorkers (JNIEnv *jEnv, jclass)
+  {
+    exception_handler (jEnv, [=]
+      {
+	rollup_workers::stop();
+      });
+  }
+
 }
 
@@ -50,6 +50,15 @@ extern "C"
       });
   }
 
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_NamespaceProxy_releaseAll (JNIEnv *jEnv, jclass,
+                                                    jlongArray handleIndices)
+  {
+    exception_handler (jEnv, release_all<namespace_handle>, jEnv, handleIndices);
+  }
+
   JNIEXPORT
   jlong
   JNICALL
@@ -64,6 +73,21 @@ extern "C"
       });
   }
 
+  /*
+   * The namespace version stamp, so the Java side can check its
+   * cached paths with a single call.  The load is acquire, so a stamp
+   * that hasn't moved means nothing the cache relies on has been
+   * dropped.  It only touches an atomic, so it skips the thread
+   * initialization and exception handling that other calls need.
+   */
+  JNIEXPORT
+  jlong
+  JNICALL
+  Java_com_hpl_mds_impl_NamespaceProxy_versionStamp (JNIEnv *, jclass)
+  {
+    return static_cast<jlong>(namespace_handle::version_stamp().load(std::memory_order_acquire));
+  }
+
   JNIEXPORT
   jlong
   JNICALL
@@ -51,6 +51,15 @@ JNICALL Java_com_hpl_mds_impl_PubResultProxy_release
     });
 }
 
+JNIEXPORT
+void
+JNICALL Java_com_hpl_mds_impl_PubResultProxy_releaseAll
+  (JNIEnv *jEnv, jclass,
+   jlongArray handleIndices)
+{
+  exception_handler(jEnv, release_all<publication_attempt_handle>, jEnv, handleIndices);
+}
+
 JNIEXPORT
 jboolean
 JNICALL
@@ -140,6 +149,48 @@ Java_com_hpl_mds_impl_PubResultProxy_redoTasksByStartTime
     });
 }
 
+/*
+ * The follow lists are flattened as, for each task in start-time
+ * order, the number of tasks that follow it and then their positions.
+ */
+JNIEXPORT
+jintArray
+JNICALL
+Java_com_hpl_mds_impl_PubResultProxy_redoTaskFollows
+  (JNIEnv *jEnv, jclass,
+   jlong handleIndex)
+{
+  return exception_handler_wr(jEnv, [=]{
+      indexed<publication_attempt_handle> self { handleIndex };
+      std::vector<std::vector<std::size_t>> follows = self->redo_task_follows();
+      std::vector<jint> flat;
+      for (const auto &f : follows) {
+        flat.push_back(f.size());
+        flat.insert(flat.end(), f.begin(), f.end());
+      }
+      jintArray array = jEnv->NewIntArray(flat.size());
+      jEnv->SetIntArrayRegion(array, 0, flat.size(), flat.data());
+      return array;
+    });
+}
+
+JNIEXPORT
+jlongArray
+JNICALL
+Java_com_hpl_mds_impl_PubResultProxy_conflictKeys
+  (JNIEnv *jEnv, jclass,
+   jlong handleIndex)
+{
+  return exception_handler_wr(jEnv, [=]{
+      indexed<publication_attempt_handle> self { handleIndex };
+      std::vector<std::size_t> keys = self->conflict_keys();
+      std::vector<jlong> jkeys(keys.begin(), keys.end());
+      jlongArray array = jEnv->NewLongArray(jkeys.size());
+      jEnv->SetLongArrayRegion(array, 0, jkeys.size(), jkeys.data());
+      return array;
+    });
+}
+
 JNIEXPORT
 jboolean
 JNICALL
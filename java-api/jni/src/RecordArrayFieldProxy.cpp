@@ -74,7 +74,7 @@ extern "C"
 	jEnv, [=]
 	  {
 	    // TODO: move downcast into handler
-	indexed<record_field_handle<kind::ARRAY>> h
+	pinned<record_field_handle<kind::ARRAY>> h
 	  { hIndex};
 	auto tp = h->field_type();
 	auto tpdc = tp.pointer()->downcast<kind::RECORD>();
@@ -96,9 +96,9 @@ extern "C"
     return exception_handler_wr (
 	jEnv, [=]
 	  {
-	    indexed<record_field_handle<kind::ARRAY>> h
+	    pinned<record_field_handle<kind::ARRAY>> h
 	      { hIndex};
-	    indexed<managed_record_handle> rec
+	    pinned<managed_record_handle> rec
 	      { recHIndex};
 	    // TODO: move downcast into handler
             auto v = h->frozen_read(*rec);
@@ -127,9 +127,9 @@ extern "C"
     return exception_handler_wr (
 	jEnv, [=]
 	  {
-	    indexed<record_field_handle<kind::ARRAY>> h
+	    pinned<record_field_handle<kind::ARRAY>> h
 	      { hIndex};
-	    indexed<managed_record_handle> rec
+	    pinned<managed_record_handle> rec
 	      { recHIndex};
 	    // TODO: move downcast into handler
             auto v = h->free_read(*rec);
@@ -160,9 +160,9 @@ extern "C"
 	jEnv,
 	[=]
 	  {
-	    indexed<record_field_handle<kind::ARRAY>> h
+	    pinned<record_field_handle<kind::ARRAY>> h
 	      { hIndex};
-	    indexed<managed_record_handle> rec
+	    pinned<managed_record_handle> rec
 	      { recHIndex};
 	    indexed<managed_array_handle<kind::RECORD>> val
 	      { valArg};
@@ -193,9 +193,9 @@ extern "C"
 	jEnv,
 	[=]
 	  {
-	    indexed<record_field_handle<kind::ARRAY>> h
+	    pinned<record_field_handle<kind::ARRAY>> h
 	      { hIndex};
-	    indexed<managed_record_handle> rec
+	    pinned<managed_record_handle> rec
 	      { recHIndex};
 	    indexed<managed_array_handle<kind::RECORD>> val
 	      { valArg};
@@ -217,9 +217,9 @@ extern "C"
 	jEnv,
 	[=]
 	  {
-	    indexed<record_field_handle<kind::ARRAY>> h
+	    pinned<record_field_handle<kind::ARRAY>> h
 	      { hIndex};
-	    indexed<managed_record_handle> rec
+	    pinned<managed_record_handle> rec
 	      { recHIndex};
 	    indexed<managed_array_handle<kind::RECORD>> val
 	      { valArg};
@@ -55,6 +55,15 @@ extern "C"
   {
     exception_handler (jEnv, release<kind::RECORD>, handleIndex);
   }
+
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_RecordArrayProxy_releaseAll (JNIEnv *jEnv, jclass,
+                                                      jlongArray handleIndices)
+  {
+    exception_handler (jEnv, release_all<managed_array_handle<kind::RECORD>>, jEnv, handleIndices);
+  }
   JNIEXPORT
   jboolean
   JNICALL
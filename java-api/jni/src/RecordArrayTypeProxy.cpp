@@ -56,6 +56,15 @@ extern "C"
       });
   }
 
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_RecordArrayTypeProxy_releaseAll (JNIEnv *jEnv, jclass,
+                                                          jlongArray handleIndices)
+  {
+    exception_handler (jEnv, release_all<array_type_handle<kind::RECORD>>, jEnv, handleIndices);
+  }
+
   JNIEXPORT
   jboolean
   JNICALL
@@ -51,6 +51,15 @@ extern "C"
     exception_handler (jEnv, release<kind::RECORD>, handleIndex);
   }
 
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_RecordFieldProxy_releaseAll (JNIEnv *jEnv, jclass,
+                                                      jlongArray handleIndices)
+  {
+    exception_handler (jEnv, release_all<record_field_handle<kind::RECORD>>, jEnv, handleIndices);
+  }
+
   JNIEXPORT
   jlong
   JNICALL
@@ -104,7 +113,7 @@ extern "C"
     ensure_thread_initialized(jEnv);
     return exception_handler_wr (jEnv, [=]
       {
-	indexed<record_field_handle<kind::RECORD>> h
+	pinned<record_field_handle<kind::RECORD>> h
 	  { hIndex};
 	/*
 	 * Yeah, it's bizarre.  The first gets to the into_core, and the second gets the pointer, which is converted.  I should
@@ -129,9 +138,9 @@ extern "C"
 	/*
 	 * Not handling caching or defaults yet
 	 */
-	indexed<record_field_handle<kind::RECORD>> h
+	pinned<record_field_handle<kind::RECORD>> h
 	  { hIndex};
-	indexed<managed_record_handle> rec
+	pinned<managed_record_handle> rec
 	  { recHIndex};
 	indexed<managed_record_handle> val
         { h->frozen_read(*rec)};
@@ -152,9 +161,9 @@ extern "C"
 	/*
 	 * Not handling caching or defaults yet
 	 */
-	indexed<record_field_handle<kind::RECORD>> h
+	pinned<record_field_handle<kind::RECORD>> h
 	  { hIndex};
-	indexed<managed_record_handle> rec
+	pinned<managed_record_handle> rec
 	  { recHIndex};
 	indexed<managed_record_handle> val
         { h->free_read(*rec)};
@@ -173,9 +182,9 @@ extern "C"
     ensure_thread_initialized(jEnv);
     return exception_handler_wr (jEnv, [=]
       {
-	indexed<record_field_handle<kind::RECORD>> h
+	pinned<record_field_handle<kind::RECORD>> h
 	  { hIndex};
-	indexed<managed_record_handle> rec
+	pinned<managed_record_handle> rec
 	  { recHIndex};
 	indexed<managed_record_handle> val
 	  { valArg};
@@ -196,9 +205,9 @@ extern "C"
     ensure_thread_initialized(jEnv);
     return exception_handler_wr (jEnv, [=]
       {
-	indexed<record_field_handle<kind::RECORD>> h
+	pinned<record_field_handle<kind::RECORD>> h
 	  { hIndex};
-	indexed<managed_record_handle> rec
+	pinned<managed_record_handle> rec
 	  { recHIndex};
 	indexed<managed_record_handle> val
 	  { valArg};
@@ -217,9 +226,9 @@ extern "C"
     ensure_thread_initialized(jEnv);
     return exception_handler_wr (jEnv, [=]
       {
-	indexed<record_field_handle<kind::RECORD>> h
+	pinned<record_field_handle<kind::RECORD>> h
 	  { hIndex};
-	indexed<managed_record_handle> rec
+	pinned<managed_record_handle> rec
 	  { recHIndex};
 	indexed<managed_record_handle> val
 	  { valArg};
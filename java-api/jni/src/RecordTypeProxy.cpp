@@ -54,6 +54,15 @@ extern "C"
       });
   }
 
+  JNIEXPORT
+  void
+  JNICALL
+  Java_com_hpl_mds_impl_RecordTypeProxy_releaseAll (JNIEnv *jEnv, jclass,
+                                                     jlongArray handleIndices)
+  {
+    exception_handler (jEnv, release_all<record_type_handle>, jEnv, handleIndices);
+  }
+
   JNIEXPORT
   jlong
   JNICALL
@@ -57,6 +57,15 @@ JNICALL Java_com_hpl_mds_impl_TaskProxy_release
     });
 }
 
+JNIEXPORT
+void
+JNICALL Java_com_hpl_mds_impl_TaskProxy_releaseAll
+  (JNIEnv *jEnv, jclass,
+   jlongArray handleIndices)
+{
+  exception_handler(jEnv, release_all<task_handle>, jEnv, handleIndices);
+}
+
 JNIEXPORT
 jlong
 JNICALL
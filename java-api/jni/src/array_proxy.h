@@ -95,7 +95,7 @@ namespace mds
 	read_value (api_type<kind::LONG> handleIndex,
                     api_type<kind::LONG> index)
 	{
-	  indexed<managed_array_handle<KIND>> a
+	  pinned<managed_array_handle<KIND>> a
 	    { handleIndex };
 	  return a->frozen_read (index);
 	}
@@ -105,7 +105,7 @@ namespace mds
 	peek_value (api_type<kind::LONG> handleIndex,
                     api_type<kind::LONG> index)
 	{
-	  indexed<managed_array_handle<KIND>> a
+	  pinned<managed_array_handle<KIND>> a
 	    { handleIndex };
 	  return a->free_read (index);
 	}
@@ -115,7 +115,7 @@ namespace mds
 	read_value<kind::STRING> (api_type<kind::LONG> handleIndex,
 				  api_type<kind::LONG> index)
 	{
-	  indexed<managed_array_handle<kind::STRING>> a
+	  pinned<managed_array_handle<kind::STRING>> a
 	    { handleIndex };
 	  api_type<kind::STRING> val = a->frozen_read (index);
 	  indexed<interned_string_handle> s
@@ -128,7 +128,7 @@ namespace mds
 	peek_value<kind::STRING> (api_type<kind::LONG> handleIndex,
 				  api_type<kind::LONG> index)
 	{
-	  indexed<managed_array_handle<kind::STRING>> a
+	  pinned<managed_array_handle<kind::STRING>> a
 	    { handleIndex };
 	  api_type<kind::STRING> val = a->free_read (index);
 	  indexed<interned_string_handle> s
@@ -143,7 +143,7 @@ namespace mds
 		     typename str_to_long<KIND>::type valArg,
                      ret_mode returning = ret_mode::resulting_val)
 	{
-	  indexed<managed_array_handle<KIND>> a
+	  pinned<managed_array_handle<KIND>> a
 	    { handleIndex };
 	  return a->write (index, valArg, returning);
 	}
@@ -155,7 +155,7 @@ namespace mds
 				   typename str_to_long<kind::STRING>::type valArg,
                                    ret_mode returning)
 	{
-	  indexed<managed_array_handle<kind::STRING>> a
+	  pinned<managed_array_handle<kind::STRING>> a
 	    { handleIndex };
 	  indexed<interned_string_handle> s
 	    { valArg };
@@ -173,7 +173,7 @@ namespace mds
 		       api_type<kind::LONG> index, api_type<KIND> valArg,
                        ret_mode returning = ret_mode::resulting_val)
 	  {
-	    indexed<managed_array_handle<KIND>> a
+	    pinned<managed_array_handle<KIND>> a
 	      { handleIndex };
 
 	    return a->write (index, valArg, returning);
@@ -183,7 +183,7 @@ namespace mds
 	  read_value (api_type<kind::LONG> handleIndex,
 		      api_type<kind::LONG> index)
 	  {
-	    indexed<managed_array_handle<KIND>> a
+	    pinned<managed_array_handle<KIND>> a
 	      { handleIndex };
 	    return a->frozen_read (index);
 	  }
@@ -197,7 +197,7 @@ namespace mds
 		       api_type<kind::LONG> index, api_type<kind::LONG> valArg,
                        ret_mode returning)
 	  {
-	    indexed<managed_array_handle<kind::STRING>> a
+	    pinned<managed_array_handle<kind::STRING>> a
 	      { handleIndex };
 	    indexed<interned_string_handle> s
 	      { valArg };
@@ -211,7 +211,7 @@ namespace mds
 	  read_value (api_type<kind::LONG> handleIndex,
 		      api_type<kind::LONG> index)
 	  {
-	    indexed<managed_array_handle<kind::STRING>> a
+	    pinned<managed_array_handle<kind::STRING>> a
 	      { handleIndex };
 	    api_type<kind::STRING> val = a->frozen_read(index);
 	    indexed<interned_string_handle> s
@@ -225,11 +225,49 @@ namespace mds
 	inline
 	size (api_type<kind::LONG> handleIndex)
 	{
-          indexed<managed_array_handle<KIND>> a
+          pinned<managed_array_handle<KIND>> a
 	    { handleIndex };
 	  return a->size ();
 	}
 
+      /*
+       * Bulk transfers between a managed array and a Java primitive
+       * array.  The proxy checks the bounds and breaks large transfers
+       * into chunks, so each call here moves one chunk in a single
+       * critical region.
+       */
+      template<kind KIND, typename J>
+	inline void
+	copy_to_java (JNIEnv *jEnv, api_type<kind::LONG> handleIndex,
+		      api_type<kind::LONG> from, jarray dst,
+		      jint off, jint len)
+	{
+	  pinned<managed_array_handle<KIND>> a
+	    { handleIndex };
+	  critical_array<J> elts
+	    { jEnv, dst, true };
+	  if (elts)
+	    {
+	      a->frozen_read_range (from, len, elts.get () + off);
+	    }
+	}
+
+      template<kind KIND, typename J>
+	inline void
+	copy_from_java (JNIEnv *jEnv, api_type<kind::LONG> handleIndex,
+			api_type<kind::LONG> to, jarray src,
+			jint off, jint len)
+	{
+	  pinned<managed_array_handle<KIND>> a
+	    { handleIndex };
+	  critical_array<J> elts
+	    { jEnv, src, false };
+	  if (elts)
+	    {
+	      a->write_range (to, len, elts.get () + off);
+	    }
+	}
+
 
       template<kind KIND, ARITH_OP OP>
 	inline api_type<KIND>
@@ -243,7 +281,7 @@ namespace mds
 	      "Not supported arithmetic operation, please add "
 	      "the new operation into the switch block bellow");
 
-	  indexed<managed_array_handle<KIND>> a
+	  pinned<managed_array_handle<KIND>> a
 	    { hIndex };
 
 	  switch (OP)
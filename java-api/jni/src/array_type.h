@@ -87,6 +87,16 @@ namespace mds
 	  return arr.return_index ();
 	}
 
+      template<kind KIND>
+	inline api_type<kind::LONG>
+	create_dense_array (api_type<kind::LONG> size,
+			    api_type<kind::INT> chunkSize)
+	{
+	  indexed<managed_array_handle<KIND>> arr
+	    { managed_array_handle_by_kind<KIND> ().create_dense_array (size, chunkSize) };
+	  return arr.return_index ();
+	}
+
     }
   }
 }
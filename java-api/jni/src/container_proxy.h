@@ -0,0 +1,189 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+#ifndef CONTAINER_PROXY_H_
+#define CONTAINER_PROXY_H_
+
+#include <jni.h>
+#include <cstring>
+#include <type_traits>
+#include <vector>
+#include "mds-debug.h"
+#include "mds_core_api.h"                           // MDS Core API
+#include "mds_jni.h"
+
+namespace mds
+{
+  namespace jni
+  {
+    /*
+     * Shared by the proxies for the managed containers (maps, lists,
+     * and sets), whose elements can be longs, doubles, or strings.
+     */
+    namespace container_proxy
+    {
+      using namespace mds::api;
+
+      /*
+       * These have to match the ordinals of ElementKind.
+       */
+      enum class elt_kind : jint
+      {
+	LONG = 0, DOUBLE = 1, STRING = 2
+      };
+
+      template<kind K>
+	using kind_tag = std::integral_constant<kind, K>;
+
+      /*
+       * Everything crosses as a jlong: longs as themselves, doubles as
+       * their bits, and strings as handle indices.
+       */
+      template<kind K>
+	struct elt_bits;
+
+      template<>
+	struct elt_bits<kind::LONG>
+	{
+	  static api_type<kind::LONG> from_java (jlong b)
+	  {
+	    return b;
+	  }
+	  static jlong to_java (api_type<kind::LONG> v)
+	  {
+	    return v;
+	  }
+	};
+
+      template<>
+	struct elt_bits<kind::DOUBLE>
+	{
+	  static api_type<kind::DOUBLE> from_java (jlong b)
+	  {
+	    api_type<kind::DOUBLE> d;
+	    std::memcpy (&d, &b, sizeof d);
+	    return d;
+	  }
+	  static jlong to_java (api_type<kind::DOUBLE> v)
+	  {
+	    jlong b;
+	    std::memcpy (&b, &v, sizeof b);
+	    return b;
+	  }
+	};
+
+      template<>
+	struct elt_bits<kind::STRING>
+	{
+	  static api_type<kind::STRING> from_java (jlong b)
+	  {
+	    indexed<interned_string_handle> s
+	      { b };
+	    return *s;
+	  }
+	  static jlong to_java (const api_type<kind::STRING> &v)
+	  {
+	    indexed<interned_string_handle> s
+	      { v };
+	    return s.return_index ();
+	  }
+	};
+
+      /*
+       * Calls fn with the kind_tag for eltKind.
+       */
+      template<typename Fn>
+	inline auto
+	with_elt_kind (jint eltKind, Fn &&fn)
+	{
+	  switch (static_cast<elt_kind> (eltKind))
+	    {
+	    case elt_kind::DOUBLE:
+	      return fn (kind_tag<kind::DOUBLE>{});
+	    case elt_kind::STRING:
+	      return fn (kind_tag<kind::STRING>{});
+	    default:
+	      return fn (kind_tag<kind::LONG>{});
+	    }
+	}
+
+      /*
+       * Like with_elt_kind(), but for keys, which can't be doubles.
+       */
+      template<typename Fn>
+	inline auto
+	with_key_kind (jint keyKind, Fn &&fn)
+	{
+	  if (static_cast<elt_kind> (keyKind) == elt_kind::STRING)
+	    {
+	      return fn (kind_tag<kind::STRING>{});
+	    }
+	  return fn (kind_tag<kind::LONG>{});
+	}
+
+      template<typename Fn>
+	inline auto
+	with_kinds (jint keyKind, jint valKind, Fn &&fn)
+	{
+	  return with_key_kind (keyKind, [&](auto kt)
+	    {
+	      return with_elt_kind (valKind, [&](auto vt)
+		{
+		  return fn (kt, vt);
+		});
+	    });
+	}
+
+      inline void
+      note_found (JNIEnv *jEnv, jbooleanArray found, bool f)
+      {
+	jboolean jf = f;
+	jEnv->SetBooleanArrayRegion (found, 0, 1, &jf);
+      }
+
+      /*
+       * Copies bits into a new Java long[].
+       */
+      inline jlongArray
+      to_java_array (JNIEnv *jEnv, const std::vector<jlong> &bits)
+      {
+	jlongArray array = jEnv->NewLongArray (bits.size ());
+	jEnv->SetLongArrayRegion (array, 0, bits.size (), bits.data ());
+	return array;
+      }
+
+      inline std::vector<jlong>
+      from_java_array (JNIEnv *jEnv, jlongArray array, jint n)
+      {
+	std::vector<jlong> bits (n);
+	jEnv->GetLongArrayRegion (array, 0, n, bits.data ());
+	return bits;
+      }
+    }
+  }
+}
+
+#endif /* CONTAINER_PROXY_H_ */
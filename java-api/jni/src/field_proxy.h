@@ -27,6 +27,7 @@
 #include "mds-debug.h"
 #include "mds_core_api.h"                           // MDS Core API
 #include "mds_jni.h"
+#include "container_proxy.h"
 
 using namespace mds;
 using namespace mds::api;
@@ -52,7 +53,7 @@ namespace mds
 	inline api_type<kind::LONG>
 	get_name_handle (api_type<kind::LONG> hIndex)
 	{
-	  indexed<record_field_handle<KIND>> h
+	  pinned<record_field_handle<KIND>> h
 	    { hIndex };
 	  indexed<interned_string_handle> name
 	    { h->name () };
@@ -66,7 +67,7 @@ namespace mds
 	  /*
 	   * Not handling caching or defaults yet
 	   */
-	  indexed<record_field_handle<KIND>> h
+	  pinned<record_field_handle<KIND>> h
 	    { hIndex };
 	  indexed<const_record_type_handle> rt
 	    { h->rec_type () };
@@ -114,9 +115,9 @@ namespace mds
 	  /*
 	   * Not handling caching or defaults yet
 	   */
-	  indexed<record_field_handle<kind::ARRAY>> h
+	  pinned<record_field_handle<kind::ARRAY>> h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  indexed<managed_array_base_handle> baseval
           { h->frozen_read(*rec) };
@@ -135,9 +136,9 @@ namespace mds
 	  /*
 	   * Not handling caching or defaults yet
 	   */
-	  indexed<record_field_handle<kind::ARRAY>> h
+	  pinned<record_field_handle<kind::ARRAY>> h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  indexed<managed_array_base_handle> baseval
           { h->free_read(*rec) };
@@ -153,9 +154,9 @@ namespace mds
 	get_value (api_type<kind::LONG> hIndex,
                    api_type<kind::LONG> recHIndex)
 	{
-	  indexed<record_field_handle<KIND> > h
+	  pinned<record_field_handle<KIND> > h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  return h->frozen_read(*rec);
 	}
@@ -164,9 +165,9 @@ namespace mds
 	peek_value (api_type<kind::LONG> hIndex,
                     api_type<kind::LONG> recHIndex)
 	{
-	  indexed<record_field_handle<KIND> > h
+	  pinned<record_field_handle<KIND> > h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  return h->free_read(*rec);
 	}
@@ -176,9 +177,9 @@ namespace mds
 	get_value<kind::STRING> (api_type<kind::LONG> hIndex,
 				 api_type<kind::LONG> recHIndex)
 	{
-	  indexed<record_field_handle<kind::STRING> > h
+	  pinned<record_field_handle<kind::STRING> > h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  api_type<kind::STRING> val = h->frozen_read(*rec);
 	  indexed<interned_string_handle> s
@@ -190,9 +191,9 @@ namespace mds
 	peek_value<kind::STRING> (api_type<kind::LONG> hIndex,
                                   api_type<kind::LONG> recHIndex)
 	{
-	  indexed<record_field_handle<kind::STRING> > h
+	  pinned<record_field_handle<kind::STRING> > h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  api_type<kind::STRING> val =
             h->free_read(*rec);
@@ -208,9 +209,9 @@ namespace mds
 		   typename str_to_long<KIND>::type valArg,
                    ret_mode returning = ret_mode::resulting_val)
 	{
-	  indexed<record_field_handle<KIND>> h
+	  pinned<record_field_handle<KIND>> h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  return h->write (*rec, valArg, returning);
 	}
@@ -222,9 +223,9 @@ namespace mds
 				 typename str_to_long<kind::STRING>::type valArg,
                                  ret_mode returning)
 	{
-	  indexed<record_field_handle<kind::STRING>> h
+	  pinned<record_field_handle<kind::STRING>> h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  indexed<interned_string_handle> s
 	    { valArg };
@@ -241,9 +242,9 @@ namespace mds
                     api_type<kind::LONG> recHIndex,
                     typename str_to_long<KIND>::type valArg)
 	{
-	  indexed<record_field_handle<KIND>> h
+	  pinned<record_field_handle<KIND>> h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  return h->write_initial(*rec, valArg);
 	}
@@ -254,9 +255,9 @@ namespace mds
                                 api_type<kind::LONG> recHIndex,
                                 typename str_to_long<kind::STRING>::type valArg)
 	{
-	  indexed<record_field_handle<kind::STRING>> h
+	  pinned<record_field_handle<kind::STRING>> h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
           { recHIndex };
 	  indexed<interned_string_handle> s
           { valArg };
@@ -272,9 +273,9 @@ namespace mds
 				api_type<kind::LONG> valArg,
                                 ret_mode returning = ret_mode::resulting_val)
 	{
-	  indexed<record_field_handle<kind::ARRAY>> h
+	  pinned<record_field_handle<kind::ARRAY>> h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  indexed<managed_array_handle<KIND>> val
 	    { valArg };
@@ -296,9 +297,9 @@ namespace mds
                           api_type<kind::LONG> recHIndex,
                           api_type<kind::LONG> valArg)
 	{
-	  indexed<record_field_handle<kind::ARRAY>> h
+	  pinned<record_field_handle<kind::ARRAY>> h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  indexed<managed_array_handle<KIND>> val
 	    { valArg };
@@ -319,9 +320,9 @@ namespace mds
 	      "Not supported arithmetic operation, please add "
 	      "the new operation into the switch block bellow");
 
-	  indexed<record_field_handle<KIND>> h
+	  pinned<record_field_handle<KIND>> h
 	    { hIndex };
-	  indexed<managed_record_handle> rec
+	  pinned<managed_record_handle> rec
 	    { recHIndex };
 	  switch (OP)
 	    {
@@ -335,6 +336,85 @@ namespace mds
 	      return h->div (*rec, val, returning);
 	    }
 	}
+
+      /*
+       * These have to match the ordinals of IndexKind.
+       */
+      template<kind KIND>
+	inline void
+	create_index (api_type<kind::LONG> hIndex, jint ik)
+	{
+	  pinned<record_field_handle<KIND>> h
+	    { hIndex };
+	  h->ensure_index (static_cast<index_kind> (ik));
+	}
+
+      template<kind KIND>
+	inline api_type<kind::BOOL>
+	is_indexed (api_type<kind::LONG> hIndex)
+	{
+	  pinned<record_field_handle<KIND>> h
+	    { hIndex };
+	  return h->is_indexed ();
+	}
+
+      /*
+       * The records come back as an array of handle indices, or as
+       * null if the field isn't indexed.
+       */
+      template<kind KIND>
+	inline jlongArray
+	lookup_records (JNIEnv *jEnv, const record_field_handle<KIND> &h,
+			const api_type<KIND> &val)
+	{
+	  std::vector<jlong> recs;
+	  bool was_indexed = h.lookup (val, [&](const managed_record_handle &r)
+	    {
+	      indexed<managed_record_handle> ri
+		{ r };
+	      recs.push_back (ri.return_index ());
+	    });
+	  return was_indexed ? container_proxy::to_java_array (jEnv, recs) : nullptr;
+	}
+
+      template<kind KIND>
+	inline jlongArray
+	lookup (JNIEnv *jEnv, api_type<kind::LONG> hIndex,
+		typename str_to_long<KIND>::type valArg)
+	{
+	  pinned<record_field_handle<KIND>> h
+	    { hIndex };
+	  return lookup_records<KIND> (jEnv, *h, valArg);
+	}
+
+      template<>
+	inline jlongArray
+	lookup<kind::STRING> (JNIEnv *jEnv, api_type<kind::LONG> hIndex,
+			      typename str_to_long<kind::STRING>::type valArg)
+	{
+	  pinned<record_field_handle<kind::STRING>> h
+	    { hIndex };
+	  indexed<interned_string_handle> s
+	    { valArg };
+	  return lookup_records<kind::STRING> (jEnv, *h, *s);
+	}
+
+      template<kind KIND>
+	inline jlongArray
+	lookup_range (JNIEnv *jEnv, api_type<kind::LONG> hIndex,
+		      api_type<KIND> lo, api_type<KIND> hi)
+	{
+	  pinned<record_field_handle<KIND>> h
+	    { hIndex };
+	  std::vector<jlong> recs;
+	  bool was_indexed = h->lookup_range (lo, hi, [&](const managed_record_handle &r)
+	    {
+	      indexed<managed_record_handle> ri
+		{ r };
+	      recs.push_back (ri.return_index ());
+	    });
+	  return was_indexed ? container_proxy::to_java_array (jEnv, recs) : nullptr;
+	}
     }
   }
 }
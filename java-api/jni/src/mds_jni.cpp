@@ -192,6 +192,22 @@ mds::jni::exception_converter(JNIEnv *jEnv){
     {
       throwUnimplementedEx (jEnv);
     }
+  catch (core::index_out_of_bounds_ex &)
+    {
+      throwIndexOutOfBoundsEx (jEnv);
+    }
+  catch (core::unsupported_list_op_ex &)
+    {
+      throwUnsupportedOperationEx (jEnv);
+    }
+  catch (core::unsupported_index_op_ex &)
+    {
+      throwUnsupportedOperationEx (jEnv);
+    }
+  catch (core::populated_record_type_ex &)
+    {
+      throwIllegalStateEx (jEnv);
+    }
   catch (core::thread_base_task_unset_ex &)
     {
       throwUnknownEx (jEnv, "Core base task not set");
@@ -244,6 +260,24 @@ mds::jni::throwUnimplementedEx(JNIEnv *env) {
   jex.raise(env);
 }
 
+void
+mds::jni::throwIndexOutOfBoundsEx(JNIEnv *env) {
+  static java_ex jex(env,"java/lang/IndexOutOfBoundsException");
+  jex.raise(env);
+}
+
+void
+mds::jni::throwUnsupportedOperationEx(JNIEnv *env) {
+  static java_ex jex(env,"java/lang/UnsupportedOperationException");
+  jex.raise(env);
+}
+
+void
+mds::jni::throwIllegalStateEx(JNIEnv *env) {
+  static java_ex jex(env,"java/lang/IllegalStateException");
+  jex.raise(env);
+}
+
 void
 mds::jni::throwUnknownEx(JNIEnv *env) {
   static java_ex jex(env,"com/hpl/mds/InternalException");
@@ -33,6 +33,7 @@
 #include <iostream>
 #include <typeinfo>
 #include <sstream>
+#include <vector>
 
 namespace mds {
   namespace jni {
@@ -72,6 +73,9 @@ namespace mds {
     void throwReadOnlyContextEx(JNIEnv *jEnv);
     void throwUnpublishableContextEx(JNIEnv *jEnv);
     void throwUnimplementedEx(JNIEnv *jEnv);
+    void throwIndexOutOfBoundsEx(JNIEnv *jEnv);
+    void throwUnsupportedOperationEx(JNIEnv *jEnv);
+    void throwIllegalStateEx(JNIEnv *jEnv);
     void throwUnknownEx(JNIEnv *jEnv);
     void throwUnknownEx(JNIEnv *jEnv, const std::string &desc);
     void stubNotImplemented(JNIEnv *jEnv);
@@ -333,6 +337,101 @@ namespace mds {
       }
     };
 
+    /*
+     * Releases each of the indices in a Java long[], as release() on
+     * an indexed<H> would, in a single JNI crossing.  This is what the
+     * proxies' releaseAll() methods call when dead proxies are
+     * drained in bulk.
+     */
+    template <typename H>
+    inline void release_all(JNIEnv *jEnv, jlongArray jIndices) {
+      using hs_type = mds::api::unique_handle_store<typename handle_store_traits<H>::storage_type>;
+      jsize n = jEnv->GetArrayLength(jIndices);
+      std::vector<jlong> indices(n);
+      jEnv->GetLongArrayRegion(jIndices, 0, n, indices.data());
+      for (jlong i : indices) {
+        hs_type::free(i);
+      }
+    }
+
+    /*
+     * pinned<H> is a lighter-weight alternative to indexed<H>(jlong)
+     * for the hot paths (field and array element reads and writes),
+     * in which a handleIndex is passed down from a proxy and only
+     * used for the duration of the native call.  Rather than copying
+     * the handle out of the store (which means copying the
+     * external_gc_ptrs it holds), it refers to the store's slot in
+     * place.  Slots never move and the proxy's reference keeps the
+     * slot from being cleared, so getting at the handle is just an
+     * address computation.  The store is still what manages the
+     * handle's lifetime.  As with indexed<H>(jlong), we count on the
+     * proxy remaining live across the call.
+     */
+    template <typename H>
+    class pinned {
+      using traits_type = handle_store_traits<H>;
+      using storage_type = typename traits_type::storage_type;
+      using hs_type = mds::api::unique_handle_store<storage_type>;
+      const storage_type &value;
+
+    public:
+      explicit pinned(jlong i)
+	: value(hs_type::peek(i))
+      {}
+
+      pinned(const pinned &) = delete;
+      pinned &operator =(const pinned &) = delete;
+
+      const storage_type *operator ->() const {
+        return &value;
+      }
+
+      const storage_type &operator *() const {
+        return value;
+      }
+    };
+
+    /*
+     * critical_array<T> gives access to the elements of a Java
+     * primitive array via GetPrimitiveArrayCritical() and releases
+     * them when it goes out of scope, including when the scope is
+     * left by an exception, so that exception_handler() is never
+     * called with the critical region still open.  If the elements
+     * are only being read, pass modified=false to avoid any copy back
+     * to the Java array.  As with GetStringCritical(), nothing done
+     * while one is live may call back into the JVM.
+     */
+    template <typename T>
+    class critical_array {
+      JNIEnv *jEnv;
+      jarray array;
+      const bool modified;
+      T *elts;
+
+    public:
+      critical_array(JNIEnv *env, jarray a, bool m)
+	: jEnv{env}, array{a}, modified{m},
+	  elts{static_cast<T*>(env->GetPrimitiveArrayCritical(a, nullptr))}
+      {}
+
+      ~critical_array() {
+        if (elts != nullptr) {
+          jEnv->ReleasePrimitiveArrayCritical(array, elts, modified ? 0 : JNI_ABORT);
+        }
+      }
+
+      critical_array(const critical_array &) = delete;
+      critical_array &operator =(const critical_array &) = delete;
+
+      explicit operator bool() const {
+        return elts != nullptr;
+      }
+
+      T *get() const {
+        return elts;
+      }
+    };
+
   }
 }
 
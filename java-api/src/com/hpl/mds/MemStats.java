@@ -38,12 +38,31 @@ public class MemStats {
   private static native long _gcCycleNumber();
   private static native long _nProcesses();
   private static native long _nObjects();
+  private static native long _nValuesPruned();
+  private static native long _bytesPruned();
+  private static native void _startVersionPruning(long periodMillis);
+  private static native void _stopVersionPruning();
+  private static native long _rollupBacklog();
+  private static native long _nRollupsProcessed();
+  private static native long _rollupNanos();
+  private static native void _startRollupWorkers(int nWorkers, long helpThreshold);
+  private static native void _stopRollupWorkers();
+
+  /**
+   * The backlog above which readers help the rollup workers.
+   */
+  public static final long DEFAULT_ROLLUP_HELP_THRESHOLD = 1024;
 
   private long _bytesInHeap;
   private long _bytesInUse;
   private long _gcCycleNumber;
   private long _nProcesses;
   private long _nObjects;
+  private long _nValuesPruned;
+  private long _bytesPruned;
+  private long _rollupBacklog;
+  private long _nRollupsProcessed;
+  private long _rollupNanos;
 
   public MemStats() {
     _gcCycleNumber = -1;
@@ -55,6 +74,46 @@ public class MemStats {
       _nProcesses = _nProcesses();
       _nObjects = _nObjects();
     }
+    _nValuesPruned = _nValuesPruned();
+    _bytesPruned = _bytesPruned();
+    _rollupBacklog = _rollupBacklog();
+    _nRollupsProcessed = _nRollupsProcessed();
+    _rollupNanos = _rollupNanos();
+  }
+
+  /**
+   * Starts pruning old versions of values that no live snapshot can
+   * see any more.  Every periodMillis, this process recomputes the
+   * oldest time any context it holds might read at, and versions
+   * older than the oldest such time over all processes are dropped
+   * the next time their value is accessed.  Calling this again
+   * changes the period.
+   */
+  public static void startVersionPruning(long periodMillis) {
+    _startVersionPruning(periodMillis);
+  }
+
+  public static void stopVersionPruning() {
+    _stopVersionPruning();
+  }
+
+  /**
+   * Starts nWorkers background threads that clean up after
+   * publishes, so that the next reader of each modified value
+   * doesn't have to.  Readers that still find work to do help the
+   * workers once more than helpThreshold values are waiting.
+   * Calling this again changes the number of workers.
+   */
+  public static void startRollupWorkers(int nWorkers, long helpThreshold) {
+    _startRollupWorkers(nWorkers, helpThreshold);
+  }
+
+  public static void startRollupWorkers(int nWorkers) {
+    startRollupWorkers(nWorkers, DEFAULT_ROLLUP_HELP_THRESHOLD);
+  }
+
+  public static void stopRollupWorkers() {
+    _stopRollupWorkers();
   }
 
   public long bytesInHeap() {
@@ -105,12 +164,55 @@ public class MemStats {
     return _nObjects();
   }
 
+  /**
+   * The number of value versions dropped by pruning, in all
+   * processes.
+   */
+  public long nValuesPruned() {
+    return _nValuesPruned;
+  }
+
+  /**
+   * An estimate of the bytes freed up by pruning, in all processes.
+   */
+  public long bytesPruned() {
+    return _bytesPruned;
+  }
+
+  public String pruned(int dp) {
+    return Memory.readable(bytesPruned(), dp, "B");
+  }
+
+  public String pruned() {
+    return pruned(2);
+  }
+
+  /**
+   * The number of values waiting for this process's rollup workers.
+   */
+  public long rollupBacklog() {
+    return _rollupBacklog;
+  }
+
+  /**
+   * The number of values this process's rollup workers (and helping
+   * readers) have cleaned up, and the time they spent doing it.
+   */
+  public long nRollupsProcessed() {
+    return _nRollupsProcessed;
+  }
+
+  public long rollupNanos() {
+    return _rollupNanos;
+  }
+
   public String toString() {
-    return String.format("MemStats[%,d: %s used of %s, %s, %s]",
+    return String.format("MemStats[%,d: %s used of %s, %s, %s, %s pruned]",
 			 gcCycleNumber(),
 			 inUse(), inHeap(),
 			 English.num(nObjects()).noun("objects"),
-			 English.num(nProcesses()).noun("processes"));
+			 English.num(nProcesses()).noun("processes"),
+			 pruned());
   }
 
   
@@ -88,6 +88,19 @@ public interface Options {
   static PubOption reportTo(PublishReport report) {
     return PubOption.defaultOpts().reportTo(report);
   }
+  static PubOption retryWith(RetryPolicy policy) {
+    return PubOption.defaultOpts().retryWith(policy);
+  }
+  static PubOption backOff(Duration base, Duration max) {
+    return PubOption.defaultOpts().backOff(base, max);
+  }
+
+  static PubOption cacheFields(Caching caching) {
+    return PubOption.defaultOpts().cacheFields(caching);
+  }
+  static PubOption cacheAllFields() {
+    return PubOption.defaultOpts().cacheAllFields();
+  }
 
   static PubOption as(ViewType vt, ModificationType mt) {
     return PubOption.defaultOpts().as(vt, mt);
@@ -56,6 +56,18 @@ public interface PubOption {
 
   PubOption reportTo(PublishReport report);
 
+  PubOption retryWith(RetryPolicy policy);
+default PubOption backOff(Duration base, Duration max) {
+  return retryWith(RetryPolicy.exponentialBackoff(base, max));
+}
+
+  /*
+   * With CACHED, every field read in a snapshot context
+   * is cached, not just the ones marked CACHED.
+   */
+  PubOption cacheFields(Caching caching);
+default PubOption cacheAllFields() { return cacheFields(Caching.CACHED); }
+
   PubOption as(ViewType vt, ModificationType mt);
 
 default PubOption as(ViewType vt) { return as(vt, null); }
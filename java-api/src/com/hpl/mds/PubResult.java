@@ -28,6 +28,9 @@ package com.hpl.mds;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import com.hpl.mds.impl.PubResultProxy;
 
 public interface PubResult {
   IsolationContext sourceContext();
@@ -35,10 +38,29 @@ public interface PubResult {
   boolean succeeded();
   long nToRedo();
   Task[] redoTasksByStartTime();
+  /**
+   * Opaque keys identifying the values in the target context that
+   * the publication conflicted on.  Keys for the same value compare
+   * equal across attempts.
+   */
+  long[] conflictKeys();
   boolean prepareForRedo();
   boolean redo(Task task);
   boolean resolve(Collection<PublishReport> reports);
 default
   boolean resolve() { return resolve(Collections.emptyList()); }
+
+  /**
+   * Sets the pool on which resolve() reruns redo tasks that don't
+   * depend on one another.  If the pool is null (the default), tasks
+   * are rerun one at a time in the resolving thread.
+   */
+  static void setRedoPool(ForkJoinPool pool) {
+    PubResultProxy.setRedoPool(pool);
+  }
+
+  static ForkJoinPool redoPool() {
+    return PubResultProxy.getRedoPool();
+  }
   
 }
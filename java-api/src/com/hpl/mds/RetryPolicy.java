@@ -0,0 +1,117 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package com.hpl.mds;
+
+import java.time.Duration;
+
+import com.hpl.mds.impl.RetryPolicyImpl;
+
+/**
+ * Decides when (rather than whether) a failed isolated block is run
+ * again.  A policy is shared among all of the blocks that use it, and
+ * keeps counts of the retries it has seen and the time it has made
+ * them wait.
+ */
+public interface RetryPolicy {
+
+  /**
+   * The state of one isolated block's attempts.
+   */
+  interface Attempts {
+    /*
+     * Called before each attempt is run.  May block.
+     */
+    void beforeRun();
+    /*
+     * Called after each attempt has tried to publish.  The result is
+     * null if the attempt threw.
+     */
+    void afterRun(PubResult result);
+    /*
+     * Called after a failed attempt when the block is going to be run
+     * again.  May block.
+     */
+    void beforeRerun();
+  }
+
+  Attempts start();
+
+  long nRetries();
+  long waitNanos();
+  void resetCounters();
+
+default
+  Duration waitTime() { return Duration.ofNanos(waitNanos()); }
+
+  /**
+   * Escalates this policy, running the nth and later retries of a
+   * block under the locks for the values it conflicted on.
+   */
+default
+  RetryPolicy escalateAfter(int n) { return escalateAfter(n, this); }
+
+  /**
+   * Retries immediately.  This is the default.
+   */
+  static RetryPolicy immediate() {
+    return RetryPolicyImpl.immediate();
+  }
+
+  /**
+   * Waits a random time between zero and base*2^k (capped at max)
+   * before the kth retry.
+   */
+  static RetryPolicy exponentialBackoff(Duration base, Duration max) {
+    return new RetryPolicyImpl.Exponential(base, max);
+  }
+
+  /**
+   * Like exponentialBackoff(), but the wait also grows with how often
+   * the values the attempt conflicted on have recently been involved
+   * in conflicts (in any block using the policy).  The conflict rate
+   * decays by half every halfLife.
+   */
+  static RetryPolicy adaptiveBackoff(Duration base, Duration max, Duration halfLife) {
+    return new RetryPolicyImpl.Adaptive(base, max, halfLife);
+  }
+
+  static RetryPolicy adaptiveBackoff(Duration base, Duration max) {
+    return adaptiveBackoff(base, max, Duration.ofMillis(100));
+  }
+
+  /**
+   * Waits as the given policy does, but once a block has failed n
+   * times, its further attempts hold a lock for each value it
+   * conflicted on, and other retries under this policy that
+   * conflicted on those values wait for it to finish.  Locks are
+   * striped, so unrelated values may occasionally share one.
+   */
+  static RetryPolicy escalateAfter(int n, RetryPolicy waiting) {
+    return new RetryPolicyImpl.Escalating(n, waiting);
+  }
+
+}
@@ -28,50 +28,138 @@ package com.hpl.mds.impl;
 
 import com.hpl.mds.*;
 
-import com.hpl.erk.util.CollUtils;
-
-//import java.util.Set;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-//import java.util.HashSet;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import java.util.function.Consumer;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
+/*
+ * Each task that adds to the accumulator gets its own node, and adds
+ * only go into that node's pending value, under the node's own lock.
+ * Since a task normally runs in a single thread, that lock is
+ * uncontended, so workers adding in parallel don't serialize on the
+ * accumulator.  Pending values are merged lazily, by get() or by a
+ * rollback, into the node's weight and those of its ancestors, so a
+ * node's weight is what it and its subtasks contributed, as before.
+ *
+ * We're only given a rollback function, but since rolling back is
+ * subtraction, we add a delta by subtracting its negation, which we
+ * get by rolling the delta back from a fresh value.
+ */
 public class AccumImpl<A> implements Accumulator<A> {
   final static TaskProxy topLevelTask = IsoContextProxy.global().topLevelTask();
   final BiConsumer<? super A, ? super A> rollbackFunc;
   final Supplier<? extends A> creator;
   final Node topLevel;
   final Map<TaskProxy,Node> forTask;
-  final Map<TaskProxy,Boolean> writers;
+  /*
+   * Nodes with pending values that haven't been merged.
+   */
+  final ConcurrentLinkedQueue<Node> dirty = new ConcurrentLinkedQueue<>();
+  /*
+   * Tasks that have added, in the order they first did, and, for
+   * each task that has called get(), how many of them it's already
+   * been made dependent on.  Guarded by this.
+   */
+  final List<WeakReference<TaskProxy>> writers = new ArrayList<>();
+  final Map<TaskProxy,Integer> readers;
+  final ThreadLocal<Last> last = new ThreadLocal<>();
+
+  /*
+   * The node most recently used by a thread, so that repeated adds
+   * in the same task don't have to look it up.
+   */
+  class Last {
+    final TaskProxy task;
+    final Node node;
+    Last(TaskProxy task, Node node) {
+      this.task = task;
+      this.node = node;
+    }
+  }
   
   class Node {
+    /*
+     * Guarded by the accumulator.
+     */
     A weight = creator.get();
+    /*
+     * Guarded by the node.
+     */
+    A pending = creator.get();
+    boolean isDirty = false;
+    boolean isWriter = false;
     final Node parent;
-    // Set<Node> children = null;
-    boolean adderp = false;
 
     Node(Node parent) {
       this.parent = parent;
-      // if (parent != null) {
-      //   parent.addChild(this);
-      // }
     }
 
-    // private void addChild(Node child) {
-    //   if (children == null) {
-    //     children = new HashSet<>();
-    //   }
-    //   children.add(child);
-    // }
+    void add(TaskProxy task, Consumer<? super A> adder) {
+      synchronized (this) {
+        if (isWriter) {
+          addPending(adder);
+          return;
+        }
+      }
+      /*
+       * The task has to be among the writers before its delta can be
+       * seen, or a reader could miss the dependency.  The accumulator
+       * is locked before the node, as in merge().
+       */
+      synchronized (AccumImpl.this) {
+        synchronized (this) {
+          if (!isWriter) {
+            noteWriter(task);
+            isWriter = true;
+          }
+          addPending(adder);
+        }
+      }
+    }
+
+    /*
+     * Called with the node locked.
+     */
+    private void addPending(Consumer<? super A> adder) {
+      adder.accept(pending);
+      if (!isDirty) {
+        isDirty = true;
+        dirty.add(this);
+      }
+    }
+
+    /*
+     * Called with the accumulator locked.
+     */
+    void merge() {
+      A delta;
+      synchronized (this) {
+        delta = pending;
+        pending = creator.get();
+        isDirty = false;
+      }
+      A negated = creator.get();
+      rollbackFunc.accept(negated, delta);
+      for (Node n = this; n != null; n=n.parent) {
+        rollbackFunc.accept(n.weight, negated);
+      }
+    }
 
     void rollBack() {
-      for (Node n = parent; n != null; n=n.parent) {
-        rollbackFunc.accept(n.weight, weight);
+      synchronized (AccumImpl.this) {
+        mergeAll();
+        for (Node n = parent; n != null; n=n.parent) {
+          rollbackFunc.accept(n.weight, weight);
+        }
+        weight = creator.get();
       }
-      // parent.children.remove(this);
     }
   }
 
@@ -97,29 +185,59 @@ public class AccumImpl<A> implements Accumulator<A> {
     this.rollbackFunc = rollbackFunc;
     topLevel = new Node(null);
     forTask = new WeakHashMap<>(expectedTasks);
-    writers = new WeakHashMap<>(expectedTasks);
+    readers = new WeakHashMap<>(expectedTasks);
     forTask.put(topLevelTask, topLevel);
   }
 
   @Override
   public synchronized A get() {
     TaskProxy ct = TaskProxy.current();
-    for (TaskProxy t : writers.keySet()) {
-      ct.dependsOn(t);
+    int seen = readers.getOrDefault(ct, 0);
+    int n = writers.size();
+    if (seen < n) {
+      for (int i=seen; i<n; i++) {
+        TaskProxy t = writers.get(i).get();
+        if (t != null) {
+          ct.dependsOn(t);
+        }
+      }
+      readers.put(ct, n);
     }
+    mergeAll();
     return topLevel.weight;
   }
 
   @Override
-  public synchronized void add(Consumer<? super A> adder) {
+  public void add(Consumer<? super A> adder) {
     TaskProxy ct = TaskProxy.current();
-    writers.put(ct, Boolean.TRUE);
-    for (Node n = nodeFor(ct); n != null; n=n.parent) {
-      adder.accept(n.weight);
+    nodeFor(ct).add(ct, adder);
+  }
+
+  private void mergeAll() {
+    Node n;
+    while ((n = dirty.poll()) != null) {
+      n.merge();
     }
   }
 
+  private synchronized void noteWriter(TaskProxy task) {
+    writers.add(new WeakReference<>(task));
+  }
+
   private Node nodeFor(TaskProxy task) {
+    Last l = last.get();
+    if (l != null && l.task == task) {
+      return l.node;
+    }
+    Node n;
+    synchronized (forTask) {
+      n = lookup(task);
+    }
+    last.set(new Last(task, n));
+    return n;
+  }
+
+  private Node lookup(TaskProxy task) {
     /*
      * The JavaDoc implementation requirements for computeIfAbsent()
      * appear to guarantee that it works even if the function modifies
@@ -139,7 +257,7 @@ public class AccumImpl<A> implements Accumulator<A> {
         }
         // System.out.format("Accum: creating node for %s (%s)%n", task, parent);
         
-        Node n = new Node(nodeFor(parent));
+        Node n = new Node(lookup(parent));
         t.onPrepareForRedo(()->n.rollBack());
         return n;
       });
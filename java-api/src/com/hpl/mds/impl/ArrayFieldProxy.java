@@ -32,19 +32,22 @@ import com.hpl.mds.*;
 public abstract class ArrayFieldProxy<RT extends ManagedRecord, ET extends ManagedObject> extends FieldProxy<RT, ManagedArray<ET>> implements ArrayField<RT,ET> {
 
   private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+  private static final HandleReleaser handleReleaser
+    = new HandleReleaser("ArrayField", ArrayFieldProxy::releaseAll);
   
   protected ArrayFieldProxy(long handleIndex, RecordTypeProxy<RT> recType, ManagedStringProxy name) {
     super(handleIndex, recType, name);
   }
   
   private static native void release(long handle);
+  private static native void releaseAll(long[] handles);
   private static native long getNameHandle(long handle);
   private static native long getRecTypeHandle(long handle);
   
   
   @Override
-  void releaseHandleIndex(long index) {
-    release(index);
+  HandleReleaser handleReleaser() {
+    return handleReleaser;
   }
   
   @Override
@@ -32,6 +32,14 @@ import java.util.Objects;
 import com.hpl.mds.*;
 
 public abstract class ArrayProxy<ET extends ManagedObject> extends Proxy implements ManagedArray<ET> {
+  /*
+   * The most elements the bulk copyTo() and copyFrom() methods will
+   * move in a single native call.  The Java array is pinned for the
+   * duration of each call, so this bounds how long we hold off the
+   * Java GC.
+   */
+  static final int CHUNK_SIZE = Integer.getInteger("com.hpl.mds.arrayChunkSize", 64*1024);
+
 	protected long size = -1;
   
   protected ArrayProxy(long handle, long size) {
@@ -67,6 +75,17 @@ public abstract class ArrayProxy<ET extends ManagedObject> extends Proxy impleme
 		};
 	}
 	
+  protected void checkRange(long index, int arrayLength, int off, int len) {
+    if (off < 0 || len < 0 || off > arrayLength-len) {
+      throw new ArrayIndexOutOfBoundsException(String.format("off=%,d, len=%,d, length=%,d",
+                                                             off, len, arrayLength));
+    }
+    if (index < 0 || index > longSize()-len) {
+      throw new IndexOutOfBoundsException(String.format("index=%,d, len=%,d, size=%,d",
+                                                        index, len, longSize()));
+    }
+  }
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
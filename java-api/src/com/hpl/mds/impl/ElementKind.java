@@ -0,0 +1,89 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package com.hpl.mds.impl;
+
+/*
+ * The kinds of element the managed containers (ManagedMapProxy and
+ * friends) can hold, and how each crosses to the native side as a
+ * long.  The ordinals have to match elt_kind in container_proxy.h.
+ */
+public enum ElementKind {
+  LONG {
+    @Override
+    long toBits(Object o) {
+      return (Long)o;
+    }
+    @Override
+    Object fromBits(long bits) {
+      return bits;
+    }
+  },
+  DOUBLE {
+    @Override
+    long toBits(Object o) {
+      return Double.doubleToRawLongBits((Double)o);
+    }
+    @Override
+    Object fromBits(long bits) {
+      return Double.longBitsToDouble(bits);
+    }
+  },
+  STRING {
+    @Override
+    long toBits(Object o) {
+      return ManagedStringProxy.handleOf((CharSequence)o);
+    }
+    @Override
+    Object fromBits(long bits) {
+      return ManagedStringProxy.fromHandle(bits);
+    }
+    @Override
+    long[] allToBits(Object[] objs, int n) {
+      CharSequence[] strings = new CharSequence[n];
+      for (int i=0; i<n; i++) {
+        strings[i] = (CharSequence)objs[i];
+      }
+      ManagedStringProxy[] interned = ManagedStringProxy.internAll(strings);
+      long[] bits = new long[n];
+      for (int i=0; i<n; i++) {
+        bits[i] = interned[i].handleIndex();
+      }
+      return bits;
+    }
+  };
+
+  abstract long toBits(Object o);
+  abstract Object fromBits(long bits);
+
+  long[] allToBits(Object[] objs, int n) {
+    long[] bits = new long[n];
+    for (int i=0; i<n; i++) {
+      bits[i] = toBits(objs[i]);
+    }
+    return bits;
+  }
+}
@@ -26,7 +26,10 @@
 
 package com.hpl.mds.impl;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.hpl.mds.*;
 
@@ -36,14 +39,75 @@ import com.hpl.mds.callbacks.FieldChange;
 
 public abstract class FieldProxy<RT extends ManagedRecord, FT extends ManagedObject> extends Proxy implements Field<RT,FT> {
   
+  /*
+   * There can be more than one proxy for a field, so they all share
+   * one holder for the caching setting, found here.
+   */
+  private static final class CachingSetting {
+    volatile Caching value = Caching.UNCACHED;
+  }
+  private static final ConcurrentHashMap<Long, CachingSetting> cachingByField = new ConcurrentHashMap<>();
+
   protected ManagedStringProxy name_;
   protected RecordTypeProxy<RT> recordType_;
+  private final CachingSetting caching_;
   
 	protected FieldProxy(long handleIndex, RecordTypeProxy<RT> recType, ManagedStringProxy name) {
           super(handleIndex, null);
 		recordType_ = recType;
 		name_ = name;
+		caching_ = cachingByField.computeIfAbsent(handleIndex, h -> new CachingSetting());
 	}
+
+  @Override
+  public Caching caching() {
+    return caching_.value;
+  }
+
+  @Override
+  public void setCaching(Caching caching) {
+    Objects.requireNonNull(caching);
+    caching_.value = caching;
+  }
+
+  /*
+   * The values cached for the record in the current context, or null
+   * if reads of this field there have to go to the native side.
+   */
+  protected final ManagedRecordProxy.FieldValues cachedIn(RT record) {
+    if (record == null) {
+      return null;
+    }
+    IsoContextProxy ctxt = IsoContextProxy.current();
+    if (!ctxt.cachesFields(caching_.value)) {
+      return null;
+    }
+    return ((ManagedRecordProxy)record).fieldValues(ctxt);
+  }
+
+  /*
+   * The records for the handles an index lookup returned, which are
+   * null if the field isn't indexed.
+   */
+  protected final List<RT> indexedRecords(long[] handles) {
+    if (handles == null) {
+      throw new IllegalStateException("Field " + name() + " is not indexed");
+    }
+    RecordTypeProxy<RT> rt = RecordTypeProxy.downcast(recordType());
+    List<RT> recs = new ArrayList<>(handles.length);
+    for (long h : handles) {
+      recs.add(ManagedRecordProxy.fromHandle(h, rt));
+    }
+    return recs;
+  }
+
+  /*
+   * Called after every write through a field proxy, since a snapshot
+   * context can see its own modifications.
+   */
+  protected static void noteWrite() {
+    IsoContextProxy.current().noteFieldWrite();
+  }
 	
 	@Override
 	public FT apply(RT rec) {
@@ -147,7 +147,6 @@ public abstract class HNameImpl implements HName {
   static class NonRoot extends AbsoluteHNI {
     private final AbsoluteHNI parent;
     private final ManagedStringProxy name;
-    private Namespace namespace;
 
     private NonRoot(AbsoluteHNI parent, ManagedStringProxy name) {
       super(parent.depth+1);
@@ -172,10 +171,11 @@ public abstract class HNameImpl implements HName {
 
     @Override
     public Namespace asNamespace() {
-      if (namespace == null) {
-    	  namespace = parent.asNamespace().childNamespace(name);
-      }
-      return namespace;
+      /*
+       * The namespace proxies cache what they resolve per context, so
+       * we don't hold onto one here.
+       */
+      return parent.asNamespace().childNamespace(name);
     }
 
   }
@@ -0,0 +1,434 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package com.hpl.mds.impl;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+
+/*
+ * Releases the native handle indices held by dead proxies.  Rather
+ * than have each proxy release its index in a finalizer (one JNI call
+ * per object, on a single finalizer thread, and at least one extra
+ * GC cycle before the proxy is reclaimed), each proxy registers a
+ * phantom reference when it's created.  A daemon thread drains the
+ * reference queue, collects the indices by proxy type, and hands
+ * them to that type's bulk releaseAll(long[]) native method in
+ * batches.
+ *
+ * The drain thread also wakes up periodically to release surplus
+ * references (see releaseLater()) that threads have buffered but not
+ * yet released.
+ *
+ * There is one HandleReleaser per proxy type.  Counters are kept per
+ * type, and static methods give totals across all types.
+ */
+public final class HandleReleaser {
+  private static final Logger log = Logger.getLogger(HandleReleaser.class);
+
+  static final int BATCH_SIZE = Integer.getInteger("com.hpl.mds.releaseBatchSize", 1024);
+  static final int SURPLUS_BATCH_SIZE = Integer.getInteger("com.hpl.mds.surplusReleaseBatchSize", 256);
+  static final long SURPLUS_FLUSH_MILLIS = Long.getLong("com.hpl.mds.surplusFlushMillis", 100);
+  private static final int N_STRIPES = 16;
+
+  private static final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+  private static final List<HandleReleaser> releasers = new CopyOnWriteArrayList<>();
+  private static final AtomicLong nDrains = new AtomicLong();
+  private static volatile int lastDrain = 0;
+  private static volatile int maxDrain = 0;
+  private static volatile int pending = 0;
+
+  static {
+    Thread t = new Thread(HandleReleaser::drainLoop, "MDS handle releaser");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  private final String name;
+  private final Consumer<long[]> bulkRelease;
+  /*
+   * Only touched by the drain thread.
+   */
+  private final long[] buffer = new long[BATCH_SIZE];
+  private int nBuffered = 0;
+  /*
+   * The references have to be strongly reachable until they're
+   * enqueued, so we keep them in doubly-linked lists, striped to
+   * keep proxy creation from contending on a single lock.
+   */
+  private final Ref[] stripes = new Ref[N_STRIPES];
+  private final Object[] stripeLocks = new Object[N_STRIPES];
+
+  /*
+   * Surplus references (see releaseLater()) are buffered per thread.
+   * Each buffer is also on the surpluses list, so the drain thread
+   * can release what's left in it when its thread goes idle or dies.
+   */
+  private final ThreadLocal<Surplus> surplus = ThreadLocal.withInitial(this::newSurplus);
+  private final ConcurrentLinkedQueue<Surplus> surpluses = new ConcurrentLinkedQueue<>();
+
+  private final AtomicLong nRegistered = new AtomicLong();
+  private final AtomicLong nSurplus = new AtomicLong();
+  private final AtomicLong nReleased = new AtomicLong();
+  private final AtomicLong nDisowned = new AtomicLong();
+  private final AtomicLong nBatches = new AtomicLong();
+
+  HandleReleaser(String name, Consumer<long[]> bulkRelease) {
+    this.name = name;
+    this.bulkRelease = bulkRelease;
+    for (int i = 0; i < N_STRIPES; i++) {
+      stripeLocks[i] = new Object();
+    }
+    releasers.add(this);
+  }
+
+  static final class Ref extends PhantomReference<Object> {
+    final long index;
+    /*
+     * Non-null if the reference covers a batch of indices (see
+     * registerAll()).  Indices that some proxy has taken over are
+     * zeroed.
+     */
+    final long[] indices;
+    final HandleReleaser releaser;
+    final int stripe;
+    Ref prev;
+    Ref next;
+
+    Ref(Object owner, long index, long[] indices, HandleReleaser releaser, int stripe) {
+      super(owner, queue);
+      this.index = index;
+      this.indices = indices;
+      this.releaser = releaser;
+      this.stripe = stripe;
+    }
+
+    /*
+     * Called when some other proxy has taken over responsibility for
+     * the index.  The reference is cleared and dropped, so it will
+     * never be enqueued.
+     */
+    void disown() {
+      if (releaser.unlink(this)) {
+        clear();
+        releaser.nDisowned.incrementAndGet();
+      }
+    }
+
+    /*
+     * Called when a proxy has taken over the i'th index of a batch.
+     */
+    void disown(int i) {
+      indices[i] = 0;
+      releaser.nDisowned.incrementAndGet();
+    }
+  }
+
+  Ref register(Proxy proxy, long index) {
+    return link(new Ref(proxy, index, null, this, stripeForThread()), 1);
+  }
+
+  /*
+   * Registers a single reference that releases all of the (nonzero)
+   * indices when owner dies.  The array is not copied.
+   */
+  Ref registerAll(Object owner, long[] indices) {
+    return link(new Ref(owner, 0, indices, this, stripeForThread()), indices.length);
+  }
+
+  private static int stripeForThread() {
+    return (int)(Thread.currentThread().getId() % N_STRIPES);
+  }
+
+  private Ref link(Ref r, int n) {
+    int stripe = r.stripe;
+    synchronized (stripeLocks[stripe]) {
+      Ref head = stripes[stripe];
+      r.next = head;
+      if (head != null) {
+        head.prev = r;
+      }
+      stripes[stripe] = r;
+    }
+    nRegistered.addAndGet(n);
+    return r;
+  }
+
+  /*
+   * Returns false if the reference had already been unlinked.
+   */
+  private boolean unlink(Ref r) {
+    synchronized (stripeLocks[r.stripe]) {
+      if (r.prev == null && stripes[r.stripe] != r) {
+        return false;
+      }
+      if (r.prev == null) {
+        stripes[r.stripe] = r.next;
+      } else {
+        r.prev.next = r.next;
+      }
+      if (r.next != null) {
+        r.next.prev = r.prev;
+      }
+      r.prev = r.next = null;
+      return true;
+    }
+  }
+
+  /*
+   * Guarded by its own monitor, which is only contended when the
+   * drain thread is flushing it.
+   */
+  private static final class Surplus {
+    final long[] indices = new long[SURPLUS_BATCH_SIZE];
+    final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+    int n = 0;
+  }
+
+  private Surplus newSurplus() {
+    Surplus s = new Surplus();
+    surpluses.add(s);
+    return s;
+  }
+
+  /*
+   * Drops a reference on the index that isn't owned by any proxy.
+   * This happens when a native method returns an index (with a
+   * reference) and Proxy.Table finds that there's already a live
+   * proxy for it.  Rather than make a JNI call per lookup, we buffer
+   * them in the calling thread and release them in bulk when the
+   * buffer fills.  Partial buffers are released by the drain thread
+   * every SURPLUS_FLUSH_MILLIS, so a thread that stops (or goes
+   * idle) can't keep a handle (and, for contexts, the version
+   * watermark) pinned indefinitely.
+   */
+  void releaseLater(long index) {
+    Surplus s = surplus.get();
+    synchronized (s) {
+      s.indices[s.n++] = index;
+      if (s.n == SURPLUS_BATCH_SIZE) {
+        releaseSurplus(s);
+      }
+    }
+  }
+
+  /*
+   * Must hold s's monitor.
+   */
+  private void releaseSurplus(Surplus s) {
+    int n = s.n;
+    long[] batch = n == SURPLUS_BATCH_SIZE ? s.indices : Arrays.copyOf(s.indices, n);
+    s.n = 0;
+    bulkRelease.accept(batch);
+    nSurplus.addAndGet(n);
+  }
+
+  /*
+   * Called by the drain thread.  Buffers belonging to dead threads
+   * are dropped once they've been emptied.
+   */
+  private void flushSurplus() {
+    for (Iterator<Surplus> it = surpluses.iterator(); it.hasNext();) {
+      Surplus s = it.next();
+      Thread t = s.owner.get();
+      boolean dead = t == null || !t.isAlive();
+      try {
+        synchronized (s) {
+          if (s.n > 0) {
+            releaseSurplus(s);
+          }
+        }
+      } catch (Throwable e) {
+        log.error(String.format("Releasing surplus %s handles", name), e);
+      }
+      if (dead) {
+        it.remove();
+      }
+    }
+  }
+
+  private void add(Ref r) {
+    if (!unlink(r)) {
+      return;
+    }
+    if (r.indices == null) {
+      bufferIndex(r.index);
+    } else {
+      for (long index : r.indices) {
+        if (index != 0) {
+          bufferIndex(index);
+        }
+      }
+    }
+  }
+
+  private void bufferIndex(long index) {
+    buffer[nBuffered++] = index;
+    if (nBuffered == BATCH_SIZE) {
+      flush();
+    }
+  }
+
+  private void flush() {
+    if (nBuffered == 0) {
+      return;
+    }
+    long[] batch = nBuffered == BATCH_SIZE ? buffer.clone() : Arrays.copyOf(buffer, nBuffered);
+    int n = nBuffered;
+    nBuffered = 0;
+    try {
+      bulkRelease.accept(batch);
+    } catch (Throwable e) {
+      log.error(String.format("Releasing %,d %s handles", n, name), e);
+    }
+    nReleased.addAndGet(n);
+    nBatches.incrementAndGet();
+  }
+
+  private static void drainLoop() {
+    long surplusFlushNanos = TimeUnit.MILLISECONDS.toNanos(SURPLUS_FLUSH_MILLIS);
+    long lastSurplusFlush = System.nanoTime();
+    while (true) {
+      try {
+        Ref r = (Ref)queue.remove(SURPLUS_FLUSH_MILLIS);
+        if (r != null) {
+          int n = 0;
+          do {
+            n++;
+            pending = n;
+            r.releaser.add(r);
+          } while ((r = (Ref)queue.poll()) != null);
+          for (HandleReleaser hr : releasers) {
+            hr.flush();
+          }
+          pending = 0;
+          lastDrain = n;
+          if (n > maxDrain) {
+            maxDrain = n;
+          }
+          nDrains.incrementAndGet();
+        }
+        long now = System.nanoTime();
+        if (now - lastSurplusFlush >= surplusFlushNanos) {
+          for (HandleReleaser hr : releasers) {
+            hr.flushSurplus();
+          }
+          lastSurplusFlush = now;
+        }
+      } catch (InterruptedException e) {
+        // Keep going.  We're a daemon, so we won't hold up exit.
+      } catch (Throwable e) {
+        log.error("Unexpected error releasing handles", e);
+      }
+    }
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /*
+   * Handles whose proxies are live or have died but not yet been
+   * released.
+   */
+  public long outstanding() {
+    return nRegistered.get() - nReleased.get() - nDisowned.get();
+  }
+
+  public long registered() {
+    return nRegistered.get();
+  }
+
+  public long released() {
+    return nReleased.get();
+  }
+
+  public long batches() {
+    return nBatches.get();
+  }
+
+  /*
+   * Extra references dropped for indices that were already held by
+   * a live proxy.
+   */
+  public long surplusReleased() {
+    return nSurplus.get();
+  }
+
+  public static List<HandleReleaser> all() {
+    return releasers;
+  }
+
+  /*
+   * The number of dead proxies the drain thread has pulled off the
+   * queue in its current pass but not yet released.
+   */
+  public static int pending() {
+    return pending;
+  }
+
+  /*
+   * The number of dead proxies found the last time the drain thread
+   * woke up, and the largest number it has ever found.  If these keep
+   * growing, the drain thread is falling behind.
+   */
+  public static int lastDrainSize() {
+    return lastDrain;
+  }
+
+  public static int maxDrainSize() {
+    return maxDrain;
+  }
+
+  public static long drains() {
+    return nDrains.get();
+  }
+
+  public static long totalOutstanding() {
+    long n = 0;
+    for (HandleReleaser hr : releasers) {
+      n += hr.outstanding();
+    }
+    return n;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("HandleReleaser[%s: %,d outstanding, %,d released in %,d batches]",
+                         name, outstanding(), released(), batches());
+  }
+}
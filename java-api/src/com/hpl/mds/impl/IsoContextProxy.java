@@ -50,14 +50,17 @@ import com.hpl.mds.*;
 public class IsoContextProxy extends Proxy implements IsolationContext {
 	
   private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+  private static final HandleReleaser handleReleaser
+    = new HandleReleaser("IsoContext", IsoContextProxy::releaseAll);
 	
   private static final Logger log = Logger.getLogger(IsoContextProxy.class);
 
   private static final Proxy.Table<IsoContextProxy> 
-    proxyTable = new Proxy.Table<>(IsoContextProxy::release);
+    proxyTable = new Proxy.Table<>(handleReleaser);
 
   private IsoContextProxy parent_ = null;
   private Boolean isPublishable_ = null;
+  private Boolean isFrozen_ = null;
   private TaskProxy topLevelTask_ = null;
   private TaskProxy creationTask_ = null;
   private List<Consumer<? super IsoContextProxy>> successfulPublishHooks_ = null;
@@ -69,6 +72,25 @@ public class IsoContextProxy extends Proxy implements IsolationContext {
    */
   AtomicInteger successfulPublishCount = new AtomicInteger(0);
 
+  /*
+   * Field values cached in record proxies (see
+   * ManagedRecordProxy.FieldValues) are only good while this doesn't
+   * change.  We bump it whenever what the context sees might have
+   * changed: when it publishes or is rolled forward, when a child
+   * publishes into it, and when it writes a field itself.
+   */
+  private final AtomicInteger fieldEpoch = new AtomicInteger(0);
+  /*
+   * CACHED to cache all fields (see PubOption.cacheFields()).
+   */
+  volatile Caching fieldCaching = Caching.UNCACHED;
+
+  /*
+   * Namespace paths resolved in this context (see
+   * NamespaceProxy.childNamespace()).
+   */
+  volatile NamespaceProxy.Resolved resolvedNamespaces = null;
+
   /*
    * We need to hold onto all contexts we may try to publish and all
    * of their potentially redoable tasks.  As soon as we successfully
@@ -91,6 +113,7 @@ public class IsoContextProxy extends Proxy implements IsolationContext {
   }
 
   private static native void release(long h);
+  private static native void releaseAll(long[] handles);
   private static native long parentHandle(long h);
   private static native long topLevelTaskHandle(long h);
   private static native long creationTaskHandle(long h);
@@ -188,10 +211,12 @@ public class IsoContextProxy extends Proxy implements IsolationContext {
   public PubResultProxy tryPublish() {
     // System.out.format("Calling tryPublish() on %s%n", this);
     long h = publish(handleIndex_);
+    fieldsChanged();
     PubResultProxy res = PubResultProxy.fromHandle(h);
     if (res.succeeded()) {
       // System.out.format("tryPublish() succeeded%n");
       successfulPublishCount.incrementAndGet();
+      parent().fieldsChanged();
       giveUp();
     }
     return res;
@@ -264,6 +289,37 @@ public class IsoContextProxy extends Proxy implements IsolationContext {
     return isSnapshot(handleIndex_);
   }
 
+  /*
+   * Snapshots are the only contexts in which a field's value can't be
+   * changed by somebody else without our noticing.  A live read-only
+   * context sees its parent's publishes as they happen.
+   */
+  boolean isFrozen() {
+    if (isFrozen_ == null) {
+      isFrozen_ = isSnapshot();
+    }
+    return isFrozen_;
+  }
+
+  boolean cachesFields(Caching forField) {
+    return (forField == Caching.CACHED || fieldCaching == Caching.CACHED)
+      && isFrozen();
+  }
+
+  int fieldEpoch() {
+    return fieldEpoch.get();
+  }
+
+  void fieldsChanged() {
+    fieldEpoch.incrementAndGet();
+  }
+
+  void noteFieldWrite() {
+    if (isFrozen()) {
+      fieldsChanged();
+    }
+  }
+
   @Override
   public boolean hasConflicts() {
     return hasConflicts(handleIndex_);
@@ -285,6 +341,7 @@ public class IsoContextProxy extends Proxy implements IsolationContext {
     if (mt != ModificationType.Full) {
       // System.out.format("Context is not publishable.  Just calling%n");
       IsoContextProxy child = createNested(vt, mt);
+      child.fieldCaching = control.fieldCaching();
       R val = child.call(func);
       return val;
     }
@@ -299,17 +356,27 @@ public class IsoContextProxy extends Proxy implements IsolationContext {
       .map(Supplier::get).collect(Collectors.toList());
     Collection<Supplier<Predicate<PubResult>>> resolveControls = control.forResolve();
 
+    RetryPolicy.Attempts attempts = control.retryPolicy().start();
+
     PubResult pr;
     boolean cont = true;
     while (cont) {
       IsoContextProxy child = createNested(vt, mt);
+      child.fieldCaching = control.fieldCaching();
       reports.forEach(r -> r.beforeRun(child));
       
-      // System.out.format("Child context is %s%n", child);
-      R val = child.call(func);
-      // System.out.format("Isolated call returned %s%n", val);
-      pr = child.publish(reports, resolveControls);
-      // System.out.format("Java publish call returned%n");
+      attempts.beforeRun();
+      R val;
+      pr = null;
+      try {
+        // System.out.format("Child context is %s%n", child);
+        val = child.call(func);
+        // System.out.format("Isolated call returned %s%n", val);
+        pr = child.publish(reports, resolveControls);
+        // System.out.format("Java publish call returned%n");
+      } finally {
+        attempts.afterRun(pr);
+      }
       if (pr.succeeded()) {
         // System.out.format("Publish succeeded%n");
         reports.forEach(PublishReport::noteSuccess);
@@ -318,6 +385,9 @@ public class IsoContextProxy extends Proxy implements IsolationContext {
       // System.out.format("Publish failed%n");
       cont = reRunControls.stream().allMatch(BooleanSupplier::getAsBoolean);
       child.giveUp();
+      if (cont) {
+        attempts.beforeRerun();
+      }
     }
     // System.out.format("Giving up on isolated block.%n");
     reports.forEach(PublishReport::noteFailure);
@@ -333,8 +403,8 @@ public class IsoContextProxy extends Proxy implements IsolationContext {
 
 
   @Override
-  void releaseHandleIndex(long index) {
-    proxyTable.release(index);
+  HandleReleaser handleReleaser() {
+    return handleReleaser;
   }
 
   private void runSuccessfulPublishHooks() {
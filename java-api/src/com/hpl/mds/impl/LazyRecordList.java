@@ -0,0 +1,79 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package com.hpl.mds.impl;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.hpl.mds.ManagedRecord;
+
+/*
+ * The records created by RecordType.createMany(n).  The native call
+ * hands back an array of handle indices, and the proxy for a record
+ * is only created the first time it's asked for.  Until then the list
+ * holds the index, and a single reference registered with the
+ * records' HandleReleaser releases whatever indices are left when
+ * the list dies.
+ */
+final class LazyRecordList<R extends ManagedRecord> extends AbstractList<R> implements RandomAccess {
+  private final RecordTypeProxy<R> type;
+  private final long[] handles;
+  private final AtomicReferenceArray<R> records;
+  private final HandleReleaser.Ref releaseRef;
+
+  LazyRecordList(RecordTypeProxy<R> type, long[] handles, HandleReleaser releaser) {
+    this.type = type;
+    this.handles = handles;
+    this.records = new AtomicReferenceArray<>(handles.length);
+    this.releaseRef = releaser.registerAll(this, handles);
+  }
+
+  @Override
+  public int size() {
+    return handles.length;
+  }
+
+  @Override
+  public R get(int i) {
+    R r = records.get(i);
+    if (r == null) {
+      synchronized (this) {
+        r = records.get(i);
+        if (r == null) {
+          /*
+           * The proxy takes over the index.
+           */
+          r = type.createFromRecordHandle(handles[i]);
+          releaseRef.disown(i);
+          records.set(i, r);
+        }
+      }
+    }
+    return r;
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package com.hpl.mds.impl;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * A concurrent map from (non-zero) long keys to weakly-held values,
+ * used by Proxy.Table to find the live proxy for a handle index.
+ * Unlike a ConcurrentHashMap<Long, WeakReference<V>>, lookups don't
+ * box the key, and the only allocation on insertion is the reference
+ * itself, which carries its key and is shared with the thread-local
+ * caches.
+ *
+ * The map is split into segments.  Each segment is an open-addressed
+ * (linear probing) table held in an AtomicReferenceArray, so get()
+ * doesn't lock.  Writers lock the segment.  When a value is
+ * collected, its reference is enqueued, and the next writer to the
+ * map replaces it with a tombstone.  Tables are rebuilt (without
+ * tombstones or cleared references) when they get too full.
+ */
+final class LongWeakValueMap<V> {
+  private static final int N_SEGMENTS = 16;
+  private static final int INITIAL_CAPACITY = 64;
+
+  static final class Ref<V> extends WeakReference<V> {
+    final long key;
+    Ref(long key, V val, ReferenceQueue<? super V> queue) {
+      super(val, queue);
+      this.key = key;
+    }
+  }
+
+  private static final Ref<Object> TOMBSTONE = new Ref<>(0, null, null);
+
+  private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+  private final Segment<V>[] segments;
+
+  LongWeakValueMap() {
+    @SuppressWarnings("unchecked")
+    Segment<V>[] segs = (Segment<V>[])new Segment<?>[N_SEGMENTS];
+    for (int i = 0; i < N_SEGMENTS; i++) {
+      segs[i] = new Segment<>();
+    }
+    segments = segs;
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int)(h ^ (h >>> 32));
+  }
+
+  private Segment<V> segmentFor(int h) {
+    return segments[(h >>> 28) & (N_SEGMENTS-1)];
+  }
+
+  private static final class Segment<V> {
+    volatile AtomicReferenceArray<Ref<V>> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    /*
+     * Slots that are non-null (live, cleared or tombstoned).
+     * Only modified with the segment locked.
+     */
+    int used = 0;
+
+    Ref<V> get(long key, int h) {
+      AtomicReferenceArray<Ref<V>> t = table;
+      int mask = t.length()-1;
+      for (int i = h & mask; ; i = (i+1) & mask) {
+        Ref<V> r = t.get(i);
+        if (r == null) {
+          return null;
+        }
+        if (r.key == key && r != TOMBSTONE) {
+          return r;
+        }
+      }
+    }
+
+    synchronized void put(Ref<V> ref, int h) {
+      AtomicReferenceArray<Ref<V>> t = table;
+      int mask = t.length()-1;
+      int free = -1;
+      for (int i = h & mask; ; i = (i+1) & mask) {
+        Ref<V> r = t.get(i);
+        if (r == null) {
+          break;
+        }
+        if (r.key == ref.key && r != TOMBSTONE) {
+          t.set(i, ref);
+          return;
+        }
+        if (free < 0 && r == TOMBSTONE) {
+          free = i;
+        }
+      }
+      if (free >= 0) {
+        t.set(free, ref);
+        return;
+      }
+      if ((used+1)*4 > t.length()*3) {
+        t = rebuild(t);
+        mask = t.length()-1;
+      }
+      int i = h & mask;
+      while (t.get(i) != null) {
+        i = (i+1) & mask;
+      }
+      t.set(i, ref);
+      used++;
+    }
+
+    /*
+     * Replaces r with a tombstone if it's still the entry for its key.
+     */
+    synchronized void remove(Ref<?> ref, int h) {
+      AtomicReferenceArray<Ref<V>> t = table;
+      int mask = t.length()-1;
+      for (int i = h & mask; ; i = (i+1) & mask) {
+        Ref<V> r = t.get(i);
+        if (r == null) {
+          return;
+        }
+        if (r == ref) {
+          @SuppressWarnings("unchecked")
+          Ref<V> tomb = (Ref<V>)(Ref<?>)TOMBSTONE;
+          t.set(i, tomb);
+          return;
+        }
+      }
+    }
+
+    /*
+     * Copies the live entries into a new table and publishes it.
+     * The new table is sized so that it's at most half full.
+     */
+    private AtomicReferenceArray<Ref<V>> rebuild(AtomicReferenceArray<Ref<V>> old) {
+      int live = 0;
+      for (int i = 0; i < old.length(); i++) {
+        Ref<V> r = old.get(i);
+        if (r != null && r != TOMBSTONE && r.get() != null) {
+          live++;
+        }
+      }
+      int cap = INITIAL_CAPACITY;
+      while (cap < (live+1)*2) {
+        cap <<= 1;
+      }
+      AtomicReferenceArray<Ref<V>> t = new AtomicReferenceArray<>(cap);
+      int mask = cap-1;
+      for (int i = 0; i < old.length(); i++) {
+        Ref<V> r = old.get(i);
+        if (r != null && r != TOMBSTONE && r.get() != null) {
+          int j = hash(r.key) & mask;
+          while (t.get(j) != null) {
+            j = (j+1) & mask;
+          }
+          t.set(j, r);
+        }
+      }
+      used = live;
+      table = t;
+      return t;
+    }
+  }
+
+  /*
+   * Returns the reference for the key, or null.  The reference may
+   * have been cleared.
+   */
+  Ref<V> getRef(long key) {
+    int h = hash(key);
+    return segmentFor(h).get(key, h);
+  }
+
+  V get(long key) {
+    Ref<V> r = getRef(key);
+    return r == null ? null : r.get();
+  }
+
+  /*
+   * Associates the value with the key, replacing any prior value,
+   * and returns the reference that now holds it.
+   */
+  Ref<V> put(long key, V val) {
+    expungeStale();
+    Ref<V> ref = new Ref<>(key, val, queue);
+    int h = hash(key);
+    segmentFor(h).put(ref, h);
+    return ref;
+  }
+
+  private void expungeStale() {
+    Object o;
+    while ((o = queue.poll()) != null) {
+      Ref<?> r = (Ref<?>)o;
+      int h = hash(r.key);
+      segmentFor(h).remove(r, h);
+    }
+  }
+}
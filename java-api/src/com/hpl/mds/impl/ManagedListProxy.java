@@ -0,0 +1,263 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package com.hpl.mds.impl;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import com.hpl.mds.*;
+
+/*
+ * A java.util.List view of a core managed_list.  The list's contents
+ * are isolated per context.  Appends from different tasks don't
+ * conflict with one another: each goes to its own slot, and they are
+ * all there once the tasks publish.  Removing from either end
+ * conflicts with other removals, and adding at the front (which only
+ * DEQUE and LINKED_LIST lists allow) conflicts with removals and
+ * other front adds.  Elements can be longs, doubles, or strings
+ * (which come back as ManagedStrings).  Nulls aren't allowed.
+ *
+ * Access by index walks the list from the front, so it's best to
+ * iterate (which copies the elements out with a single native call)
+ * or to work at the ends.  addAll() is also a single call.
+ */
+public final class ManagedListProxy<E> extends AbstractList<E> {
+  private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+
+  /*
+   * The ordinals have to match list_usage in core_list.h.
+   */
+  public enum Usage {
+    ARRAY_LIST, STACK, QUEUE, DEQUE, LINKED_LIST
+  }
+
+  private static native void releaseAll(long[] handles);
+  private static native long create(int usage);
+  private static native void addLast(long h, int valKind, long val);
+  private static native void addFirst(long h, int valKind, long val);
+  private static native void addAllLast(long h, int valKind, long[] vals, int n);
+  private static native long removeFirst(long h, int valKind, boolean[] found);
+  private static native long removeLast(long h, int valKind, boolean[] found);
+  private static native long peekFirst(long h, int valKind, boolean[] found);
+  private static native long get(long h, int valKind, long index);
+  private static native long set(long h, int valKind, long index, long val);
+  private static native long removeAt(long h, int valKind, long index);
+  private static native long[] elements(long h, int valKind);
+  private static native long size(long h);
+
+  private static final class Handle extends Proxy {
+    private static final HandleReleaser handleReleaser
+      = new HandleReleaser("ManagedList", ManagedListProxy::releaseAll);
+    Handle(long h) {
+      super(h, null);
+    }
+    @Override
+    HandleReleaser handleReleaser() {
+      return handleReleaser;
+    }
+  }
+
+  private final Handle handle;
+  private final Usage usage;
+  private final ElementKind eltKind;
+  private final int vk;
+
+  private ManagedListProxy(Usage usage, ElementKind eltKind) {
+    this.usage = usage;
+    this.eltKind = eltKind;
+    this.vk = eltKind.ordinal();
+    this.handle = new Handle(create(usage.ordinal()));
+  }
+
+  public static <E> ManagedListProxy<E> create(Usage usage, ElementKind eltKind) {
+    return new ManagedListProxy<>(usage, eltKind);
+  }
+
+  public Usage usage() {
+    return usage;
+  }
+
+  private long h() {
+    return handle.handleIndex();
+  }
+
+  private long bits(Object elt) {
+    return eltKind.toBits(Objects.requireNonNull(elt));
+  }
+
+  @SuppressWarnings("unchecked")
+  private E elt(long bits) {
+    return (E)eltKind.fromBits(bits);
+  }
+
+  private static void checkIndex(int index) {
+    if (index < 0) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+  }
+
+  @Override
+  public boolean add(E e) {
+    addLast(e);
+    return true;
+  }
+
+  public void addLast(E e) {
+    addLast(h(), vk, bits(e));
+  }
+
+  /*
+   * Throws UnsupportedOperationException unless the list's usage is
+   * DEQUE or LINKED_LIST.
+   */
+  public void addFirst(E e) {
+    addFirst(h(), vk, bits(e));
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends E> c) {
+    Object[] elts = c.toArray();
+    if (elts.length == 0) {
+      return false;
+    }
+    for (Object e : elts) {
+      Objects.requireNonNull(e);
+    }
+    addAllLast(h(), vk, eltKind.allToBits(elts, elts.length), elts.length);
+    return true;
+  }
+
+  /*
+   * Returns null if the list is empty.
+   */
+  public E pollFirst() {
+    boolean[] found = new boolean[1];
+    long bits = removeFirst(h(), vk, found);
+    return found[0] ? elt(bits) : null;
+  }
+
+  public E pollLast() {
+    boolean[] found = new boolean[1];
+    long bits = removeLast(h(), vk, found);
+    return found[0] ? elt(bits) : null;
+  }
+
+  public E peekFirst() {
+    boolean[] found = new boolean[1];
+    long bits = peekFirst(h(), vk, found);
+    return found[0] ? elt(bits) : null;
+  }
+
+  public E removeFirst() {
+    E e = pollFirst();
+    if (e == null) {
+      throw new NoSuchElementException();
+    }
+    return e;
+  }
+
+  public E removeLast() {
+    E e = pollLast();
+    if (e == null) {
+      throw new NoSuchElementException();
+    }
+    return e;
+  }
+
+  @Override
+  public E get(int index) {
+    checkIndex(index);
+    return elt(get(h(), vk, index));
+  }
+
+  @Override
+  public E set(int index, E element) {
+    checkIndex(index);
+    return elt(set(h(), vk, index, bits(element)));
+  }
+
+  @Override
+  public E remove(int index) {
+    checkIndex(index);
+    return elt(removeAt(h(), vk, index));
+  }
+
+  @Override
+  public void clear() {
+    while (pollFirst() != null) {
+    }
+  }
+
+  @Override
+  public int size() {
+    return (int)Math.min(size(h()), Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Object[] toArray() {
+    long[] bits = elements(h(), vk);
+    Object[] elts = new Object[bits.length];
+    for (int i=0; i<bits.length; i++) {
+      elts[i] = elt(bits[i]);
+    }
+    return elts;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    long[] bits = elements(h(), vk);
+    return new Iterator<E>() {
+      int next = 0;
+      int removed = 0;
+      boolean canRemove = false;
+      @Override
+      public boolean hasNext() {
+        return next < bits.length;
+      }
+      @Override
+      public E next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        canRemove = true;
+        return elt(bits[next++]);
+      }
+      @Override
+      public void remove() {
+        if (!canRemove) {
+          throw new IllegalStateException();
+        }
+        ManagedListProxy.this.remove(next-1-removed);
+        removed++;
+        canRemove = false;
+      }
+    };
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package com.hpl.mds.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.hpl.mds.*;
+
+/*
+ * A java.util.Map view of a core managed_map.  Which keys are in the
+ * map (and what they map to) is isolated per context, and tasks only
+ * conflict when they touch the same key.  Keys can be longs or
+ * strings; values can be longs, doubles, or strings.  String keys
+ * and values come back as ManagedStrings.  Null keys and values
+ * aren't allowed.
+ *
+ * Iterating takes a copy of the entries in the current context with
+ * a single native call, as does putAll().  size() has to walk the
+ * map.
+ */
+public final class ManagedMapProxy<K,V> extends AbstractMap<K,V> {
+  private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+
+  private static native void releaseAll(int keyKind, long[] handles);
+  private static native long create(int keyKind);
+  private static native boolean containsKey(int keyKind, long h, long key);
+  private static native long get(int keyKind, long h, long key, int valKind, boolean[] found);
+  private static native long put(int keyKind, long h, long key, int valKind, long val, boolean[] found);
+  private static native long remove(int keyKind, long h, long key, int valKind, boolean[] found);
+  private static native void putAll(int keyKind, long h, long[] keys, int valKind, long[] vals, int n);
+  private static native long[] entries(int keyKind, long h, int valKind);
+  private static native long size(int keyKind, long h);
+
+  /*
+   * The core handles for long- and string-keyed maps are different
+   * types, so they're released separately.
+   */
+  private static final class LongKeyed extends Proxy {
+    private static final HandleReleaser handleReleaser
+      = new HandleReleaser("ManagedMap<Long>", hs -> releaseAll(ElementKind.LONG.ordinal(), hs));
+    LongKeyed(long h) {
+      super(h, null);
+    }
+    @Override
+    HandleReleaser handleReleaser() {
+      return handleReleaser;
+    }
+  }
+
+  private static final class StringKeyed extends Proxy {
+    private static final HandleReleaser handleReleaser
+      = new HandleReleaser("ManagedMap<String>", hs -> releaseAll(ElementKind.STRING.ordinal(), hs));
+    StringKeyed(long h) {
+      super(h, null);
+    }
+    @Override
+    HandleReleaser handleReleaser() {
+      return handleReleaser;
+    }
+  }
+
+  private final Proxy handle;
+  private final ElementKind keyKind;
+  private final ElementKind valKind;
+  private final int kk;
+  private final int vk;
+  private final Set<Map.Entry<K,V>> entrySet = new EntrySet();
+
+  private ManagedMapProxy(ElementKind keyKind, ElementKind valKind) {
+    if (keyKind == ElementKind.DOUBLE) {
+      throw new IllegalArgumentException("Map keys must be longs or strings");
+    }
+    this.keyKind = keyKind;
+    this.valKind = valKind;
+    this.kk = keyKind.ordinal();
+    this.vk = valKind.ordinal();
+    long h = create(kk);
+    this.handle = keyKind == ElementKind.STRING ? new StringKeyed(h) : new LongKeyed(h);
+  }
+
+  public static <K,V> ManagedMapProxy<K,V> create(ElementKind keyKind, ElementKind valKind) {
+    return new ManagedMapProxy<>(keyKind, valKind);
+  }
+
+  public static <V> ManagedMapProxy<Long,V> withLongKeys(ElementKind valKind) {
+    return create(ElementKind.LONG, valKind);
+  }
+
+  public static <V> ManagedMapProxy<ManagedString,V> withStringKeys(ElementKind valKind) {
+    return create(ElementKind.STRING, valKind);
+  }
+
+  private long h() {
+    return handle.handleIndex();
+  }
+
+  private long keyBits(Object key) {
+    return keyKind.toBits(Objects.requireNonNull(key));
+  }
+
+  @SuppressWarnings("unchecked")
+  private V val(long bits) {
+    return (V)valKind.fromBits(bits);
+  }
+
+  @SuppressWarnings("unchecked")
+  private K key(long bits) {
+    return (K)keyKind.fromBits(bits);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return containsKey(kk, h(), keyBits(key));
+  }
+
+  @Override
+  public V get(Object key) {
+    boolean[] found = new boolean[1];
+    long bits = get(kk, h(), keyBits(key), vk, found);
+    return found[0] ? val(bits) : null;
+  }
+
+  @Override
+  public V put(K key, V value) {
+    boolean[] found = new boolean[1];
+    long bits = put(kk, h(), keyBits(key), vk, valKind.toBits(Objects.requireNonNull(value)), found);
+    return found[0] ? val(bits) : null;
+  }
+
+  @Override
+  public V remove(Object key) {
+    boolean[] found = new boolean[1];
+    long bits = remove(kk, h(), keyBits(key), vk, found);
+    return found[0] ? val(bits) : null;
+  }
+
+  @Override
+  public void putAll(Map<? extends K, ? extends V> m) {
+    int n = m.size();
+    if (n == 0) {
+      return;
+    }
+    Object[] keys = new Object[n];
+    Object[] vals = new Object[n];
+    int i = 0;
+    for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+      keys[i] = Objects.requireNonNull(e.getKey());
+      vals[i] = Objects.requireNonNull(e.getValue());
+      i++;
+    }
+    putAll(kk, h(), keyKind.allToBits(keys, i), vk, valKind.allToBits(vals, i), i);
+  }
+
+  @Override
+  public int size() {
+    return (int)Math.min(size(kk, h()), Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Set<Map.Entry<K,V>> entrySet() {
+    return entrySet;
+  }
+
+  private List<Map.Entry<K,V>> snapshot() {
+    long[] bits = entries(kk, h(), vk);
+    List<Map.Entry<K,V>> list = new ArrayList<>(bits.length/2);
+    for (int i=0; i<bits.length; i+=2) {
+      list.add(new Entry(key(bits[i]), val(bits[i+1])));
+    }
+    return list;
+  }
+
+  private final class Entry extends AbstractMap.SimpleEntry<K,V> {
+    private static final long serialVersionUID = 1L;
+
+    Entry(K key, V value) {
+      super(key, value);
+    }
+
+    @Override
+    public V setValue(V value) {
+      super.setValue(value);
+      return put(getKey(), value);
+    }
+  }
+
+  private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+    @Override
+    public Iterator<Map.Entry<K,V>> iterator() {
+      Iterator<Map.Entry<K,V>> it = snapshot().iterator();
+      return new Iterator<Map.Entry<K,V>>() {
+        Map.Entry<K,V> last;
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+        @Override
+        public Map.Entry<K,V> next() {
+          last = it.next();
+          return last;
+        }
+        @Override
+        public void remove() {
+          if (last == null) {
+            throw new IllegalStateException();
+          }
+          ManagedMapProxy.this.remove(last.getKey());
+          last = null;
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return ManagedMapProxy.this.size();
+    }
+  }
+}
@@ -28,18 +28,25 @@ package com.hpl.mds.impl;
 
 import com.hpl.mds.*;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 public abstract class ManagedRecordProxy extends Proxy implements ManagedRecord {
 	
   private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+  private static final HandleReleaser handleReleaser
+    = new HandleReleaser("ManagedRecord", ManagedRecordProxy::releaseAll);
   
   protected final RecordTypeProxy<? extends ManagedRecord> type;
   private ManagedRecordProxy forward_;
   private boolean behavedWhileTypeInferred = false;
+  private volatile FieldValues fieldValues_ = null;
   
   private static final Proxy.Table<ManagedRecordProxy> 
-  proxyTable = new Proxy.Table.WithLargeCache<>(ManagedRecordProxy::release);
+  proxyTable = new Proxy.Table.WithLargeCache<>(handleReleaser);
   
   @Override
   protected Object domain() {
@@ -47,24 +54,24 @@ public abstract class ManagedRecordProxy extends Proxy implements ManagedRecord
   }
 
   private static native void release(long index);
+  private static native void releaseAll(long[] handles);
   private static native long createRecord(long recTypeHandle);
+  private static native long[] createRecords(long recTypeHandle, int n);
   private static native boolean isIdentical(long aHandle, long bHandle);
   private static native boolean isSameObject(long aHandle, long bHandle);
   private static native boolean isSameViewOfSameObject(long aHandle, long bHandle);
   private static native long recordTypeIndex(long handle);
   static native long getUUID(long recHandle);
   
+  /*
+   * If we have a forward (other than ourselves), it's the forward that
+   * does the release.  Since we hold a reference to it, it will
+   * necessarily outlive us.  Secondary proxies are created that way,
+   * and forwardsTo() disowns our handle when it creates one.
+   */
   @Override
-  void releaseHandleIndex(long index) {
-    /*
-     * If we have a forward, it's the forward that does the release. 
-     * Since we hold a reference to it, it will necessarily outlive 
-     * us.
-     */
-    if (forward_ == null || forward_ == this) {
-      //      System.out.format("Releasing record %s%n", this);
-      proxyTable.release(index);
-    }
+  HandleReleaser handleReleaser() {
+    return handleReleaser;
   }
   
   public enum FromHandle { FROM_HANDLE};
@@ -86,7 +93,7 @@ public abstract class ManagedRecordProxy extends Proxy implements ManagedRecord
   }
   
   protected ManagedRecordProxy(Secondary keyword, ManagedRecordProxy mrp) {
-    super(mrp.handleIndex_, null);
+    super(mrp.handleIndex_, null, false);
     forward_ = mrp;
     type = mrp.type;
   }
@@ -101,6 +108,44 @@ public abstract class ManagedRecordProxy extends Proxy implements ManagedRecord
     return createRecord(RecordTypeProxy.downcast(type).handleIndex());
   }
 
+  /*
+   * The streaming form of createMany() asks for this many at a time.
+   */
+  private static final int CREATE_CHUNK = Integer.getInteger("com.hpl.mds.createChunkSize", 4096);
+
+  static <R extends ManagedRecord> List<R> createMany(RecordTypeProxy<R> type, int n) {
+    if (n < 0) {
+      throw new IllegalArgumentException(String.format("Can't create %,d records", n));
+    }
+    return new LazyRecordList<>(type, createRecords(type.handleIndex(), n), handleReleaser);
+  }
+
+  static <R extends ManagedRecord> void createMany(RecordTypeProxy<R> type, int n,
+                                                   ObjIntConsumer<? super R> initializer) {
+    if (n < 0) {
+      throw new IllegalArgumentException(String.format("Can't create %,d records", n));
+    }
+    for (int done = 0; done < n; ) {
+      long[] handles = createRecords(type.handleIndex(), Math.min(CREATE_CHUNK, n-done));
+      /*
+       * The indices before owned have been taken over by proxies.
+       */
+      int owned = 0;
+      try {
+        for (int i = 0; i < handles.length; i++) {
+          R rec = type.createFromRecordHandle(handles[i]);
+          owned = i+1;
+          initializer.accept(rec, done+i);
+        }
+      } finally {
+        if (owned < handles.length) {
+          releaseAll(Arrays.copyOfRange(handles, owned, handles.length));
+        }
+      }
+      done += handles.length;
+    }
+  }
+
   
 
 //  public ManagedRecordProxy(RecordType<? extends ManagedRecord> type) 
@@ -122,6 +167,7 @@ public abstract class ManagedRecordProxy extends Proxy implements ManagedRecord
           RecordTypeProxy<? extends ManagedRecord> f = type.forward();
           if (f != null) {
             mrp = forward_ = (ManagedRecordProxy) f.createFromRecordHandle(handleIndex_);
+            disownHandle();
             /*
              * Now we need to make sure that it's the one in the table.  fromHandle() checks
              * the forward, but if the original gets collected, we won't be able to find
@@ -193,6 +239,52 @@ public abstract class ManagedRecordProxy extends Proxy implements ManagedRecord
 	  return type;
 	}
   
+  /*
+   * Field values read in a context in which they can't change behind
+   * our back.  We only keep one context's values at a time, and
+   * they're dropped whenever the context's field epoch moves (see
+   * IsoContextProxy.fieldEpoch()).
+   */
+  static final class FieldValues {
+    static final Object NULL = new Object();
+
+    final IsoContextProxy context;
+    final int epoch;
+    private final ConcurrentHashMap<Long, Object> values = new ConcurrentHashMap<>(4);
+
+    FieldValues(IsoContextProxy context, int epoch) {
+      this.context = context;
+      this.epoch = epoch;
+    }
+
+    /*
+     * Returns null if nothing has been cached, NULL if the field was
+     * read as null.
+     */
+    Object get(long field) {
+      return values.get(field);
+    }
+
+    <T> T put(long field, T val) {
+      values.put(field, val == null ? NULL : val);
+      return val;
+    }
+  }
+
+  FieldValues fieldValues(IsoContextProxy ctxt) {
+    /*
+     * We read the epoch first, so anything cached under it was read
+     * after it was current.
+     */
+    int epoch = ctxt.fieldEpoch();
+    FieldValues fv = fieldValues_;
+    if (fv == null || fv.context != ctxt || fv.epoch != epoch) {
+      fv = new FieldValues(ctxt, epoch);
+      fieldValues_ = fv;
+    }
+    return fv;
+  }
+
   public static <T extends ManagedRecord> long handleOf(T rec) {
     ManagedRecordProxy mrb = (ManagedRecordProxy)rec;
     return mrb == null ? 0 : mrb.handleIndex();
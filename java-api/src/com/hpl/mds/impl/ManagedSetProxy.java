@@ -0,0 +1,191 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package com.hpl.mds.impl;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import com.hpl.mds.*;
+
+/*
+ * A java.util.Set view of a core managed_set.  Membership is isolated
+ * per context and checked with a hash lookup, and tasks only conflict
+ * when they touch the same element, so it works as a unique-key
+ * index (e.g., of product SKUs) that many tasks add to at once.
+ * Elements can be longs or strings (which come back as
+ * ManagedStrings).  Nulls aren't allowed.
+ *
+ * addAll() adds the whole collection with a single native call, but
+ * it doesn't read the elements first, so it can't say whether the
+ * set changed: it returns true unless the collection is empty.  It
+ * also never conflicts.  Iterating takes a copy of the elements with
+ * a single native call.  size() has to walk the set.
+ */
+public final class ManagedSetProxy<E> extends AbstractSet<E> {
+  private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+
+  private static native void releaseAll(int eltKind, long[] handles);
+  private static native long create(int eltKind);
+  private static native boolean contains(int eltKind, long h, long elt);
+  private static native boolean add(int eltKind, long h, long elt);
+  private static native boolean remove(int eltKind, long h, long elt);
+  private static native void addAll(int eltKind, long h, long[] elts, int n);
+  private static native long[] elements(int eltKind, long h);
+  private static native long size(int eltKind, long h);
+
+  /*
+   * As with maps, the core handles for long and string sets are
+   * different types, so they're released separately.
+   */
+  private static final class LongElts extends Proxy {
+    private static final HandleReleaser handleReleaser
+      = new HandleReleaser("ManagedSet<Long>", hs -> releaseAll(ElementKind.LONG.ordinal(), hs));
+    LongElts(long h) {
+      super(h, null);
+    }
+    @Override
+    HandleReleaser handleReleaser() {
+      return handleReleaser;
+    }
+  }
+
+  private static final class StringElts extends Proxy {
+    private static final HandleReleaser handleReleaser
+      = new HandleReleaser("ManagedSet<String>", hs -> releaseAll(ElementKind.STRING.ordinal(), hs));
+    StringElts(long h) {
+      super(h, null);
+    }
+    @Override
+    HandleReleaser handleReleaser() {
+      return handleReleaser;
+    }
+  }
+
+  private final Proxy handle;
+  private final ElementKind eltKind;
+  private final int ek;
+
+  private ManagedSetProxy(ElementKind eltKind) {
+    if (eltKind == ElementKind.DOUBLE) {
+      throw new IllegalArgumentException("Set elements must be longs or strings");
+    }
+    this.eltKind = eltKind;
+    this.ek = eltKind.ordinal();
+    long h = create(ek);
+    this.handle = eltKind == ElementKind.STRING ? new StringElts(h) : new LongElts(h);
+  }
+
+  public static <E> ManagedSetProxy<E> create(ElementKind eltKind) {
+    return new ManagedSetProxy<>(eltKind);
+  }
+
+  public static ManagedSetProxy<Long> ofLongs() {
+    return create(ElementKind.LONG);
+  }
+
+  public static ManagedSetProxy<ManagedString> ofStrings() {
+    return create(ElementKind.STRING);
+  }
+
+  private long h() {
+    return handle.handleIndex();
+  }
+
+  private long bits(Object elt) {
+    return eltKind.toBits(Objects.requireNonNull(elt));
+  }
+
+  @SuppressWarnings("unchecked")
+  private E elt(long bits) {
+    return (E)eltKind.fromBits(bits);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return contains(ek, h(), bits(o));
+  }
+
+  @Override
+  public boolean add(E e) {
+    return add(ek, h(), bits(e));
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    return remove(ek, h(), bits(o));
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends E> c) {
+    Object[] elts = c.toArray();
+    if (elts.length == 0) {
+      return false;
+    }
+    for (Object e : elts) {
+      Objects.requireNonNull(e);
+    }
+    addAll(ek, h(), eltKind.allToBits(elts, elts.length), elts.length);
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return (int)Math.min(size(ek, h()), Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    long[] bits = elements(ek, h());
+    return new Iterator<E>() {
+      int next = 0;
+      E last;
+      @Override
+      public boolean hasNext() {
+        return next < bits.length;
+      }
+      @Override
+      public E next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        last = elt(bits[next++]);
+        return last;
+      }
+      @Override
+      public void remove() {
+        if (last == null) {
+          throw new IllegalStateException();
+        }
+        ManagedSetProxy.this.remove(last);
+        last = null;
+      }
+    };
+  }
+}
@@ -28,20 +28,55 @@ package com.hpl.mds.impl;
 
 import com.hpl.mds.*;
 
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 public class ManagedStringProxy extends Proxy implements ManagedString {
 	
   private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+  private static final HandleReleaser handleReleaser
+    = new HandleReleaser("ManagedString", ManagedStringProxy::releaseAll);
   
   private static final Proxy.Table<ManagedStringProxy> 
-  proxyTable = new Proxy.Table<>(ManagedStringProxy::release);
+  proxyTable = new Proxy.Table<>(handleReleaser);
   
 
-  private String cachedString_ = null;
+  /*
+   * Interned strings are immutable, so the cached copy can be filled
+   * without locking.  If two threads race to fill it, they'll both
+   * get the same contents.
+   */
+  private volatile String cachedString_ = null;
+
+  /*
+   * A bounded cache from string contents to the proxies they intern
+   * to, so that repeatedly interning the same strings doesn't cross
+   * into native code each time.  It's direct-mapped by hash: a new
+   * entry simply replaces whatever was in its slot.  Entries hold
+   * their proxies (and so their handles) strongly, which is what
+   * keeps the cache bounded rather than weak.
+   */
+  private static final int INTERN_CACHE_SIZE_BITS = 14;
+  private static final int INTERN_CACHE_MASK = (1 << INTERN_CACHE_SIZE_BITS)-1;
+  private static final AtomicReferenceArray<InternEntry> internCache
+    = new AtomicReferenceArray<>(1 << INTERN_CACHE_SIZE_BITS);
+
+  private static final class InternEntry {
+    final String key;
+    final ManagedStringProxy value;
+    InternEntry(String key, ManagedStringProxy value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
   
 
   private static native boolean release(long hi);
+  private static native void releaseAll(long[] handles);
   private static native boolean sameString(long hiA, long hiB);
   private static native long intern(String s);
+  private static native long[] internAll(String[] strings);
   private static native String toString(long hi);
   private static native int length(long hi);
   private static native char charAt(long hi, int pos);
@@ -94,25 +129,39 @@ public class ManagedStringProxy extends Proxy implements ManagedString {
   }
   
   @Override
-  synchronized public String asString() {
-    if (cachedString_ == null) {
-      cachedString_ = toString(handleIndex_);
+  public String asString() {
+    String s = cachedString_;
+    if (s == null) {
+      s = toString(handleIndex_);
+      cachedString_ = s;
     }
-    return cachedString_;
+    return s;
   }
 
   @Override
-  synchronized public String asStringNoCache() {
-    if (cachedString_ != null) {
-      return cachedString_;
+  public String asStringNoCache() {
+    String s = cachedString_;
+    if (s != null) {
+      return s;
     }
     return toString(handleIndex_);
   }
 
   @Override
-  synchronized public void clearCache() {
+  public void clearCache() {
     cachedString_ = null;
   }
+
+  /*
+   * The buffer is backed by the cached String rather than by the
+   * characters in the managed heap.  A direct buffer over the heap
+   * couldn't keep this proxy (and so the handle) alive, and would
+   * read freed memory once the proxy was collected.
+   */
+  @Override
+  public CharBuffer asCharBuffer() {
+    return CharBuffer.wrap(asString());
+  }
   
   public static ManagedStringProxy fromHandle(long hi) {
     return proxyTable.fromIndex(hi, ManagedStringProxy::new);
@@ -127,6 +176,23 @@ public class ManagedStringProxy extends Proxy implements ManagedString {
     return handleOf(valueOf(s));
   }
   
+  private static int internSlot(String s) {
+    int h = s.hashCode();
+    return (h ^ (h >>> 16)) & INTERN_CACHE_MASK;
+  }
+
+  private static ManagedStringProxy cachedIntern(String s) {
+    InternEntry e = internCache.get(internSlot(s));
+    return e != null && e.key.equals(s) ? e.value : null;
+  }
+
+  private static ManagedStringProxy noteInterned(String s, long handle) {
+    ManagedStringProxy msp = fromHandle(handle);
+    msp.cachedString_ = s;
+    internCache.set(internSlot(s), new InternEntry(s, msp));
+    return msp;
+  }
+
   public static ManagedStringProxy valueOf(CharSequence val) {
     if (val == null) {
       return null;
@@ -134,27 +200,67 @@ public class ManagedStringProxy extends Proxy implements ManagedString {
     if (val instanceof ManagedStringProxy) {
       return (ManagedStringProxy)val;
     }
-    return fromHandle(intern(val.toString()));
+    String s = val.toString();
+    ManagedStringProxy msp = cachedIntern(s);
+    if (msp == null) {
+      msp = noteInterned(s, intern(s));
+    }
+    return msp;
+  }
+
+  /*
+   * Interns all of the values, making a single native call for all
+   * of the ones that aren't already in the cache.  Null values map
+   * to null.
+   */
+  public static ManagedStringProxy[] internAll(CharSequence[] vals) {
+    int n = vals.length;
+    ManagedStringProxy[] res = new ManagedStringProxy[n];
+    String[] toIntern = new String[n];
+    int[] positions = new int[n];
+    int nMissed = 0;
+    for (int i=0; i<n; i++) {
+      CharSequence val = vals[i];
+      if (val == null) {
+        continue;
+      }
+      if (val instanceof ManagedStringProxy) {
+        res[i] = (ManagedStringProxy)val;
+        continue;
+      }
+      String s = val.toString();
+      res[i] = cachedIntern(s);
+      if (res[i] == null) {
+        toIntern[nMissed] = s;
+        positions[nMissed] = i;
+        nMissed++;
+      }
+    }
+    if (nMissed > 0) {
+      String[] strings = nMissed == n ? toIntern : Arrays.copyOf(toIntern, nMissed);
+      long[] handles = internAll(strings);
+      for (int j=0; j<nMissed; j++) {
+        res[positions[j]] = noteInterned(strings[j], handles[j]);
+      }
+    }
+    return res;
   }
   @Override
   public ManagedStringType type() {
     return ManagedStringType.INSTANCE;
   }
+  /*
+   * CharSequence consumers tend to walk the whole string, so rather
+   * than crossing into native code for each character, we fetch the
+   * whole thing once.
+   */
   @Override
   public int length() {
-    if (cachedString_ != null) {
-      return cachedString_.length();
-    } else {
-      return length(handleIndex_);
-    }
+    return asString().length();
   }
   @Override
   public char charAt(int index) {
-    if (cachedString_ != null) {
-      return cachedString_.charAt(index);
-    } else {
-      return charAt(handleIndex_, index);
-    }
+    return asString().charAt(index);
   }
   @Override
   public CharSequence subSequence(int start, int end) {
@@ -167,7 +273,7 @@ public class ManagedStringProxy extends Proxy implements ManagedString {
   }
 
   @Override
-  void releaseHandleIndex(long index) {
-    proxyTable.release(index);
+  HandleReleaser handleReleaser() {
+    return handleReleaser;
   }
 }
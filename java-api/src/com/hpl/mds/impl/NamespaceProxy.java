@@ -26,21 +26,87 @@
 
 package com.hpl.mds.impl;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.hpl.mds.*;
 
 public class NamespaceProxy extends Proxy implements Namespace {
 	
   private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+  private static final HandleReleaser handleReleaser
+    = new HandleReleaser("Namespace", NamespaceProxy::releaseAll);
   
   private static NamespaceProxy ROOT = new NamespaceProxy(rootHandle(), HNameImpl.root());
   
   private static native void release(long h);
+  private static native void releaseAll(long[] handles);
   private static native long rootHandle();
   private static native long childHandle(long h, long nameHandle, boolean createIfMissing);
   private static native boolean isBound(long h,long nameHandle);
   
+  /*
+   * The core's namespace version stamp, which is bumped whenever a
+   * name that was bound to a namespace might not be anymore, so
+   * reading it is all we need to validate what we've already
+   * resolved.  It's read with acquire ordering, or a stale stamp
+   * could validate a binding that has since been dropped.
+   */
+  private static native long versionStamp();
+  
   private final HNameImpl path;
   
+  /*
+   * The children we've resolved in a context.  Whether a name is bound
+   * to a namespace depends on the context, so each context has its
+   * own, and they're thrown away as soon as the version stamp moves.
+   */
+  static final class Resolved {
+    private final long stamp;
+    private final ConcurrentHashMap<Key, NamespaceProxy> children = new ConcurrentHashMap<>();
+    
+    private Resolved(long stamp) {
+      this.stamp = stamp;
+    }
+    
+    static Resolved in(IsoContextProxy ctxt) {
+      long stamp = versionStamp();
+      Resolved r = ctxt.resolvedNamespaces;
+      if (r == null || r.stamp != stamp) {
+        /*
+         * Anything we put in this one was resolved after we read the
+         * stamp, so it's good until the stamp moves again.
+         */
+        r = new Resolved(stamp);
+        ctxt.resolvedNamespaces = r;
+      }
+      return r;
+    }
+  }
+  
+  private static final class Key {
+    private final NamespaceProxy parent;
+    private final ManagedStringProxy name;
+    
+    Key(NamespaceProxy parent, ManagedStringProxy name) {
+      this.parent = parent;
+      this.name = name;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31*System.identityHashCode(parent)+System.identityHashCode(name);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key)obj;
+      return parent == other.parent && name == other.name;
+    }
+  }
+  
   private NamespaceProxy(long handle, HNameImpl path) {
     super(handle, null);
     this.path = path;
@@ -61,11 +127,19 @@ public class NamespaceProxy extends Proxy implements Namespace {
   @Override
   public Namespace childNamespace(CharSequence name) {
     ManagedStringProxy np = ManagedStringProxy.valueOf(name);
+    Resolved resolved = Resolved.in(IsoContextProxy.current());
+    Key key = new Key(this, np);
+    NamespaceProxy known = resolved.children.get(key);
+    if (known != null) {
+      return known;
+    }
     boolean createIfMissing = true;
     HNameImpl childPath = path.append(np);
     try {
     	long childHandle = childHandle(handleIndex_, np.handleIndex(), createIfMissing);
-    	return new NamespaceProxy(childHandle, childPath);
+    	NamespaceProxy child = new NamespaceProxy(childHandle, childPath);
+    	known = resolved.children.putIfAbsent(key, child);
+    	return known == null ? child : known;
     } catch (NotANamespaceException ex) {
     	ex.setData(this, np, childPath);
     	throw ex;
@@ -129,8 +203,8 @@ public class NamespaceProxy extends Proxy implements Namespace {
   }
   
   @Override
-  void releaseHandleIndex(long index) {
-    release(index);
+  HandleReleaser handleReleaser() {
+    return handleReleaser;
   }
 
 }
@@ -27,9 +27,6 @@
 package com.hpl.mds.impl;
 
 import java.lang.ref.WeakReference;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.function.LongConsumer;
 import java.util.function.LongFunction;
 
 import com.hpl.erk.util.ArrayUtils;
@@ -37,16 +34,25 @@ import com.hpl.erk.util.ArrayUtils;
 public abstract class Proxy {
 
   protected final long handleIndex_;
-  abstract void releaseHandleIndex(long index);
+  private final HandleReleaser.Ref releaseRef_;
+  /*
+   * The releaser for this proxy type.  When the proxy is collected,
+   * its handle index will be released (along with others) via the
+   * releaser's bulk native call.
+   */
+  abstract HandleReleaser handleReleaser();
     
-  @Override
-  protected void finalize() throws Throwable {
-    // System.out.format("Finalizing %s%n", this);
-    releaseHandleIndex(handleIndex_);
+  protected Proxy(long hi, Table table) {
+    this(hi, table, true);
   }
 
-  protected Proxy(long hi, Table table) {
+  /*
+   * If releasesHandle is false, some other proxy is responsible for
+   * releasing the handle index.
+   */
+  protected Proxy(long hi, Table table, boolean releasesHandle) {
     this.handleIndex_ = hi;
+    releaseRef_ = (releasesHandle && hi != 0) ? handleReleaser().register(this, hi) : null;
     /*
      * A null table means there's no place to cache it.
      */
@@ -54,6 +60,16 @@ public abstract class Proxy {
       table.add(hi, this);
     }
   }
+
+  /*
+   * Called when another proxy has taken over responsibility for
+   * releasing our handle index.
+   */
+  final void disownHandle() {
+    if (releaseRef_ != null) {
+      releaseRef_.disown();
+    }
+  }
 	
   // protected Proxy(long hi) {
   //   this.handleIndex_ = hi;
@@ -110,16 +126,16 @@ public abstract class Proxy {
     final int cache_mask;
 
     final ThreadLocalCache threadLocalCache = new ThreadLocalCache();
-    final ConcurrentMap<Long, WeakReference<P>> globalMap = new ConcurrentHashMap<>();
-    final LongConsumer releaser;
+    final LongWeakValueMap<P> globalMap = new LongWeakValueMap<>();
+    final HandleReleaser releaser;
       
-    public Table(LongConsumer releaser, int cache_size_bits) {
+    public Table(HandleReleaser releaser, int cache_size_bits) {
       super();
       this.releaser = releaser;
       cache_size = 1 << cache_size_bits;
       cache_mask = cache_size-1;
     }
-    public Table(LongConsumer releaser) {
+    public Table(HandleReleaser releaser) {
       this(releaser, DEFAULT_CACHE_SIZE_BITS);
     }
     class ThreadLocalCache extends ThreadLocal<WeakReference<P>[]> {
@@ -135,46 +151,46 @@ public abstract class Proxy {
     }
 
     static final protected class WithTinyCache<P extends Proxy> extends Table<P> {
-      WithTinyCache(LongConsumer releaser) {
+      WithTinyCache(HandleReleaser releaser) {
         super(releaser, 4);
       }
     }
 
     static final protected class WithSmallCache<P extends Proxy> extends Table<P> {
-      WithSmallCache(LongConsumer releaser) {
+      WithSmallCache(HandleReleaser releaser) {
         super(releaser, 8);
       }
     }
     static final protected class WithLargeCache<P extends Proxy> extends Table<P> {
-      WithLargeCache(LongConsumer releaser) {
+      WithLargeCache(HandleReleaser releaser) {
         super(releaser, 16);
       }
     }
     static final protected class WithHugeCache<P extends Proxy> extends Table<P> {
-      WithHugeCache(LongConsumer releaser) {
+      WithHugeCache(HandleReleaser releaser) {
         super(releaser, 20);
       }
     }
 
 
-    final void release(long index) {
-      releaser.accept(index);
-    }
-
     void add(long index, P obj) {
       int slot = (int)(index & cache_mask);
-      WeakReference<P> wr = new WeakReference<>(obj);
+      WeakReference<P> wr = globalMap.put(index, obj);
       WeakReference<P>[] c = threadLocalCache.get();
       c[slot] = wr;
-      globalMap.put(index, wr);
     }
 	  
     /*
      * It's assumed that there's a reference held on this index,
      * so we don't worry about it going away, and we can assume that
      * if we have it in a cache, it's the right one.  We also count on
-     * the finalizer removing of a created proxy removing the last 
+     * the HandleReleaser, when a created proxy dies, removing the last
      * reference associated with the fromIndex() call that created it.
+     *
+     * When we find an existing proxy, we don't need the reference
+     * we were handed, but rather than make a JNI call to drop it on
+     * every hit, we hand it to the releaser, which drops them in
+     * batches.  The lookup itself doesn't allocate.
      */
     final P fromIndex(long index, LongFunction<? extends P> creator) {
       if (index == 0) {
@@ -190,21 +206,21 @@ public abstract class Proxy {
          *  because we will use the one in the proxy we found.
          */
         //        System.out.format("Found %d in local cache: %s%n", res.handleIndex_, res);
-        releaser.accept(index);
+        releaser.releaseLater(index);
         return res;
       }
 	    
       /*
        * It's not in the local cache, so we look in the global cache.
        */
-      wr = globalMap.get(index);
+      wr = globalMap.getRef(index);
       if (wr != null && (res = wr.get()) != null) {
         /*
          *  We have it in the global cache.  We don't need our reference,
          *  because we will use the one in the proxy we found.  We do,
          *  however, need to add it to the local cache.
          */
-        releaser.accept(index);
+        releaser.releaseLater(index);
         c[slot] = wr;
         //        System.out.format("Found %d in global cache: %s%n", res.handleIndex_, res);
         return res;
@@ -216,69 +232,16 @@ public abstract class Proxy {
        * least if it's from a handle to an object found in the managed
        * heap as opposed to one that we're creating).  We previously
        * jumped through hoops to make sure that we returned the first
-       * one to hit the global cache, as long as it was still around
-       * (see installUnlessCached() below) but that was a lot of work
-       * and only worked if creating an object *didn't* put it in the
-       * cache, which resulted in multiple copies anyway, even without
-       * racing.  So now we count on the ctor calling add(obj) on the
-       * table.
+       * one to hit the global cache, as long as it was still around,
+       * but that was a lot of work and only worked if creating an
+       * object *didn't* put it in the cache, which resulted in
+       * multiple copies anyway, even without racing.  So now we count
+       * on the ctor calling add(obj) on the table.
        */
       res = creator.apply(index);
       return res;
     }
 
-    /*
-     * This is the old logic in which we tried to install the new one
-     * in the cache unless we found another one added by a racing
-     * thread *and* the one in the cache hadn't already been
-     * collected.
-     *
-     * Comment from just before this code in fromhandle():
-     * 
-     * The proxy will be responsible for the reference we hold, so we
-     * don't release, even if we wind up dropping this proxy on the
-     * floor because we use a proxy added to the global cache by a
-     * racing thread.
-     * 
-     * We do this adding in a loop because a racing thread may also be
-     * adding at the same time.  wr, at all times holds the last thing
-     * we think
-     */
-    final P installUnlessCached(P res, long index, int slot, WeakReference<P>[] c)
-    {
-      WeakReference<P> newWR = new WeakReference<>(res);
-      WeakReference<P> wr = null;
-      while (true) {
-        if (wr == null) {
-          wr = globalMap.putIfAbsent(index, newWR);
-          if (wr == null) {
-            c[slot] = newWR;
-            return res;
-          }
-          /*
-           * Otherwise wr holds the next value
-           */
-        } else if (globalMap.replace(index, wr, newWR)) {
-          c[slot] = newWR;
-          return res;
-        } else {
-          wr = globalMap.get(index);
-        }
-        /*
-         * We didn't install it, but wr now holds the current value
-         */
-        P curr = wr == null ? null : wr.get();
-        if (curr != null) {
-          c[slot] = wr;
-          return curr;
-        }
-        /*
-         * If we got here, it was created by a racing thread, but it's already
-         * been collected, so the WeakRef that was installed is invalid.
-         */
-      }
-    }
-
     final public void replace(long handleIndex_, P replacement) {
       /*
        * This is done within a synchronized block on the object being replaced,
@@ -288,7 +251,7 @@ public abstract class Proxy {
        * so the logic of the call to fromIndex() should be that it checks
        * to see whether what's returned was forwarded.
        */
-      globalMap.replace(handleIndex_, new WeakReference<>(replacement));
+      globalMap.put(handleIndex_, replacement);
     }
   }
 
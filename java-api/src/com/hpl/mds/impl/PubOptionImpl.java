@@ -109,6 +109,12 @@ abstract public class PubOptionImpl implements PubOption {
     ModificationType modType() {
       return ModificationType.Full;
     }
+    RetryPolicy retryPolicy() {
+      return RetryPolicyImpl.immediate();
+    }
+    Caching fieldCaching() {
+      return Caching.UNCACHED;
+    }
   }
 
   class FillableControl extends Control {
@@ -117,6 +123,8 @@ abstract public class PubOptionImpl implements PubOption {
     final Collection<PublishReport> reportList = new ArrayList<>();
     ViewType vt = ViewType.Live;
     ModificationType mt = ModificationType.Full;
+    RetryPolicy rp = null;
+    Caching fc = null;
 
     Collection<Supplier<BooleanSupplier>> forReRun() {
       return rerunList;
@@ -133,6 +141,12 @@ abstract public class PubOptionImpl implements PubOption {
     ModificationType modType() {
       return mt;
     }
+    RetryPolicy retryPolicy() {
+      return rp == null ? RetryPolicyImpl.immediate() : rp;
+    }
+    Caching fieldCaching() {
+      return fc == null ? Caching.UNCACHED : fc;
+    }
     void add(Control other) {
       rerunList.addAll(other.forReRun());
       resolveList.addAll(other.forResolve());
@@ -143,6 +157,12 @@ abstract public class PubOptionImpl implements PubOption {
       if (mt == null) {
         mt = other.modType();
       }
+      if (rp == null) {
+        rp = other.retryPolicy();
+      }
+      if (fc == null) {
+        fc = other.fieldCaching();
+      }
     }
     
   }
@@ -259,6 +279,38 @@ abstract public class PubOptionImpl implements PubOption {
     };
   }
 
+  @Override
+  public PubOption retryWith(RetryPolicy policy) {
+    return new PubOptionImpl(asNext()) {
+      void addToControl(FillableControl c) {
+        c.rp = policy;
+      }
+      Control makeControl() {
+        return new Control() {
+          RetryPolicy retryPolicy() {
+            return policy;
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public PubOption cacheFields(Caching caching) {
+    return new PubOptionImpl(asNext()) {
+      void addToControl(FillableControl c) {
+        c.fc = caching;
+      }
+      Control makeControl() {
+        return new Control() {
+          Caching fieldCaching() {
+            return caching;
+          }
+        };
+      }
+    };
+  }
+
   @Override
   public PubOption as(ViewType vt, ModificationType mt) {
     return new PubOptionImpl(asNext()) {
@@ -33,6 +33,10 @@ import java.util.Set;
 import java.util.Map;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.apache.log4j.Logger;
 
@@ -40,23 +44,37 @@ import org.apache.log4j.Logger;
 public class PubResultProxy extends Proxy implements PubResult {
 
   private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+  private static final HandleReleaser handleReleaser
+    = new HandleReleaser("PubResult", PubResultProxy::releaseAll);
 
   private static final Logger log = Logger.getLogger(PubResultProxy.class);
 
   private static final Proxy.Table<PubResultProxy> 
-    proxyTable = new Proxy.Table<>(PubResultProxy::release);
+    proxyTable = new Proxy.Table<>(handleReleaser);
 	
 
   private static native void release(long h);
+  private static native void releaseAll(long[] handles);
   private static native boolean succeeded(long hindex);
   private static native long sourceContextIndex(long hindex);
   private static native long nToRedo(long hindex);
   private static native long[] redoTasksByStartTime(long hindex);
+  private static native int[] redoTaskFollows(long hindex);
+  private static native long[] conflictKeys(long hindex);
   private static native boolean prepareForRedo(long hindex);
 
+  /*
+   * The pool that independent redo tasks are run on during
+   * resolution.  If it's null (the default), they're run linearly in
+   * the resolving thread.  Redo runs user code, so it's only moved
+   * to other threads if the program asks for it.
+   */
+  private static volatile ForkJoinPool redoPool = null;
+
   private IsoContextProxy sourceContext;
   private IsoContextProxy targetContext;
   private TaskProxy[] redoTasks;
+  private long[] conflictKeys;
 
   private PubResultProxy(long h) {
     super(h, proxyTable);
@@ -67,8 +85,8 @@ public class PubResultProxy extends Proxy implements PubResult {
   }
 
   @Override
-  void releaseHandleIndex(long index) {
-    proxyTable.release(index);
+  HandleReleaser handleReleaser() {
+    return handleReleaser;
   }
 
   public static PubResultProxy fromHandle(long handleIndex) {
@@ -118,9 +136,24 @@ public class PubResultProxy extends Proxy implements PubResult {
     return redoTasks;
   }
   
+  @Override
+  public long[] conflictKeys() {
+    if (conflictKeys == null) {
+      long[] keys = conflictKeys(handleIndex_);
+      conflictKeys = keys == null ? new long[0] : keys;
+    }
+    return conflictKeys;
+  }
+
   @Override
   public boolean prepareForRedo() {
-    return prepareForRedo(handleIndex_);
+    boolean prepared = prepareForRedo(handleIndex_);
+    /*
+     * Rolling back tasks (and snapshots forward) changes what the
+     * context sees.
+     */
+    sourceContext().fieldsChanged();
+    return prepared;
   }
   
   @Override
@@ -143,6 +176,115 @@ public class PubResultProxy extends Proxy implements PubResult {
     task.rerun(fn);
   }
 
+  public static ForkJoinPool getRedoPool() {
+    return redoPool;
+  }
+
+  public static void setRedoPool(ForkJoinPool pool) {
+    redoPool = pool;
+  }
+
+  /*
+   * The redo tasks, in start-time order, along with, for each, the
+   * positions of the tasks that can't be rerun until it has been and
+   * the number of tasks it's still waiting for.
+   */
+  private static final class RedoDag {
+    final TaskProxy[] tasks;
+    final Runnable[] fns;
+    final int[][] follows;
+    final AtomicIntegerArray waiting;
+
+    RedoDag(TaskProxy[] tasks, Map<TaskProxy, Runnable> taskMap, int[] flat) {
+      int n = tasks.length;
+      this.tasks = tasks;
+      fns = new Runnable[n];
+      follows = new int[n][];
+      waiting = new AtomicIntegerArray(n);
+      int k = 0;
+      for (int i=0; i<n; i++) {
+        fns[i] = taskMap.get(tasks[i]);
+        follows[i] = Arrays.copyOfRange(flat, k+1, k+1+flat[k]);
+        k += 1+flat[k];
+        for (int f : follows[i]) {
+          waiting.incrementAndGet(f);
+        }
+      }
+    }
+
+    /*
+     * The order to rerun the tasks in one at a time: start-time order,
+     * except that no task comes before one it follows.
+     */
+    int[] linearOrder() {
+      int n = tasks.length;
+      int[] left = new int[n];
+      PriorityQueue<Integer> ready = new PriorityQueue<>();
+      for (int i=0; i<n; i++) {
+        left[i] = waiting.get(i);
+        if (left[i] == 0) {
+          ready.add(i);
+        }
+      }
+      int[] order = new int[n];
+      int k = 0;
+      while (!ready.isEmpty()) {
+        int i = ready.poll();
+        order[k++] = i;
+        for (int f : follows[i]) {
+          if (--left[f] == 0) {
+            ready.add(f);
+          }
+        }
+      }
+      return order;
+    }
+  }
+
+  private static final class Redo extends CountedCompleter<Void> {
+    private static final long serialVersionUID = 1L;
+    private final RedoDag dag;
+    private final int index;
+
+    Redo(CountedCompleter<?> parent, RedoDag dag, int index) {
+      super(parent);
+      this.dag = dag;
+      this.index = index;
+    }
+
+    @Override
+    public void compute() {
+      dag.tasks[index].rerun(dag.fns[index]);
+      for (int f : dag.follows[index]) {
+        if (dag.waiting.decrementAndGet(f) == 0) {
+          addToPendingCount(1);
+          new Redo(this, dag, f).fork();
+        }
+      }
+      tryComplete();
+    }
+  }
+
+  private static final class RedoAll extends CountedCompleter<Void> {
+    private static final long serialVersionUID = 1L;
+    private final RedoDag dag;
+
+    RedoAll(RedoDag dag) {
+      this.dag = dag;
+    }
+
+    @Override
+    public void compute() {
+      for (int i=0; i<dag.tasks.length; i++) {
+        if (dag.waiting.get(i) == 0) {
+          addToPendingCount(1);
+          new Redo(this, dag, i).fork();
+        }
+      }
+      tryComplete();
+    }
+  }
+
   @Override
   public boolean resolve(Collection<PublishReport> reports) {
     TaskProxy[] tasks = redoTasksByStartTime();
@@ -197,11 +339,20 @@ public class PubResultProxy extends Proxy implements PubResult {
       return false;
     }
     /*
-     * For now, we're going to simply do them linearly in the same
-     * thread.  Eventually, we'll need to pay attention to the bounds
-     * and get the necessary parallelism going.
+     * Each task waits for the ones it follows (directly or through
+     * other tasks being redone).  If there's a redo pool, tasks that
+     * don't depend on one another are rerun on it in parallel.
+     * Otherwise, they're rerun here in start-time order.
      */
-    for (TaskProxy t : tasks) {
+    RedoDag dag = tasks.length > 1 ? new RedoDag(tasks, taskMap, redoTaskFollows(handleIndex_)) : null;
+    ForkJoinPool pool = redoPool;
+    if (pool != null && dag != null) {
+      pool.invoke(new RedoAll(dag));
+      return true;
+    }
+    int[] order = dag == null ? new int[] { 0 } : dag.linearOrder();
+    for (int i : order) {
+      TaskProxy t = tasks[i];
       /*
        * TODO: It's tempting to call ctxt.hasConflicts() here and
        * short circuit, returning true, if we find that the context
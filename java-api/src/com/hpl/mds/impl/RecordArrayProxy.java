@@ -34,11 +34,14 @@ import com.hpl.mds.usage.UsageScope;
 public class RecordArrayProxy<R extends ManagedRecord> extends ArrayProxy<R> {
 
   private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+  private static final HandleReleaser handleReleaser
+    = new HandleReleaser("RecordArray", RecordArrayProxy::releaseAll);
   
   private final RecordArrayTypeProxy<R> type;
   private final RecordTypeProxy<R> eltType;
 
   private static native void release(long handle);
+  private static native void releaseAll(long[] handles);
   private static native boolean isIdentical(long aHandle, long bHandle);
   private static native boolean isSameObject(long aHandle, long bHandle);
   private static native boolean isSameViewOfSameObject(long aHandle, long bHandle);
@@ -62,8 +65,8 @@ public class RecordArrayProxy<R extends ManagedRecord> extends ArrayProxy<R> {
  
 
   @Override
-  void releaseHandleIndex(long index) {
-    release(index); 
+  HandleReleaser handleReleaser() {
+    return handleReleaser;
   }
 
   public enum FromHandle { FROM_HANDLE };
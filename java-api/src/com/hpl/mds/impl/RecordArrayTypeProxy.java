@@ -34,6 +34,8 @@ import com.hpl.mds.*;
 public class RecordArrayTypeProxy<R extends ManagedRecord> extends Proxy implements ManagedTypeImpl<ManagedArray<R>>, ManagedArray.Type<R>
 {
   private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+  private static final HandleReleaser handleReleaser
+    = new HandleReleaser("RecordArrayType", RecordArrayTypeProxy::releaseAll);
   /**
    * @throws UnboundNameException when the name is not bound to anything in this context
    * @throws IncompatibleTypeException when the name is bound to something other than this type
@@ -46,11 +48,12 @@ public class RecordArrayTypeProxy<R extends ManagedRecord> extends Proxy impleme
   private static native boolean isSameAs(long aHandle, long bHandle);
   private static native long createArray(long h, long size);
   private static native void release(long index);
+  private static native void releaseAll(long[] handles);
   private static native long forRecordType(long recHandle);
   private static native long elementTypeHandle(long handle);
   
   private static final Proxy.Table<RecordArrayTypeProxy<?>> 
-  proxyTable = new Proxy.Table<>(RecordArrayTypeProxy::release);
+  proxyTable = new Proxy.Table<>(handleReleaser);
   
   private final RecordTypeProxy<R> eltType;
   
@@ -63,8 +66,8 @@ public class RecordArrayTypeProxy<R extends ManagedRecord> extends Proxy impleme
   }
   
   @Override
-  void releaseHandleIndex(long index) {
-    proxyTable.release(index);
+  HandleReleaser handleReleaser() {
+    return handleReleaser;
   }
 
 
@@ -37,6 +37,8 @@ import com.hpl.mds.callbacks.FieldChange;
 public class RecordFieldProxy<RT extends ManagedRecord, FT extends ManagedRecord> extends FieldProxy<RT, FT> implements RecordField<RT,FT> {
 
   private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+  private static final HandleReleaser handleReleaser
+    = new HandleReleaser("RecordField", RecordFieldProxy::releaseAll);
   
   private RecordTypeProxy<FT> valueType_;
   
@@ -46,6 +48,7 @@ public class RecordFieldProxy<RT extends ManagedRecord, FT extends ManagedRecord
   }
   
   private static native void release(long handle);
+  private static native void releaseAll(long[] handles);
   private static native long getNameHandle(long handle);
   private static native long getRecTypeHandle(long handle);
 
@@ -61,8 +64,8 @@ public class RecordFieldProxy<RT extends ManagedRecord, FT extends ManagedRecord
                                                   LongConsumer mismatchSink);
 
   @Override
-  void releaseHandleIndex(long index) {
-    release(index);
+  HandleReleaser handleReleaser() {
+    return handleReleaser;
   }
   
   @Override
@@ -111,10 +114,20 @@ public class RecordFieldProxy<RT extends ManagedRecord, FT extends ManagedRecord
 
     @Override
     public FT get(RT record) {
+      ManagedRecordProxy.FieldValues cache = cachedIn(record);
+      if (cache != null) {
+        Object known = cache.get(handleIndex_);
+        if (known != null) {
+          @SuppressWarnings("unchecked")
+          FT v = known == ManagedRecordProxy.FieldValues.NULL ? null : (FT)known;
+          return v;
+        }
+      }
       long val = RecordFieldProxy.<RT,FT>getValueHandle(handleIndex_,
                                                         ManagedRecordProxy.handleOf(record));
 
-      return ManagedRecordProxy.fromHandle(val, valueType_);
+      FT v = ManagedRecordProxy.fromHandle(val, valueType_);
+      return cache == null ? v : cache.put(handleIndex_, v);
     }
     
     public FT peek(RT record) {
@@ -128,6 +141,7 @@ public class RecordFieldProxy<RT extends ManagedRecord, FT extends ManagedRecord
       long old = setValueHandle(handleIndex_, 
 				ManagedRecordProxy.handleOf(rec),
 				ManagedRecordProxy.handleOf(val));
+      noteWrite();
       return ManagedRecordProxy.fromHandle(old, valueType_);
     }
     
@@ -135,13 +149,16 @@ public class RecordFieldProxy<RT extends ManagedRecord, FT extends ManagedRecord
       long old = getAndSetValueHandle(handleIndex_, 
                                       ManagedRecordProxy.handleOf(rec),
                                       ManagedRecordProxy.handleOf(val));
+      noteWrite();
       return ManagedRecordProxy.fromHandle(old, valueType_);
     }
     
     public void initFinal(RT rec, FT val) {
-      if (!initFinal(handleIndex_, 
-                     ManagedRecordProxy.handleOf(rec),
-                     ManagedRecordProxy.handleOf(val)))
+      boolean ok = initFinal(handleIndex_, 
+                             ManagedRecordProxy.handleOf(rec),
+                             ManagedRecordProxy.handleOf(val));
+      noteWrite();
+      if (!ok)
         {
           throw new FinalFieldModifiedException(recordType().name().asString(),
                                                 name().asString());
@@ -29,7 +29,9 @@ package com.hpl.mds.impl;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
+import java.util.List;
 import java.util.function.LongFunction;
+import java.util.function.ObjIntConsumer;
 
 import com.hpl.mds.*;
 import com.hpl.mds.impl.ManagedRecordProxy.FromHandle;
@@ -37,6 +39,8 @@ import com.hpl.mds.impl.ManagedRecordProxy.FromHandle;
 public class RecordTypeProxy <R extends ManagedRecord> extends Proxy implements ManagedTypeImpl<R>, RecordType<R> {
 
   private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+  private static final HandleReleaser handleReleaser
+    = new HandleReleaser("RecordType", RecordTypeProxy::releaseAll);
   
   public static class RecordCreationError extends RuntimeException {
 
@@ -46,7 +50,7 @@ public class RecordTypeProxy <R extends ManagedRecord> extends Proxy implements
 
   }
 
-  private static final Proxy.Table<RecordTypeProxy<? extends ManagedRecord>> proxyTable = new Proxy.Table<>(RecordTypeProxy::release);
+  private static final Proxy.Table<RecordTypeProxy<? extends ManagedRecord>> proxyTable = new Proxy.Table<>(handleReleaser);
 
 
 
@@ -59,6 +63,7 @@ public class RecordTypeProxy <R extends ManagedRecord> extends Proxy implements
   private RecordArrayTypeProxy<R> arrayType_ = null;
 
   private static native void release(long h); 
+  private static native void releaseAll(long[] handles);
   // declare RecordType by name in ManagedSpace
   private static native long declareType(long nameHandle);
   private static native long declareType(long nameHandle, long superHandle);
@@ -95,8 +100,8 @@ public class RecordTypeProxy <R extends ManagedRecord> extends Proxy implements
   //    }
 
   @Override
-  void releaseHandleIndex(long index) {
-    proxyTable.release(index);
+  HandleReleaser handleReleaser() {
+    return handleReleaser;
   }
   
   RecordTypeProxy<R> forward() {
@@ -210,6 +215,16 @@ public class RecordTypeProxy <R extends ManagedRecord> extends Proxy implements
     return Stub.notImplemented();
   }
 
+  @Override
+  public List<R> createMany(int n) {
+    return ManagedRecordProxy.createMany(this, n);
+  }
+
+  @Override
+  public void createMany(int n, ObjIntConsumer<? super R> initializer) {
+    ManagedRecordProxy.createMany(this, n, initializer);
+  }
+
   @Override
   public ManagedString name() {
     return name_;
@@ -0,0 +1,333 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package com.hpl.mds.impl;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.hpl.mds.*;
+
+abstract public class RetryPolicyImpl implements RetryPolicy {
+  private static final RetryPolicyImpl IMMEDIATE = new RetryPolicyImpl() {
+      @Override
+      long delayNanos(int failures, long[] keys) {
+        return 0;
+      }
+      @Override
+      public String toString() {
+        return "RetryPolicy[immediate]";
+      }
+    };
+
+  /*
+   * Per-value state (conflict rates, escalation locks) is kept in a
+   * fixed number of stripes, chosen by hashing the conflict keys.
+   */
+  static final int N_STRIPES = 64;
+  private static final long[] NO_KEYS = new long[0];
+  private static final int[] NO_STRIPES = new int[0];
+
+  final LongAdder retries = new LongAdder();
+  final LongAdder waited = new LongAdder();
+
+  public static RetryPolicy immediate() {
+    return IMMEDIATE;
+  }
+
+  /*
+   * How long to wait before the next attempt, given the number of
+   * failures so far and the conflict keys of the most recent one.
+   */
+  abstract long delayNanos(int failures, long[] keys);
+
+  void noteConflicts(long[] keys) {}
+
+  @Override
+  public Attempts start() {
+    return new Attempts() {
+      int failures = 0;
+      long[] keys = NO_KEYS;
+
+      @Override
+      public void beforeRun() {}
+
+      @Override
+      public void afterRun(PubResult result) {
+        if (result != null && !result.succeeded()) {
+          failures++;
+          keys = result.conflictKeys();
+          noteConflicts(keys);
+        }
+      }
+
+      @Override
+      public void beforeRerun() {
+        retries.increment();
+        long delay = delayNanos(failures, keys);
+        if (delay > 0) {
+          waited.add(sleep(delay));
+        }
+      }
+    };
+  }
+
+  @Override
+  public long nRetries() {
+    return retries.sum();
+  }
+
+  @Override
+  public long waitNanos() {
+    return waited.sum();
+  }
+
+  @Override
+  public void resetCounters() {
+    retries.reset();
+    waited.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[retries=%,d, waited=%s]",
+                         getClass().getSimpleName(), nRetries(), waitTime());
+  }
+
+  static int stripe(long key) {
+    return (int)((key * 0x9E3779B97F4A7C15L) >>> 58);
+  }
+
+  static int[] stripes(long[] keys) {
+    if (keys.length == 0) {
+      return NO_STRIPES;
+    }
+    /*
+     * Sorted and without duplicates, so that locks taken in this
+     * order can't deadlock.
+     */
+    return Arrays.stream(keys).mapToInt(RetryPolicyImpl::stripe)
+      .sorted().distinct().toArray();
+  }
+
+  /*
+   * base*2^(failures-1), capped at max.
+   */
+  static long exponential(long base, long max, int failures) {
+    int shift = Math.min(Math.max(failures-1, 0), 62);
+    if (base > (max >> shift)) {
+      return max;
+    }
+    return base << shift;
+  }
+
+  static long jitter(long bound) {
+    return bound <= 0 ? 0 : ThreadLocalRandom.current().nextLong(bound+1);
+  }
+
+  static long sleep(long nanos) {
+    long start = System.nanoTime();
+    LockSupport.parkNanos(nanos);
+    return System.nanoTime()-start;
+  }
+
+  public static class Exponential extends RetryPolicyImpl {
+    final long base;
+    final long max;
+
+    public Exponential(Duration base, Duration max) {
+      this.base = base.toNanos();
+      this.max = max.toNanos();
+    }
+
+    @Override
+    long delayNanos(int failures, long[] keys) {
+      return jitter(exponential(base, max, failures));
+    }
+  }
+
+  public static class Adaptive extends RetryPolicyImpl {
+    final long base;
+    final long max;
+    final double halfLife;
+    /*
+     * Recent conflicts per stripe, as of the time in stamp.  Guarded
+     * by this.
+     */
+    private final double[] heat = new double[N_STRIPES];
+    private final long[] stamp = new long[N_STRIPES];
+
+    public Adaptive(Duration base, Duration max, Duration halfLife) {
+      this.base = base.toNanos();
+      this.max = max.toNanos();
+      this.halfLife = Math.max(halfLife.toNanos(), 1);
+    }
+
+    private double decayed(int s, long now) {
+      return heat[s]*Math.pow(0.5, (now-stamp[s])/halfLife);
+    }
+
+    @Override
+    synchronized void noteConflicts(long[] keys) {
+      long now = System.nanoTime();
+      for (int s : stripes(keys)) {
+        heat[s] = decayed(s, now)+1;
+        stamp[s] = now;
+      }
+    }
+
+    synchronized double hottest(long[] keys) {
+      long now = System.nanoTime();
+      double h = 0;
+      for (int s : stripes(keys)) {
+        h = Math.max(h, decayed(s, now));
+      }
+      return h;
+    }
+
+    @Override
+    long delayNanos(int failures, long[] keys) {
+      /*
+       * The attempt's own conflict already counts toward the heat,
+       * so a value nobody else is fighting over waits about as long
+       * as it would with plain exponential backoff.
+       */
+      double scale = Math.max(hottest(keys), 1);
+      double bound = Math.min(max, exponential(base, max, failures)*scale);
+      return jitter((long)bound);
+    }
+  }
+
+  public static class Escalating extends RetryPolicyImpl {
+    final int after;
+    final RetryPolicy waiting;
+    final LongAdder escalations = new LongAdder();
+    private final ReentrantLock[] locks = new ReentrantLock[N_STRIPES];
+
+    public Escalating(int after, RetryPolicy waiting) {
+      this.after = after;
+      this.waiting = waiting;
+      for (int i=0; i<N_STRIPES; i++) {
+        locks[i] = new ReentrantLock();
+      }
+    }
+
+    /*
+     * The number of blocks whose attempts have been escalated.
+     */
+    public long nEscalations() {
+      return escalations.sum();
+    }
+
+    @Override
+    public void resetCounters() {
+      super.resetCounters();
+      escalations.reset();
+    }
+
+    @Override
+    long delayNanos(int failures, long[] keys) {
+      return 0;
+    }
+
+    @Override
+    public Attempts start() {
+      Attempts inner = waiting.start();
+      return new Attempts() {
+        int failures = 0;
+        int[] stripes = NO_STRIPES;
+        boolean escalated = false;
+        boolean holding = false;
+
+        @Override
+        public void beforeRun() {
+          inner.beforeRun();
+          if (stripes.length == 0) {
+            return;
+          }
+          long start = System.nanoTime();
+          if (failures >= after) {
+            if (!escalated) {
+              escalated = true;
+              escalations.increment();
+            }
+            for (int s : stripes) {
+              locks[s].lock();
+            }
+            holding = true;
+          } else {
+            /*
+             * Retries that haven't been escalated yet don't take the
+             * locks, but they do let escalated attempts on the same
+             * values finish first.
+             */
+            for (int s : stripes) {
+              if (locks[s].isLocked()) {
+                locks[s].lock();
+                locks[s].unlock();
+              }
+            }
+          }
+          waited.add(System.nanoTime()-start);
+        }
+
+        @Override
+        public void afterRun(PubResult result) {
+          if (holding) {
+            for (int s : stripes) {
+              locks[s].unlock();
+            }
+            holding = false;
+          }
+          inner.afterRun(result);
+          if (result != null && !result.succeeded()) {
+            failures++;
+            stripes = stripes(result.conflictKeys());
+          }
+        }
+
+        @Override
+        public void beforeRerun() {
+          retries.increment();
+          long start = System.nanoTime();
+          inner.beforeRerun();
+          waited.add(System.nanoTime()-start);
+        }
+      };
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Escalating[after=%d, retries=%,d, escalations=%,d, waited=%s, %s]",
+                           after, nRetries(), nEscalations(), waitTime(), waiting);
+    }
+  }
+
+}
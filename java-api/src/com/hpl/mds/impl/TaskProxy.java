@@ -41,13 +41,16 @@ import java.util.ArrayList;
 
 public class TaskProxy extends Proxy implements Task {
   private static final NativeLibraryLoader NATIVE_LIB_LOADER = NativeLibraryLoader.getInstance();
+  private static final HandleReleaser handleReleaser
+    = new HandleReleaser("Task", TaskProxy::releaseAll);
 	
   private static final Logger log = Logger.getLogger(IsoContextProxy.class);
 
   private static final Proxy.Table<TaskProxy> 
-    proxyTable = new Proxy.Table<>(TaskProxy::release);
+    proxyTable = new Proxy.Table<>(handleReleaser);
 
   private static native void release(long h);
+  private static native void releaseAll(long[] handles);
   private static native long defaultTaskHandle();
   private static native long pushNewHandle();
   private static native long push(long h);
@@ -84,8 +87,8 @@ public class TaskProxy extends Proxy implements Task {
   }
 
   @Override
-  void releaseHandleIndex(long index) {
-    proxyTable.release(index);
+  HandleReleaser handleReleaser() {
+    return handleReleaser;
   }
 
   public static TaskProxy fromHandle(long handleIndex) {
@@ -0,0 +1,131 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+package test;
+
+import java.util.Arrays;
+import com.hpl.mds.*;
+import static com.hpl.mds.MDS.*;
+
+/*
+ * Compares element-at-a-time and bulk (copyTo/copyFrom) transfer
+ * between a ManagedDoubleArray and a double[], and checks that they
+ * agree, for both the normal and the dense array representations.
+ */
+public class Test10 {
+
+  static long time(String what, Runnable fn) {
+    long start = System.nanoTime();
+    fn.run();
+    long elapsed = System.nanoTime()-start;
+    System.out.format("%s: %,d us%n", what, elapsed/1000);
+    return elapsed;
+  }
+
+  static void run(String label, ManagedDoubleArray array, double[] src) {
+    final int n = src.length;
+    System.out.format("%s:%n", label);
+    time("  set() each element", ()->{
+        for (int i=0; i<n; i++) {
+          array.set(i, src[i]);
+        }
+      });
+    time("  copyFrom()", ()->array.copyFrom(0, src, 0, n));
+
+    final double[] slow = new double[n];
+    time("  getDouble() each element", ()->{
+        for (int i=0; i<n; i++) {
+          slow[i] = array.getDouble(i);
+        }
+      });
+    final double[][] fast = new double[1][];
+    time("  toDoubleArray()", ()->{ fast[0] = array.toDoubleArray(); });
+    if (!Arrays.equals(src, slow) || !Arrays.equals(src, fast[0])) {
+      throw new AssertionError("Bulk and per-element reads disagree");
+    }
+
+    final double expected = Arrays.stream(src).sum();
+    final double[] sum = new double[1];
+    isolated(Options.snapshot(), ()->{
+        sum[0] = 0;
+        array.forEachChunk(4096, (start, chunk, len)->{
+            for (int i=0; i<len; i++) {
+              sum[0] += chunk[i];
+            }
+          });
+      });
+    if (sum[0] != expected) {
+      throw new AssertionError(String.format("forEachChunk() sum %f, expected %f", sum[0], expected));
+    }
+    System.out.format("  Sum: %f%n", sum[0]);
+  }
+
+  /*
+   * Writes single elements and part of a chunk, and checks that the
+   * neighbors (which, for a dense array, are in the same chunk) keep
+   * their values.
+   */
+  static void checkPartialWrites(String label, ManagedDoubleArray array) {
+    final int n = (int)array.longSize();
+    final double[] expected = new double[n];
+    for (int i=0; i<n; i++) {
+      expected[i] = i+1;
+    }
+    array.copyFrom(0, expected, 0, n);
+
+    array.set(10, -1);
+    expected[10] = -1;
+    double prior = array.getAndSet(700, -2);
+    if (prior != expected[700]) {
+      throw new AssertionError(String.format("%s: getAndSet() returned %f, expected %f",
+                                             label, prior, expected[700]));
+    }
+    expected[700] = -2;
+    final double[] part = { -3, -4, -5 };
+    array.copyFrom(1000, part, 0, part.length);
+    System.arraycopy(part, 0, expected, 1000, part.length);
+
+    for (int i=0; i<n; i++) {
+      double v = array.getDouble(i);
+      if (v != expected[i]) {
+        throw new AssertionError(String.format("%s: element %d is %f after partial writes, expected %f",
+                                               label, i, v, expected[i]));
+      }
+    }
+    System.out.format("%s: partial writes preserve neighbors%n", label);
+  }
+
+  public static void main(String[] args) {
+    final int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    final double[] src = new double[n];
+    for (int i=0; i<n; i++) {
+      src[i] = i*0.5;
+    }
+    run("Per-element", ManagedDouble.TYPE.createArray(n), src);
+    run("Dense", ManagedDoubleArray.createDense(n), src);
+    checkPartialWrites("Per-element", ManagedDouble.TYPE.createArray(2000));
+    checkPartialWrites("Dense", ManagedDoubleArray.createDense(2000));
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import com.hpl.mds.*;
+import static com.hpl.mds.MDS.*;
+
+/*
+ * Has a number of threads increment the same element of a managed
+ * array in isolated blocks, which makes it a hot spot, under each of
+ * the retry policies.  Reports the time taken and each policy's
+ * counters, and checks that no increments were lost.
+ */
+public class Test11 {
+
+  static void run(String label, RetryPolicy policy, int nThreads, int nIncrements) {
+    ManagedLongArray array = ManagedLong.TYPE.createArray(1);
+    PubOption opts = Options.alwaysReRun().retryWith(policy);
+    List<Thread> threads = new ArrayList<>();
+    for (int t=0; t<nThreads; t++) {
+      threads.add(new Thread(()->{
+            for (int i=0; i<nIncrements; i++) {
+              isolated(opts, ()->{
+                  array.set(0, array.getLong(0)+1);
+                });
+            }
+      }));
+    }
+    long start = System.nanoTime();
+    threads.forEach(Thread::start);
+    for (Thread t : threads) {
+      try {
+        t.join();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    long elapsed = System.nanoTime()-start;
+    long expected = (long)nThreads*nIncrements;
+    if (array.getLong(0) != expected) {
+      throw new AssertionError(String.format("%s: count is %,d, expected %,d",
+                                             label, array.getLong(0), expected));
+    }
+    System.out.format("%-12s %,10d us  %s%n", label, elapsed/1000, policy);
+  }
+
+  public static void main(String[] args) {
+    final int nThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    final int nIncrements = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    final Duration base = Duration.ofNanos(2_000);
+    final Duration max = Duration.ofMillis(2);
+    run("Immediate", RetryPolicy.immediate(), nThreads, nIncrements);
+    run("Exponential", RetryPolicy.exponentialBackoff(base, max), nThreads, nIncrements);
+    run("Adaptive", RetryPolicy.adaptiveBackoff(base, max), nThreads, nIncrements);
+    run("Escalating", RetryPolicy.exponentialBackoff(base, max).escalateAfter(3),
+        nThreads, nIncrements);
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import com.hpl.mds.*;
+import com.hpl.mds.impl.IsoContextProxy;
+import com.hpl.mds.impl.TaskProxy;
+import static com.hpl.mds.MDS.*;
+
+/*
+ * Compares Accumulator against the fully synchronized implementation
+ * it replaced (reproduced below as Locked) with 1 to 64 threads, each
+ * running tasks that add to a shared accumulator inside one isolated
+ * block, and checks that both get the right total.
+ */
+public class Test12 {
+
+  static class Locked<A> implements Accumulator<A> {
+    final static TaskProxy topLevelTask = IsoContextProxy.global().topLevelTask();
+    final BiConsumer<? super A, ? super A> rollbackFunc;
+    final Supplier<? extends A> creator;
+    final Node topLevel;
+    final Map<TaskProxy,Node> forTask = new WeakHashMap<>();
+    final Map<TaskProxy,Boolean> writers = new WeakHashMap<>();
+
+    class Node {
+      A weight = creator.get();
+      final Node parent;
+      Node(Node parent) {
+        this.parent = parent;
+      }
+      void rollBack() {
+        for (Node n = parent; n != null; n=n.parent) {
+          rollbackFunc.accept(n.weight, weight);
+        }
+      }
+    }
+
+    Locked(Supplier<? extends A> creator, BiConsumer<? super A, ? super A> rollbackFunc) {
+      this.creator = creator;
+      this.rollbackFunc = rollbackFunc;
+      topLevel = new Node(null);
+      forTask.put(topLevelTask, topLevel);
+    }
+
+    @Override
+    public synchronized A get() {
+      TaskProxy ct = TaskProxy.current();
+      for (TaskProxy t : writers.keySet()) {
+        ct.dependsOn(t);
+      }
+      return topLevel.weight;
+    }
+
+    @Override
+    public synchronized void add(Consumer<? super A> adder) {
+      TaskProxy ct = TaskProxy.current();
+      writers.put(ct, Boolean.TRUE);
+      for (Node n = nodeFor(ct); n != null; n=n.parent) {
+        adder.accept(n.weight);
+      }
+    }
+
+    private Node nodeFor(TaskProxy task) {
+      return forTask.computeIfAbsent(task, t->{
+          TaskProxy parent = t.getParent();
+          if (parent == null) {
+            parent = t.getContext().parent().topLevelTask();
+          }
+          Node n = new Node(nodeFor(parent));
+          t.onPrepareForRedo(()->n.rollBack());
+          return n;
+        });
+    }
+  }
+
+  static long run(int nThreads, int nTasks, int nAdds,
+                  Accumulator<LongHolder> accum)
+  {
+    long[] total = new long[1];
+    long start = System.nanoTime();
+    isolated(()->{
+        List<Thread> threads = new ArrayList<>();
+        for (int t=0; t<nThreads; t++) {
+          threads.add(new Thread(()->{
+                for (int i=0; i<nTasks; i++) {
+                  asTask(()->{
+                      for (int j=0; j<nAdds; j++) {
+                        accum.add(h->h.value++);
+                      }
+                    });
+                }
+          }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread t : threads) {
+          try {
+            t.join();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        total[0] = accum.get(h->h.value);
+      });
+    long elapsed = System.nanoTime()-start;
+    long expected = (long)nThreads*nTasks*nAdds;
+    if (total[0] != expected) {
+      throw new AssertionError(String.format("Total is %,d, expected %,d", total[0], expected));
+    }
+    return elapsed;
+  }
+
+  public static void main(String[] args) {
+    final int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    final int nTasks = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    final int nAdds = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+    BiConsumer<LongHolder,LongHolder> rollback = (h,rb)->{ h.value -= rb.value; };
+    System.out.format("%8s %14s %14s %8s%n", "threads", "locked (us)", "striped (us)", "ratio");
+    for (int n=1; n<=maxThreads; n*=2) {
+      long locked = run(n, nTasks, nAdds, new Locked<>(LongHolder::new, rollback));
+      long striped = run(n, nTasks, nAdds, Accumulator.create(LongHolder::new, rollback));
+      System.out.format("%8d %,14d %,14d %8.2f%n", n, locked/1000, striped/1000,
+                        (double)locked/striped);
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package test;
+
+import java.util.HashMap;
+import java.util.Map;
+import com.hpl.mds.*;
+import com.hpl.mds.impl.ElementKind;
+import com.hpl.mds.impl.ManagedMapProxy;
+import static com.hpl.mds.MDS.*;
+
+/*
+ * Checks which map operations conflict.  Reading a key shouldn't
+ * conflict with writes to other keys, but it should with removing
+ * the key and putting it back, and a walk (here, size()) should
+ * conflict with a key being added even when another was removed, so
+ * the size comes out the same.  Then has a number of threads toggle
+ * the same few keys (removing each if it's there and putting it back
+ * if it isn't) and checks that no toggle was lost.
+ */
+public class Test13 extends TestBase {
+
+  public static void main(String[] args) {
+    final int nThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    final int nToggles = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+    final int nKeys = 10;
+    ManagedMapProxy<Long,Long> map = ManagedMapProxy.withLongKeys(ElementKind.LONG);
+
+    Map<Long,Long> initial = new HashMap<>();
+    for (long k=0; k<nKeys; k++) {
+      initial.put(k, k);
+    }
+    map.putAll(initial);
+    check(map.size() == nKeys, "size is %,d, expected %,d", map.size(), nKeys);
+    IsolationContext before = IsolationContext.readOnlySnapshotFromCurrent();
+
+    long[] seen = new long[1];
+    int r = taskRuns(()->seen[0] = map.get(1L), ()->map.put(2L, 20L));
+    check(r == 1, "get ran %d times after another key was put", r);
+    r = taskRuns(()->seen[0] = map.get(1L), ()->{ map.remove(1L); map.put(1L, 10L); });
+    check(r == 2 && seen[0] == 10L, "get ran %d times and saw %d after remove/re-add", r, seen[0]);
+    r = taskRuns(()->seen[0] = map.containsKey(100L) ? 1 : 0, ()->map.put(100L, 0L));
+    check(r == 2 && seen[0] == 1, "containsKey ran %d times and saw %d after put", r, seen[0]);
+    r = taskRuns(()->seen[0] = map.size(), ()->{ map.remove(100L); map.put(101L, 0L); });
+    check(r == 2 && seen[0] == nKeys+1, "size ran %d times and saw %d after swap", r, seen[0]);
+    map.remove(101L);
+
+    long start = System.nanoTime();
+    inThreads(nThreads, me->{
+        for (int i=0; i<nToggles; i++) {
+          for (long k=0; k<nKeys; k++) {
+            final long key = k;
+            isolated(()->{
+                if (map.remove(key) == null) {
+                  map.put(key, key);
+                }
+              });
+          }
+        }
+      });
+    System.out.format("toggles: %,10d us%n", (System.nanoTime()-start)/1000);
+
+    final boolean present = (nThreads*nToggles)%2 == 0;
+    for (long k=0; k<nKeys; k++) {
+      check(map.containsKey(k) == present, "key %d present is %s", k, map.containsKey(k));
+    }
+    check(map.size() == (present ? nKeys : 0), "size is %,d", map.size());
+    before.call(()->{
+        check(map.get(1L) == 1L, "snapshot sees %s", map.get(1L));
+        check(map.size() == nKeys, "snapshot size is %,d", map.size());
+      });
+
+    ManagedMapProxy<ManagedString,String> names
+      = ManagedMapProxy.withStringKeys(ElementKind.STRING);
+    names.put(ManagedString.valueOf("a"), "alpha");
+    check(names.get("a").toString().equals("alpha"), "names[a] is %s", names.get("a"));
+    check(names.remove("a") != null && names.isEmpty(), "names not empty after remove");
+    System.out.println("OK");
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import com.hpl.mds.*;
+import com.hpl.mds.impl.ElementKind;
+import com.hpl.mds.impl.ManagedListProxy;
+import static com.hpl.mds.MDS.*;
+
+/*
+ * Checks which list operations conflict.  Appends reserve their own
+ * slots, so a task that appends while another context appends
+ * shouldn't be rerun, but removals from either end read both ends,
+ * so a task that takes the last element from the front has to be
+ * rerun if it's taken from the back first.  Then has a number of
+ * threads drain a deque from both ends at once and checks that every
+ * element comes out exactly once, and that queues, stacks, and deques
+ * come out in the right order.
+ */
+public class Test14 extends TestBase {
+
+  static ManagedListProxy<Long> deque(long n) {
+    ManagedListProxy<Long> list
+      = ManagedListProxy.create(ManagedListProxy.Usage.DEQUE, ElementKind.LONG);
+    for (long i=0; i<n; i++) {
+      list.add(i);
+    }
+    return list;
+  }
+
+  public static void main(String[] args) {
+    final int nThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    final int n = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+    ManagedListProxy<Long> log = deque(0);
+    int r = taskRuns(()->log.add(1L), ()->log.add(2L));
+    check(r == 1, "append ran %d times, expected 1", r);
+    check(log.size() == 2 && log.contains(1L) && log.contains(2L), "log is %s", log);
+
+    ManagedListProxy<Long> one = deque(1);
+    Long[] took = new Long[1];
+    r = taskRuns(()->took[0] = one.pollFirst(), ()->one.pollLast());
+    check(r == 2, "removeFirst ran %d times, expected 2", r);
+    check(took[0] == null && one.isEmpty(), "element taken from both ends");
+
+    ManagedListProxy<Long> shared = deque(n);
+    IsolationContext before = IsolationContext.readOnlySnapshotFromCurrent();
+    List<List<Long>> taken = new ArrayList<>();
+    for (int t=0; t<nThreads; t++) {
+      taken.add(new ArrayList<>());
+    }
+    long start = System.nanoTime();
+    inThreads(nThreads, me->{
+        final boolean fromFront = me%2 == 0;
+        while (true) {
+          Long[] got = new Long[1];
+          isolated(()->{
+              got[0] = fromFront ? shared.pollFirst() : shared.pollLast();
+            });
+          if (got[0] == null) {
+            break;
+          }
+          taken.get(me).add(got[0]);
+        }
+      });
+    System.out.format("removes: %,10d us%n", (System.nanoTime()-start)/1000);
+
+    boolean[] seen = new boolean[n];
+    int nTaken = 0;
+    for (List<Long> l : taken) {
+      for (long v : l) {
+        check(!seen[(int)v], "%d taken twice", v);
+        seen[(int)v] = true;
+        nTaken++;
+      }
+    }
+    check(nTaken == n, "%,d taken, expected %,d", nTaken, n);
+    check(shared.isEmpty(), "%,d left after draining", shared.size());
+    before.call(()->{
+        check(shared.size() == n, "snapshot sees %,d elements", shared.size());
+      });
+
+    ManagedListProxy<Long> queue
+      = ManagedListProxy.create(ManagedListProxy.Usage.QUEUE, ElementKind.LONG);
+    queue.addAll(Arrays.asList(0L, 1L, 2L, 3L));
+    check(queue.pollFirst() == 0L && queue.pollFirst() == 1L, "queue out of order");
+    queue.add(4L);
+    check(queue.equals(Arrays.asList(2L, 3L, 4L)), "queue is %s", queue);
+
+    ManagedListProxy<Long> stack
+      = ManagedListProxy.create(ManagedListProxy.Usage.STACK, ElementKind.LONG);
+    stack.addAll(Arrays.asList(0L, 1L, 2L));
+    check(stack.pollLast() == 2L && stack.pollLast() == 1L, "stack out of order");
+    stack.add(3L);
+    check(stack.equals(Arrays.asList(0L, 3L)), "stack is %s", stack);
+
+    ManagedListProxy<ManagedString> deque
+      = ManagedListProxy.create(ManagedListProxy.Usage.DEQUE, ElementKind.STRING);
+    deque.add(ManagedString.valueOf("b"));
+    deque.addFirst(ManagedString.valueOf("a"));
+    deque.add(ManagedString.valueOf("c"));
+    check(deque.get(0).toString().equals("a") && deque.get(2).toString().equals("c"),
+          "deque is %s", deque);
+    check(deque.remove(1).toString().equals("b") && deque.size() == 2,
+          "deque is %s after remove", deque);
+    try {
+      stack.addFirst(5L);
+      check(false, "addFirst allowed on a stack");
+    } catch (UnsupportedOperationException e) {
+    }
+    System.out.println("OK");
+  }
+}
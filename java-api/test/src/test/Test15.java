@@ -0,0 +1,105 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.hpl.mds.*;
+import com.hpl.mds.impl.ElementKind;
+import com.hpl.mds.impl.ManagedSetProxy;
+import static com.hpl.mds.MDS.*;
+
+/*
+ * Checks that set conflicts are per element: testing for one SKU
+ * shouldn't conflict with adding another, but should with adding it
+ * or removing and re-adding it.  Then has a number of threads race to
+ * claim the same SKUs, each adding a SKU only if it isn't there yet,
+ * and checks that every SKU was claimed by exactly one thread.
+ */
+public class Test15 extends TestBase {
+
+  static String sku(int i) {
+    return String.format("SKU-%06d", i);
+  }
+
+  public static void main(String[] args) {
+    final int nThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    final int nSkus = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+    ManagedSetProxy<CharSequence> skus = ManagedSetProxy.create(ElementKind.STRING);
+
+    List<String> initial = new ArrayList<>();
+    for (int i=0; i<10; i++) {
+      initial.add(sku(i));
+    }
+    skus.addAll(initial);
+    check(skus.size() == 10, "size is %,d, expected 10", skus.size());
+    IsolationContext before = IsolationContext.readOnlySnapshotFromCurrent();
+
+    boolean[] seen = new boolean[1];
+    final String fresh = sku(900_000);
+    int r = taskRuns(()->seen[0] = skus.contains(fresh), ()->skus.add(sku(900_001)));
+    check(r == 1 && !seen[0], "contains ran %d times after another SKU was added", r);
+    r = taskRuns(()->seen[0] = skus.contains(fresh), ()->skus.add(fresh));
+    check(r == 2 && seen[0], "contains ran %d times and saw %s after add", r, seen[0]);
+    r = taskRuns(()->seen[0] = skus.add(sku(0)),
+                 ()->{ skus.remove(sku(0)); skus.add(sku(0)); });
+    check(r == 2 && !seen[0], "add ran %d times and returned %s after remove/re-add", r, seen[0]);
+    skus.remove(fresh);
+    skus.remove(sku(900_001));
+
+    final int base = 1_000_000;
+    int[][] claimed = new int[nThreads][nSkus];
+    inThreads(nThreads, me->{
+        for (int i=0; i<nSkus; i++) {
+          final String s = sku(base+i);
+          boolean[] added = new boolean[1];
+          isolated(()->{
+              added[0] = skus.add(s);
+            });
+          claimed[me][i] = added[0] ? 1 : 0;
+        }
+      });
+    for (int i=0; i<nSkus; i++) {
+      int n = 0;
+      for (int t=0; t<nThreads; t++) {
+        n += claimed[t][i];
+      }
+      check(n == 1, "%s claimed %d times", sku(base+i), n);
+    }
+    check(skus.size() == 10+nSkus, "size is %,d, expected %,d", skus.size(), 10+nSkus);
+    before.call(()->{
+        check(!skus.contains(sku(base)), "snapshot sees a later add");
+        check(skus.size() == 10, "snapshot size is %,d", skus.size());
+      });
+    check(skus.remove(sku(0)) && !skus.contains(sku(0)), "remove failed");
+
+    ManagedSetProxy<Long> ids = ManagedSetProxy.ofLongs();
+    ids.add(7L);
+    check(ids.contains(7L) && !ids.contains(8L) && ids.size() == 1, "ids is %s", ids);
+    System.out.println("OK");
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+import com.hpl.mds.*;
+import static com.hpl.mds.MDS.*;
+
+/*
+ * Indexes the owner (HASH), balance (ORDERED) and rank (HASH) fields
+ * of accounts, creates the accounts, and checks the lookups, both
+ * before and after the balances are moved up and in a snapshot taken
+ * before the moves.  Records whose rank was never set have to be found
+ * under 0.  Then checks that a task's lookup conflicts with a change
+ * made by another thread that it should have seen: a record joining
+ * the looked-up value, a record moving into the looked-up range, and
+ * new records taking the default value.
+ */
+public class Test16 extends TestBase {
+
+  static String owner(int i) {
+    return String.format("owner-%d", i % 10);
+  }
+
+  static final long MOVED = 1_000_000;
+
+  /*
+   * A task in a snapshot records what look returns, another thread
+   * runs change, and then the snapshot publishes.  The task has to be
+   * redone and see the change.
+   */
+  static void checkPhantom(String label, IntSupplier look, Runnable change) {
+    final ManagedIntArray seen = ManagedInt.TYPE.createArray(1);
+    final int[] runs = {0};
+    final int before = look.getAsInt();
+    final Pause.Button looked = new Pause.Button();
+    final Pause.Button changed = new Pause.Button();
+
+    Thread t = new Thread(()->{
+        isolated(Options.snapshot(), ()->{
+            asTask(()->{
+                runs[0]++;
+                seen.set(0, look.getAsInt());
+              });
+            looked.press();
+            Pause.on(changed);
+          });
+      });
+    t.start();
+    Pause.on(looked);
+    change.run();
+    changed.press();
+    Pause.untilDone(t);
+
+    final int after = look.getAsInt();
+    check(after != before, "%s: change didn't change the lookup", label);
+    check(seen.getInt(0) == after, "%s: task saw %d, expected %d", label, seen.getInt(0), after);
+    check(runs[0] == 2, "%s: task ran %d times, expected 2", label, runs[0]);
+  }
+
+  public static void main(String[] args) {
+    final int nAccounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+    StringField<Account> owner = StringField.findIn(Account.TYPE, "owner");
+    LongField<Account> balance = LongField.findIn(Account.TYPE, "balance");
+    IntField<Account> rank = IntField.findIn(Account.TYPE, "rank");
+    owner.createIndex(IndexKind.HASH);
+    balance.createIndex(IndexKind.ORDERED);
+    rank.createIndex(IndexKind.HASH);
+    check(owner.isIndexed() && balance.isIndexed() && rank.isIndexed(), "fields not indexed");
+
+    List<Account> accounts = new ArrayList<>();
+    for (int i=0; i<nAccounts; i++) {
+      accounts.add(Account.create.record(i, owner(i), i));
+    }
+
+    long start = System.nanoTime();
+    List<Account> mine = owner.lookup("owner-3");
+    System.out.format("lookup:      %,10d us%n", (System.nanoTime()-start)/1000);
+    check(mine.size() == nAccounts/10, "%,d accounts for owner-3", mine.size());
+    for (Account a : mine) {
+      check(a.getNumber() % 10 == 3, "account %,d isn't owner-3's", a.getNumber());
+    }
+
+    start = System.nanoTime();
+    List<Account> low = balance.lookupRange(0, 100);
+    System.out.format("lookupRange: %,10d us%n", (System.nanoTime()-start)/1000);
+    check(low.size() == 100, "%,d accounts under 100", low.size());
+    for (int i=0; i<low.size(); i++) {
+      check(low.get(i).getBalance() == i, "range out of order at %d", i);
+    }
+
+    /*
+     * Nobody has set a rank, and createMany() leaves fields unset.
+     */
+    check(rank.lookup(0).size() == nAccounts, "%,d accounts at rank 0", rank.lookup(0).size());
+    List<Account> unset = Account.TYPE.createMany(10);
+    check(rank.lookup(0).size() == nAccounts+10, "%,d records at rank 0 after createMany()",
+          rank.lookup(0).size());
+    check(balance.lookup(0).size() == 11, "%,d records at balance 0", balance.lookup(0).size());
+    unset.get(0).setRank(7);
+    check(rank.lookup(7).size() == 1 && rank.lookup(0).size() == nAccounts+9,
+          "record didn't move from rank 0 to rank 7");
+
+    IsolationContext before = IsolationContext.readOnlySnapshotFromCurrent();
+
+    start = System.nanoTime();
+    isolated(()->{
+        for (Account a : accounts) {
+          balance.inc(a, MOVED);
+        }
+      });
+    System.out.format("moves:       %,10d us%n", (System.nanoTime()-start)/1000);
+
+    check(balance.lookup(5).isEmpty(), "account still found at its old balance");
+    check(balance.lookup(MOVED+5).size() == 1, "account not found at its new balance");
+    check(balance.lookupRange(MOVED, 2*MOVED).size() == nAccounts, "not all accounts moved");
+    check(balance.lookupRange(1, MOVED).isEmpty(), "accounts left below %,d", MOVED);
+    before.call(()->{
+        List<Account> old = balance.lookup(5);
+        check(old.size() == 1 && old.get(0).getNumber() == 5, "snapshot doesn't find account 5");
+        check(balance.lookupRange(MOVED, 2*MOVED).isEmpty(), "snapshot sees the moves");
+      });
+
+    checkPhantom("lookup", ()->owner.lookup("nobody").size(),
+                 ()->accounts.get(0).setOwner("nobody"));
+    checkPhantom("lookupRange", ()->balance.lookupRange(5*MOVED, 6*MOVED).size(),
+                 ()->accounts.get(1).setBalance(5*MOVED+1));
+    checkPhantom("default", ()->rank.lookup(0).size(),
+                 ()->Account.TYPE.createMany(3));
+
+    try {
+      owner.createIndex(IndexKind.ORDERED);
+      check(false, "owner re-indexed as ORDERED");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    IntField<NoCtor> num = IntField.findIn(NoCtor.TYPE, "num");
+    try {
+      num.lookup(0);
+      check(false, "lookup on an unindexed field");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    NoCtor.TYPE.createMany(1);
+    try {
+      num.createIndex(IndexKind.HASH);
+      check(false, "num indexed after a record was created");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    check(!num.isIndexed(), "num left indexed");
+    System.out.println("OK");
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package test;
+
+import com.hpl.mds.*;
+import com.hpl.mds.impl.ManagedSetProxy;
+import static com.hpl.mds.MDS.*;
+
+/*
+ * Runs isolated adds to a set from a number of threads with rollup
+ * workers running, so that cleaning up after the publishes happens in
+ * the background.  Checks that every add is visible afterward and
+ * that the workers did some of the work.
+ */
+public class Test17 extends TestBase {
+
+  public static void main(String[] args) {
+    final int nThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    final int nAdds = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+    final int nWorkers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+    MemStats.startRollupWorkers(nWorkers);
+    ManagedSetProxy<Long> ids = ManagedSetProxy.ofLongs();
+
+    long start = System.nanoTime();
+    inThreads(nThreads, me->{
+        for (long i=me; i<nAdds; i+=nThreads) {
+          final long id = i;
+          isolated(()->{
+              ids.add(id);
+            });
+        }
+      });
+    System.out.format("adds:    %,10d us%n", (System.nanoTime()-start)/1000);
+
+    for (long i=0; i<nAdds; i++) {
+      check(ids.contains(i), "%,d missing", i);
+    }
+    check(ids.size() == nAdds, "size is %,d, expected %,d", ids.size(), nAdds);
+
+    MemStats stats = new MemStats();
+    System.out.format("rollups: %,10d in %,d us, %,d waiting%n",
+                      stats.nRollupsProcessed(), stats.rollupNanos()/1000,
+                      stats.rollupBacklog());
+    check(stats.nRollupsProcessed() > 0, "the workers didn't process anything");
+    MemStats.stopRollupWorkers();
+    System.out.println("OK");
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.hpl.mds.*;
+
+/*
+ * Creates accounts one at a time and with both forms of
+ * RecordType.createMany(), and reports how long each takes.  Checks
+ * that the records come back distinct and writable, that the
+ * streaming form passes each index once, and that an initializer
+ * that throws stops the load.
+ */
+public class Test18 extends TestBase {
+
+  public static void main(String[] args) {
+    final int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+    long start = System.nanoTime();
+    List<Account> single = new ArrayList<>(n);
+    for (int i=0; i<n; i++) {
+      single.add(Account.create.record(i, "single", i));
+    }
+    System.out.format("one at a time: %,10d us%n", (System.nanoTime()-start)/1000);
+
+    start = System.nanoTime();
+    List<Account> many = Account.TYPE.createMany(n);
+    System.out.format("createMany:    %,10d us%n", (System.nanoTime()-start)/1000);
+    check(many.size() == n, "%,d records created, expected %,d", many.size(), n);
+    for (int i=0; i<n; i++) {
+      Account a = many.get(i);
+      check(a == many.get(i), "record %,d has two proxies", i);
+      a.setBalance(i);
+    }
+    for (int i=0; i<n; i++) {
+      check(many.get(i).getBalance() == i, "record %,d has balance %,d", i, many.get(i).getBalance());
+    }
+    check(!many.get(0).equals(many.get(n-1)), "first and last records are the same");
+
+    start = System.nanoTime();
+    long[] seen = new long[n];
+    Account.TYPE.createMany(n, (a, i) -> {
+        seen[i]++;
+        a.setOwner("streamed");
+        a.setBalance(i);
+      });
+    System.out.format("streamed:      %,10d us%n", (System.nanoTime()-start)/1000);
+    for (int i=0; i<n; i++) {
+      check(seen[i] == 1, "index %,d initialized %,d times", i, seen[i]);
+    }
+
+    int[] calls = {0};
+    try {
+      Account.TYPE.createMany(n, (a, i) -> {
+          calls[0]++;
+          if (i == n/2) {
+            throw new IllegalStateException("stop");
+          }
+        });
+      check(false, "exception from initializer not thrown");
+    } catch (IllegalStateException e) {
+      check(calls[0] == n/2+1, "%,d initializer calls before the exception", calls[0]);
+    }
+    System.out.println("OK");
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import com.hpl.mds.*;
+import static com.hpl.mds.MDS.*;
+
+/*
+ * Checks that resolve() reruns dependent tasks in dependency order,
+ * both linearly and on a redo pool.  Task B starts first, reads what
+ * task A writes, and is then declared to depend on A.  A reads a
+ * value that another thread changes before the snapshot publishes, so
+ * both are redone, and B has to see A's new value.
+ */
+public class Test19 extends TestBase {
+
+  static void run(String label, ForkJoinPool pool) {
+    PubResult.setRedoPool(pool);
+    final ManagedIntArray array = ManagedInt.TYPE.createArray(3);
+    final List<String> order = Collections.synchronizedList(new ArrayList<>());
+    final Pause.Button started = new Pause.Button();
+    final Pause.Button changed = new Pause.Button();
+
+    Thread t = new Thread(()->{
+        isolated(Options.snapshot(), ()->{
+            final Task[] tasks = new Task[2];
+            asTask(()->{
+                tasks[1] = Task.current();
+                order.add("B");
+                array.set(2, array.getInt(1)+1);
+              });
+            asTask(()->{
+                tasks[0] = Task.current();
+                order.add("A");
+                array.set(1, array.getInt(0));
+              });
+            tasks[1].dependsOn(tasks[0]);
+            started.press();
+            Pause.on(changed);
+          });
+      });
+    t.start();
+    Pause.on(started);
+    array.set(0, 42);
+    changed.press();
+    Pause.untilDone(t);
+
+    List<String> redone = order.subList(2, order.size());
+    System.out.format("%s: ran %s%n", label, order);
+    check(redone.indexOf("A") >= 0 && redone.indexOf("A") < redone.indexOf("B"),
+          "%s: tasks redone as %s, expected A before B", label, redone);
+    check(array.getInt(2) == 43, "%s: B computed %d, expected 43", label, array.getInt(2));
+  }
+
+  public static void main(String[] args) {
+    run("Linear", null);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      run("Pool", pool);
+    } finally {
+      PubResult.setRedoPool(null);
+      pool.shutdown();
+    }
+  }
+}
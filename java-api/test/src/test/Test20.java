@@ -0,0 +1,124 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import com.hpl.mds.*;
+import static com.hpl.mds.MDS.*;
+
+/*
+ * Checks that cached field values are dropped when the snapshot they
+ * were read in changes: when a child publishes into it, when it
+ * writes the field itself, and when it is rolled forward to redo a
+ * task after a conflict.  Also checks that a live read-only context,
+ * which sees its parent's publishes, doesn't cache, and that a
+ * caching setting made through one field proxy is seen by the others.
+ */
+public class Test20 extends TestBase {
+
+  static void childPublish(Account a) {
+    isolated(Options.snapshot().cacheAllFields(), ()->{
+        check(a.getBalance() == 100, "child: read %d, expected 100", a.getBalance());
+        isolated(()->a.setBalance(200));
+        check(a.getBalance() == 200,
+              "child: read %d after child published, expected 200", a.getBalance());
+        a.setBalance(300);
+        check(a.getBalance() == 300,
+              "child: read %d after own write, expected 300", a.getBalance());
+      });
+    check(a.getBalance() == 300, "child: published %d, expected 300", a.getBalance());
+  }
+
+  static void rollForward(Account a) {
+    final List<Long> seen = Collections.synchronizedList(new ArrayList<>());
+    final Pause.Button read = new Pause.Button();
+    final Pause.Button changed = new Pause.Button();
+
+    Thread t = new Thread(()->{
+        isolated(Options.snapshot().cacheAllFields(), ()->{
+            asTask(()->{
+                long b = a.getBalance();
+                // Read it twice so the second read comes from the cache.
+                seen.add(a.getBalance());
+                a.setRank((int)b);
+              });
+            read.press();
+            Pause.on(changed);
+          });
+      });
+    t.start();
+    Pause.on(read);
+    a.setBalance(500);
+    changed.press();
+    Pause.untilDone(t);
+
+    System.out.format("Roll forward: read %s%n", seen);
+    check(seen.size() >= 2 && seen.get(seen.size()-1) == 500,
+          "roll forward: redo read %s, expected 500 last", seen);
+    check(a.getRank() == 500, "roll forward: rank %d, expected 500", a.getRank());
+  }
+
+  static void readOnlyLive(Account a) {
+    final Pause.Button read = new Pause.Button();
+    final Pause.Button changed = new Pause.Button();
+    final long[] seen = new long[2];
+
+    Thread t = new Thread(()->{
+        isolated(Options.readOnlyLive().cacheAllFields(), ()->{
+            seen[0] = a.getBalance();
+            read.press();
+            Pause.on(changed);
+            seen[1] = a.getBalance();
+          });
+      });
+    t.start();
+    Pause.on(read);
+    a.setBalance(600);
+    changed.press();
+    Pause.untilDone(t);
+
+    check(seen[0] == 100, "read-only live: first read %d, expected 100", seen[0]);
+    check(seen[1] == 600, "read-only live: read %d after the change, expected 600", seen[1]);
+  }
+
+  static void sharedSetting() {
+    LongField<Account> f1 = LongField.findIn(Account.TYPE, "balance");
+    LongField<Account> f2 = LongField.findIn(Account.TYPE, "balance");
+    f1.setCaching(Caching.CACHED);
+    check(f2.caching() == Caching.CACHED, "shared setting: other proxy is %s", f2.caching());
+    f2.setCaching(Caching.UNCACHED);
+    check(f1.caching() == Caching.UNCACHED, "shared setting: other proxy is %s", f1.caching());
+  }
+
+  public static void main(String[] args) {
+    childPublish(Account.create.record(1, "Alice", 100));
+    rollForward(Account.create.record(2, "Bob", 100));
+    readOnlyLive(Account.create.record(3, "Carol", 100));
+    sharedSetting();
+  }
+}
@@ -29,9 +29,12 @@ package test;
 import com.hpl.erk.config.*;
 import com.hpl.erk.RandomChoice;
 import com.hpl.erk.util.Patterns;
+import com.hpl.mds.*;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.function.IntConsumer;
+import static com.hpl.mds.MDS.*;
 
 public class TestBase {
   static final RunContext testRC = RunContext.GLOBAL.subContext("test");
@@ -65,6 +68,89 @@ public class TestBase {
     }
   }
 
+  static void check(boolean cond, String fmt, Object... args) {
+    if (!cond) {
+      throw new AssertionError(String.format(fmt, args));
+    }
+  }
+
+  /*
+   * Runs body on nThreads new threads, passing each its number, and
+   * waits for them all to finish.  If any of them threw, the first
+   * one's exception is rethrown here (with the others suppressed), so
+   * a failed check() in a worker fails the test.
+   */
+  static void inThreads(int nThreads, IntConsumer body) {
+    List<Thread> threads = new ArrayList<>();
+    Throwable[] thrown = new Throwable[nThreads];
+    for (int t=0; t<nThreads; t++) {
+      final int me = t;
+      threads.add(new Thread(()->{
+            try {
+              body.accept(me);
+            } catch (Throwable e) {
+              thrown[me] = e;
+            }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread t : threads) {
+      try {
+        t.join();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    Throwable first = null;
+    for (Throwable e : thrown) {
+      if (e == null) {
+        continue;
+      }
+      if (first == null) {
+        first = e;
+      } else {
+        first.addSuppressed(e);
+      }
+    }
+    if (first instanceof RuntimeException) {
+      throw (RuntimeException)first;
+    }
+    if (first instanceof Error) {
+      throw (Error)first;
+    }
+    if (first != null) {
+      throw new RuntimeException(first);
+    }
+  }
+
+  /*
+   * Runs op as a task in a snapshot, lets change run in the global
+   * context before the snapshot publishes, and returns how many times
+   * op ran.
+   */
+  static int taskRuns(Runnable op, Runnable change) {
+    final int[] runs = {0};
+    final Pause.Button ran = new Pause.Button();
+    final Pause.Button changed = new Pause.Button();
+
+    Thread t = new Thread(()->{
+        isolated(Options.snapshot(), ()->{
+            asTask(()->{
+                runs[0]++;
+                op.run();
+              });
+            ran.press();
+            Pause.on(changed);
+          });
+      });
+    t.start();
+    Pause.on(ran);
+    change.run();
+    changed.press();
+    Pause.untilDone(t);
+    return runs[0];
+  }
+
   static void initStore(Path csvPath) throws IOException {
     StoreBuilder sb = new StoreBuilder();
     Files.lines(csvPath)
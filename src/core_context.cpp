@@ -31,6 +31,7 @@
  *      Author: evank
  */
 
+#include <limits>
 #include <unordered_map>
 #include <unordered_set>
 #include <queue>
@@ -334,33 +335,23 @@ namespace mds {
 
     gc_ptr<view>
     iso_context::find_shadow(const gc_ptr<view> &v) {
-      gc_ptr<shadow_node> new_shadow = nullptr;
-      while (true) {
-        gc_ptr<shadow_node> current_shadows = _shadows;
-        for (gc_ptr<shadow_node> sn = current_shadows;
-             sn != nullptr;
-             sn = sn->next)
-          {
-            if (sn->base == v) {
-              return sn->shadow;
-            }
-          }
-        if (new_shadow == nullptr) {
-          const gc_ptr<view> psv = is_global() ? v : _parent->shadow(v);
-          const gc_ptr<view> spsv = (psv == v)
-            ? make_gc<view>(GC_THIS, psv) : shadow(psv);
-          new_shadow = make_gc<shadow_node>(v, spsv, current_shadows);
-          // std::cout << GC_THIS << "'s"
-          //           << " shadow for " << v
-          //           << " is " << spsv
-          //           << std::endl;
-        } else {
-          new_shadow->next = current_shadows;
-        }
-        if (ruts::try_change_value(_shadows, current_shadows, new_shadow)) {
-          return new_shadow->shadow;
-        }
+      gc_ptr<shadow_index> shadows = _shadows;
+      if (shadows == nullptr) {
+        auto rr = ruts::try_change_value(_shadows, nullptr, make_gc<shadow_index>());
+        shadows = rr.resulting_value();
       }
+      /*
+       * The index may ask for the shadow more than once if it races
+       * with another thread, so we only compute it once.
+       */
+      gc_ptr<view> spsv = nullptr;
+      return shadows->find(v, true, [&]{
+          if (spsv == nullptr) {
+            const gc_ptr<view> psv = is_global() ? v : _parent->shadow(v);
+            spsv = (psv == v) ? make_gc<view>(GC_THIS, psv) : shadow(psv);
+          }
+          return spsv;
+        });
     }
 
 
@@ -497,6 +488,9 @@ namespace mds {
       } catch (const conflict_list &conflicts) {
         return make_gc<publication_attempt>(GC_THIS, conflicts, start_time);
       }
+      if (_dropped_namespace.exchange(false)) {
+        parent()->note_dropped_namespace();
+      }
       return make_gc<publication_attempt>(GC_THIS, conflict_list{}, publish_time);
     }
 
@@ -835,6 +829,131 @@ namespace mds {
       return v;
     }
 
+    namespace {
+      /*
+       * Tarjan's algorithm, done iteratively, since redo graphs can
+       * be deep.  Returns the number of each node's strongly
+       * connected component.
+       */
+      std::vector<std::size_t>
+      strong_components(const std::vector<std::unordered_set<std::size_t>> &edges) {
+        using namespace std;
+        using edge_iter = unordered_set<size_t>::const_iterator;
+        constexpr size_t unvisited = numeric_limits<size_t>::max();
+
+        const size_t n = edges.size();
+        vector<size_t> index(n, unvisited);
+        vector<size_t> low(n);
+        vector<size_t> comp(n, unvisited);
+        vector<size_t> stack;
+        vector<pair<size_t, edge_iter>> calls;
+        size_t next_index = 0;
+        size_t next_comp = 0;
+        for (size_t root = 0; root < n; root++) {
+          if (index[root] != unvisited) {
+            continue;
+          }
+          index[root] = low[root] = next_index++;
+          stack.push_back(root);
+          calls.emplace_back(root, edges[root].begin());
+          while (!calls.empty()) {
+            const size_t v = calls.back().first;
+            edge_iter &it = calls.back().second;
+            if (it != edges[v].end()) {
+              const size_t w = *it++;
+              if (index[w] == unvisited) {
+                index[w] = low[w] = next_index++;
+                stack.push_back(w);
+                calls.emplace_back(w, edges[w].begin());
+              } else if (comp[w] == unvisited) {
+                /*
+                 * w is still on the stack.
+                 */
+                low[v] = min(low[v], index[w]);
+              }
+              continue;
+            }
+            calls.pop_back();
+            if (!calls.empty()) {
+              size_t &caller_low = low[calls.back().first];
+              caller_low = min(caller_low, low[v]);
+            }
+            if (low[v] == index[v]) {
+              size_t w;
+              do {
+                w = stack.back();
+                stack.pop_back();
+                comp[w] = next_comp;
+              } while (w != v);
+              next_comp++;
+            }
+          }
+        }
+        return comp;
+      }
+    }
+
+    std::vector<std::vector<std::size_t>>
+    publication_attempt::redo_task_follows() const {
+      using namespace std;
+
+      vector<gc_ptr<task>> tasks = redo_tasks_by_start_time();
+      unordered_map<gc_ptr<task>, size_t> pos;
+      for (size_t i = 0; i < tasks.size(); i++) {
+        pos[tasks[i]] = i;
+      }
+      /*
+       * A node's follow set holds the tasks that depend on it, so
+       * they have to be redone after it.
+       */
+      vector<unordered_set<size_t>> deps(tasks.size());
+      for (const auto &n : get_redo_graph()->_nodes) {
+        size_t from = pos[n->_task];
+        for (const auto &f : n->_follows) {
+          auto p = pos.find(f->deref()->_task);
+          if (p != pos.end() && p->second != from) {
+            deps[from].insert(p->second);
+          }
+        }
+      }
+      /*
+       * Tasks can depend on one another in a cycle.  Edges between
+       * tasks in the same cycle (i.e., in the same strongly connected
+       * component) are ordered the way a linear redo would run them,
+       * by start time.  Every other edge keeps its direction.  Since
+       * the components themselves form a DAG, so does the result.
+       */
+      vector<size_t> comp = strong_components(deps);
+      vector<unordered_set<size_t>> edges(tasks.size());
+      for (size_t from = 0; from < deps.size(); from++) {
+        for (size_t to : deps[from]) {
+          if (comp[from] != comp[to] || from < to) {
+            edges[from].insert(to);
+          } else {
+            edges[to].insert(from);
+          }
+        }
+      }
+      vector<vector<size_t>> follows;
+      follows.reserve(edges.size());
+      for (const auto &e : edges) {
+        follows.emplace_back(e.begin(), e.end());
+      }
+      return follows;
+    }
+
+    std::vector<std::size_t>
+    publication_attempt::conflict_keys() const {
+      std::vector<std::size_t> keys;
+      std::hash<gc_ptr<value_chain>> hash;
+      _conflicts.for_each([&](const gc_ptr<const conflict> &c) {
+          gc_ptr<value_chain> vc = c->get_vc();
+          gc_ptr<value_chain> p = vc->get_parent();
+          keys.push_back(hash(p == nullptr ? vc : p));
+        });
+      return keys;
+    }
+
     bool
     publication_attempt::prepare_for_redo() const {
       auto g = get_redo_graph();
@@ -848,6 +967,11 @@ namespace mds {
         return false;
       }
       g->prepare_for_redo();
+      /*
+       * Rolling back the tasks (or the snapshot forward) can change
+       * which names are bound to namespaces in the context.
+       */
+      namespace_version->fetch_add(1);
       _conflicts.for_each([](auto &c) {
           c->mark_resolved();
         });
@@ -858,7 +982,7 @@ namespace mds {
          * TODO: What about things that happened between the time we
          * rolled individual VCs and now?
          */
-        timestamp_t now = ++(*current_version);
+        timestamp_t now = iso_context::new_snapshot_time(most_recent);
         _context->roll_snapshot_forward(now);
       }
       _context->note_resolved(_conflicts);
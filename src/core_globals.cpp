@@ -44,7 +44,9 @@ namespace mds {
     external_gc_ptr<string_table_t> string_table;
     external_gc_ptr<record_type_table_t> record_type_table;
     external_gc_ptr<name_space> global_namespace;
-    std::size_t *next_task_number;
+    task_number_t *next_task_number;
+    external_gc_ptr<watermark_table> watermarks;
+    namespace_version_t *namespace_version;
     
     external_gc_ptr<const managed_type<kind::BOOL>> managed_bool_type;
     external_gc_ptr<const managed_type<kind::BYTE>> managed_byte_type;
@@ -69,7 +71,9 @@ namespace mds {
       gc_ptr<string_table_t> _string_table = make_gc<string_table_t>(initial_string_table_capacity);
       gc_ptr<record_type_table_t> _record_type_table = make_gc<record_type_table_t>(initial_record_type_table_capacity);
       gc_ptr<name_space> _global_namespace = make_gc<name_space>();
-      std::size_t _next_task_number;
+      task_number_t _next_task_number { 0 };
+      gc_ptr<watermark_table> _watermarks = make_gc<watermark_table>();
+      namespace_version_t _namespace_version { 0 };
 
       gc_ptr<const managed_type<kind::BOOL>> _mtype_bool = make_gc<managed_type<kind::BOOL>>();
       gc_ptr<const managed_type<kind::BYTE>> _mtype_byte = make_gc<managed_type<kind::BYTE>>();
@@ -99,6 +103,8 @@ namespace mds {
 	  .WITH_FIELD(&control::_record_type_table)
 	  .WITH_FIELD(&control::_global_namespace)
 	  .WITH_FIELD(&control::_next_task_number)
+	  .WITH_FIELD(&control::_watermarks)
+	  .WITH_FIELD(&control::_namespace_version)
 	  .WITH_FIELD(&control::_mtype_bool)
 	  .WITH_FIELD(&control::_mtype_byte)
 	  .WITH_FIELD(&control::_mtype_ubyte)
@@ -142,6 +148,9 @@ namespace mds {
         global_namespace = cb._global_namespace;
 	assert(global_namespace.value().is_valid());
         next_task_number = &cb._next_task_number;
+        watermarks = cb._watermarks;
+	assert(watermarks.value().is_valid());
+        namespace_version = &cb._namespace_version;
         managed_bool_type = cb._mtype_bool;
 	assert(managed_bool_type.value().is_valid());
         managed_byte_type = cb._mtype_byte;
@@ -169,6 +178,7 @@ namespace mds {
 
         already_registered = false;
         process_registered = true;
+        version_watermark::attach();
         /*
          * TODO: Probably need some sort of call to atomic_thread_fence to ensure that these
          * writes actually make it out to the memory before anybody starts to read them.
@@ -183,6 +193,8 @@ namespace mds {
       bool already_unregistered = true;
       static std::once_flag done;
       std::call_once(done, [&](){
+        rollup_service::stop();
+        version_watermark::detach();
         already_unregistered = false;
       });
       return already_unregistered;
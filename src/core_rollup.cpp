@@ -0,0 +1,348 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_rollup.cpp
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#include "core/mds_core.h"
+#include "ruts/cas_loop.h"
+#include <algorithm>
+#include <condition_variable>
+#include <cstddef>
+#include <mutex>
+#include <thread>
+#include <vector>
+
+namespace mds {
+  namespace core {
+
+    namespace rollup_service {
+      namespace {
+        /*
+         * A Treiber stack of MSVs.  Since nodes are never reused while
+         * anybody can see them, pop() doesn't have an ABA problem.
+         * Workers take the whole stack at once and process it oldest
+         * first, so a steady stream of new MSVs can't starve old ones.
+         *
+         * An MSV that's published to again before it's been processed
+         * only needs to be queued once, so we keep a lossy record of
+         * what's queued.  The mark is set before the push and cleared
+         * when the MSV comes off the queue, before its rollups are
+         * processed, so a set mark always means that a push of the MSV
+         * is still to be taken.  MSVs that share a slot may get queued
+         * more than once.
+         */
+        class rollup_queue : public gc_allocated {
+          struct node : gc_allocated {
+            const gc_ptr<msv> m;
+            gc_ptr<node> next;
+            node(gc_token &gc, const gc_ptr<msv> &ms)
+              : gc_allocated{gc}, m{ms}
+            {}
+            static const auto &descriptor() {
+              static gc_descriptor d =
+                GC_DESC(node)
+                .WITH_FIELD(&node::m)
+                .WITH_FIELD(&node::next);
+              return d;
+            }
+          };
+          using atomic_msv = std::atomic<gc_ptr<msv>>;
+          static constexpr std::size_t n_marks = 4096;
+
+          std::atomic<gc_ptr<node>> _head{nullptr};
+          const gc_array_ptr<atomic_msv> _marks;
+
+          atomic_msv &mark_for(const gc_ptr<msv> &m) {
+            std::size_t h = std::hash<gc_ptr<msv>>{}(m);
+            h ^= h >> 29;
+            h *= 0x9E3779B97F4A7C15ULL;
+            return _marks[(h >> 32) % n_marks];
+          }
+
+          void unmark(const gc_ptr<msv> &m) {
+            gc_ptr<msv> expected = m;
+            mark_for(m).compare_exchange_strong(expected, nullptr);
+          }
+        public:
+          explicit rollup_queue(gc_token &gc)
+            : gc_allocated{gc}, _marks{make_gc_array<atomic_msv>(n_marks)}
+          {}
+
+          static const auto &descriptor() {
+            static gc_descriptor d =
+              GC_DESC(rollup_queue)
+              .WITH_FIELD(&rollup_queue::_head)
+              .WITH_FIELD(&rollup_queue::_marks);
+            return d;
+          }
+
+          /*
+           * Returns false if the MSV is already queued.
+           */
+          bool mark(const gc_ptr<msv> &m) {
+            return mark_for(m).exchange(m) != m;
+          }
+
+          void push(const gc_ptr<msv> &m) {
+            gc_ptr<node> n = make_gc<node>(m);
+            ruts::cas_loop(_head, [&](const auto &head) {
+                n->next = head;
+                return n;
+              });
+          }
+
+          gc_ptr<msv> pop() {
+            gc_ptr<node> head = _head;
+            while (head != nullptr
+                   && !_head.compare_exchange_weak(head, head->next))
+              {
+              }
+            if (head == nullptr) {
+              return nullptr;
+            }
+            unmark(head->m);
+            return head->m;
+          }
+
+          /*
+           * Empties the queue, returning its MSVs in the order they
+           * were pushed.
+           */
+          external_gc_vector<gc_ptr<msv>> take_all() {
+            external_gc_vector<gc_ptr<msv>> ms;
+            for (gc_ptr<node> n = _head.exchange(nullptr); n != nullptr; n = n->next) {
+              unmark(n->m);
+              ms.push_back(n->m);
+            }
+            std::reverse(ms.begin(), ms.end());
+            return ms;
+          }
+        };
+
+        struct local_state {
+          std::mutex mutex;
+          std::condition_variable cv;
+          std::vector<std::thread> workers;
+          external_gc_ptr<rollup_queue> queue;
+          std::atomic<bool> running{false};
+          bool stopping = false;
+          std::size_t n_wanted = 0;
+          std::size_t help_threshold = default_help_threshold;
+
+          /*
+           * MSVs are counted after they're pushed, so this can briefly
+           * go negative when one is taken before it's counted.
+           */
+          std::atomic<std::ptrdiff_t> backlog{0};
+          std::atomic<std::size_t> n_processed{0};
+          std::atomic<std::uint64_t> nanos{0};
+
+          void stop() {
+            std::vector<std::thread> ts;
+            {
+              std::lock_guard<std::mutex> lock{mutex};
+              running = false;
+              stopping = true;
+              n_wanted = 0;
+              ts = std::move(workers);
+              workers.clear();
+            }
+            cv.notify_all();
+            for (auto &t : ts) {
+              t.join();
+            }
+          }
+
+          ~local_state() {
+            stop();
+          }
+        };
+
+        local_state &local() {
+          static local_state s;
+          return s;
+        }
+
+        void note_processed(local_state &s, std::size_t done,
+                            std::chrono::steady_clock::time_point start)
+        {
+          if (done > 0) {
+            auto t = std::chrono::steady_clock::now()-start;
+            s.nanos.fetch_add(std::chrono::duration_cast<std::chrono::nanoseconds>(t).count(),
+                              std::memory_order_relaxed);
+            s.n_processed.fetch_add(done, std::memory_order_relaxed);
+          }
+        }
+
+        /*
+         * Processes up to n queued MSVs, newest first.  Returns the
+         * number done.
+         */
+        std::size_t drain(local_state &s, std::size_t n) {
+          gc_ptr<rollup_queue> q = s.queue;
+          if (q == nullptr) {
+            return 0;
+          }
+          std::size_t done = 0;
+          auto start = std::chrono::steady_clock::now();
+          for (; done < n; done++) {
+            gc_ptr<msv> m = q->pop();
+            if (m == nullptr) {
+              break;
+            }
+            s.backlog.fetch_sub(1, std::memory_order_relaxed);
+            m->process_pending_rollups();
+          }
+          note_processed(s, done, start);
+          return done;
+        }
+
+        /*
+         * Processes everything queued, oldest first.  Returns the
+         * number done.
+         */
+        std::size_t drain_all(local_state &s) {
+          gc_ptr<rollup_queue> q = s.queue;
+          if (q == nullptr) {
+            return 0;
+          }
+          auto start = std::chrono::steady_clock::now();
+          external_gc_vector<gc_ptr<msv>> ms = q->take_all();
+          s.backlog.fetch_sub(static_cast<std::ptrdiff_t>(ms.size()), std::memory_order_relaxed);
+          for (const gc_ptr<msv> &m : ms) {
+            m->process_pending_rollups();
+          }
+          note_processed(s, ms.size(), start);
+          return ms.size();
+        }
+
+        void run_worker(local_state &s, std::size_t i) {
+          std::unique_lock<std::mutex> lock{s.mutex};
+          while (!s.stopping && i < s.n_wanted) {
+            lock.unlock();
+            std::size_t done = drain_all(s);
+            lock.lock();
+            if (done == 0) {
+              s.cv.wait(lock, [&s, i] {
+                  return s.stopping || i >= s.n_wanted || s.backlog > 0;
+                });
+            }
+          }
+        }
+      }
+
+      void start(std::size_t n_workers, std::size_t help_threshold) {
+        local_state &s = local();
+        std::vector<std::thread> surplus;
+        {
+          std::lock_guard<std::mutex> lock{s.mutex};
+          if (s.queue == nullptr) {
+            s.queue = make_gc<rollup_queue>();
+          }
+          s.stopping = false;
+          s.help_threshold = help_threshold;
+          s.n_wanted = n_workers;
+          while (s.workers.size() < n_workers) {
+            s.workers.emplace_back(run_worker, std::ref(s), s.workers.size());
+          }
+          while (s.workers.size() > n_workers) {
+            surplus.push_back(std::move(s.workers.back()));
+            s.workers.pop_back();
+          }
+          s.running.store(n_workers > 0, std::memory_order_release);
+        }
+        s.cv.notify_all();
+        for (auto &t : surplus) {
+          t.join();
+        }
+      }
+
+      /*
+       * Anything still queued is left for the next start() (or for
+       * the MSVs' readers).
+       */
+      void stop() {
+        local().stop();
+      }
+
+      bool running() {
+        return local().running.load(std::memory_order_relaxed);
+      }
+
+      void note_pending(const gc_ptr<msv> &m) {
+        local_state &s = local();
+        if (!s.running.load(std::memory_order_acquire)) {
+          return;
+        }
+        gc_ptr<rollup_queue> q = s.queue;
+        if (!q->mark(m)) {
+          return;
+        }
+        /*
+         * The MSV is pushed before it's counted, so a worker that
+         * wakes because the backlog went up will find it.  The workers
+         * only sleep when the backlog isn't positive, so we only need
+         * to wake them when it becomes positive.
+         */
+        q->push(m);
+        const bool was_empty = s.backlog.fetch_add(1, std::memory_order_relaxed) <= 0;
+        if (was_empty) {
+          std::lock_guard<std::mutex> lock{s.mutex};
+          s.cv.notify_one();
+        }
+      }
+
+      void help_if_backlogged() {
+        local_state &s = local();
+        if (!s.running.load(std::memory_order_relaxed)
+            || s.backlog.load(std::memory_order_relaxed)
+                 <= static_cast<std::ptrdiff_t>(s.help_threshold))
+          {
+            return;
+          }
+        constexpr std::size_t help_batch = 16;
+        drain(s, help_batch);
+      }
+
+      std::size_t backlog() {
+        std::ptrdiff_t n = local().backlog.load(std::memory_order_relaxed);
+        return n < 0 ? 0 : n;
+      }
+
+      std::size_t n_processed() {
+        return local().n_processed.load(std::memory_order_relaxed);
+      }
+
+      std::chrono::nanoseconds time_spent() {
+        return std::chrono::nanoseconds(local().nanos.load(std::memory_order_relaxed));
+      }
+    }
+  }
+}
@@ -234,6 +234,7 @@ namespace mds {
       const parent_ptr_t _parent;
       gc_atomic_stack<gc_ptr<value_chain>> _contingent_children;
       std::atomic<gc_ptr<modification>> _pending_modification;
+      std::atomic<timestamp_t> _pruned_through;
 
 
       static parent_ptr_t compute_parent_ptr(const gc_ptr<view> &v,
@@ -264,7 +265,7 @@ namespace mds {
                   const gc_ptr<value_chain> &p,
                   discriminator_type d)
         : base{gc, v, d}, _latest{initial_value(v)}, _parent{compute_parent_ptr(v, p)},
-          _pending_modification{nullptr}
+          _pending_modification{nullptr}, _pruned_through{0}
       {}
 
       const static auto &descriptor() {
@@ -276,6 +277,7 @@ namespace mds {
           .template WITH_FIELD(&this_class::_parent)
           .template WITH_FIELD(&this_class::_contingent_children)
           .template WITH_FIELD(&this_class::_pending_modification)
+          .template WITH_FIELD(&this_class::_pruned_through)
           ;
         return d;
       }
@@ -360,6 +362,11 @@ namespace mds {
           self->call_non_virtual(&impl::add_conflicts_below, bm, except);
         }
 
+        void prune_before(value_chain *self, timestamp_t ts) override final
+        {
+          self->call_non_virtual(&impl::prune_before_impl, ts);
+        }
+
       }; // virtuals
 
 
@@ -388,15 +395,76 @@ namespace mds {
       }
 
       gc_ptr<value> value_before(timestamp_t ts) const {
+        /*
+         * A node's skip_min_ts covers every node its jump passes
+         * over, so if it isn't before ts, none of them is what we're
+         * looking for and we can take the jump.  This doesn't assume
+         * that timestamps decrease along the chain.
+         */
+        gc_ptr<value> v = _latest;
+        while (v != nullptr && v->timestamp() >= ts) {
+          gc_ptr<value> s = v->skip;
+          if (s != nullptr && v->skip_min_ts >= ts) {
+            v = s;
+          } else {
+            v = v->prior;
+          }
+        }
+        return v;
+      }
+
+      /*
+       * Cuts the chain below the newest value from before ts (which
+       * is the oldest one a read at ts or later can return), so that
+       * the GC can reclaim the rest.  Jumps that land below it are
+       * redirected to it.  Reads and writes racing with this may see
+       * either the old links or the new ones, which give the same
+       * answers from ts on.
+       */
+      void prune_before_impl(timestamp_t w) {
+        timestamp_t done = _pruned_through.load();
+        if (w <= done || !_pruned_through.compare_exchange_strong(done, w)) {
+          return;
+        }
+        /*
+         * redo_closes() may walk back to the last publish in this
+         * context, so we can't cut above that.
+         */
+        timestamp_t ts = is_top_level()
+          ? w
+          : std::min(w, get_context()->last_stable_time());
+        gc_ptr<value> floor = value_before(ts);
+        if (floor == nullptr) {
+          return;
+        }
+        std::size_t floor_depth = floor->depth;
         for (gc_ptr<value> v = _latest;
-             v != nullptr;
+             v != nullptr && v->depth > floor_depth;
              v = v->prior)
           {
-            if (v->timestamp() < ts) {
-              return v;
+            gc_ptr<value> s = v->skip;
+            if (s != nullptr && s->depth < floor_depth) {
+              /*
+               * The old skip_min_ts covered more nodes, so it's
+               * still safe to use.
+               */
+              v->skip.compare_exchange_strong(s, floor);
             }
           }
-        return nullptr;
+        floor->skip = nullptr;
+        gc_ptr<value> tail = floor->prior.exchange(nullptr);
+        if (tail == nullptr) {
+          return;
+        }
+        /*
+         * This is an estimate.  Some of these may still be referred
+         * to (by a pending modification, say).
+         */
+        std::size_t n = 0;
+        for (gc_ptr<value> v = tail; v != nullptr; v = v->prior) {
+          n++;
+        }
+        version_watermark::note_pruned(n, n*sizeof(value));
       }
 
       gc_ptr<value> value_at(timestamp_t ts) const {
@@ -801,7 +869,8 @@ namespace mds {
           // FALLTHRU
         default:
           /*
-           * Everything else needs the current value.
+           * Everything else (including a chunk patch, whatever it
+           * returns) needs the current value.
            */
           return value_at(ts);
         }
@@ -2418,6 +2487,11 @@ namespace mds {
     typed_msv<kind::ARRAY>::value_chain::for_view(const gc_ptr<view> &,
                                                   const gc_ptr<value_chain> &,
                                                   const gc_ptr<msv> &);
+    template
+    gc_ptr<typed_msv<kind::ARRAY_CHUNK>::value_chain>
+    typed_msv<kind::ARRAY_CHUNK>::value_chain::for_view(const gc_ptr<view> &,
+                                                        const gc_ptr<value_chain> &,
+                                                        const gc_ptr<msv> &);
     template <kind K>
     using ross_vc = typename typed_msv<K>::ross_vc;
     template <kind K>
@@ -2487,6 +2561,7 @@ namespace mds {
     template void mod_condition<kind::BINDING>::init_vf_table(vf_table &);
     template void mod_condition<kind::ARRAY>::init_vf_table(vf_table &);
     template void mod_condition<kind::NAMESPACE>::init_vf_table(vf_table &);
+    template void mod_condition<kind::ARRAY_CHUNK>::init_vf_table(vf_table &);
     
     // template <>
     // void mod_condition<kind::INT>::init_vf_table(vf_table &t) {
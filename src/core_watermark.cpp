@@ -0,0 +1,363 @@
+/*
+ *
+ *  Managed Data Structures
+ *  Copyright © 2016 Hewlett Packard Enterprise Development Company LP.
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  As an exception, the copyright holders of this Library grant you permission
+ *  to (i) compile an Application with the Library, and (ii) distribute the 
+ *  Application containing code generated by the Library and added to the 
+ *  Application during this compilation process under terms of your choice, 
+ *  provided you also meet the terms and conditions of the Application license.
+ *
+ */
+
+/*
+ * core_watermark.cpp
+ *
+ *  Created on: Oct 17, 2016
+ */
+
+#include "core/mds_core.h"
+#include <condition_variable>
+#include <mutex>
+#include <thread>
+#include <unordered_map>
+
+namespace mds {
+  namespace core {
+
+    std::ptrdiff_t watermark_table::claim_slot() {
+      for (std::size_t i = 0; i < _slots.size(); i++) {
+        timestamp_t expected = 0;
+        if (_slots[i].compare_exchange_strong(expected, most_recent)) {
+          return i;
+        }
+      }
+      _n_unslotted++;
+      return -1;
+    }
+
+    void watermark_table::release_slot(std::ptrdiff_t i) {
+      if (i < 0) {
+        _n_unslotted--;
+      } else {
+        _slots[i] = 0;
+      }
+    }
+
+    void watermark_table::lower_slot(std::ptrdiff_t i, timestamp_t ts) {
+      if (i < 0) {
+        return;
+      }
+      /*
+       * Zero means a free slot, so we can't store it.  One is just
+       * as conservative.
+       */
+      ts = std::max(ts, timestamp_t{1});
+      std::atomic<timestamp_t> &slot = _slots[i];
+      timestamp_t current = slot.load();
+      while (current > ts && !slot.compare_exchange_weak(current, ts)) {
+      }
+    }
+
+    void watermark_table::set_slot(std::ptrdiff_t i, timestamp_t ts) {
+      if (i >= 0) {
+        _slots[i] = std::max(ts, timestamp_t{1});
+      }
+    }
+
+    timestamp_t watermark_table::oldest_pinned() const {
+      if (_n_unslotted > 0) {
+        return 0;
+      }
+      timestamp_t oldest = most_recent;
+      for (std::size_t i = 0; i < _slots.size(); i++) {
+        timestamp_t ts = _slots[i];
+        if (ts != 0 && ts < oldest) {
+          oldest = ts;
+        }
+      }
+      return oldest;
+    }
+
+    namespace version_watermark {
+      namespace {
+        /*
+         * Pins are taken and dropped every time a context handle
+         * enters or leaves the API's handle store, so they're striped
+         * by context (each stripe with its own lock) to keep them
+         * from serializing isolated blocks.
+         */
+        constexpr std::size_t n_pin_stripes = 64;
+
+        struct alignas(64) pin_stripe {
+          std::mutex mutex;
+          std::unordered_map<external_gc_ptr<iso_context>, std::size_t> pins;
+        };
+
+        struct local_state {
+          /*
+           * Serializes attach(), detach(), and refresh().  pin() and
+           * unpin() only lock the context's stripe.
+           */
+          std::mutex mutex;
+          pin_stripe pin_stripes[n_pin_stripes];
+          std::atomic<bool> attached{false};
+          std::atomic<std::ptrdiff_t> slot{-1};
+          /*
+           * Bumped by each pin() after it records the pin, so that
+           * refresh() can tell whether one may have been missed by its
+           * scan and lowered the slot before refresh() set it.
+           */
+          std::atomic<std::uint64_t> pin_epoch{0};
+          /*
+           * The current version as of the last refresh().
+           */
+          timestamp_t last_version = 0;
+          std::atomic<timestamp_t> watermark{0};
+
+          std::mutex compactor_mutex;
+          std::condition_variable compactor_cv;
+          std::thread compactor;
+          std::chrono::milliseconds period;
+          bool stopping = false;
+
+          void stop() {
+            std::thread t;
+            {
+              std::lock_guard<std::mutex> lock{compactor_mutex};
+              stopping = true;
+              t = std::move(compactor);
+            }
+            compactor_cv.notify_all();
+            if (t.joinable()) {
+              t.join();
+            }
+          }
+
+          ~local_state() {
+            stop();
+          }
+        };
+
+        local_state &local() {
+          static local_state s;
+          return s;
+        }
+
+        pin_stripe &stripe_for(local_state &s, const gc_ptr<iso_context> &ctxt) {
+          std::size_t h = std::hash<gc_ptr<iso_context>>{}(ctxt);
+          h ^= h >> 29;
+          h *= 0x9E3779B97F4A7C15ULL;
+          return s.pin_stripes[(h >> 32) % n_pin_stripes];
+        }
+
+        template <typename Fn>
+        void for_each_pin(local_state &s, Fn &&fn) {
+          for (pin_stripe &ps : s.pin_stripes) {
+            std::lock_guard<std::mutex> lock{ps.mutex};
+            for (const auto &p : ps.pins) {
+              fn(p.first);
+            }
+          }
+        }
+
+        /*
+         * Whether a read in ctxt can ever look below the most recent
+         * version, i.e., whether ctxt or one of its ancestors is a
+         * snapshot.  This is fixed when the context is created.
+         * Pins on other contexts can't hold the watermark back, so
+         * they aren't recorded.
+         */
+        bool reads_history(const gc_ptr<iso_context> &ctxt) {
+          for (gc_ptr<iso_context> c = ctxt;
+               c != nullptr && !c->is_global();
+               c = c->parent())
+            {
+              if (c->is_snapshot()) {
+                return true;
+              }
+            }
+          return false;
+        }
+
+        void run_compactor(local_state &s) {
+          std::unique_lock<std::mutex> lock{s.compactor_mutex};
+          while (!s.compactor_cv.wait_for(lock, s.period, [&s] { return s.stopping; })) {
+            lock.unlock();
+            refresh();
+            lock.lock();
+          }
+        }
+      }
+
+      void attach() {
+        local_state &s = local();
+        std::lock_guard<std::mutex> lock{s.mutex};
+        if (s.attached) {
+          return;
+        }
+        s.slot = watermarks->claim_slot();
+        s.attached = true;
+        for_each_pin(s, [&s](const gc_ptr<iso_context> &c) {
+            watermarks->lower_slot(s.slot, oldest_read_time(c));
+          });
+      }
+
+      void detach() {
+        stop_compactor();
+        local_state &s = local();
+        std::lock_guard<std::mutex> lock{s.mutex};
+        if (!s.attached) {
+          return;
+        }
+        watermarks->release_slot(s.slot);
+        s.slot = -1;
+        s.attached = false;
+        s.watermark = 0;
+      }
+
+      timestamp_t oldest_read_time(const gc_ptr<iso_context> &ctxt) {
+        /*
+         * This mirrors value_at(): a snapshot looks in its parent as
+         * of its last publish before the time it was asked about,
+         * while a live context passes the time through unchanged.
+         */
+        timestamp_t t = most_recent;
+        for (gc_ptr<iso_context> c = ctxt;
+             c != nullptr && !c->is_global();
+             c = c->parent())
+          {
+            if (c->is_snapshot()) {
+              t = (t == most_recent)
+                ? c->last_stable_time()
+                : c->publish_time_before(t);
+            }
+          }
+        return t;
+      }
+
+      void pin(const gc_ptr<iso_context> &ctxt) {
+        if (ctxt == nullptr || !reads_history(ctxt)) {
+          return;
+        }
+        local_state &s = local();
+        pin_stripe &ps = stripe_for(s, ctxt);
+        {
+          std::lock_guard<std::mutex> lock{ps.mutex};
+          ps.pins[ctxt]++;
+        }
+        s.pin_epoch.fetch_add(1);
+        /*
+         * A racing detach() is harmless: lowering a free (zero) slot
+         * does nothing, and lowering one that another process has
+         * since claimed only holds the watermark back until that
+         * process's next refresh().
+         */
+        if (s.attached) {
+          watermarks->lower_slot(s.slot, oldest_read_time(ctxt));
+        }
+      }
+
+      void unpin(const gc_ptr<iso_context> &ctxt) {
+        if (ctxt == nullptr || !reads_history(ctxt)) {
+          return;
+        }
+        pin_stripe &ps = stripe_for(local(), ctxt);
+        std::lock_guard<std::mutex> lock{ps.mutex};
+        auto p = ps.pins.find(ctxt);
+        if (p == ps.pins.end()) {
+          return;
+        }
+        if (--p->second == 0) {
+          ps.pins.erase(p);
+        }
+        /*
+         * The slot is raised lazily, by refresh().
+         */
+      }
+
+      timestamp_t refresh() {
+        local_state &s = local();
+        std::lock_guard<std::mutex> lock{s.mutex};
+        if (!s.attached) {
+          return s.watermark;
+        }
+        timestamp_t now = current_version->load();
+        auto scan = [&s] {
+          timestamp_t oldest = most_recent;
+          for_each_pin(s, [&oldest](const gc_ptr<iso_context> &c) {
+              oldest = std::min(oldest, oldest_read_time(c));
+            });
+          return oldest;
+        };
+        /*
+         * A pin() that our scan missed may have lowered the slot
+         * before we set it.  If so, its epoch bump comes before our
+         * second read, and its pin is visible to a second scan, which
+         * we fold in with lower_slot().  Pins whose bump comes after
+         * that lower the slot themselves, after we've set it.
+         */
+        std::uint64_t epoch = s.pin_epoch.load();
+        watermarks->set_slot(s.slot, scan());
+        while (s.pin_epoch.load() != epoch) {
+          epoch = s.pin_epoch.load();
+          watermarks->lower_slot(s.slot, scan());
+        }
+        timestamp_t w = std::min(watermarks->oldest_pinned(), s.last_version);
+        s.last_version = now;
+        if (w > s.watermark) {
+          s.watermark = w;
+        }
+        return s.watermark;
+      }
+
+      timestamp_t current() {
+        return local().watermark.load(std::memory_order_acquire);
+      }
+
+      void start_compactor(std::chrono::milliseconds period) {
+        local_state &s = local();
+        {
+          std::lock_guard<std::mutex> lock{s.compactor_mutex};
+          s.period = period;
+          if (!s.compactor.joinable()) {
+            s.stopping = false;
+            s.compactor = std::thread{run_compactor, std::ref(s)};
+            return;
+          }
+        }
+        s.compactor_cv.notify_all();
+      }
+
+      void stop_compactor() {
+        local().stop();
+      }
+
+      void note_pruned(std::size_t n_values, std::size_t n_bytes) {
+        watermarks->note_pruned(n_values, n_bytes);
+      }
+
+      std::size_t values_pruned() {
+        return watermarks->values_pruned();
+      }
+
+      std::size_t bytes_pruned() {
+        return watermarks->bytes_pruned();
+      }
+    }
+  }
+}